@@ -176,6 +176,14 @@ def _patch_svm_support_native_image():
             '--gc=' + selected_gc,
             '--module', 'de.hpi.swa.trufflesqueak.launcher/%s.launcher.TruffleSqueakLauncher' % PACKAGE_NAME,
         ]
+        preinit_image = os.getenv('TRUFFLESQUEAK_PREINIT_IMAGE')
+        if preinit_image:
+            # Read the image at build time so that it is part of the image heap
+            build_command += [
+                '-Dpolyglot.image-build-time.PreinitializeContexts=%s' % LANGUAGE_ID,
+                '-Dpolyglot.%s.image-path=%s' % (LANGUAGE_ID, os.path.abspath(preinit_image)),
+                '-H:-DetectUserDirectoriesInImageHeap',
+            ]
         mx.log('Running {} ...'.format(' '.join(build_command)))
         return mx.run(build_command)
 
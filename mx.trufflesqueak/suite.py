@@ -236,6 +236,7 @@ suite = {
             "sourceDirs": ["src"],
             "dependencies": [
                 "de.hpi.swa.trufflesqueak",
+                "de.hpi.swa.trufflesqueak.launcher",
                 "mx:JUNIT",
                 "sdk:MAVEN_DOWNLOADER",
             ],
@@ -344,7 +345,7 @@ suite = {
             "moduleInfo": {
                 "name": "de.hpi.swa.trufflesqueak.launcher",
                 "exports": [
-                    "de.hpi.swa.trufflesqueak.launcher to org.graalvm.launcher",
+                    "de.hpi.swa.trufflesqueak.launcher to org.graalvm.launcher,de.hpi.swa.trufflesqueak.test",
                 ],
             },
             "useModulePath": True,
@@ -423,6 +424,7 @@ suite = {
             "exclude": ["mx:JUNIT", "mx:HAMCREST"],
             "distDependencies": [
                 "TRUFFLESQUEAK",
+                "TRUFFLESQUEAK_LAUNCHER",
                 "sdk:MAVEN_DOWNLOADER",
             ],
             "testDistribution": True,
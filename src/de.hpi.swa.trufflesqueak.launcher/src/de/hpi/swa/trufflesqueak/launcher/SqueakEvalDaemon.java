@@ -0,0 +1,370 @@
+/*
+ * Copyright (c) 2017-2024 Software Architecture Group, Hasso Plattner Institute
+ * Copyright (c) 2021-2024 Oracle and/or its affiliates
+ *
+ * Licensed under the MIT License.
+ */
+package de.hpi.swa.trufflesqueak.launcher;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.TimeoutException;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+
+import de.hpi.swa.trufflesqueak.shared.SqueakLanguageConfig;
+
+/**
+ * Keeps a warmed-up context resident and evaluates requests received over a Unix domain socket.
+ * A request consists of Smalltalk code and a list of arguments, which the code can access via
+ * {@code arguments}. Each request is compiled into its own doIt, and everything the image writes
+ * to stdout and stderr while evaluating it is streamed back to the client as frames:
+ *
+ * <pre>
+ * request:  int count, count x (int length, UTF-8 bytes), where the first string is the code
+ * response: (byte OUT|ERR|RESULT, int length, bytes)*, byte EXIT, int status
+ * </pre>
+ *
+ * Requests are evaluated one at a time on the daemon thread, because a context must not be
+ * entered by several threads at once. Each request is isolated from the next one: errors it does
+ * not handle itself are reported to its client instead of reaching the image's debugger, and it is
+ * interrupted if its client disconnects before it finishes, so that a request that hangs can be
+ * cancelled by stopping the client.
+ */
+public final class SqueakEvalDaemon {
+    private static final byte FRAME_OUT = 1;
+    private static final byte FRAME_ERR = 2;
+    private static final byte FRAME_RESULT = 3;
+    private static final byte FRAME_EXIT = 4;
+
+    private static final String REQUEST_SOURCE_NAME = "<daemon request>";
+    private static final Duration CANCEL_TIMEOUT = Duration.ofSeconds(10);
+    private static final int S_IFMT = 0170000;
+    private static final int S_IFSOCK = 0140000;
+
+    private final Path socketPath;
+    private final FrameOutputStream out = new FrameOutputStream(FRAME_OUT, System.out);
+    private final FrameOutputStream err = new FrameOutputStream(FRAME_ERR, System.err);
+
+    public SqueakEvalDaemon(final Path socketPath) {
+        this.socketPath = socketPath;
+    }
+
+    public OutputStream getOut() {
+        return out;
+    }
+
+    public OutputStream getErr() {
+        return err;
+    }
+
+    /** Serves requests until the image exits, answering the image's exit status. */
+    public int serve(final Context context, final boolean quiet) throws IOException {
+        removeStaleSocket();
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            bindOwnerOnly(server);
+            final Object socketKey = fileKeyOrNull(socketPath);
+            try {
+                if (!quiet) {
+                    // Checkstyle: stop
+                    System.out.println("[trufflesqueak] Listening on " + socketPath + "...");
+                    // Checkstyle: resume
+                }
+                while (true) {
+                    try (SocketChannel client = server.accept()) {
+                        final Integer exitStatus = handle(context, client);
+                        if (exitStatus != null) {
+                            return exitStatus;
+                        }
+                    } catch (final IOException e) {
+                        // Checkstyle: stop
+                        System.err.println("[trufflesqueak] Daemon request failed: " + e.getMessage());
+                        // Checkstyle: resume
+                    }
+                }
+            } finally {
+                /* Only remove the socket if it has not been replaced in the meantime. */
+                if (socketKey != null && Objects.equals(socketKey, fileKeyOrNull(socketPath))) {
+                    Files.deleteIfExists(socketPath);
+                }
+            }
+        }
+    }
+
+    /* Removes the socket of a previous daemon that is no longer listening, but nothing else. */
+    private void removeStaleSocket() throws IOException {
+        final BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(socketPath, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (final NoSuchFileException e) {
+            return;
+        }
+        if (!isSocket(socketPath, attributes)) {
+            throw new IOException(socketPath + " exists and is not a socket");
+        }
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+        } catch (final ConnectException e) {
+            Files.delete(socketPath);
+            return;
+        }
+        throw new IOException("Another daemon is listening on " + socketPath);
+    }
+
+    private static boolean isSocket(final Path path, final BasicFileAttributes attributes) throws IOException {
+        try {
+            return ((int) Files.getAttribute(path, "unix:mode", LinkOption.NOFOLLOW_LINKS) & S_IFMT) == S_IFSOCK;
+        } catch (final UnsupportedOperationException | IllegalArgumentException e) {
+            return attributes.isOther(); /* No unix view (e.g., on Windows). */
+        }
+    }
+
+    /*
+     * Binds the socket in a directory only accessible by the owner and restricts its permissions
+     * before moving it into place, so that other users cannot connect in between.
+     */
+    private void bindOwnerOnly(final ServerSocketChannel server) throws IOException {
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            server.bind(UnixDomainSocketAddress.of(socketPath));
+            return;
+        }
+        final Path directory = Files.createTempDirectory(socketPath.toAbsolutePath().getParent(), ".trufflesqueak-",
+                        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        final Path boundPath = directory.resolve("socket");
+        try {
+            server.bind(UnixDomainSocketAddress.of(boundPath));
+            Files.setPosixFilePermissions(boundPath, PosixFilePermissions.fromString("rw-------"));
+            Files.move(boundPath, socketPath, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(boundPath);
+            Files.delete(directory);
+        }
+    }
+
+    private static Object fileKeyOrNull(final Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).fileKey();
+        } catch (final IOException e) {
+            return null;
+        }
+    }
+
+    /* Answers the exit status if the image exited while handling the request, otherwise null. */
+    private Integer handle(final Context context, final SocketChannel client) throws IOException {
+        final DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+        final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+        final String[] request = new String[input.readInt()];
+        for (int i = 0; i < request.length; i++) {
+            request[i] = readString(input);
+        }
+        out.setTarget(output);
+        err.setTarget(output);
+        final Thread watchdog = new Thread(() -> cancelOnDisconnect(context, client), "trufflesqueak-daemon-watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+        int status = 0;
+        Integer exitStatus = null;
+        try {
+            final Value result = context.eval(Source.newBuilder(SqueakLanguageConfig.ID, toDoItSource(request), REQUEST_SOURCE_NAME).internal(true).cached(false).mimeType(
+                            SqueakLanguageConfig.ST_MIME_TYPE).build());
+            writeFrame(output, FRAME_RESULT, (result.isString() ? result.asString() : result.toString()).getBytes(StandardCharsets.UTF_8));
+        } catch (final PolyglotException e) {
+            if (e.isExit()) {
+                status = e.getExitStatus();
+                exitStatus = status;
+            } else if (e.isInterrupted()) {
+                status = -1; /* Client went away, nobody to report to. */
+            } else if (!e.isInternalError()) {
+                e.printStackTrace(new PrintStream(err, true));
+                status = -1;
+            } else {
+                throw e;
+            }
+        } finally {
+            out.setTarget(null);
+            err.setTarget(null);
+        }
+        try {
+            synchronized (output) {
+                output.writeByte(FRAME_EXIT);
+                output.writeInt(status);
+                output.flush();
+            }
+        } finally {
+            /* Stop the watchdog before the next request, so that it cannot interrupt that one. */
+            client.close();
+            try {
+                watchdog.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return exitStatus;
+    }
+
+    /*
+     * Waits for the client to disconnect and interrupts the request if it is still running. Reads
+     * from the channel directly, so that writes to the client are not blocked meanwhile.
+     */
+    private static void cancelOnDisconnect(final Context context, final SocketChannel client) {
+        final ByteBuffer buffer = ByteBuffer.allocate(1);
+        try {
+            while (client.read(buffer.clear()) >= 0) {
+                // Clients do not send anything after the request.
+            }
+        } catch (final IOException e) {
+            return; // Request finished and closed the channel.
+        }
+        try {
+            context.interrupt(CANCEL_TIMEOUT);
+        } catch (final TimeoutException e) {
+            // Checkstyle: stop
+            System.err.println("[trufflesqueak] Failed to cancel request of disconnected client within " + CANCEL_TIMEOUT.toSeconds() + "s");
+            // Checkstyle: resume
+        }
+    }
+
+    /*
+     * Binds the request arguments to `arguments` as a literal Array of Strings and hands errors the
+     * request does not handle to the daemon as guest exceptions, like file-ins do.
+     */
+    private static String toDoItSource(final String[] request) {
+        final StringBuilder arguments = new StringBuilder("#(");
+        for (int i = 1; i < request.length; i++) {
+            arguments.append(" '").append(request[i].replace("'", "''")).append('\'');
+        }
+        return "[[ :arguments | " + request[0] + "\n] value: " + arguments.append(" )") + " ] on: Error do: [ :e | Interop throwException: e ]";
+    }
+
+    /** Sends code and arguments to a daemon and replays its output, answering the exit status. */
+    public static int runClient(final Path socketPath, final String sourceCode, final String[] arguments, final boolean quiet) throws IOException {
+        // Checkstyle: stop
+        return runClient(socketPath, sourceCode, arguments, quiet, System.out, System.err);
+        // Checkstyle: resume
+    }
+
+    public static int runClient(final Path socketPath, final String sourceCode, final String[] arguments, final boolean quiet, final PrintStream stdout, final PrintStream stderr)
+                    throws IOException {
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+            final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            output.writeInt(1 + arguments.length);
+            writeString(output, sourceCode);
+            for (final String argument : arguments) {
+                writeString(output, argument);
+            }
+            output.flush();
+            final DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            while (true) {
+                final byte type = input.readByte();
+                if (type == FRAME_EXIT) {
+                    return input.readInt();
+                }
+                final byte[] bytes = new byte[input.readInt()];
+                input.readFully(bytes);
+                switch (type) {
+                    case FRAME_OUT -> stdout.write(bytes);
+                    case FRAME_ERR -> stderr.write(bytes);
+                    case FRAME_RESULT -> {
+                        if (!quiet) {
+                            stdout.println("[trufflesqueak] Result: " + new String(bytes, StandardCharsets.UTF_8));
+                        }
+                    }
+                    default -> throw new IOException("Unexpected frame type: " + type);
+                }
+                stdout.flush();
+            }
+        }
+    }
+
+    private static String readString(final DataInputStream input) throws IOException {
+        final byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(final DataOutputStream output, final String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static void writeFrame(final DataOutputStream output, final byte type, final byte[] bytes) throws IOException {
+        synchronized (output) {
+            output.writeByte(type);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+            output.flush();
+        }
+    }
+
+    /** Sends output to the client of the current request, or to the daemon's own stream. */
+    private static final class FrameOutputStream extends OutputStream {
+        private final byte type;
+        private final OutputStream fallback;
+        private volatile DataOutputStream target;
+
+        FrameOutputStream(final byte type, final OutputStream fallback) {
+            this.type = type;
+            this.fallback = fallback;
+        }
+
+        void setTarget(final DataOutputStream target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            final DataOutputStream currentTarget = target;
+            if (currentTarget == null) {
+                fallback.write(b, off, len);
+                return;
+            }
+            try {
+                final byte[] bytes = new byte[len];
+                System.arraycopy(b, off, bytes, 0, len);
+                writeFrame(currentTarget, type, bytes);
+            } catch (final IOException e) {
+                target = null; // Client went away, keep evaluating.
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (target == null) {
+                fallback.flush();
+            }
+        }
+    }
+}
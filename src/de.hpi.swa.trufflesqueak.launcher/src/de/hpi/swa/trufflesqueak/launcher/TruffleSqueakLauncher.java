@@ -10,6 +10,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
@@ -41,6 +42,8 @@ public final class TruffleSqueakLauncher extends AbstractLanguageLauncher {
     private String[] imageArguments = new String[0];
     private String imagePath;
     private String sourceCode;
+    private Path connectSocketPath;
+    private Path daemonSocketPath;
     private boolean enableTranscriptForwarding;
     private boolean useEngineModeLatency = true;
 
@@ -60,6 +63,8 @@ public final class TruffleSqueakLauncher extends AbstractLanguageLauncher {
         }
 
         final List<String> unrecognized = new ArrayList<>();
+        /* Arguments following the code, which are image arguments when connecting to a daemon. */
+        final List<String> codeArguments = new ArrayList<>();
         for (int i = 0; i < arguments.size(); i++) {
             final String arg = arguments.get(i);
             if (isExistingImageFile(arg)) {
@@ -70,6 +75,11 @@ public final class TruffleSqueakLauncher extends AbstractLanguageLauncher {
             } else if (SqueakLanguageOptions.CODE_FLAG.equals(arg) || SqueakLanguageOptions.CODE_FLAG_SHORT.equals(arg)) {
                 sourceCode = arguments.get(++i);
                 headless = true;
+            } else if (SqueakLanguageOptions.CONNECT_FLAG.equals(arg)) {
+                connectSocketPath = Paths.get(arguments.get(++i)).toAbsolutePath();
+            } else if (SqueakLanguageOptions.DAEMON_FLAG.equals(arg)) {
+                daemonSocketPath = Paths.get(arguments.get(++i)).toAbsolutePath();
+                headless = true;
             } else if (SqueakLanguageOptions.HEADLESS_FLAG.equals(arg)) {
                 headless = true;
             } else if (SqueakLanguageOptions.PRINT_IMAGE_PATH_FLAG.equals(arg)) {
@@ -78,22 +88,41 @@ public final class TruffleSqueakLauncher extends AbstractLanguageLauncher {
                 quiet = true;
             } else if (SqueakLanguageOptions.TRANSCRIPT_FORWARDING_FLAG.equals(arg)) {
                 enableTranscriptForwarding = true;
+            } else if (sourceCode != null) {
+                codeArguments.add(arg);
             } else {
-                if (arg.contains(ENGINE_MODE_OPTION)) {
-                    useEngineModeLatency = false; // engine.Mode set explicitly
-                }
-                unrecognized.add(arg);
+                addUnrecognized(unrecognized, arg);
+            }
+        }
+        if (connectSocketPath != null) {
+            imageArguments = codeArguments.toArray(new String[0]);
+        } else {
+            for (final String arg : codeArguments) {
+                addUnrecognized(unrecognized, arg);
             }
         }
         return unrecognized;
     }
 
+    private void addUnrecognized(final List<String> unrecognized, final String arg) {
+        if (arg.contains(ENGINE_MODE_OPTION)) {
+            useEngineModeLatency = false; // engine.Mode set explicitly
+        }
+        unrecognized.add(arg);
+    }
+
     @Override
     protected void launch(final Context.Builder contextBuilder) {
         System.exit(execute(contextBuilder));
     }
 
     protected int execute(final Context.Builder contextBuilder) {
+        if (connectSocketPath != null) {
+            return executeClient();
+        }
+        if (daemonSocketPath != null && sourceCode != null) {
+            throw abort(SqueakLanguageOptions.DAEMON_FLAG + " cannot be combined with " + SqueakLanguageOptions.CODE_FLAG + ".");
+        }
         imagePath = SqueakImageLocator.findImage(imagePath, quiet);
         if (printImagePath) {
             println(imagePath);
@@ -112,7 +141,13 @@ public final class TruffleSqueakLauncher extends AbstractLanguageLauncher {
         contextBuilder.allowAllAccess(true);
         final SqueakTranscriptForwarder out;
         final SqueakTranscriptForwarder err;
-        if (enableTranscriptForwarding) {
+        final SqueakEvalDaemon daemon = daemonSocketPath != null ? new SqueakEvalDaemon(daemonSocketPath) : null;
+        if (daemon != null) {
+            contextBuilder.out(daemon.getOut());
+            contextBuilder.err(daemon.getErr());
+            out = null;
+            err = null;
+        } else if (enableTranscriptForwarding) {
             out = new SqueakTranscriptForwarder(System.out, true);
             contextBuilder.out(out);
             err = new SqueakTranscriptForwarder(System.err, true);
@@ -126,7 +161,11 @@ public final class TruffleSqueakLauncher extends AbstractLanguageLauncher {
                 final String engineModeSuffix = useEngineModeLatency ? " (" + ENGINE_MODE_LATENCY + " mode)" : "";
                 println(String.format("[trufflesqueak] Running %s on %s%s...", new File(imagePath).getName(), runtimeName, engineModeSuffix));
             }
-            if (sourceCode != null) {
+            if (daemon != null) {
+                /* Load and start up the image before accepting the first request. */
+                context.eval(Source.newBuilder(getLanguageId(), "nil", "<daemon startup>").internal(true).cached(false).mimeType(SqueakLanguageConfig.ST_MIME_TYPE).build());
+                return daemon.serve(context, quiet);
+            } else if (sourceCode != null) {
                 final Value result = context.eval(
                                 Source.newBuilder(getLanguageId(), sourceCode, "Compiler>>#evaluate:").internal(true).cached(false).mimeType(SqueakLanguageConfig.ST_MIME_TYPE).build());
                 if (!quiet) {
@@ -165,6 +204,17 @@ public final class TruffleSqueakLauncher extends AbstractLanguageLauncher {
         }
     }
 
+    private int executeClient() {
+        if (sourceCode == null) {
+            throw abort(SqueakLanguageOptions.CONNECT_FLAG + " requires " + SqueakLanguageOptions.CODE_FLAG + ".");
+        }
+        try {
+            return SqueakEvalDaemon.runClient(connectSocketPath, sourceCode, imageArguments, quiet);
+        } catch (final IOException e) {
+            throw abort(String.format("Failed to evaluate code in daemon at '%s' (%s)", connectSocketPath, e.getMessage()));
+        }
+    }
+
     @Override
     protected String getLanguageId() {
         return SqueakLanguageConfig.ID;
@@ -185,6 +235,8 @@ public final class TruffleSqueakLauncher extends AbstractLanguageLauncher {
         println("Usage: trufflesqueak [options] <image file> [image arguments]\n");
         println("Basic options:");
         launcherOption(SqueakLanguageOptions.CODE_FLAG + " \"<code>\", " + SqueakLanguageOptions.CODE_FLAG_SHORT + " \"<code>\"", SqueakLanguageOptions.CODE_HELP);
+        launcherOption(SqueakLanguageOptions.CONNECT_FLAG + " <socket>", SqueakLanguageOptions.CONNECT_HELP);
+        launcherOption(SqueakLanguageOptions.DAEMON_FLAG + " <socket>", SqueakLanguageOptions.DAEMON_HELP);
         launcherOption(SqueakLanguageOptions.TRANSCRIPT_FORWARDING_FLAG, SqueakLanguageOptions.TRANSCRIPT_FORWARDING_HELP);
         launcherOption(SqueakLanguageOptions.HEADLESS_FLAG, SqueakLanguageOptions.HEADLESS_HELP);
         launcherOption(SqueakLanguageOptions.PRINT_IMAGE_PATH_FLAG, SqueakLanguageOptions.PRINT_IMAGE_PATH_HELP);
@@ -193,7 +245,7 @@ public final class TruffleSqueakLauncher extends AbstractLanguageLauncher {
 
     @Override
     protected void collectArguments(final Set<String> options) {
-        options.addAll(List.of(SqueakLanguageOptions.CODE_FLAG, SqueakLanguageOptions.CODE_FLAG_SHORT, SqueakLanguageOptions.HEADLESS_FLAG,
+        options.addAll(List.of(SqueakLanguageOptions.CODE_FLAG, SqueakLanguageOptions.CODE_FLAG_SHORT, SqueakLanguageOptions.CONNECT_FLAG, SqueakLanguageOptions.DAEMON_FLAG, SqueakLanguageOptions.HEADLESS_FLAG,
                         SqueakLanguageOptions.QUIET_FLAG, SqueakLanguageOptions.PRINT_IMAGE_PATH_FLAG, SqueakLanguageOptions.RESOURCE_SUMMARY_FLAG, SqueakLanguageOptions.TRANSCRIPT_FORWARDING_FLAG));
     }
 
@@ -10,32 +10,58 @@ public final class SqueakLanguageOptions {
     public static final String CODE_FLAG = "--code";
     public static final String CODE_FLAG_SHORT = "-c";
     public static final String CODE_HELP = "Smalltalk code to be executed without display";
+    public static final String CONNECT_FLAG = "--connect";
+    public static final String CONNECT_HELP = "Evaluate code given with --code in the daemon listening on the given socket (arguments follow the code)";
+    public static final String DAEMON_FLAG = "--daemon";
+    public static final String DAEMON_HELP = "Keep the image loaded and evaluate requests received on the given Unix domain socket";
+    public static final String DISPATCH_TABLES = "dispatch-tables";
+    public static final String DISPATCH_TABLES_HELP = "Look up megamorphic sends in per-selector class tables instead of the global method cache";
     public static final String HEADLESS = "headless";
     public static final String HEADLESS_FLAG = "--" + HEADLESS;
     public static final String HEADLESS_HELP = "Run without a display";
+    public static final String HEAP_CENSUS = "heap-census";
+    public static final String HEAP_CENSUS_HELP = "Print instance counts and estimated sizes of the given number of largest classes on context exit (0 to disable)";
     public static final String IMAGE_ARGUMENTS = "image-arguments";
     public static final String IMAGE_ARGUMENTS_FLAG = "--" + IMAGE_ARGUMENTS;
     public static final String IMAGE_ARGUMENTS_HELP = "Comma-separated list of image arguments";
     public static final String IMAGE_PATH = "image-path";
     public static final String IMAGE_PATH_FLAG = "--" + IMAGE_PATH;
     public static final String IMAGE_PATH_HELP = "Path to image";
+    public static final String INCREMENTAL_SAVE = "incremental-save";
+    public static final String INCREMENTAL_SAVE_HELP = "Only rewrite changed objects when saving to the same image file again (compacts once a quarter of it is free)";
+    public static final String INLINE_CACHE_SIZE = "inline-cache-size";
+    public static final String INLINE_CACHE_SIZE_HELP = "Number of receiver classes and methods a send site caches before it becomes megamorphic";
     public static final String INTERCEPT_MESSAGES = "intercept-messages";
     public static final String INTERCEPT_MESSAGES_HELP = "Comma-separated list of messages to intercept with an instrument";
     public static final String INTERRUPTS = "disable-interrupts";
     public static final String INTERRUPTS_FLAG = "--" + INTERRUPTS;
     public static final String INTERRUPTS_HELP = "Disable interrupt handler";
+    public static final String NON_LOCAL_RETURN_STATISTICS = "non-local-return-statistics";
+    public static final String NON_LOCAL_RETURN_STATISTICS_HELP = "Count non-local returns and how many were returned by their home frame and print them on context exit";
+    public static final String PRIMITIVE_FAILURE_LIMIT = "primitive-failure-limit";
+    public static final String PRIMITIVE_FAILURE_LIMIT_HELP = "Failures per second after which a send site stops running a primitive eagerly (-1 to disable)";
+    public static final String PRIMITIVE_FAILURE_RATIO = "primitive-failure-ratio";
+    public static final String PRIMITIVE_FAILURE_RATIO_HELP = "Failure rate above which a send site stops running a primitive eagerly (0 to disable)";
+    public static final String PRIMITIVE_STATISTICS = "primitive-statistics";
+    public static final String PRIMITIVE_STATISTICS_HELP = "Count calls, failures, and failure reasons per primitive and print them on context exit";
     public static final String PRINT_IMAGE_PATH_FLAG = "--print-image-path";
     public static final String PRINT_IMAGE_PATH_HELP = "Print the path to default Squeak/Smalltalk image";
     public static final String QUIET = "quiet";
     public static final String QUIET_FLAG = "--" + QUIET;
     public static final String QUIET_HELP = "Operate quietly";
+    public static final String REMOTE_DISPLAY = "remote-display";
+    public static final String REMOTE_DISPLAY_HELP = "Serve the display via a local socket on the given port in headless mode (0 to disable)";
     public static final String RESOURCE_SUMMARY = "resource-summary";
     public static final String RESOURCE_SUMMARY_FLAG = "--" + RESOURCE_SUMMARY;
     public static final String RESOURCE_SUMMARY_HELP = "Print resource summary on context exit";
+    public static final String SEND_SITE_STATISTICS = "send-site-statistics";
+    public static final String SEND_SITE_STATISTICS_HELP = "Record inline cache states and receiver classes of send sites and print polymorphic ones on context exit";
     public static final String SIGNAL_INPUT_SEMAPHORE = "signal-input-semaphore";
     public static final String SIGNAL_INPUT_SEMAPHORE_HELP = "Signal the input semaphore";
     public static final String STARTUP = "disable-startup";
     public static final String STARTUP_HELP = "Disable image startup routine in headless mode";
+    public static final String SUPERINSTRUCTIONS = "superinstructions";
+    public static final String SUPERINSTRUCTIONS_HELP = "Fuse straight-line bytecodes with their successor to reduce interpreter dispatch";
     public static final String TESTING = "testing";
     public static final String TESTING_HELP = "For internal testing purposes only";
     public static final String TRANSCRIPT_FORWARDING_FLAG = "--enable-transcript-forwarding";
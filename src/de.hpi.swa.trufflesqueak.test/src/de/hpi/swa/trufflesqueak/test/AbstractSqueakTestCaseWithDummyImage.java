@@ -15,12 +15,17 @@ import de.hpi.swa.trufflesqueak.model.ArrayObject;
 import de.hpi.swa.trufflesqueak.model.ClassObject;
 import de.hpi.swa.trufflesqueak.model.NativeObject;
 import de.hpi.swa.trufflesqueak.model.PointersObject;
+import de.hpi.swa.trufflesqueak.model.VariablePointersObject;
 import de.hpi.swa.trufflesqueak.model.layout.ObjectLayouts.CLASS_DESCRIPTION;
+import de.hpi.swa.trufflesqueak.model.layout.ObjectLayouts.HASHED_COLLECTION;
 import de.hpi.swa.trufflesqueak.model.layout.ObjectLayouts.METACLASS;
+import de.hpi.swa.trufflesqueak.model.layout.ObjectLayouts.METHOD_DICT;
 import de.hpi.swa.trufflesqueak.model.layout.ObjectLayouts.SPECIAL_OBJECT;
+import de.hpi.swa.trufflesqueak.nodes.accessing.AbstractPointersObjectNodes.AbstractPointersObjectWriteNode;
 import de.hpi.swa.trufflesqueak.util.MiscUtils;
 
 public abstract class AbstractSqueakTestCaseWithDummyImage extends AbstractSqueakTestCase {
+    private static ClassObject methodDictionaryClass;
 
     @BeforeClass
     public static void setUpSqueakImageContext() {
@@ -48,6 +53,12 @@ public abstract class AbstractSqueakTestCaseWithDummyImage extends AbstractSquea
                         null, null, 1L, null, null, null, asByteSymbol("Binding"), null, null, null, null});
         final ClassObject classBindingClass = setupMeta(new ClassObject(image), new Object[]{
                         bindingClass, null, 2L, null, null, null, asByteSymbol("ClassBinding"), null, null, null, null});
+        image.setFractionClass(setupMeta(new ClassObject(image), new Object[]{
+                        null, null, 2L, null, null, null, asByteSymbol("Fraction"), null, null, null, null}));
+        image.setScaledDecimalClass(setupMeta(new ClassObject(image), new Object[]{
+                        null, null, 2L, null, null, null, asByteSymbol("ScaledDecimal"), null, null, null, null}));
+        methodDictionaryClass = setupMeta(new ClassObject(image), new Object[]{
+                        null, null, 3L << 16 | 2L, null, null, null, asByteSymbol("MethodDictionary"), null, null, null, null});
         nilClassBinding = new PointersObject(image, classBindingClass, null);
         nilClassBinding.fillin(SqueakImageChunk.createDummyChunk(image, new Object[]{asByteSymbol("UndefinedObject"), image.nilClass}));
 
@@ -55,7 +66,7 @@ public abstract class AbstractSqueakTestCaseWithDummyImage extends AbstractSquea
         context.enter();
     }
 
-    private static ClassObject setupMeta(final ClassObject aClass, final Object[] pointers) {
+    protected static ClassObject setupMeta(final ClassObject aClass, final Object[] pointers) {
         final SqueakImageChunk fakeChunk = SqueakImageChunk.createDummyChunk(image, pointers);
         aClass.fillin(fakeChunk);
         final ClassObject aClassClass = new ClassObject(image, image.metaClass, METACLASS.INST_SIZE);
@@ -65,6 +76,20 @@ public abstract class AbstractSqueakTestCaseWithDummyImage extends AbstractSquea
         return aClass;
     }
 
+    /* Replaces the method dictionary of aClass with one holding the given selector/method pairs. */
+    protected static void installMethods(final ClassObject aClass, final Object... selectorsAndMethods) {
+        final int size = selectorsAndMethods.length / 2;
+        final VariablePointersObject methodDict = new VariablePointersObject(image, methodDictionaryClass, methodDictionaryClass.getLayout(), size);
+        final Object[] methods = new Object[size];
+        for (int i = 0; i < size; i++) {
+            methodDict.putIntoVariablePart(i, selectorsAndMethods[i * 2]);
+            methods[i] = selectorsAndMethods[i * 2 + 1];
+        }
+        AbstractPointersObjectWriteNode.executeUncached(methodDict, HASHED_COLLECTION.TALLY, (long) size);
+        AbstractPointersObjectWriteNode.executeUncached(methodDict, METHOD_DICT.VALUES, image.asArrayOfObjects(methods));
+        aClass.setMethodDict(methodDict);
+    }
+
     private static ArrayObject createDummySpecialSelectors() {
         final ArrayObject dummySpecialSelectors = image.newEmptyArray();
         final Object[] dummyStorage = new Object[64];
@@ -136,7 +161,7 @@ public abstract class AbstractSqueakTestCaseWithDummyImage extends AbstractSquea
         return dummySpecialSelectors;
     }
 
-    private static NativeObject asByteSymbol(final String value) {
+    protected static NativeObject asByteSymbol(final String value) {
         return NativeObject.newNativeBytes(image, image.getByteSymbolClass(), MiscUtils.stringToBytes(value));
     }
 
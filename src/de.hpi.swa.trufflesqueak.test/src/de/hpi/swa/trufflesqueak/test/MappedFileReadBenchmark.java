@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2017-2024 Software Architecture Group, Hasso Plattner Institute
+ * Copyright (c) 2021-2024 Oracle and/or its affiliates
+ *
+ * Licensed under the MIT License.
+ */
+package de.hpi.swa.trufflesqueak.test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import de.hpi.swa.trufflesqueak.nodes.plugins.SqueakMappedFile;
+
+/**
+ * Compares small random-access reads through a SeekableByteChannel (what primitiveFileSetPosition
+ * followed by primitiveFileRead does) with reads from a {@link SqueakMappedFile} (what
+ * primitiveMappedFileReadAt does).
+ *
+ * <pre>
+ * java ... de.hpi.swa.trufflesqueak.test.MappedFileReadBenchmark [fileSizeMB [reads [readSize]]]
+ * </pre>
+ */
+public final class MappedFileReadBenchmark {
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+
+    private MappedFileReadBenchmark() {
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final long fileSize = (args.length > 0 ? Long.parseLong(args[0]) : 256L) * 1024 * 1024;
+        final int reads = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        final int readSize = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        final Path path = Files.createTempFile("trufflesqueak-mapped", ".bin");
+        try {
+            writeRandomFile(path, fileSize);
+            final long[] positions = new long[reads];
+            final Random random = new Random(42);
+            for (int i = 0; i < reads; i++) {
+                positions[i] = (long) (random.nextDouble() * (fileSize - readSize));
+            }
+            final byte[] target = new byte[readSize];
+            try (SeekableByteChannel channel = Files.newByteChannel(path, StandardOpenOption.READ);
+                            SqueakMappedFile mappedFile = SqueakMappedFile.open(FileChannel.open(path, StandardOpenOption.READ), false)) {
+                for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+                    long start = System.nanoTime();
+                    final long channelSum = readViaChannel(channel, positions, target);
+                    final long channelNanos = System.nanoTime() - start;
+                    start = System.nanoTime();
+                    final long mappedSum = readViaMapping(mappedFile, positions, target);
+                    final long mappedNanos = System.nanoTime() - start;
+                    if (channelSum != mappedSum) {
+                        throw new AssertionError("Mapped reads differ from channel reads");
+                    }
+                    if (round >= WARMUP_ROUNDS) {
+                        System.out.printf("%,d reads of %d bytes: channel %,d ns/read, mapped %,d ns/read (%.1fx)%n", reads, readSize,
+                                        channelNanos / reads, mappedNanos / reads, (double) channelNanos / mappedNanos);
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private static void writeRandomFile(final Path path, final long fileSize) throws IOException {
+        final byte[] chunk = new byte[1 << 20];
+        final Random random = new Random(7);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            for (long written = 0; written < fileSize; written += chunk.length) {
+                random.nextBytes(chunk);
+                channel.write(ByteBuffer.wrap(chunk, 0, (int) Math.min(chunk.length, fileSize - written)));
+            }
+        }
+    }
+
+    private static long readViaChannel(final SeekableByteChannel channel, final long[] positions, final byte[] target) throws IOException {
+        long sum = 0;
+        for (final long position : positions) {
+            channel.position(position);
+            channel.read(ByteBuffer.wrap(target));
+            sum += target[0] + target[target.length - 1];
+        }
+        return sum;
+    }
+
+    private static long readViaMapping(final SqueakMappedFile mappedFile, final long[] positions, final byte[] target) {
+        long sum = 0;
+        for (final long position : positions) {
+            mappedFile.read(position, target, 0, target.length);
+            sum += target[0] + target[target.length - 1];
+        }
+        return sum;
+    }
+}
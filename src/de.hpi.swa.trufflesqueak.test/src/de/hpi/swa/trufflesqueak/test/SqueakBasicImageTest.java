@@ -7,6 +7,8 @@
 package de.hpi.swa.trufflesqueak.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -164,4 +166,97 @@ public final class SqueakBasicImageTest extends AbstractSqueakTestCaseWithImage
             }
         }
     }
+
+    @Test
+    public void test16IncrementalSave() {
+        final String newImageName = "test16IncrementalSave.image";
+        final String newChangesName = "test16IncrementalSave.changes";
+        final TruffleFile newImageFile = image.env.getInternalTruffleFile(image.getImagePath()).getParent().resolve(newImageName);
+        final TruffleFile newChangesFile = image.env.getInternalTruffleFile(image.getImagePath()).getParent().resolve(newChangesName);
+        final Context saveContext = Context.newBuilder(SqueakLanguageConfig.ID).allowAllAccess(true).option(SqueakLanguageConfig.ID + "." + SqueakLanguageOptions.IMAGE_PATH,
+                        image.getImagePath()).option(SqueakLanguageConfig.ID + "." + SqueakLanguageOptions.HEADLESS, "true").option(
+                                        SqueakLanguageConfig.ID + "." + SqueakLanguageOptions.INCREMENTAL_SAVE, "true").build();
+        final Context newContext = Context.newBuilder(SqueakLanguageConfig.ID).allowAllAccess(true).option(SqueakLanguageConfig.ID + "." + SqueakLanguageOptions.IMAGE_PATH,
+                        newImageFile.getPath()).option(SqueakLanguageConfig.ID + "." + SqueakLanguageOptions.HEADLESS, "true").build();
+        try {
+            /*
+             * Full save. The arrays are traced one after the other, so their chunks are adjacent.
+             */
+            saveContext.eval(SqueakLanguageConfig.ID, String.format(
+                            "Smalltalk at: #IncrementalSaveHolder put: (Array with: (Array new: 127) with: (Array new: 127) with: (Array new: 3) with: (Array new: 4)). Smalltalk saveAs: '%s'",
+                            newImageName));
+            assertTrue(newImageFile.exists());
+            /*
+             * Incremental save: the two dead arrays free 256 words, which need a split free chunk,
+             * and the resized array moves to the end of the image.
+             */
+            saveContext.eval(SqueakLanguageConfig.ID,
+                            "| holder | holder := Smalltalk at: #IncrementalSaveHolder. holder at: 1 put: nil; at: 2 put: nil. (holder at: 4) become: (Array new: 5). Smalltalk snapshot: true andQuit: false");
+            /* Incremental save: the third array dies, so its chunk merges with the free chunk of the previous save. */
+            saveContext.eval(SqueakLanguageConfig.ID, "(Smalltalk at: #IncrementalSaveHolder) at: 3 put: nil. Smalltalk snapshot: true andQuit: false");
+            assertFalse(newImageFile.resolveSibling(newImageName + ".saving").exists());
+            /* Open the saved image and run code in it. */
+            newContext.enter();
+            try {
+                final Value sizes = newContext.eval(SqueakLanguageConfig.ID, "((Smalltalk at: #IncrementalSaveHolder) collect: [:each | each ifNil: [0] ifNotNil: [each size]]) = #(0 0 0 5)");
+                assertTrue(sizes.asBoolean());
+                final Value result = newContext.eval(SqueakLanguageConfig.ID, "1 + 2 * 3");
+                assertTrue(result.fitsInInt());
+                assertEquals(9, result.asInt());
+            } finally {
+                newContext.leave();
+            }
+        } finally { /* Cleanup */
+            newContext.close();
+            saveContext.close();
+            try {
+                newImageFile.delete();
+                newChangesFile.delete();
+            } catch (final IOException e) {
+                fail(e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void test17ZipRangeAgainstImageStreams() {
+        evaluate("""
+                        UndefinedObject compileSilently: 'zipInflate: c from: s to: e format: f <primitive: ''primitiveInflateRange'' module: ''ZipPlugin''> ^ nil'.
+                        UndefinedObject compileSilently: 'zipDeflate: c from: s to: e format: f level: l <primitive: ''primitiveDeflateRange'' module: ''ZipPlugin''> ^ nil'""");
+        try {
+            final String data = "| data gzip zlib | data := ((1 to: 5000) collect: [:i | i \\\\ 251 < 200 ifTrue: [97 + (i \\\\ 7)] ifFalse: [i \\\\ 256]]) asByteArray. ";
+            /* Deflated by the primitive, inflated by the streams of the image. */
+            assertEquals(BooleanObject.TRUE, evaluate(data + "(GZipReadStream on: (nil zipDeflate: data from: 1 to: data size format: 2 level: 9)) upToEnd asByteArray = data"));
+            assertEquals(BooleanObject.TRUE, evaluate(data + "(ZLibReadStream on: (nil zipDeflate: data from: 1 to: data size format: 1 level: 6)) upToEnd asByteArray = data"));
+            assertEquals(BooleanObject.TRUE, evaluate(data + "(FastInflateStream on: (nil zipDeflate: data from: 1 to: data size format: 0 level: 1)) upToEnd asByteArray = data"));
+            /* Deflated by the streams of the image, inflated by the primitive. */
+            assertEquals(BooleanObject.TRUE, evaluate(data + """
+                            gzip := (GZipWriteStream on: (ByteArray new: 100)) nextPutAll: data; close; encodedStream.
+                            zlib := (ZLibWriteStream on: (ByteArray new: 100)) nextPutAll: data; close; encodedStream.
+                            (nil zipInflate: gzip contents from: 1 to: gzip contents size format: 2) = data
+                                and: [(nil zipInflate: zlib contents from: 1 to: zlib contents size format: 1) = data]"""));
+        } finally {
+            evaluate("UndefinedObject removeSelectorSilently: #zipInflate:from:to:format:; removeSelectorSilently: #zipDeflate:from:to:format:level:");
+        }
+    }
+
+    @Test
+    public void test18SymbolTableAnswersInternedSymbols() {
+        /* A ByteSymbol that is not in the symbol table of the image must never be answered. */
+        final Object interned = evaluate("Smalltalk at: #Test18Interned put: (Symbol intern: 'test18SymbolTable')");
+        final Object impostor = evaluate("Smalltalk at: #Test18Impostor put: ('test18SymbolTable' copy primitiveChangeClassTo: #a; yourself)");
+        try {
+            assertNotSame(interned, impostor);
+            context.enter();
+            try {
+                image.symbolTable.reset();
+                assertSame(interned, image.asByteSymbol("test18SymbolTable"));
+                assertSame(evaluate("Symbol intern: 'asSymbol'"), image.asByteSymbol("asSymbol"));
+            } finally {
+                context.leave();
+            }
+        } finally {
+            evaluate("Smalltalk removeKey: #Test18Interned; removeKey: #Test18Impostor");
+        }
+    }
 }
@@ -7,6 +7,8 @@
 package de.hpi.swa.trufflesqueak.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -15,6 +17,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import org.junit.BeforeClass;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -29,6 +32,7 @@ import de.hpi.swa.trufflesqueak.model.AbstractSqueakObject;
 import de.hpi.swa.trufflesqueak.model.ArrayObject;
 import de.hpi.swa.trufflesqueak.model.BlockClosureObject;
 import de.hpi.swa.trufflesqueak.model.BooleanObject;
+import de.hpi.swa.trufflesqueak.model.ClassObject;
 import de.hpi.swa.trufflesqueak.model.CompiledCodeObject;
 import de.hpi.swa.trufflesqueak.model.NativeObject;
 import de.hpi.swa.trufflesqueak.model.NilObject;
@@ -38,11 +42,19 @@ import de.hpi.swa.trufflesqueak.nodes.ExecuteTopLevelContextNode;
 import de.hpi.swa.trufflesqueak.nodes.accessing.SqueakObjectAt0Node;
 import de.hpi.swa.trufflesqueak.nodes.accessing.SqueakObjectSizeNode;
 import de.hpi.swa.trufflesqueak.util.ArrayUtils;
+import de.hpi.swa.trufflesqueak.util.NonLocalReturnStatistics;
 
 @SuppressWarnings("static-method")
 public final class SqueakBytecodeTest extends AbstractSqueakTestCaseWithDummyImage {
     @Rule public ExpectedException exceptions = ExpectedException.none();
 
+    private static NativeObject ensureSelector;
+
+    @BeforeClass
+    public static void setUpEnsureSelector() {
+        ensureSelector = asByteSymbol("ensure:");
+    }
+
     @Test
     public void testPushReceiverVariables() {
         final Object[] expectedResults = getTestObjects(16);
@@ -645,6 +657,105 @@ public final class SqueakBytecodeTest extends AbstractSqueakTestCaseWithDummyIma
                         114, 172, 0x14, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0x75, 0x7C));
     }
 
+    @Test
+    public void testJumpIntoSuperinstruction() {
+        // 17 <77> pushConstant: 2
+        // 18 <71/72> pushConstant: true/false
+        // 19 <98> jumpFalse: 21
+        // 20 <76> pushConstant: 1
+        // 21 <68> popIntoTemp: 0
+        // 22 <10> pushTemp: 0
+        // 23 <7C> returnTop
+        final Object[] literals = {2097154L, NilObject.SINGLETON, NilObject.SINGLETON}; // numTemp=8
+        final AbstractSqueakObject rcvr = image.specialObjectsArray;
+        for (final int[] bytesAndResult : new int[][]{{113, 1}, {114, 2}}) {
+            final CompiledCodeObject method = makeMethod(literals, 0x77, bytesAndResult[0], 0x98, 0x76, 0x68, 0x10, 0x7C);
+            try {
+                assertSame((long) bytesAndResult[1], createContext(method, rcvr).execute(createTestFrame(method)));
+            } catch (NonLocalReturn | NonVirtualReturn | ProcessSwitch e) {
+                fail("broken test");
+            }
+        }
+    }
+
+    @Test
+    public void testRemoteTempsAreNotFused() {
+        final Object[] literals = {2097154L, NilObject.SINGLETON, NilObject.SINGLETON}; // numTemp=8
+        // 17 <77> pushConstant: 2
+        // 18 <7C> returnTop
+        final CompiledCodeObject pushMethod = makeMethod(literals, 0x77, 0x7C);
+        assertNotNull(pushMethod.superinstructionAt(0));
+        // 17 <8C 01 00> pushTemp: 1 inVectorAt: 0
+        // 20 <7C> returnTop
+        final CompiledCodeObject remoteTempMethod = makeMethod(literals, 0x8C, 1, 0, 0x7C);
+        assertNull(remoteTempMethod.superinstructionAt(0));
+    }
+
+    @Test
+    public void testNonLocalReturnToSendingHomeContext() {
+        // home [^42] value. ^0
+        final CompiledCodeObject homeMethod = makeMethod(new Object[]{makeHeader(0, 0, 3, false, false), 42L},
+                        0x8F, 0x00, 0x00, 0x02, 0x20, 0x7C, 0xC9, 0x87, 0x75, 0x7C);
+        final ArrayObject rcvr = image.asArrayOfObjects(BooleanObject.FALSE);
+        final NonLocalReturnStatistics statistics = new NonLocalReturnStatistics();
+        assertEquals(42L, sendHome(homeMethod, rcvr, statistics));
+        assertEquals(1, statistics.getNonLocalReturns());
+        assertEquals(1, statistics.getDirectReturns());
+    }
+
+    @Test
+    public void testNonLocalReturnThroughEnsure() {
+        // home [^42] ensure: [flag := true]. ^0
+        final CompiledCodeObject homeMethod = makeMethod(new Object[]{makeHeader(0, 0, 4, false, false), 42L, ensureSelector},
+                        0x8F, 0x00, 0x00, 0x02, 0x20, 0x7C, 0x8F, 0x00, 0x00, 0x04, 0x71, 0x60, 0x73, 0x7D, 0xE1, 0x87, 0x75, 0x7C);
+        final ArrayObject rcvr = image.asArrayOfObjects(BooleanObject.FALSE);
+        final NonLocalReturnStatistics statistics = new NonLocalReturnStatistics();
+        assertEquals(42L, sendHome(homeMethod, rcvr, statistics));
+        assertSame(BooleanObject.TRUE, rcvr.getObject(0));
+        assertEquals(1, statistics.getNonLocalReturns());
+        assertEquals(0, statistics.getDirectReturns());
+    }
+
+    /*
+     * Installs homeMethod as #home in a class of the receiver's own and sends it from another
+     * method, so that there is a sender the home context can return to.
+     */
+    private static Object sendHome(final CompiledCodeObject homeMethod, final ArrayObject rcvr, final NonLocalReturnStatistics statistics) {
+        installBlockClosureMethods();
+        final NativeObject homeSelector = asByteSymbol("home");
+        final ClassObject rcvrClass = setupMeta(new ClassObject(image), new Object[]{
+                        null, null, 0L, null, null, null, asByteSymbol("NonLocalReturnTest"), null, null, null, null});
+        installMethods(rcvrClass, homeSelector, homeMethod);
+        rcvr.setSqueakClass(rcvrClass);
+        // caller ^self home
+        final CompiledCodeObject caller = makeMethod(new Object[]{makeHeader(0, 0, 3, false, false), homeSelector}, 0x70, 0xD0, 0x7C);
+        final NonLocalReturnStatistics previousStatistics = image.nonLocalReturnStatistics;
+        image.nonLocalReturnStatistics = statistics;
+        try {
+            return runMethod(caller, rcvr);
+        } finally {
+            image.nonLocalReturnStatistics = previousStatistics;
+        }
+    }
+
+    private static void installBlockClosureMethods() {
+        final NativeObject valueNoContextSwitchSelector = asByteSymbol("valueNoContextSwitch");
+        // value <primitive: 201>
+        final CompiledCodeObject valueMethod = makeMethod(new Object[]{makeHeader(0, 0, 2, true, false)}, 139, 201, 0, 0x78);
+        // valueNoContextSwitch <primitive: 221>
+        final CompiledCodeObject valueNoContextSwitchMethod = makeMethod(new Object[]{makeHeader(0, 0, 2, true, false)}, 139, 221, 0, 0x78);
+        // ensure: aBlock
+        // <primitive: 198>
+        // | complete returnValue |
+        // returnValue := self valueNoContextSwitch.
+        // complete ifNil: [complete := true. aBlock value].
+        // ^returnValue
+        final CompiledCodeObject ensureMethod = makeMethod(new Object[]{makeHeader(1, 3, 3, true, false), valueNoContextSwitchSelector},
+                        139, 198, 0, 0x70, 0xD0, 0x6A, 0x11, 0x73, 0xC6, 0x9C, 0x71, 0x69, 0x10, 0xC9, 0x87, 0x12, 0x7C);
+        installMethods(image.blockClosureClass, image.getSpecialSelector(25), valueMethod, valueNoContextSwitchSelector, valueNoContextSwitchMethod,
+                        ensureSelector, ensureMethod);
+    }
+
     // TODO: testSendSelector()
     // TODO: testSend()
 
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2017-2024 Software Architecture Group, Hasso Plattner Institute
+ * Copyright (c) 2021-2024 Oracle and/or its affiliates
+ *
+ * Licensed under the MIT License.
+ */
+package de.hpi.swa.trufflesqueak.test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.reflect.Method;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.junit.Test;
+
+import de.hpi.swa.trufflesqueak.image.SqueakImageContext;
+import de.hpi.swa.trufflesqueak.shared.SqueakLanguageConfig;
+import de.hpi.swa.trufflesqueak.shared.SqueakLanguageOptions;
+
+/**
+ * Pre-initializes a context on the JVM the way a native image build does, so that the runtime
+ * context is patched instead of created.
+ */
+public final class SqueakContextPreinitializationTest {
+    private static final String PREINITIALIZE_CONTEXTS = "polyglot.image-build-time.PreinitializeContexts";
+    private static final String OPTION_PREFIX = SqueakLanguageConfig.ID + ".";
+
+    @Test
+    public void testRuntimeOptionsApplyAfterPatching() throws ReflectiveOperationException {
+        final String imagePath = AbstractSqueakTestCaseWithImage.getPathToTestImage();
+        final Method preInitializeEngine = getEngineImplHolderMethod("preInitializeEngine");
+        final Method resetPreInitializedEngine = getEngineImplHolderMethod("resetPreInitializedEngine");
+        System.setProperty(PREINITIALIZE_CONTEXTS, SqueakLanguageConfig.ID);
+        System.setProperty("polyglot." + OPTION_PREFIX + SqueakLanguageOptions.IMAGE_PATH, imagePath);
+        System.setProperty("polyglot." + OPTION_PREFIX + SqueakLanguageOptions.HEADLESS, "true");
+        try {
+            preInitializeEngine.invoke(null);
+            try (Context context = Context.newBuilder().allowAllAccess(true) //
+                            .option(OPTION_PREFIX + SqueakLanguageOptions.IMAGE_PATH, imagePath) //
+                            .option(OPTION_PREFIX + SqueakLanguageOptions.HEADLESS, "true") //
+                            .option(OPTION_PREFIX + SqueakLanguageOptions.QUIET, "true") //
+                            .option(OPTION_PREFIX + SqueakLanguageOptions.INTERRUPTS, "true").build()) {
+                context.initialize(SqueakLanguageConfig.ID);
+                context.enter();
+                try {
+                    final SqueakImageContext image = SqueakImageContext.getSlow();
+                    assertTrue("Context was not patched", image.isPreinitialized());
+                    assertTrue(image.options.isQuiet());
+                    assertTrue(image.options.disableInterruptHandler());
+                    assertFalse(image.interrupt.isEnabled());
+                } finally {
+                    context.leave();
+                }
+            }
+        } finally {
+            resetPreInitializedEngine.invoke(null);
+            System.clearProperty(PREINITIALIZE_CONTEXTS);
+            System.clearProperty("polyglot." + OPTION_PREFIX + SqueakLanguageOptions.IMAGE_PATH);
+            System.clearProperty("polyglot." + OPTION_PREFIX + SqueakLanguageOptions.HEADLESS);
+        }
+    }
+
+    private static Method getEngineImplHolderMethod(final String methodName) throws ReflectiveOperationException {
+        final Class<?> holderClass = Class.forName(Engine.class.getName() + "$ImplHolder", true, Engine.class.getClassLoader());
+        final Method method = holderClass.getDeclaredMethod(methodName);
+        assumeTrue("Polyglot engine internals are not accessible", method.trySetAccessible());
+        return method;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2017-2024 Software Architecture Group, Hasso Plattner Institute
+ * Copyright (c) 2021-2024 Oracle and/or its affiliates
+ *
+ * Licensed under the MIT License.
+ */
+package de.hpi.swa.trufflesqueak.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Source;
+import org.junit.Test;
+
+import de.hpi.swa.trufflesqueak.launcher.SqueakEvalDaemon;
+import de.hpi.swa.trufflesqueak.shared.SqueakLanguageConfig;
+import de.hpi.swa.trufflesqueak.shared.SqueakLanguageOptions;
+
+public final class SqueakEvalDaemonTest {
+    private static final int TIMEOUT_SECONDS = 90;
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final Path directory = Files.createTempDirectory("trufflesqueak-daemon-test");
+        final Path socketPath = directory.resolve("daemon.socket");
+        final SqueakEvalDaemon daemon = new SqueakEvalDaemon(socketPath);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (Context context = Context.newBuilder().allowAllAccess(true).out(daemon.getOut()).err(daemon.getErr()) //
+                        .option(SqueakLanguageConfig.ID + "." + SqueakLanguageOptions.IMAGE_PATH, AbstractSqueakTestCaseWithImage.getPathToTestImage()) //
+                        .option(SqueakLanguageConfig.ID + "." + SqueakLanguageOptions.HEADLESS, "true") //
+                        .option(SqueakLanguageConfig.ID + "." + SqueakLanguageOptions.QUIET, "true").build()) {
+            final Future<Integer> exitStatus = executor.submit(() -> {
+                context.eval(Source.newBuilder(SqueakLanguageConfig.ID, "nil", "<daemon startup>").internal(true).cached(false).mimeType(SqueakLanguageConfig.ST_MIME_TYPE).build());
+                return daemon.serve(context, true);
+            });
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+            while (!Files.exists(socketPath)) {
+                assertFalse("Daemon stopped before listening", exitStatus.isDone());
+                assertTrue("Daemon did not start listening", System.nanoTime() < deadline);
+                Thread.sleep(100);
+            }
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(0, runClient(socketPath, "arguments first , arguments last", out, new String[]{"foo", "it's"}));
+            assertEquals("[trufflesqueak] Result: fooit's", out.toString(StandardCharsets.UTF_8).strip());
+
+            /* An unhandled error fails its request only. */
+            final ByteArrayOutputStream err = new ByteArrayOutputStream();
+            assertEquals(-1, runClient(socketPath, "1 / 0", err, new String[0]));
+            assertTrue(err.size() > 0);
+
+            /* A request that never finishes is cancelled once its client goes away. */
+            try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+                channel.connect(UnixDomainSocketAddress.of(socketPath));
+                final DataOutputStream output = new DataOutputStream(Channels.newOutputStream(channel));
+                final byte[] code = "[ true ] whileTrue".getBytes(StandardCharsets.UTF_8);
+                output.writeInt(1);
+                output.writeInt(code.length);
+                output.write(code);
+                output.flush();
+                Thread.sleep(500);
+            }
+
+            out.reset();
+            assertEquals(0, runClient(socketPath, "3 + 4", out, new String[0]));
+            assertEquals("[trufflesqueak] Result: 7", out.toString(StandardCharsets.UTF_8).strip());
+
+            assertEquals(3, runClient(socketPath, "Smalltalk quitPrimitive: 3", out, new String[0]));
+            assertEquals(3, (int) exitStatus.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            assertFalse(Files.exists(socketPath));
+        } finally {
+            executor.shutdownNow();
+            Files.deleteIfExists(socketPath);
+            Files.delete(directory);
+        }
+    }
+
+    private static int runClient(final Path socketPath, final String sourceCode, final ByteArrayOutputStream output, final String[] arguments) throws IOException {
+        final PrintStream stream = new PrintStream(output, true, StandardCharsets.UTF_8);
+        return SqueakEvalDaemon.runClient(socketPath, sourceCode, arguments, false, stream, stream);
+    }
+}
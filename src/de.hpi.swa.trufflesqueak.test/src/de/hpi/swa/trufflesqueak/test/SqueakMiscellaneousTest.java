@@ -6,19 +6,76 @@
  */
 package de.hpi.swa.trufflesqueak.test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Inflater;
 
 import org.junit.Test;
 
+import com.oracle.truffle.api.interop.InteropLibrary;
+import com.oracle.truffle.api.interop.InvalidArrayIndexException;
+import com.oracle.truffle.api.interop.InvalidBufferOffsetException;
+import com.oracle.truffle.api.interop.UnsupportedMessageException;
+import com.oracle.truffle.api.interop.UnsupportedTypeException;
+import com.oracle.truffle.api.library.Message;
+
 import de.hpi.swa.trufflesqueak.image.SqueakImageChunk;
 import de.hpi.swa.trufflesqueak.image.SqueakImageConstants.ObjectHeader;
+import de.hpi.swa.trufflesqueak.image.SqueakImageContext;
 import de.hpi.swa.trufflesqueak.image.SqueakImageReader;
+import de.hpi.swa.trufflesqueak.interop.DirectInteropSendNode;
+import de.hpi.swa.trufflesqueak.interop.DirectInteropSendNodeGen;
+import de.hpi.swa.trufflesqueak.io.SqueakRemoteDisplay;
+import de.hpi.swa.trufflesqueak.model.ArrayObject;
+import de.hpi.swa.trufflesqueak.model.ClassObject;
 import de.hpi.swa.trufflesqueak.model.CompiledCodeObject;
 import de.hpi.swa.trufflesqueak.model.FloatObject;
+import de.hpi.swa.trufflesqueak.model.NativeObject;
 import de.hpi.swa.trufflesqueak.model.NilObject;
+import de.hpi.swa.trufflesqueak.model.PointersObject;
 import de.hpi.swa.trufflesqueak.model.layout.ObjectLayouts.CONTEXT;
+import de.hpi.swa.trufflesqueak.nodes.accessing.AbstractPointersObjectNodes.AbstractPointersObjectWriteNode;
+import de.hpi.swa.trufflesqueak.nodes.accessing.SqueakObjectNewNode;
 import de.hpi.swa.trufflesqueak.nodes.bytecodes.SqueakBytecodeV3PlusClosuresDecoder;
+import de.hpi.swa.trufflesqueak.nodes.dispatch.LookupSelectorNode;
+import de.hpi.swa.trufflesqueak.nodes.dispatch.SelectorDispatchTable;
+import de.hpi.swa.trufflesqueak.nodes.plugins.SqueakSubprocess;
+import de.hpi.swa.trufflesqueak.nodes.plugins.network.Resolver;
+import de.hpi.swa.trufflesqueak.nodes.plugins.network.Resolver.HostsFileNameService;
+import de.hpi.swa.trufflesqueak.nodes.plugins.network.Resolver.NameService;
+import de.hpi.swa.trufflesqueak.util.HeapCensus;
+import de.hpi.swa.trufflesqueak.util.OS;
+import de.hpi.swa.trufflesqueak.util.ObjectGraphUtils;
+import de.hpi.swa.trufflesqueak.util.SendSiteStatistics;
+import de.hpi.swa.trufflesqueak.util.SendSiteStatistics.Kind;
+import de.hpi.swa.trufflesqueak.util.SendSiteStatistics.Site;
+import de.hpi.swa.trufflesqueak.util.StringUtils;
 import de.hpi.swa.trufflesqueak.util.UnsafeUtils;
 
 @SuppressWarnings("static-method")
@@ -175,6 +232,410 @@ public final class SqueakMiscellaneousTest extends AbstractSqueakTestCaseWithDum
         assertTrue(nan instanceof final FloatObject o && o.isNaN());
     }
 
+    @Test
+    public void testEphemeronsFireOnlyForOtherwiseUnreachableKeys() {
+        final ClassObject ephemeronClass = new ClassObject(image);
+        ephemeronClass.fillin(SqueakImageChunk.createDummyChunk(image, new Object[]{
+                        image.nilClass.getSuperclass(), null, 5L << 16 | 2 /* ephemeron format, key and value */, null, null}));
+        final ArrayObject unreachableKey = image.newEmptyArray();
+        final ArrayObject reachableKey = image.newEmptyArray();
+        final PointersObject firing = (PointersObject) SqueakObjectNewNode.executeUncached(image, ephemeronClass);
+        final PointersObject notFiring = (PointersObject) SqueakObjectNewNode.executeUncached(image, ephemeronClass);
+        /* The value of an ephemeron refers back to its key, which must not keep the key alive. */
+        AbstractPointersObjectWriteNode.executeUncached(firing, 0, unreachableKey);
+        AbstractPointersObjectWriteNode.executeUncached(firing, 1, image.asArrayOfObjects(unreachableKey));
+        AbstractPointersObjectWriteNode.executeUncached(notFiring, 0, reachableKey);
+        final Object[] specialObjects = image.specialObjectsArray.getObjectStorage();
+        final int rootIndex = specialObjects.length - 1;
+        specialObjects[rootIndex] = image.asArrayOfObjects(firing, notFiring, reachableKey);
+        try {
+            final List<PointersObject> mourners = new ArrayList<>();
+            assertEquals(1, ObjectGraphUtils.fireEphemerons(image, mourners));
+            assertEquals(List.of(firing), mourners);
+            assertTrue(firing.isFiredEphemeron());
+            assertFalse(notFiring.isFiredEphemeron());
+            assertEquals("Fired ephemerons do not fire again", 0, ObjectGraphUtils.fireEphemerons(image, mourners));
+        } finally {
+            specialObjects[rootIndex] = null;
+        }
+    }
+
+    @Test
+    public void testHeapCensusCountsReachableObjects() {
+        final Object[] specialObjects = image.specialObjectsArray.getObjectStorage();
+        final int rootIndex = specialObjects.length - 1;
+        final HeapCensus before = ObjectGraphUtils.census(image);
+        /* Allocated after the first census, so that they are not marked from it. */
+        final NativeObject symbol = asByteSymbol("heapCensusTest");
+        final ArrayObject longs = image.asArrayOfLongs(1L, 2L, 3L);
+        specialObjects[rootIndex] = image.asArrayOfObjects(symbol, longs, symbol);
+        final HeapCensus after;
+        try {
+            after = ObjectGraphUtils.census(image);
+        } finally {
+            specialObjects[rootIndex] = null;
+        }
+        assertEquals(before.getEntries().size(), after.getEntries().size());
+        final long[] arrays = censusDelta(before, after, image.arrayClass);
+        assertArrayEquals(new long[]{2L, 2L * HeapCensus.shallowSizeOf(ArrayObject.class),
+                        2L * HeapCensus.shallowSizeOf(ArrayObject.class) + HeapCensus.arraySize(3, 4) + HeapCensus.arraySize(3, Long.BYTES)}, arrays);
+        final long[] symbols = censusDelta(before, after, symbol.getSqueakClass());
+        assertArrayEquals(new long[]{1L, HeapCensus.shallowSizeOf(NativeObject.class), HeapCensus.shallowSizeOf(NativeObject.class) + HeapCensus.arraySize(14, Byte.BYTES)}, symbols);
+        /* Sizes are estimated from the declared fields, aligned to 8 bytes. */
+        assertEquals(32L, HeapCensus.arraySize(3, 4));
+        assertEquals(40L, HeapCensus.arraySize(3, Long.BYTES));
+        assertEquals(32L, HeapCensus.arraySize(14, Byte.BYTES));
+        assertEquals(0L, HeapCensus.shallowSizeOf(NativeObject.class) % 8);
+        assertTrue(HeapCensus.shallowSizeOf(NativeObject.class) >= 12 + 4 + 4 + 4);
+        assertTrue(HeapCensus.shallowSizeOf(ClassObject.class) > HeapCensus.shallowSizeOf(NativeObject.class));
+    }
+
+    /* Answers the change in instances, shallow bytes, and owned bytes of a class between two censuses. */
+    private static long[] censusDelta(final HeapCensus before, final HeapCensus after, final ClassObject squeakClass) {
+        final long[] delta = new long[3];
+        for (final HeapCensus.Entry entry : after.getEntries()) {
+            if (entry.getSqueakClass() == squeakClass) {
+                delta[0] += entry.getInstances();
+                delta[1] += entry.getShallowBytes();
+                delta[2] += entry.getOwnedBytes();
+            }
+        }
+        for (final HeapCensus.Entry entry : before.getEntries()) {
+            if (entry.getSqueakClass() == squeakClass) {
+                delta[0] -= entry.getInstances();
+                delta[1] -= entry.getShallowBytes();
+                delta[2] -= entry.getOwnedBytes();
+            }
+        }
+        return delta;
+    }
+
+    @Test
+    public void testSelectorDispatchTableInvalidation() {
+        final NativeObject selector = asByteSymbol("dispatchTableTest");
+        final CompiledCodeObject superMethod = makeMethod(new Object[]{makeHeader(0, 0, 2, false, false)}, 0x70, 0x7C);
+        final CompiledCodeObject otherSuperMethod = makeMethod(new Object[]{makeHeader(0, 0, 2, false, false)}, 0x71, 0x7C);
+        final CompiledCodeObject ownMethod = makeMethod(new Object[]{makeHeader(0, 0, 2, false, false)}, 0x72, 0x7C);
+        final ClassObject superclass = newDispatchTableTestClass(null, selector, superMethod);
+        final ClassObject otherSuperclass = newDispatchTableTestClass(null, selector, otherSuperMethod);
+        final ClassObject receiverClass = newDispatchTableTestClass(superclass);
+        final long behaviorHash = receiverClass.getSqueakHash();
+        final SelectorDispatchTable table = new SelectorDispatchTable();
+        assertSame(superMethod, table.lookup(receiverClass, selector));
+        assertSame(superMethod, table.lookup(receiverClass, selector));
+        assertEquals("lookups must not enter classes into the class table", behaviorHash, receiverClass.getSqueakHash());
+        // A superclass change invalidates the classHierarchyStable assumption.
+        receiverClass.setSuperclass(otherSuperclass);
+        assertSame(otherSuperMethod, table.lookup(receiverClass, selector));
+        // A method dictionary change invalidates the methodDictStable assumption.
+        installMethods(receiverClass, selector, ownMethod);
+        assertSame(ownMethod, table.lookup(receiverClass, selector));
+        installMethods(otherSuperclass);
+        installMethods(receiverClass);
+        assertNull(table.lookup(receiverClass, selector));
+    }
+
+    private static ClassObject newDispatchTableTestClass(final ClassObject superclass, final Object... selectorsAndMethods) {
+        final ClassObject classObject = setupMeta(new ClassObject(image), new Object[]{
+                        superclass, null, 0L, null, null, null, asByteSymbol("DispatchTableTest"), null, null, null, null});
+        installMethods(classObject, selectorsAndMethods);
+        return classObject;
+    }
+
+    @Test
+    public void testSendSiteStatisticsRecordAllSendKinds() {
+        final SendSiteStatistics statistics = new SendSiteStatistics();
+        image.sendSiteStatistics = statistics;
+        try {
+            final NativeObject foo = asByteSymbol("foo");
+            final NativeObject executeMethod = asByteSymbol("withArgs:executeMethod:");
+            final CompiledCodeObject superFoo = makeMethod(new Object[]{makeHeader(0, 0, 2, false, false)}, 0x76, 0x7C);
+            final CompiledCodeObject primExecuteMethod = makeMethod(new Object[]{makeHeader(2, 2, 2, true, false)}, 139, 188, 0, 0x78);
+            final ClassObject superclass = newDispatchTableTestClass(null, foo, superFoo, executeMethod, primExecuteMethod);
+            final ClassObject subclass = newDispatchTableTestClass(superclass);
+            final PointersObject subclassBinding = new PointersObject(image, nilClassBinding.getSqueakClass(), null);
+            subclassBinding.fillin(SqueakImageChunk.createDummyChunk(image, new Object[]{asByteSymbol("DispatchTableTest"), subclass}));
+            /* foo ^ super foo */
+            final CompiledCodeObject subFoo = makeMethod(new byte[]{0x70, (byte) 0x85, 0x00, 0x7C, 0}, new Object[]{makeHeader(0, 0, 3, false, false), foo, foo, subclassBinding});
+            installMethods(subclass, foo, subFoo);
+            /* bar self foo. ^ self withArgs: #() executeMethod: superFoo */
+            final CompiledCodeObject bar = makeMethod(new Object[]{makeHeader(0, 0, 6, false, false), foo, executeMethod, image.newEmptyArray(), superFoo},
+                            0x70, 0xD0, 0x87, 0x70, 0x22, 0x23, 0xF1, 0x7C);
+            final PointersObject receiver = new PointersObject(image, subclass, null);
+            receiver.fillin(SqueakImageChunk.createDummyChunk(image, new Object[0]));
+
+            assertEquals(1L, runMethod(bar, receiver));
+            final List<Site> sites = statistics.getSites();
+            final Map<Kind, Integer> sitesPerKind = new EnumMap<>(Kind.class);
+            for (final Site site : sites) {
+                sitesPerKind.merge(site.getKind(), 1, Integer::sum);
+                assertEquals(1L, site.getCalls());
+                assertEquals(SendSiteStatistics.State.MONOMORPHIC, site.getState());
+            }
+            assertEquals(Map.of(Kind.SELF, 2, Kind.SUPER, 1, Kind.EAGER, 1), sitesPerKind);
+
+            /* Nodes created again for the same send share its site. */
+            final Site selfSite = sites.stream().filter(s -> s.getKind() == Kind.SELF).findFirst().get();
+            assertSame(selfSite, SendSiteStatistics.registerOrNull(bar, selfSite.getPc(), Kind.SELF, "foo", LookupSelectorNode.create(foo)));
+            assertEquals(1L, runMethod(bar, receiver));
+            assertEquals(sites.size(), statistics.getSites().size());
+            assertEquals(2L, selfSite.getCalls());
+            assertEquals(SendSiteStatistics.State.MONOMORPHIC, selfSite.getState());
+        } finally {
+            image.sendSiteStatistics = null;
+        }
+    }
+
+    @Test
+    public void testResolverLooksUpAsynchronouslyAndCaches() throws Exception {
+        final HostsFileNameService hosts = new HostsFileNameService("10.0.0.1 alpha alpha.example # comment\n10.0.0.2 beta\n");
+        final AtomicInteger hostNameLookups = new AtomicInteger();
+        final NameService countingHosts = new NameService() {
+            @Override
+            public byte[] lookUpHostName(final String hostName) throws UnknownHostException {
+                hostNameLookups.incrementAndGet();
+                return hosts.lookUpHostName(hostName);
+            }
+
+            @Override
+            public String lookUpAddress(final byte[] address) throws UnknownHostException {
+                return hosts.lookUpAddress(address);
+            }
+        };
+        final BlockingQueue<Integer> signals = new LinkedBlockingQueue<>();
+        final Resolver resolver = new Resolver(countingHosts, signals::add);
+        resolver.setSemaphoreIndex(7);
+
+        resolver.startHostNameLookUp("alpha.example");
+        assertEquals(Integer.valueOf(7), signals.poll(5, TimeUnit.SECONDS));
+        assertEquals(1L /* Ready */, resolver.getStatus());
+        assertArrayEquals(new byte[]{10, 0, 0, 1}, resolver.lastHostNameLookupResult());
+
+        /* The image may modify the ByteArray it receives, which must not affect the cache. */
+        resolver.lastHostNameLookupResult()[0] = 99;
+        resolver.startHostNameLookUp("alpha.example");
+        assertEquals(Integer.valueOf(7), signals.poll(5, TimeUnit.SECONDS));
+        assertArrayEquals(new byte[]{10, 0, 0, 1}, resolver.lastHostNameLookupResult());
+        assertEquals("Second lookup is answered from the cache", 1, hostNameLookups.get());
+
+        resolver.startHostNameLookUp("unknown.example");
+        assertEquals(Integer.valueOf(7), signals.poll(5, TimeUnit.SECONDS));
+        assertEquals(3L /* Error */, resolver.getStatus());
+        assertNull(resolver.lastHostNameLookupResult());
+
+        resolver.startAddressLookUp(new byte[]{10, 0, 0, 2});
+        assertEquals(Integer.valueOf(7), signals.poll(5, TimeUnit.SECONDS));
+        assertEquals(1L /* Ready */, resolver.getStatus());
+        assertEquals("beta", resolver.lastAddressLookUpResult());
+
+        resolver.close();
+        assertTrue("Lookup threads are shut down on close", waitForNoThreadNamed("TruffleSqueakResolver"));
+    }
+
+    private static boolean waitForNoThreadNamed(final String name) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            if (Thread.getAllStackTraces().keySet().stream().noneMatch(t -> name.equals(t.getName()))) {
+                return true;
+            }
+            Thread.sleep(10);
+        }
+        return false;
+    }
+
+    @Test
+    public void testStringKernelsMatchNaiveImplementations() {
+        final Random random = new Random(42);
+        final byte[] caseInsensitive = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            caseInsensitive[i] = (byte) Character.toLowerCase(i);
+        }
+        for (int round = 0; round < 200; round++) {
+            /* Small alphabets produce many partial matches. */
+            final byte[] body = randomBytes(random, random.nextInt(200), "abAB\u00ff");
+            final byte[] key = randomBytes(random, 1 + random.nextInt(6), "abAB\u00ff");
+            final int start = random.nextInt(body.length + 2);
+            final int[] wideBody = toInts(body);
+            final int[] wideKey = toInts(key);
+            assertEquals(naiveIndexOf(body, key, start, null), StringUtils.indexOf(body, key, start));
+            assertEquals(naiveIndexOf(body, key, start, caseInsensitive), StringUtils.indexOf(body, key, start, caseInsensitive));
+            assertEquals(naiveIndexOf(body, key, start, null), StringUtils.indexOf(wideBody, wideKey, start));
+            assertEquals(naiveIndexOf(body, new byte[]{key[0]}, start, null), StringUtils.indexOf(body, start, key[0]));
+            assertEquals(Integer.signum(naiveCompare(body, key, null)), StringUtils.compare(body, key));
+            assertEquals(Integer.signum(naiveCompare(body, key, caseInsensitive)), StringUtils.compare(body, key, caseInsensitive));
+            assertEquals(Integer.signum(naiveCompare(body, key, null)), StringUtils.compare(wideBody, key, null));
+            final long initialHash = random.nextInt();
+            assertEquals(naiveHash(initialHash, body), StringUtils.hash(initialHash, body));
+            assertEquals(naiveHash(initialHash, body), StringUtils.hash(initialHash, wideBody));
+        }
+    }
+
+    private static byte[] randomBytes(final Random random, final int length, final String alphabet) {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        return bytes;
+    }
+
+    private static int[] toInts(final byte[] bytes) {
+        final int[] ints = new int[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            ints[i] = bytes[i] & 0xff;
+        }
+        return ints;
+    }
+
+    @Test
+    public void testDirectInteropArrayAndStringAccess() throws Exception {
+        final InteropLibrary interop = InteropLibrary.getUncached();
+        final ArrayObject array = image.asArrayOfObjects(1L, "two", NilObject.SINGLETON);
+        assertTrue(interop.hasArrayElements(array));
+        assertEquals(3, interop.getArraySize(array));
+        assertEquals(1L, interop.readArrayElement(array, 0));
+        assertFalse(interop.isArrayElementReadable(array, 3));
+        assertFalse(interop.isArrayElementInsertable(array, 3));
+        interop.writeArrayElement(array, 2, 42);
+        assertEquals(42L, interop.readArrayElement(array, 2));
+
+        final NativeObject bytes = image.asByteArray(new byte[]{1, (byte) 255});
+        assertEquals(2, interop.getArraySize(bytes));
+        assertEquals(255L, interop.readArrayElement(bytes, 1));
+        interop.writeArrayElement(bytes, 0, 7);
+        assertEquals(7L, interop.readArrayElement(bytes, 0));
+        try {
+            interop.writeArrayElement(bytes, 0, 256);
+            fail("ByteArrays cannot hold 256");
+        } catch (final UnsupportedTypeException e) {
+            assertEquals(1, e.getSuppliedValues().length);
+        }
+        try {
+            interop.readArrayElement(bytes, 2);
+            fail("Index 2 is out of bounds");
+        } catch (final InvalidArrayIndexException e) {
+            assertEquals(2, e.getInvalidIndex());
+        }
+
+        final NativeObject string = image.asByteString("caf\u00e9");
+        assertTrue(interop.isString(string));
+        assertEquals("caf\u00e9", interop.asString(string));
+        assertFalse(interop.isNull(string));
+        assertFalse(interop.isNumber(array));
+    }
+
+    @Test
+    public void testDirectInteropMemberAccess() throws Exception {
+        final InteropLibrary interop = InteropLibrary.getUncached();
+        final DirectInteropSendNode directSendNode = DirectInteropSendNodeGen.getUncached();
+        final Message readMember = Message.resolve(InteropLibrary.class, "readMember");
+        final ClassObject superclass = setupMeta(new ClassObject(image), new Object[]{
+                        null, null, 1L << 16 | 1L, image.asArrayOfObjects(asByteSymbol("x")), null, null, asByteSymbol("MemberTestSuper"), null, null, null, null});
+        final ClassObject pointClass = setupMeta(new ClassObject(image), new Object[]{
+                        superclass, null, 1L << 16 | 2L, image.asArrayOfObjects(asByteSymbol("y")), null, null, asByteSymbol("MemberTest"), null, null, null, null});
+        final PointersObject point = new PointersObject(image, pointClass, null);
+        point.fillin(SqueakImageChunk.createDummyChunk(image, new Object[]{3L, 4L}));
+        assertEquals(3L, interop.readMember(point, "x"));
+        assertEquals(4L, interop.readMember(point, "y"));
+        assertTrue(interop.isMemberModifiable(point, "y"));
+        assertFalse(interop.isMemberInsertable(point, "y"));
+        interop.writeMember(point, "y", 42);
+        assertEquals(42L, interop.readMember(point, "y"));
+        assertSame(DirectInteropSendNode.NOT_HANDLED, directSendNode.execute(null, point, readMember, new Object[]{"z"}));
+
+        /* An accessor of the same name is answered in Smalltalk. */
+        final CompiledCodeObject accessor = makeMethod(new Object[]{makeHeader(0, 0, 2, false, false)}, 0x01, 0x7C);
+        installMethods(superclass, asByteSymbol("y"), accessor);
+        assertSame(DirectInteropSendNode.NOT_HANDLED, directSendNode.execute(null, point, readMember, new Object[]{"y"}));
+        assertEquals(3L, directSendNode.execute(null, point, readMember, new Object[]{"x"}));
+
+        /* The topmost implementation is generic, any redefinition below it takes over. */
+        final NativeObject readMemberSelector = asByteSymbol(SqueakImageContext.toInteropSelectorName(readMember));
+        installMethods(superclass, readMemberSelector, accessor);
+        assertEquals(3L, directSendNode.execute(null, point, readMember, new Object[]{"x"}));
+        installMethods(pointClass, readMemberSelector, accessor);
+        assertSame(DirectInteropSendNode.NOT_HANDLED, directSendNode.execute(null, point, readMember, new Object[]{"x"}));
+    }
+
+    @Test
+    public void testDirectInteropBufferAccess() throws Exception {
+        final InteropLibrary interop = InteropLibrary.getUncached();
+        final NativeObject words = NativeObject.newNativeInts(image, new ClassObject(image), new int[]{0x04030201, 0x08070605});
+        assertTrue(interop.hasBufferElements(words));
+        assertEquals(8, interop.getBufferSize(words));
+        assertEquals(0x0201, interop.readBufferShort(words, ByteOrder.LITTLE_ENDIAN, 0));
+        assertEquals(0x0102030405060708L, interop.readBufferLong(words, ByteOrder.BIG_ENDIAN, 0));
+        interop.writeBufferInt(words, ByteOrder.BIG_ENDIAN, 4, 0x0A0B0C0D);
+        assertEquals(0x0D0C0B0A, words.getInt(1));
+        final byte[] bytes = new byte[4];
+        interop.readBuffer(words, 2, bytes, 1, 3);
+        assertArrayEquals(new byte[]{0, 3, 4, 0x0A}, bytes);
+        try {
+            interop.readBufferLong(words, ByteOrder.LITTLE_ENDIAN, 1);
+            fail("Eight bytes at offset one exceed the buffer");
+        } catch (final InvalidBufferOffsetException e) {
+            assertEquals(1, e.getByteOffset());
+        }
+        /* Unaligned accesses. */
+        assertEquals(0x0A040302, interop.readBufferInt(words, ByteOrder.LITTLE_ENDIAN, 1));
+        interop.writeBufferShort(words, ByteOrder.LITTLE_ENDIAN, 3, (short) 0x1122);
+        assertEquals(0x1122, interop.readBufferShort(words, ByteOrder.LITTLE_ENDIAN, 3));
+        assertEquals(0x01020322110B0C0DL, interop.readBufferLong(words, ByteOrder.BIG_ENDIAN, 0));
+        assertFalse(words.isInBufferBounds(Long.MAX_VALUE, Long.BYTES));
+        try {
+            words.readBuffer(0, bytes, 2, 4);
+            fail("Four bytes at index two exceed the destination");
+        } catch (final IndexOutOfBoundsException e) {
+            assertArrayEquals(new byte[]{0, 3, 4, 0x0A}, bytes);
+        }
+
+        /* Symbols can be read but not written. */
+        final NativeObject symbol = asByteSymbol("abc");
+        assertTrue(interop.hasBufferElements(symbol));
+        assertTrue(interop.isBufferWritable(words));
+        assertFalse(interop.isBufferWritable(symbol));
+        assertEquals('b', interop.readBufferByte(symbol, 1));
+        try {
+            interop.writeBufferByte(symbol, 1, (byte) 'x');
+            fail("Symbols are read-only buffers");
+        } catch (final UnsupportedMessageException e) {
+            assertArrayEquals("abc".getBytes(StandardCharsets.US_ASCII), symbol.getByteStorage());
+        }
+    }
+
+    private static int naiveIndexOf(final byte[] body, final byte[] key, final int start, final byte[] table) {
+        for (int i = start; i <= body.length - key.length; i++) {
+            int j = 0;
+            while (j < key.length && map(body[i + j], table) == map(key[j], table)) {
+                j++;
+            }
+            if (j == key.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int naiveCompare(final byte[] bytes1, final byte[] bytes2, final byte[] table) {
+        for (int i = 0; i < Math.min(bytes1.length, bytes2.length); i++) {
+            final int difference = map(bytes1[i], table) - map(bytes2[i], table);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return bytes1.length - bytes2.length;
+    }
+
+    private static int map(final byte value, final byte[] table) {
+        return table == null ? value & 0xff : table[value & 0xff] & 0xff;
+    }
+
+    private static long naiveHash(final long initialHash, final byte[] bytes) {
+        long hash = initialHash & 0xFFFFFFF;
+        for (final byte value : bytes) {
+            hash = (hash + (value & 0xff)) * 1664525 & 0xFFFFFFF;
+        }
+        return hash;
+    }
+
     private static SqueakImageChunk newFloatChunk(final byte[] data) {
         final SqueakImageChunk chunk = new SqueakImageChunk(
                         new SqueakImageReader(image),
@@ -185,4 +646,134 @@ public final class SqueakMiscellaneousTest extends AbstractSqueakTestCaseWithDum
         chunk.setSqueakClass(image.floatClass);
         return chunk;
     }
+
+    @Test
+    public void testSubprocessEchoesStdin() throws Exception {
+        assumeFalse(OS.isWindows());
+        final SqueakSubprocess subprocess = SqueakSubprocess.start(image, List.of("cat"), null, 0);
+        try {
+            final byte[] input = "hello subprocess".getBytes(StandardCharsets.US_ASCII);
+            assertEquals(input.length, subprocess.getStdin().write(ByteBuffer.wrap(input)));
+            assertEquals(input.length, subprocess.getStdin().position());
+            /* Queued input is still written before stdin is closed. */
+            subprocess.getStdin().close();
+            assertArrayEquals(input, readUntilEnd(subprocess.getStdout()));
+            final long deadline = System.currentTimeMillis() + 10_000;
+            while (subprocess.getExitStatus() == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(Long.valueOf(0), subprocess.getExitStatus());
+        } finally {
+            subprocess.close();
+        }
+    }
+
+    @Test
+    public void testSubprocessStdinWritesDoNotBlock() throws Exception {
+        assumeFalse(OS.isWindows());
+        /* The child never reads its stdin, so the queue fills up instead of the interpreter blocking. */
+        final SqueakSubprocess subprocess = SqueakSubprocess.start(image, List.of("sleep", "10"), null, 0);
+        try {
+            final SeekableByteChannel stdin = subprocess.getStdin();
+            assertEquals(SqueakSubprocess.MAX_BUFFERED_BYTES, stdin.write(ByteBuffer.allocate(2 * SqueakSubprocess.MAX_BUFFERED_BYTES)));
+            assertEquals(0, stdin.write(ByteBuffer.allocate(1)));
+            assertEquals(SqueakSubprocess.MAX_BUFFERED_BYTES, stdin.size());
+        } finally {
+            subprocess.terminate(true);
+            subprocess.close();
+        }
+    }
+
+    @Test
+    public void testSubprocessOutputIsBounded() throws Exception {
+        assumeFalse(OS.isWindows());
+        final int outputSize = 3 * SqueakSubprocess.MAX_BUFFERED_BYTES;
+        final SqueakSubprocess subprocess = SqueakSubprocess.start(image, List.of("head", "-c", Integer.toString(outputSize), "/dev/zero"), null, 0);
+        try {
+            final SeekableByteChannel stdout = subprocess.getStdout();
+            Thread.sleep(200);
+            /* The reader waits for the image instead of buffering all output (plus one while open). */
+            assertTrue(stdout.size() - stdout.position() <= SqueakSubprocess.MAX_BUFFERED_BYTES + 1);
+            assertEquals(outputSize, readUntilEnd(stdout).length);
+        } finally {
+            subprocess.close();
+        }
+    }
+
+    @Test
+    public void testRemoteDisplay() throws Exception {
+        final ClassObject formClass = setupMeta(new ClassObject(image), new Object[]{
+                        null, null, 5L, null, null, null, asByteSymbol("Form"), null, null, null, null});
+        final NativeObject bitmap = NativeObject.newNativeInts(image, new ClassObject(image), new int[]{1, 2, 3, 4});
+        final PointersObject form = new PointersObject(image, formClass, null);
+        form.fillin(SqueakImageChunk.createDummyChunk(image, new Object[]{bitmap, 2L, 2L, 32L, NilObject.SINGLETON}));
+        final SqueakRemoteDisplay display = SqueakRemoteDisplay.create(image, 0);
+        try (Socket viewer = new Socket(InetAddress.getLoopbackAddress(), display.getLocalPort())) {
+            viewer.setSoTimeout(10_000);
+            final DataInputStream in = new DataInputStream(viewer.getInputStream());
+            display.open(form);
+            assertArrayEquals(new int[]{1, 2, 3, 4}, readRemoteFrame(in));
+            /* Frames show the current storage of the bitmap, even if it was replaced. */
+            bitmap.setStorage(new int[]{5, 6, 7, 8});
+            display.showDisplayRect(0, 0, 2, 2);
+            assertArrayEquals(new int[]{5, 6, 7, 8}, readRemoteFrame(in));
+            /* Titles and beeps are sent by the sender thread, in order. */
+            display.setWindowTitle("Remote");
+            display.beep();
+            assertEquals('T', in.readByte());
+            final byte[] title = new byte[in.readInt()];
+            in.readFully(title);
+            assertEquals("Remote", new String(title, StandardCharsets.UTF_8));
+            assertEquals('B', in.readByte());
+        } finally {
+            display.close();
+        }
+    }
+
+    private static int[] readRemoteFrame(final DataInputStream in) throws Exception {
+        assertEquals('F', in.readByte());
+        final int width = in.readInt();
+        final int height = in.readInt();
+        final int[] pixels = new int[width * height];
+        final int numTiles = in.readInt();
+        for (int i = 0; i < numTiles; i++) {
+            final int x = in.readInt();
+            final int y = in.readInt();
+            final int w = in.readInt();
+            final int h = in.readInt();
+            final byte[] compressed = new byte[in.readInt()];
+            in.readFully(compressed);
+            final Inflater inflater = new Inflater();
+            inflater.setInput(compressed);
+            final byte[] tile = new byte[w * h * Integer.BYTES];
+            assertEquals(tile.length, inflater.inflate(tile));
+            inflater.end();
+            final ByteBuffer tileBuffer = ByteBuffer.wrap(tile);
+            for (int row = y; row < y + h; row++) {
+                for (int column = x; column < x + w; column++) {
+                    pixels[row * width + column] = tileBuffer.getInt();
+                }
+            }
+        }
+        return pixels;
+    }
+
+    private static byte[] readUntilEnd(final SeekableByteChannel channel) throws IOException, InterruptedException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final ByteBuffer buffer = ByteBuffer.allocate(8192);
+        final long deadline = System.currentTimeMillis() + 10_000;
+        int read;
+        while ((read = channel.read(buffer)) >= 0) {
+            if (read == 0) {
+                if (System.currentTimeMillis() > deadline) {
+                    fail("Subprocess did not close its output");
+                }
+                Thread.sleep(1);
+            } else {
+                output.write(buffer.array(), 0, read);
+                buffer.clear();
+            }
+        }
+        return output.toByteArray();
+    }
 }
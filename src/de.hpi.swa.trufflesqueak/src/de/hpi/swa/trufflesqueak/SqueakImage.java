@@ -16,7 +16,6 @@ import com.oracle.truffle.api.library.ExportMessage;
 import com.oracle.truffle.api.nodes.RootNode;
 
 import de.hpi.swa.trufflesqueak.image.SqueakImageContext;
-import de.hpi.swa.trufflesqueak.image.SqueakImageReader;
 import de.hpi.swa.trufflesqueak.model.NilObject;
 
 @ExportLibrary(InteropLibrary.class)
@@ -37,7 +36,7 @@ public final class SqueakImage implements TruffleObject {
 
         @Override
         public Object execute(final VirtualFrame frame) {
-            SqueakImageReader.load(squeakImage.image);
+            squeakImage.image.loadImageIfNecessary();
             return squeakImage;
         }
     }
@@ -47,6 +47,13 @@ public final class SqueakLanguage extends TruffleLanguage<SqueakImageContext> {
         return new SqueakImageContext(this, env);
     }
 
+    @Override
+    protected void initializeContext(final SqueakImageContext context) {
+        if (context.env.isPreInitialization()) {
+            context.preinitialize();
+        }
+    }
+
     @Override
     protected void finalizeContext(final SqueakImageContext context) {
         context.finalizeContext();
@@ -90,7 +97,7 @@ public final class SqueakLanguage extends TruffleLanguage<SqueakImageContext> {
 
     @Override
     protected boolean patchContext(final SqueakImageContext context, final Env newEnv) {
-        return context.patch(newEnv);
+        return context.patchPreinitialized(newEnv);
     }
 
     @Override
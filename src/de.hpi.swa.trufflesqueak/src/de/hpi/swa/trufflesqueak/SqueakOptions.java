@@ -26,28 +26,61 @@ public final class SqueakOptions {
     @Option(name = SqueakLanguageOptions.IMAGE_ARGUMENTS, category = OptionCategory.USER, stability = OptionStability.EXPERIMENTAL, help = SqueakLanguageOptions.IMAGE_ARGUMENTS_HELP, usageSyntax = "'arg1 arg2 ...'")//
     public static final OptionKey<String> ImageArguments = new OptionKey<>("");
 
+    @Option(name = SqueakLanguageOptions.DISPATCH_TABLES, category = OptionCategory.INTERNAL, stability = OptionStability.EXPERIMENTAL, help = SqueakLanguageOptions.DISPATCH_TABLES_HELP, usageSyntax = "true|false")//
+    public static final OptionKey<Boolean> DispatchTables = new OptionKey<>(true);
+
     @Option(name = SqueakLanguageOptions.HEADLESS, category = OptionCategory.USER, stability = OptionStability.STABLE, help = SqueakLanguageOptions.HEADLESS_HELP, usageSyntax = "true|false")//
     public static final OptionKey<Boolean> Headless = new OptionKey<>(true);
 
+    @Option(name = SqueakLanguageOptions.HEAP_CENSUS, category = OptionCategory.INTERNAL, stability = OptionStability.EXPERIMENTAL, help = SqueakLanguageOptions.HEAP_CENSUS_HELP, usageSyntax = "0|<classes>")//
+    public static final OptionKey<Integer> HeapCensus = new OptionKey<>(0);
+
+    @Option(name = SqueakLanguageOptions.INCREMENTAL_SAVE, category = OptionCategory.USER, stability = OptionStability.EXPERIMENTAL, help = SqueakLanguageOptions.INCREMENTAL_SAVE_HELP, usageSyntax = "false|true")//
+    public static final OptionKey<Boolean> IncrementalSave = new OptionKey<>(false);
+
+    @Option(name = SqueakLanguageOptions.INLINE_CACHE_SIZE, category = OptionCategory.INTERNAL, stability = OptionStability.EXPERIMENTAL, help = SqueakLanguageOptions.INLINE_CACHE_SIZE_HELP, usageSyntax = "6|<count>")//
+    public static final OptionKey<Integer> InlineCacheSize = new OptionKey<>(6);
+
     @Option(name = SqueakLanguageOptions.INTERCEPT_MESSAGES, category = OptionCategory.INTERNAL, stability = OptionStability.EXPERIMENTAL, help = SqueakLanguageOptions.INTERCEPT_MESSAGES_HELP, //
                     usageSyntax = "'Object>>becomeForward:,Behavior>>allInstances,...'")//
     public static final OptionKey<String> InterceptMessages = new OptionKey<>("");
 
+    @Option(name = SqueakLanguageOptions.NON_LOCAL_RETURN_STATISTICS, category = OptionCategory.INTERNAL, stability = OptionStability.EXPERIMENTAL, help = SqueakLanguageOptions.NON_LOCAL_RETURN_STATISTICS_HELP, usageSyntax = "false|true")//
+    public static final OptionKey<Boolean> NonLocalReturnStatistics = new OptionKey<>(false);
+
+    @Option(name = SqueakLanguageOptions.PRIMITIVE_FAILURE_LIMIT, category = OptionCategory.INTERNAL, stability = OptionStability.EXPERIMENTAL, help = SqueakLanguageOptions.PRIMITIVE_FAILURE_LIMIT_HELP, usageSyntax = "3|<count>")//
+    public static final OptionKey<Integer> PrimitiveFailureLimit = new OptionKey<>(3);
+
+    @Option(name = SqueakLanguageOptions.PRIMITIVE_FAILURE_RATIO, category = OptionCategory.INTERNAL, stability = OptionStability.EXPERIMENTAL, help = SqueakLanguageOptions.PRIMITIVE_FAILURE_RATIO_HELP, usageSyntax = "0|<ratio>")//
+    public static final OptionKey<Double> PrimitiveFailureRatio = new OptionKey<>(0.0);
+
+    @Option(name = SqueakLanguageOptions.PRIMITIVE_STATISTICS, category = OptionCategory.INTERNAL, stability = OptionStability.EXPERIMENTAL, help = SqueakLanguageOptions.PRIMITIVE_STATISTICS_HELP, usageSyntax = "false|true")//
+    public static final OptionKey<Boolean> PrimitiveStatistics = new OptionKey<>(false);
+
     @Option(name = SqueakLanguageOptions.QUIET, category = OptionCategory.USER, stability = OptionStability.STABLE, help = SqueakLanguageOptions.QUIET_HELP, usageSyntax = "false|true")//
     public static final OptionKey<Boolean> Quiet = new OptionKey<>(false);
 
     @Option(name = SqueakLanguageOptions.INTERRUPTS, category = OptionCategory.USER, stability = OptionStability.STABLE, help = SqueakLanguageOptions.INTERRUPTS_HELP, usageSyntax = "false|true")//
     public static final OptionKey<Boolean> Interrupts = new OptionKey<>(false);
 
+    @Option(name = SqueakLanguageOptions.REMOTE_DISPLAY, category = OptionCategory.USER, stability = OptionStability.EXPERIMENTAL, help = SqueakLanguageOptions.REMOTE_DISPLAY_HELP, usageSyntax = "0|<port>")//
+    public static final OptionKey<Integer> RemoteDisplay = new OptionKey<>(0);
+
     @Option(name = SqueakLanguageOptions.RESOURCE_SUMMARY, category = OptionCategory.USER, stability = OptionStability.EXPERIMENTAL, help = SqueakLanguageOptions.RESOURCE_SUMMARY_HELP, usageSyntax = "false|true")//
     public static final OptionKey<Boolean> ResourceSummary = new OptionKey<>(false);
 
+    @Option(name = SqueakLanguageOptions.SEND_SITE_STATISTICS, category = OptionCategory.INTERNAL, stability = OptionStability.EXPERIMENTAL, help = SqueakLanguageOptions.SEND_SITE_STATISTICS_HELP, usageSyntax = "false|true")//
+    public static final OptionKey<Boolean> SendSiteStatistics = new OptionKey<>(false);
+
     @Option(name = SqueakLanguageOptions.SIGNAL_INPUT_SEMAPHORE, category = OptionCategory.INTERNAL, stability = OptionStability.EXPERIMENTAL, help = SqueakLanguageOptions.SIGNAL_INPUT_SEMAPHORE_HELP, usageSyntax = "false|true")//
     public static final OptionKey<Boolean> SignalInputSemaphore = new OptionKey<>(false);
 
     @Option(name = SqueakLanguageOptions.STARTUP, category = OptionCategory.INTERNAL, stability = OptionStability.EXPERIMENTAL, help = SqueakLanguageOptions.STARTUP_HELP, usageSyntax = "false|true")//
     public static final OptionKey<Boolean> Startup = new OptionKey<>(false);
 
+    @Option(name = SqueakLanguageOptions.SUPERINSTRUCTIONS, category = OptionCategory.INTERNAL, stability = OptionStability.EXPERIMENTAL, help = SqueakLanguageOptions.SUPERINSTRUCTIONS_HELP, usageSyntax = "true|false")//
+    public static final OptionKey<Boolean> Superinstructions = new OptionKey<>(true);
+
     @Option(name = SqueakLanguageOptions.TESTING, category = OptionCategory.INTERNAL, stability = OptionStability.STABLE, help = SqueakLanguageOptions.TESTING_HELP, usageSyntax = "false|true")//
     public static final OptionKey<Boolean> Testing = new OptionKey<>(false);
 
@@ -59,7 +92,9 @@ public final class SqueakOptions {
     }
 
     public record SqueakContextOptions(String imagePath, String[] imageArguments, boolean printResourceSummary, boolean isHeadless, boolean isQuiet, boolean disableInterruptHandler,
-                    boolean disableStartup, boolean isTesting, boolean signalInputSemaphore) {
+                    boolean disableStartup, boolean isTesting, boolean signalInputSemaphore, int remoteDisplayPort,
+                    boolean useSuperinstructions, int inlineCacheSize, boolean useDispatchTables, int primitiveFailureLimit, double primitiveFailureRatio, boolean collectPrimitiveStatistics,
+                    boolean collectNonLocalReturnStatistics, boolean collectSendSiteStatistics, int heapCensusClasses, boolean saveIncrementally) {
         public static SqueakContextOptions create(final OptionValues options) {
             return new SqueakContextOptions(
                             options.get(ImagePath).isEmpty() ? null : options.get(ImagePath),
@@ -70,7 +105,18 @@ public final class SqueakOptions {
                             options.get(Interrupts),
                             options.get(Startup),
                             options.get(Testing),
-                            options.get(SignalInputSemaphore));
+                            options.get(SignalInputSemaphore),
+                            options.get(RemoteDisplay),
+                            options.get(Superinstructions),
+                            options.get(InlineCacheSize),
+                            options.get(DispatchTables),
+                            options.get(PrimitiveFailureLimit),
+                            options.get(PrimitiveFailureRatio),
+                            options.get(PrimitiveStatistics),
+                            options.get(NonLocalReturnStatistics),
+                            options.get(SendSiteStatistics),
+                            options.get(HeapCensus),
+                            options.get(IncrementalSave));
         }
     }
 }
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2017-2024 Software Architecture Group, Hasso Plattner Institute
+ * Copyright (c) 2021-2024 Oracle and/or its affiliates
+ *
+ * Licensed under the MIT License.
+ */
+package de.hpi.swa.trufflesqueak.image;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.function.ToLongFunction;
+
+import com.oracle.truffle.api.TruffleFile;
+
+import de.hpi.swa.trufflesqueak.model.AbstractSqueakObjectWithClassAndHash;
+
+/**
+ * Remembers where the last save of an image file put each object, so that the next save to the
+ * same file can keep all oops and only rewrite chunks whose bytes changed (see
+ * {@link SqueakImageWriter}). Objects are held weakly and by identity. Chunks of objects that died
+ * or moved are turned into free chunks and never reused. Free chunks are remembered across saves,
+ * so that they merge with chunks freed later, and the next save compacts the image once too much
+ * of it is free.
+ */
+final class ImageSnapshot {
+    /* Compact instead of saving incrementally once more than a quarter of the heap is free. */
+    private static final double MAX_FREE_RATIO = 0.25;
+    /* The previous file is read into a byte array to compare chunks against. */
+    private static final long MAX_FILE_SIZE = Integer.MAX_VALUE - 8;
+
+    private final String imagePath;
+    private final WeakReference<?>[] objects;
+    private final long[] chunkStarts;
+    private final int[] chunkLengths;
+    private final int mask;
+    private int size;
+
+    private long[] freeRangeStarts = new long[8];
+    private long[] freeRangeLengths = new long[8];
+    private int numFreeRanges;
+
+    private long fileSize;
+    private FileTime lastModifiedTime;
+    /* End of the last chunk, followed by the final bridge. */
+    long end;
+    /* Chunk holding the LargeIntegers and boxed Floats allocated while writing. */
+    long boxedStart;
+    long freeBytes;
+
+    ImageSnapshot(final String imagePath, final int expectedObjects) {
+        this.imagePath = imagePath;
+        final int capacity = Integer.highestOneBit(Math.max(expectedObjects, 8) * 2 - 1) << 1;
+        objects = new WeakReference<?>[capacity];
+        chunkStarts = new long[capacity];
+        chunkLengths = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /** Answers {@code snapshot} if the file it describes has not been touched since, or null. */
+    static ImageSnapshot usableOrNull(final SqueakImageContext image, final ImageSnapshot snapshot) {
+        if (snapshot == null || !snapshot.imagePath.equals(image.getImagePath())) {
+            return null;
+        }
+        if (snapshot.freeBytes > (snapshot.end - image.flags.getOldBaseAddress()) * MAX_FREE_RATIO || snapshot.fileSize > MAX_FILE_SIZE) {
+            return null;
+        }
+        try {
+            final TruffleFile file = image.env.getPublicTruffleFile(snapshot.imagePath);
+            return file.size() == snapshot.fileSize && file.getLastModifiedTime().equals(snapshot.lastModifiedTime) ? snapshot : null;
+        } catch (final IOException | SecurityException e) {
+            return null;
+        }
+    }
+
+    void recordFile(final TruffleFile file) throws IOException {
+        fileSize = file.size();
+        lastModifiedTime = file.getLastModifiedTime();
+    }
+
+    void add(final AbstractSqueakObjectWithClassAndHash object, final long chunkStart, final int chunkLength) {
+        assert size < objects.length - 1 : "Snapshot table too small";
+        int index = indexOf(object);
+        while (objects[index] != null) {
+            index = index + 1 & mask;
+        }
+        objects[index] = new WeakReference<>(object);
+        chunkStarts[index] = chunkStart;
+        chunkLengths[index] = chunkLength;
+        size++;
+    }
+
+    void addFreeRange(final long start, final long length) {
+        if (numFreeRanges == freeRangeStarts.length) {
+            freeRangeStarts = Arrays.copyOf(freeRangeStarts, numFreeRanges * 2);
+            freeRangeLengths = Arrays.copyOf(freeRangeLengths, numFreeRanges * 2);
+        }
+        freeRangeStarts[numFreeRanges] = start;
+        freeRangeLengths[numFreeRanges++] = length;
+    }
+
+    /**
+     * Answers the previous chunk of {@code object} if it has the same length (and therefore the
+     * same header layout) as the object needs now, or -1.
+     */
+    long lookUpChunk(final AbstractSqueakObjectWithClassAndHash object, final int chunkLength) {
+        final int index = find(object);
+        return index >= 0 && chunkLengths[index] == chunkLength ? chunkStarts[index] : -1;
+    }
+
+    /**
+     * Iterates the ranges to free: the chunks of all recorded objects that died or are not at the
+     * chunk answered by {@code chunkStartOf} (-1 if not traced) anymore, the chunk of the previous
+     * boxed objects, and the free chunks of previous saves. Adjacent chunks are merged into one
+     * range, so that the image does not fill up with small free chunks.
+     */
+    void forEachFreedRange(final ToLongFunction<AbstractSqueakObjectWithClassAndHash> chunkStartOf, final RangeConsumer consumer) {
+        final long[] starts = new long[size + numFreeRanges + 1];
+        final long[] ends = new long[size + numFreeRanges + 1];
+        int numRanges = 0;
+        for (int i = 0; i < numFreeRanges; i++) {
+            starts[numRanges] = freeRangeStarts[i];
+            ends[numRanges++] = freeRangeStarts[i] + freeRangeLengths[i];
+        }
+        for (int i = 0; i < objects.length; i++) {
+            if (objects[i] != null) {
+                final AbstractSqueakObjectWithClassAndHash object = (AbstractSqueakObjectWithClassAndHash) objects[i].get();
+                if (object == null || chunkStartOf.applyAsLong(object) != chunkStarts[i]) {
+                    starts[numRanges] = chunkStarts[i];
+                    ends[numRanges++] = chunkStarts[i] + chunkLengths[i];
+                }
+            }
+        }
+        if (end > boxedStart) {
+            starts[numRanges] = boxedStart;
+            ends[numRanges++] = end;
+        }
+        /* Chunks do not overlap, so sorting starts and ends independently keeps them paired. */
+        Arrays.sort(starts, 0, numRanges);
+        Arrays.sort(ends, 0, numRanges);
+        int first = 0;
+        for (int i = 0; i < numRanges; i++) {
+            if (i + 1 == numRanges || ends[i] != starts[i + 1]) {
+                consumer.accept(starts[first], ends[i] - starts[first]);
+                first = i + 1;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface RangeConsumer {
+        void accept(long start, long length);
+    }
+
+    private int find(final AbstractSqueakObjectWithClassAndHash object) {
+        int index = indexOf(object);
+        WeakReference<?> reference;
+        while ((reference = objects[index]) != null) {
+            if (reference.get() == object) {
+                return index;
+            }
+            index = index + 1 & mask;
+        }
+        return -1;
+    }
+
+    private int indexOf(final Object object) {
+        final int hash = System.identityHashCode(object);
+        return (hash ^ hash >>> 16) * 0x9E3779B9 & mask;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2017-2024 Software Architecture Group, Hasso Plattner Institute
+ * Copyright (c) 2021-2024 Oracle and/or its affiliates
+ *
+ * Licensed under the MIT License.
+ */
+package de.hpi.swa.trufflesqueak.image;
+
+import java.lang.ref.Reference;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.logging.Level;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+
+import de.hpi.swa.trufflesqueak.model.PointersObject;
+import de.hpi.swa.trufflesqueak.model.WeakVariablePointersObject;
+import de.hpi.swa.trufflesqueak.util.LogUtils;
+import de.hpi.swa.trufflesqueak.util.ObjectGraphUtils;
+
+/**
+ * Keeps track of what the image needs to finalize after a full GC. Cleared slots of weak objects
+ * are reported by the JVM via {@link SqueakImageContext#weakPointersQueue}. Ephemerons are not
+ * supported by the JVM, so they are fired by an ephemeron-aware trace of the Squeak object graph
+ * (see {@link ObjectGraphUtils#fireEphemerons}) and queued for primitiveFetchMourner.
+ */
+public final class SqueakFinalization {
+    private final SqueakImageContext image;
+    private final ArrayDeque<PointersObject> mourners = new ArrayDeque<>();
+    private final Map<WeakVariablePointersObject, BitSet> clearedWeakSlots = new IdentityHashMap<>();
+    private final ArrayDeque<WeakVariablePointersObject> weakObjectsWithClearedSlots = new ArrayDeque<>();
+
+    private boolean hasEphemerons;
+    /* Only remember cleared slots once the image asks for them, otherwise they would pile up. */
+    private boolean reportClearedWeakSlots;
+
+    SqueakFinalization(final SqueakImageContext image) {
+        this.image = image;
+    }
+
+    public void noteEphemeron() {
+        hasEphemerons = true;
+    }
+
+    /** Answers whether the finalization semaphore needs to be signaled after a full GC. */
+    @TruffleBoundary
+    public boolean processAfterFullGC() {
+        final int numClearedSlots = drainWeakPointersQueue();
+        final int numFired = hasEphemerons ? ObjectGraphUtils.fireEphemerons(image, mourners) : 0;
+        LogUtils.GC.log(Level.FINE, "Number of cleared weak slots: {0}, fired ephemerons: {1}", new Object[]{numClearedSlots, numFired});
+        return numClearedSlots > 0 || numFired > 0;
+    }
+
+    private int drainWeakPointersQueue() {
+        int count = 0;
+        Reference<?> reference;
+        while ((reference = image.weakPointersQueue.poll()) != null) {
+            count++;
+            if (reportClearedWeakSlots) {
+                final WeakVariablePointersObject owner = WeakVariablePointersObject.getOwnerOfClearedSlot(reference);
+                if (owner != null) {
+                    clearedWeakSlots.computeIfAbsent(owner, o -> {
+                        weakObjectsWithClearedSlots.add(o);
+                        return new BitSet();
+                    }).set(WeakVariablePointersObject.getIndexOfClearedSlot(reference));
+                }
+            }
+        }
+        return count;
+    }
+
+    /** Answers the next fired ephemeron or {@code null}. */
+    @TruffleBoundary
+    public PointersObject nextMourner() {
+        return mourners.pollFirst();
+    }
+
+    /**
+     * Answers {weakObject. indices} for the next weak object that had slots cleared, or
+     * {@code null}. Indices are one-based indices into the variable part. Reporting starts with
+     * the first request, so the image should do one full scan of its weak collections after that.
+     */
+    @TruffleBoundary
+    public Object[] nextClearedWeakSlots() {
+        reportClearedWeakSlots = true;
+        final WeakVariablePointersObject weakObject = weakObjectsWithClearedSlots.pollFirst();
+        if (weakObject == null) {
+            return null;
+        }
+        final BitSet slots = clearedWeakSlots.remove(weakObject);
+        final long[] indices = new long[slots.cardinality()];
+        final Iterator<Integer> iterator = slots.stream().iterator();
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = iterator.next() + 1;
+        }
+        return new Object[]{weakObject, indices};
+    }
+
+    public void clear() {
+        while (image.weakPointersQueue.poll() != null) {
+            // Poll until empty.
+        }
+        mourners.clear();
+        clearedWeakSlots.clear();
+        weakObjectsWithClearedSlots.clear();
+    }
+}
@@ -93,8 +93,9 @@ public final class SqueakImageChunk {
                 }
             } else if (format == 4) { // indexable weak fields
                 object = new WeakVariablePointersObject(getImage(), header, classObject);
-            } else if (format == 5) { // fixed weak fields
-                throw SqueakException.create("Ephemerons not (yet) supported");
+            } else if (format == 5) { // ephemerons
+                object = new PointersObject(header, classObject);
+                getImage().finalization.noteEphemeron();
             } else if (format <= 8) {
                 assert false : "Should never happen (unused format)";
             } else if (format == 9) { // 64-bit integers
@@ -6,12 +6,18 @@
  */
 package de.hpi.swa.trufflesqueak.image;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.lang.ref.ReferenceQueue;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 import com.oracle.truffle.api.CompilerAsserts;
 import com.oracle.truffle.api.CompilerDirectives;
@@ -34,8 +40,11 @@ import de.hpi.swa.trufflesqueak.SqueakLanguage;
 import de.hpi.swa.trufflesqueak.SqueakOptions.SqueakContextOptions;
 import de.hpi.swa.trufflesqueak.exceptions.ProcessSwitch;
 import de.hpi.swa.trufflesqueak.exceptions.SqueakExceptions.SqueakException;
+import de.hpi.swa.trufflesqueak.interop.DirectInteropSendNode.ClassKinds;
 import de.hpi.swa.trufflesqueak.interop.LookupMethodByStringNode;
+import de.hpi.swa.trufflesqueak.io.AbstractSqueakDisplay;
 import de.hpi.swa.trufflesqueak.io.SqueakDisplay;
+import de.hpi.swa.trufflesqueak.io.SqueakRemoteDisplay;
 import de.hpi.swa.trufflesqueak.model.AbstractSqueakObject;
 import de.hpi.swa.trufflesqueak.model.AbstractSqueakObjectWithClassAndHash;
 import de.hpi.swa.trufflesqueak.model.ArrayObject;
@@ -61,17 +70,23 @@ import de.hpi.swa.trufflesqueak.nodes.accessing.AbstractPointersObjectNodes.Abst
 import de.hpi.swa.trufflesqueak.nodes.accessing.AbstractPointersObjectNodes.AbstractPointersObjectWriteNode;
 import de.hpi.swa.trufflesqueak.nodes.accessing.SqueakObjectClassNode;
 import de.hpi.swa.trufflesqueak.nodes.bytecodes.MiscellaneousBytecodes.CallPrimitiveNode;
+import de.hpi.swa.trufflesqueak.nodes.dispatch.SelectorDispatchTable;
 import de.hpi.swa.trufflesqueak.nodes.interrupts.CheckForInterruptsState;
 import de.hpi.swa.trufflesqueak.nodes.plugins.B2D;
 import de.hpi.swa.trufflesqueak.nodes.plugins.BitBlt;
 import de.hpi.swa.trufflesqueak.nodes.plugins.JPEGReader;
 import de.hpi.swa.trufflesqueak.nodes.plugins.Zip;
 import de.hpi.swa.trufflesqueak.nodes.plugins.ffi.InterpreterProxy;
+import de.hpi.swa.trufflesqueak.nodes.plugins.network.Resolver;
 import de.hpi.swa.trufflesqueak.shared.SqueakImageLocator;
 import de.hpi.swa.trufflesqueak.tools.SqueakMessageInterceptor;
 import de.hpi.swa.trufflesqueak.util.ArrayUtils;
 import de.hpi.swa.trufflesqueak.util.MethodCacheEntry;
 import de.hpi.swa.trufflesqueak.util.MiscUtils;
+import de.hpi.swa.trufflesqueak.util.NonLocalReturnStatistics;
+import de.hpi.swa.trufflesqueak.util.ObjectGraphUtils;
+import de.hpi.swa.trufflesqueak.util.PrimitiveStatistics;
+import de.hpi.swa.trufflesqueak.util.SendSiteStatistics;
 
 public final class SqueakImageContext {
     private static final ContextReference<SqueakImageContext> REFERENCE = ContextReference.create(SqueakLanguage.class);
@@ -122,16 +137,17 @@ public final class SqueakImageContext {
     private static final int METHOD_CACHE_REPROBES = 4;
     private int methodCacheRandomish;
     @CompilationFinal(dimensions = 1) private final MethodCacheEntry[] methodCache = new MethodCacheEntry[METHOD_CACHE_SIZE];
+    private final WeakHashMap<NativeObject, SelectorDispatchTable> dispatchTables = new WeakHashMap<>();
 
     /* System Information */
     public final SqueakImageFlags flags = new SqueakImageFlags();
     private String imagePath;
     @CompilationFinal public int imageFormat;
-    private final TruffleFile homePath;
+    @CompilationFinal private TruffleFile homePath;
     @CompilationFinal(dimensions = 1) private byte[] resourcesDirectoryBytes;
     @CompilationFinal(dimensions = 1) private byte[] resourcesPathBytes;
-    private final boolean isHeadless;
-    public final SqueakContextOptions options;
+    @CompilationFinal private boolean isHeadless;
+    @CompilationFinal public SqueakContextOptions options;
     private final SqueakSystemAttributes systemAttributes = new SqueakSystemAttributes(this);
 
     /* System */
@@ -140,21 +156,35 @@ public final class SqueakImageContext {
     private ArrayObject hiddenRoots;
     // first page of classTable is special
     public int classTableIndex = SqueakImageConstants.CLASS_TABLE_PAGE_SIZE;
-    @CompilationFinal private SqueakDisplay display;
-    public final CheckForInterruptsState interrupt;
-    public final long startUpMillis = System.currentTimeMillis();
+    @CompilationFinal private AbstractSqueakDisplay display;
+    @CompilationFinal public CheckForInterruptsState interrupt;
+    @CompilationFinal public PrimitiveStatistics primitiveStatistics;
+    @CompilationFinal public NonLocalReturnStatistics nonLocalReturnStatistics;
+    @CompilationFinal public SendSiteStatistics sendSiteStatistics;
+    @CompilationFinal public long startUpMillis;
     public final ReferenceQueue<AbstractSqueakObject> weakPointersQueue = new ReferenceQueue<>();
+    public final SqueakFinalization finalization = new SqueakFinalization(this);
 
     /* Truffle */
-    private final AllocationReporter allocationReporter;
+    @CompilationFinal private AllocationReporter allocationReporter;
     @CompilationFinal public SqueakLanguage.Env env;
     private final SqueakLanguage language;
     private Source lastParseRequestSource;
     @CompilationFinal private PrintWriter output;
     @CompilationFinal private PrintWriter error;
     private final HashMap<Message, NativeObject> interopMessageToSelectorMap = new HashMap<>();
+    private final WeakHashMap<ClassObject, ClassKinds> directInteropKinds = new WeakHashMap<>();
+    public final SymbolTable symbolTable = new SymbolTable(this);
+    /* Layout of the last save, if the image is to be saved incrementally. */
+    ImageSnapshot lastSnapshot;
+    /* Resources to close on dispose (see #registerOnDispose). */
+    private final Set<Closeable> closeOnDispose = Collections.newSetFromMap(new IdentityHashMap<>());
+    private boolean isCloseOnDisposeRegistered;
 
     @CompilationFinal private SqueakImage squeakImage;
+    private boolean isImageLoaded;
+    /* Identifies the image file read at build time when the context was pre-initialized. */
+    private String preinitializedImageStamp;
 
     /* Stack Management */
     private ContextObject interopExceptionThrowingContextPrototype;
@@ -163,6 +193,9 @@ public final class SqueakImageContext {
     @CompilationFinal private ClassObject fractionClass;
     private PointersObject parserSharedInstance;
     private AbstractSqueakObject requestorSharedInstanceOrNil;
+    @CompilationFinal private ClassObject scaledDecimalClass;
+    /* Also set if the image has no ScaledDecimal class, so that the lookup is done only once. */
+    @CompilationFinal private boolean isScaledDecimalClassLookedUp;
     @CompilationFinal private PointersObject scheduler;
     @CompilationFinal private Object smalltalkScope;
     @CompilationFinal private ClassObject wideStringClass;
@@ -175,6 +208,7 @@ public final class SqueakImageContext {
     public String[] dropPluginFileList = new String[0];
     public final JPEGReader jpegReader = new JPEGReader();
     public final Zip zip = new Zip();
+    public final Resolver resolver = new Resolver(this);
 
     /* Error detection for headless execution */
     @CompilationFinal(dimensions = 1) public static final byte[] DEBUG_ERROR_SELECTOR_NAME = "debugError:".getBytes();
@@ -185,11 +219,20 @@ public final class SqueakImageContext {
     public SqueakImageContext(final SqueakLanguage squeakLanguage, final SqueakLanguage.Env environment) {
         language = squeakLanguage;
         patch(environment);
+        initializeFromEnv();
+        initializeMethodCache();
+    }
+
+    private void initializeFromEnv() {
         options = SqueakContextOptions.create(env.getOptions());
         isHeadless = options.isHeadless();
+        primitiveStatistics = options.collectPrimitiveStatistics() ? new PrimitiveStatistics() : null;
+        nonLocalReturnStatistics = options.collectNonLocalReturnStatistics() ? new NonLocalReturnStatistics() : null;
+        sendSiteStatistics = options.collectSendSiteStatistics() ? new SendSiteStatistics() : null;
         interrupt = new CheckForInterruptsState(this);
+        startUpMillis = System.currentTimeMillis();
         allocationReporter = env.lookup(AllocationReporter.class);
-        SqueakMessageInterceptor.enableIfRequested(environment);
+        SqueakMessageInterceptor.enableIfRequested(env);
         final String truffleLanguageHome = language.getTruffleLanguageHome();
         if (truffleLanguageHome != null) {
             homePath = env.getInternalTruffleFile(truffleLanguageHome);
@@ -197,7 +240,6 @@ public final class SqueakImageContext {
             homePath = env.getInternalTruffleFile(options.imagePath()).getParent();
         }
         assert homePath.exists() : "Home directory does not exist: " + homePath;
-        initializeMethodCache();
     }
 
     public static SqueakImageContext get(final Node node) {
@@ -211,8 +253,7 @@ public final class SqueakImageContext {
 
     public void ensureLoaded() {
         if (squeakImage == null) {
-            // Load image.
-            SqueakImageReader.load(this);
+            loadImageIfNecessary();
             if (options.disableStartup()) {
                 printToStdOut("Skipping startup routine...");
                 return;
@@ -256,6 +297,67 @@ public final class SqueakImageContext {
         return squeakImage;
     }
 
+    /** Reads the image unless it was already read when the context was pre-initialized. */
+    @TruffleBoundary
+    public SqueakImage loadImageIfNecessary() {
+        if (!isImageLoaded) {
+            SqueakImageReader.load(this);
+            isImageLoaded = true;
+        }
+        return getSqueakImage();
+    }
+
+    /**
+     * Reads the image while building a native image, so that its objects end up in the image heap
+     * and do not need to be read again on startup. Neither the startup list nor the interrupt
+     * handler are run, which keeps threads and host resources out of the image heap.
+     */
+    @TruffleBoundary
+    public void preinitialize() {
+        if (options.imagePath() == null) {
+            return;
+        }
+        final TruffleFile imageFile = env.getPublicTruffleFile(getImagePath());
+        loadImageIfNecessary();
+        preinitializedImageStamp = getImageStamp(imageFile);
+        squeakImage = null; // Let the runtime image request or ensureLoaded() finish the startup.
+    }
+
+    /** Answers whether this context reuses an image read at build time. */
+    public boolean isPreinitialized() {
+        return preinitializedImageStamp != null;
+    }
+
+    /**
+     * Patches a context that was pre-initialized at build time with the runtime environment. All
+     * state derived from options, including the interrupt handler state, is rebuilt. Answers
+     * false if the runtime image is not the one read at build time, in which case Truffle discards
+     * the pre-initialized context and creates a new one.
+     */
+    @TruffleBoundary
+    public boolean patchPreinitialized(final SqueakLanguage.Env newEnv) {
+        final SqueakContextOptions newOptions = SqueakContextOptions.create(newEnv.getOptions());
+        if (preinitializedImageStamp == null || newOptions.imagePath() == null) {
+            return false;
+        }
+        final String newImagePath = newOptions.imagePath();
+        if (!preinitializedImageStamp.equals(getImageStamp(newEnv.getPublicTruffleFile(newImagePath)))) {
+            return false;
+        }
+        patch(newEnv);
+        initializeFromEnv();
+        setImagePath(newImagePath);
+        return true;
+    }
+
+    private static String getImageStamp(final TruffleFile imageFile) {
+        try {
+            return imageFile.getAbsoluteFile().getPath() + ":" + imageFile.size() + ":" + imageFile.getLastModifiedTime().toMillis();
+        } catch (final IOException | SecurityException e) {
+            return null;
+        }
+    }
+
     @TruffleBoundary
     public Object evaluate(final String sourceCode) {
         return getDoItContextNode(sourceCode, false).getCallTarget().call();
@@ -675,7 +777,7 @@ public final class SqueakImageContext {
         return display != null;
     }
 
-    public SqueakDisplay getDisplay() {
+    public AbstractSqueakDisplay getDisplay() {
         return display;
     }
 
@@ -729,6 +831,9 @@ public final class SqueakImageContext {
         if (!isHeadless) {
             CompilerDirectives.transferToInterpreterAndInvalidate();
             display = SqueakDisplay.create(this);
+        } else if (options.remoteDisplayPort() > 0) {
+            CompilerDirectives.transferToInterpreterAndInvalidate();
+            display = SqueakRemoteDisplay.create(this, options.remoteDisplayPort());
         }
     }
 
@@ -740,6 +845,63 @@ public final class SqueakImageContext {
         if (options.printResourceSummary()) {
             MiscUtils.printResourceSummary(this);
         }
+        if (primitiveStatistics != null) {
+            primitiveStatistics.printTo(this);
+        }
+        if (nonLocalReturnStatistics != null) {
+            nonLocalReturnStatistics.printTo(this);
+        }
+        if (sendSiteStatistics != null) {
+            sendSiteStatistics.printTo(this);
+        }
+        if (options.heapCensusClasses() > 0 && squeakImage != null) {
+            ObjectGraphUtils.census(this).printTo(this, options.heapCensusClasses());
+        }
+    }
+
+    /**
+     * Closes the resource when the context is disposed unless it is unregistered before. In contrast
+     * to Env#registerOnDispose, resources closed early can be unregistered and collected.
+     */
+    @TruffleBoundary
+    public void registerOnDispose(final Closeable resource) {
+        synchronized (closeOnDispose) {
+            if (!isCloseOnDisposeRegistered) {
+                env.registerOnDispose(this::closeRegisteredResources);
+                isCloseOnDisposeRegistered = true;
+            }
+            closeOnDispose.add(resource);
+        }
+    }
+
+    @TruffleBoundary
+    public void unregisterOnDispose(final Closeable resource) {
+        synchronized (closeOnDispose) {
+            closeOnDispose.remove(resource);
+        }
+    }
+
+    private void closeRegisteredResources() throws IOException {
+        final Closeable[] resources;
+        synchronized (closeOnDispose) {
+            resources = closeOnDispose.toArray(new Closeable[0]);
+            closeOnDispose.clear();
+        }
+        IOException firstError = null;
+        for (final Closeable resource : resources) {
+            try {
+                resource.close();
+            } catch (final IOException e) {
+                if (firstError == null) {
+                    firstError = e;
+                } else {
+                    firstError.addSuppressed(e);
+                }
+            }
+        }
+        if (firstError != null) {
+            throw firstError;
+        }
     }
 
     @TruffleBoundary
@@ -793,6 +955,7 @@ public final class SqueakImageContext {
         for (int i = 0; i < METHOD_CACHE_SIZE; i++) {
             methodCache[i].freeAndRelease();
         }
+        flushDispatchTables();
     }
 
     /* Clear cache entries for selector (prim 119). */
@@ -802,6 +965,10 @@ public final class SqueakImageContext {
                 methodCache[i].freeAndRelease();
             }
         }
+        final SelectorDispatchTable dispatchTable = dispatchTables.get(selector);
+        if (dispatchTable != null) {
+            dispatchTable.flush();
+        }
     }
 
     /* Clear cache entries for method (prim 116). */
@@ -811,6 +978,7 @@ public final class SqueakImageContext {
                 methodCache[i].freeAndRelease();
             }
         }
+        flushDispatchTables();
     }
 
     public void flushMethodCacheAfterBecome() {
@@ -818,6 +986,26 @@ public final class SqueakImageContext {
         flushMethodCache();
     }
 
+    /*
+     * Answers the class table shared by all megamorphic send sites of selector, or null if the
+     * dispatch-tables option is disabled. Entries guard themselves with methodDictStable and
+     * classHierarchyStable assumptions, flushing only releases methods early. Tables are held
+     * weakly by their selector, so that they go away with selectors that are no longer sent.
+     */
+    @TruffleBoundary
+    public SelectorDispatchTable getDispatchTableOrNull(final NativeObject selector) {
+        if (!options.useDispatchTables()) {
+            return null;
+        }
+        return dispatchTables.computeIfAbsent(selector, s -> new SelectorDispatchTable());
+    }
+
+    private void flushDispatchTables() {
+        for (final SelectorDispatchTable dispatchTable : dispatchTables.values()) {
+            dispatchTable.flush();
+        }
+    }
+
     /*
      * CLASS CHECKS
      */
@@ -886,7 +1074,7 @@ public final class SqueakImageContext {
         return ArrayObject.createWithStorage(this, arrayClass, elements);
     }
 
-    public PointersObject asFraction(final long numerator, final long denominator, final AbstractPointersObjectWriteNode writeNode, final Node inlineTarget) {
+    public ClassObject getFractionClass() {
         if (fractionClass == null) {
             CompilerDirectives.transferToInterpreterAndInvalidate();
             final Object fractionLookup = lookup("Fraction");
@@ -896,6 +1084,36 @@ public final class SqueakImageContext {
                 throw SqueakException.create("Unable to find Fraction class");
             }
         }
+        return fractionClass;
+    }
+
+    public void setFractionClass(final ClassObject classObject) {
+        CompilerDirectives.transferToInterpreterAndInvalidate();
+        assert fractionClass == null;
+        fractionClass = classObject;
+    }
+
+    /** Answers the ScaledDecimal class, or {@code null} if the image does not have one. */
+    public ClassObject getScaledDecimalClass() {
+        if (!isScaledDecimalClassLookedUp) {
+            CompilerDirectives.transferToInterpreterAndInvalidate();
+            if (lookup("ScaledDecimal") instanceof final ClassObject c) {
+                scaledDecimalClass = c;
+            }
+            isScaledDecimalClassLookedUp = true;
+        }
+        return scaledDecimalClass;
+    }
+
+    public void setScaledDecimalClass(final ClassObject classObject) {
+        CompilerDirectives.transferToInterpreterAndInvalidate();
+        assert !isScaledDecimalClassLookedUp;
+        scaledDecimalClass = classObject;
+        isScaledDecimalClassLookedUp = true;
+    }
+
+    public PointersObject asFraction(final long numerator, final long denominator, final AbstractPointersObjectWriteNode writeNode, final Node inlineTarget) {
+        final ClassObject klass = getFractionClass();
         final long actualNumerator;
         final long actualDenominator;
         if (denominator < 0) { // "keep sign in numerator"
@@ -913,7 +1131,7 @@ public final class SqueakImageContext {
         }
         final long gcd = Math.abs(m);
         // Instantiate reduced fraction
-        final PointersObject fraction = new PointersObject(this, fractionClass, fractionClass.getLayout());
+        final PointersObject fraction = new PointersObject(this, klass, klass.getLayout());
         writeNode.execute(inlineTarget, fraction, FRACTION.NUMERATOR, actualNumerator / gcd);
         writeNode.execute(inlineTarget, fraction, FRACTION.DENOMINATOR, actualDenominator / gcd);
         return fraction;
@@ -927,9 +1145,15 @@ public final class SqueakImageContext {
         return NativeObject.newNativeBytes(this, byteStringClass, MiscUtils.stringToBytes(value));
     }
 
+    @TruffleBoundary
     public NativeObject asByteSymbol(final String value) {
-        CompilerAsserts.neverPartOfCompilation();
-        return (NativeObject) asByteString(value).send(this, "asSymbol");
+        final NativeObject knownSymbol = symbolTable.lookupOrNull(value);
+        if (knownSymbol != null) {
+            return knownSymbol;
+        }
+        final NativeObject symbol = (NativeObject) asByteString(value).send(this, "asSymbol");
+        symbolTable.register(symbol);
+        return symbol;
     }
 
     public NativeObject asWideString(final String value) {
@@ -967,26 +1191,45 @@ public final class SqueakImageContext {
     @TruffleBoundary
     public NativeObject toInteropSelector(final Message message) {
         assert message.getLibraryClass() == InteropLibrary.class;
-        return interopMessageToSelectorMap.computeIfAbsent(message, m -> {
-            final String libraryName = message.getLibraryClass().getSimpleName();
-            assert libraryName.endsWith("Library");
-            final String libraryPrefix = libraryName.substring(0, 1).toLowerCase() + libraryName.substring(1, libraryName.length() - 7);
-            final String messageName = message.getSimpleName();
-            final String messageCapitalized = messageName.substring(0, 1).toUpperCase() + messageName.substring(1);
-            final String suffix;
-            switch (message.getParameterCount()) {
-                case 1 -> suffix = "";
-                case 2 -> suffix = ":";
-                default -> {
-                    final StringBuilder sb = new StringBuilder(":");
-                    for (int i = 0; i < message.getParameterCount() - 2; i++) {
-                        sb.append("and:");
-                    }
-                    suffix = sb.toString();
+        return interopMessageToSelectorMap.computeIfAbsent(message, m -> asByteSymbol(toInteropSelectorName(m)));
+    }
+
+    /*
+     * Answers the kinds of direct interop messages for instances of classObject. They are held
+     * weakly by their class and recomputed once a method dictionary in its hierarchy changes.
+     */
+    @TruffleBoundary
+    public ClassKinds getDirectInteropKinds(final ClassObject classObject) {
+        synchronized (directInteropKinds) {
+            ClassKinds kinds = directInteropKinds.get(classObject);
+            if (kinds == null || !kinds.isValid()) {
+                kinds = new ClassKinds(classObject);
+                directInteropKinds.put(classObject, kinds);
+            }
+            return kinds;
+        }
+    }
+
+    /** Answers the name of the selector for an interop message, e.g., interopReadArrayElement:. */
+    public static String toInteropSelectorName(final Message message) {
+        final String libraryName = message.getLibraryClass().getSimpleName();
+        assert libraryName.endsWith("Library");
+        final String libraryPrefix = libraryName.substring(0, 1).toLowerCase() + libraryName.substring(1, libraryName.length() - 7);
+        final String messageName = message.getSimpleName();
+        final String messageCapitalized = messageName.substring(0, 1).toUpperCase() + messageName.substring(1);
+        final String suffix;
+        switch (message.getParameterCount()) {
+            case 1 -> suffix = "";
+            case 2 -> suffix = ":";
+            default -> {
+                final StringBuilder sb = new StringBuilder(":");
+                for (int i = 0; i < message.getParameterCount() - 2; i++) {
+                    sb.append("and:");
                 }
+                suffix = sb.toString();
             }
-            return asByteSymbol(libraryPrefix + messageCapitalized + suffix);
-        });
+        }
+        return libraryPrefix + messageCapitalized + suffix;
     }
 
     /*
@@ -7,13 +7,18 @@
 package de.hpi.swa.trufflesqueak.image;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.HashMap;
 
@@ -38,10 +43,27 @@ import de.hpi.swa.trufflesqueak.util.MiscUtils;
 import de.hpi.swa.trufflesqueak.util.ObjectGraphUtils;
 import de.hpi.swa.trufflesqueak.util.VarHandleUtils;
 
+/**
+ * Writes the image as a single Spur segment. By default, all objects are retraced and the whole
+ * file is rewritten. With the incremental-save option, saving to the same file again keeps the oop
+ * of each object whose size is unchanged (see {@link ImageSnapshot}), appends new and resized
+ * objects, turns vacated chunks into free chunks, and only rewrites chunks whose serialized bytes
+ * differ from the previous file. Once more than a quarter of the heap is free, the next save is a
+ * full one again, which compacts the image. Either way, the image is written to a temporary file
+ * next to it, which then replaces the image, so that a failed save does not corrupt it.
+ */
 public final class SqueakImageWriter {
     private final SqueakImageContext image;
     private final NativeObject freeList;
-    private final BufferedOutputStream stream;
+    private final TruffleFile truffleFile;
+    private final TruffleFile tempFile;
+    /* Contents of the previous file, for incremental saves. */
+    private final byte[] previousBytes;
+    private final ImageSnapshot previousSnapshot;
+    private ImageSnapshot nextSnapshot;
+    private OutputStream stream;
+    private SeekableByteChannel channel;
+    private final ChunkBuffer chunkBuffer;
     private final byte[] byteArrayBuffer = new byte[Long.BYTES];
     private final HashMap<AbstractSqueakObjectWithClassAndHash, Long> oopMap = new HashMap<>(ObjectGraphUtils.getLastSeenObjects());
     private final ArrayList<AbstractSqueakObjectWithClassAndHash> allTracedObjects = new ArrayList<>(ObjectGraphUtils.getLastSeenObjects());
@@ -51,6 +73,8 @@ public final class SqueakImageWriter {
     private long position;
     private long nextChunk;
     private long nextChunkAfterTracing;
+    private long freeOldSpace;
+    private int numWrittenObjects;
 
     private long nilOop;
     private long falseOop;
@@ -59,10 +83,22 @@ public final class SqueakImageWriter {
     private long freeListOop;
     private long hiddenRootsOop;
 
-    private SqueakImageWriter(final SqueakImageContext image) throws IOException {
+    private SqueakImageWriter(final SqueakImageContext image, final ImageSnapshot previousSnapshot) throws IOException {
         this.image = image;
-        final TruffleFile truffleFile = image.env.getPublicTruffleFile(image.getImagePath());
-        stream = new BufferedOutputStream(truffleFile.newOutputStream());
+        this.previousSnapshot = previousSnapshot;
+        truffleFile = image.env.getPublicTruffleFile(image.getImagePath());
+        tempFile = truffleFile.resolveSibling(truffleFile.getName() + ".saving");
+        if (previousSnapshot == null) {
+            previousBytes = null;
+            stream = new BufferedOutputStream(tempFile.newOutputStream());
+            chunkBuffer = null;
+        } else {
+            previousBytes = truffleFile.readAllBytes();
+            truffleFile.copy(tempFile, StandardCopyOption.REPLACE_EXISTING);
+            channel = tempFile.newByteChannel(EnumSet.of(StandardOpenOption.WRITE, StandardOpenOption.READ));
+            chunkBuffer = new ChunkBuffer();
+            stream = chunkBuffer;
+        }
         freeList = NativeObject.newNativeLongs(image, image.nilClass /* ignored */, SqueakImageConstants.NUM_FREE_LISTS);
     }
 
@@ -71,8 +107,10 @@ public final class SqueakImageWriter {
      */
     @TruffleBoundary
     public static void write(final SqueakImageContext image, final ContextObject thisContext) {
+        final ImageSnapshot previousSnapshot = ImageSnapshot.usableOrNull(image, image.lastSnapshot);
+        image.lastSnapshot = null;
         try {
-            new SqueakImageWriter(image).run(thisContext);
+            image.lastSnapshot = new SqueakImageWriter(image, previousSnapshot).run(thisContext);
         } catch (final IOException e) {
             e.printStackTrace();
         }
@@ -82,7 +120,7 @@ public final class SqueakImageWriter {
         return image;
     }
 
-    private void run(final ContextObject thisContext) {
+    private ImageSnapshot run(final ContextObject thisContext) throws IOException {
         final long start = MiscUtils.currentTimeMillis();
         nextChunk = image.flags.getOldBaseAddress();
         final PointersObject activeProcess = image.getActiveProcessSlow();
@@ -90,16 +128,42 @@ public final class SqueakImageWriter {
             /* Mark thisContext as suspended during tracing and writing. */
             AbstractPointersObjectWriteNode.executeUncached(activeProcess, PROCESS.SUSPENDED_CONTEXT, thisContext);
             traceObjects();
-            writeImageHeader();
-            writeBody();
+            image.symbolTable.reset();
+            if (image.options.saveIncrementally()) {
+                nextSnapshot = new ImageSnapshot(image.getImagePath(), allTracedObjects.size());
+            }
+            if (previousSnapshot == null) {
+                writeImageHeader();
+                writeBody();
+            } else {
+                writeChangedChunks();
+            }
+        } catch (final IOException | RuntimeException e) {
+            closeStream();
+            tempFile.delete();
+            throw e;
         } finally {
             /* Unmark thisContext as suspended. */
             AbstractPointersObjectWriteNode.executeUncached(activeProcess, PROCESS.SUSPENDED_CONTEXT, NilObject.SINGLETON);
-            closeStream();
-            finalizeImageHeader();
         }
+        closeStream();
+        finalizeImageHeader();
+        replaceImageFile();
         final double fileSize = Math.ceil((double) position / 1024 / 1024 * 100) / 100;
-        image.printToStdOut("Image saved in " + (MiscUtils.currentTimeMillis() - start) + "ms (" + fileSize + "MiB).");
+        if (previousSnapshot == null) {
+            image.printToStdOut("Image saved in " + (MiscUtils.currentTimeMillis() - start) + "ms (" + fileSize + "MiB).");
+        } else {
+            final double freeSize = Math.ceil((double) freeOldSpace / 1024 / 1024 * 100) / 100;
+            image.printToStdOut("Image saved incrementally in " + (MiscUtils.currentTimeMillis() - start) + "ms (" + numWrittenObjects + " of " + allTracedObjects.size() +
+                            " objects written, " + fileSize + "MiB, " + freeSize + "MiB free).");
+        }
+        if (nextSnapshot != null) {
+            nextSnapshot.end = nextChunk;
+            nextSnapshot.boxedStart = nextChunkAfterTracing;
+            nextSnapshot.freeBytes = freeOldSpace;
+            nextSnapshot.recordFile(truffleFile);
+        }
+        return nextSnapshot;
     }
 
     private void writeImageHeader() {
@@ -121,7 +185,7 @@ public final class SqueakImageWriter {
         writeInt(0); // max ext semaphore size << 16
         assert position == SqueakImageConstants.IMAGE_HEADER_FIRST_FRAGMENT_SIZE_POSITION;
         writeLong(0); // first segment size (yet unknown, see finalizeFileHeader)
-        writeLong(0); // free old space in image
+        writeLong(freeOldSpace); // free old space in image
         writePadding((int) (SqueakImageConstants.IMAGE_HEADER_SIZE - position)); /* Skip to body. */
     }
 
@@ -141,6 +205,10 @@ public final class SqueakImageWriter {
          * individually.
          */
         allTracedObjects.clear();
+        if (previousSnapshot != null) {
+            /* Keep previous chunks where possible and append everything else. */
+            nextChunk = previousSnapshot.end;
+        }
         specialObjectOop = reserve(image.specialObjectsArray);
 
         AbstractSqueakObjectWithClassAndHash currentObject;
@@ -184,7 +252,11 @@ public final class SqueakImageWriter {
         AbstractSqueakObjectWithClassAndHash previousObject = image.getHiddenRoots();
         for (final AbstractSqueakObjectWithClassAndHash currentObject : allTracedObjects) {
             assert correctPosition(currentObject) : "Previous object was not written correctly: " + previousObject;
+            final long chunkStart = currentOop();
             currentObject.write(this);
+            if (nextSnapshot != null) {
+                nextSnapshot.add(currentObject, chunkStart, (int) (currentOop() - chunkStart));
+            }
             previousObject = currentObject;
         }
         assert currentOop() == nextChunkAfterTracing;
@@ -198,6 +270,113 @@ public final class SqueakImageWriter {
         writePadding(SqueakImageConstants.IMAGE_BRIDGE_SIZE);
     }
 
+    /**
+     * Writes the first objects, all chunks whose bytes differ from the previous file, free chunks
+     * over vacated chunks, and the final bridge into a copy of the previous file.
+     */
+    private void writeChangedChunks() throws IOException {
+        final long oldBaseAddress = image.flags.getOldBaseAddress();
+        /* Free vacated chunks and the previous boxed objects, which are allocated anew. */
+        previousSnapshot.forEachFreedRange(this::chunkStartOrNegative, this::writeFreeChunk);
+
+        beginChunk(oldBaseAddress);
+        NilObject.SINGLETON.write(this);
+        BooleanObject.write(this, false);
+        BooleanObject.write(this, true);
+        freeList.writeAsFreeList(this);
+        image.getHiddenRoots().writeAsHiddenRoots(this);
+        flushChunk();
+        for (final AbstractSqueakObjectWithClassAndHash currentObject : allTracedObjects) {
+            final long chunkStart = chunkStartOrNegative(currentObject);
+            beginChunk(chunkStart);
+            currentObject.write(this);
+            assert currentOop() - chunkStart == chunkLength(currentObject) : "Object was not written correctly: " + currentObject;
+            if (!isChunkUnchanged()) {
+                flushChunk();
+                numWrittenObjects++;
+            }
+            if (nextSnapshot != null) {
+                nextSnapshot.add(currentObject, chunkStart, (int) (currentOop() - chunkStart));
+            }
+        }
+        /* Write additional large integers and boxed floats (allocated while writing). */
+        beginChunk(nextChunkAfterTracing);
+        for (int i = 0; i < additionalBoxedObjects.size(); i++) {
+            additionalBoxedObjects.get(i).write(this);
+        }
+        assert currentOop() == nextChunk;
+        /* Write last bridge. */
+        writePadding(SqueakImageConstants.IMAGE_BRIDGE_SIZE);
+        flushChunk();
+
+        beginChunk(oldBaseAddress);
+        position = 0;
+        writeImageHeader();
+        flushChunk();
+        position = nextChunk - oldBaseAddress + SqueakImageConstants.IMAGE_HEADER_SIZE + SqueakImageConstants.IMAGE_BRIDGE_SIZE;
+        channel.truncate(position);
+    }
+
+    private long chunkStartOrNegative(final AbstractSqueakObjectWithClassAndHash object) {
+        final Long oop = oopMap.get(object);
+        if (oop == null) {
+            return -1;
+        }
+        return oop - (object.getNumSlots() < SqueakImageConstants.OVERFLOW_SLOTS ? 0 : SqueakImageConstants.WORD_SIZE);
+    }
+
+    /** Turns a freed range into a free chunk by overwriting its first header. */
+    private void writeFreeChunk(final long rangeStart, final long rangeLength) {
+        freeOldSpace += rangeLength;
+        if (nextSnapshot != null) {
+            nextSnapshot.addFreeRange(rangeStart, rangeLength);
+        }
+        long start = rangeStart;
+        long numSlots = rangeLength / SqueakImageConstants.WORD_SIZE - 1;
+        beginChunk(start);
+        if (numSlots == SqueakImageConstants.OVERFLOW_SLOTS) {
+            /* Cannot be encoded with either header, so split off a free chunk of one slot. */
+            writeFreeChunkHeader(1);
+            start += 2 * SqueakImageConstants.WORD_SIZE;
+            numSlots -= 2;
+            flushChunk();
+            beginChunk(start);
+        }
+        if (numSlots > SqueakImageConstants.OVERFLOW_SLOTS) {
+            writeLong(numSlots - 1 | SqueakImageConstants.SLOTS_MASK);
+            writeFreeChunkHeader(SqueakImageConstants.OVERFLOW_SLOTS);
+        } else {
+            writeFreeChunkHeader(numSlots);
+        }
+        flushChunk();
+    }
+
+    private void writeFreeChunkHeader(final long numSlots) {
+        writeObjectHeader(numSlots, 0, 0, 0, SqueakImageConstants.FREE_OBJECT_CLASS_INDEX_PUN);
+    }
+
+    private void beginChunk(final long chunkStart) {
+        chunkBuffer.reset();
+        position = chunkStart - image.flags.getOldBaseAddress() + SqueakImageConstants.IMAGE_HEADER_SIZE;
+    }
+
+    /* Answers whether the previous file already holds the bytes of the current chunk. */
+    private boolean isChunkUnchanged() {
+        final int chunkSize = chunkBuffer.size();
+        final long chunkPosition = position - chunkSize;
+        return position <= previousBytes.length && chunkBuffer.contentEquals(previousBytes, (int) chunkPosition);
+    }
+
+    private void flushChunk() {
+        final long chunkPosition = position - chunkBuffer.size();
+        try {
+            channel.position(chunkPosition);
+            channel.write(chunkBuffer.asByteBuffer());
+        } catch (final IOException e) {
+            throw SqueakException.create("Failed to write chunk:", e.getMessage());
+        }
+    }
+
     private boolean correctPosition(final AbstractSqueakObjectWithClassAndHash currentObject) {
         final int offset = currentObject.getNumSlots() < SqueakImageConstants.OVERFLOW_SLOTS ? 0 : SqueakImageConstants.WORD_SIZE;
         return currentOop() + offset == oopMap.get(currentObject);
@@ -208,22 +387,29 @@ public final class SqueakImageWriter {
      * the image header is written. This updates both values in the header accordingly.
      */
     private void finalizeImageHeader() {
-        final TruffleFile truffleFile = image.env.getPublicTruffleFile(image.getImagePath());
-        assert truffleFile.exists();
+        assert tempFile.exists();
         try {
             final EnumSet<StandardOpenOption> options = EnumSet.of(StandardOpenOption.WRITE, StandardOpenOption.READ);
-            try (SeekableByteChannel channel = truffleFile.newByteChannel(options)) {
+            try (SeekableByteChannel headerChannel = tempFile.newByteChannel(options)) {
                 VarHandleUtils.putLong(byteArrayBuffer, 0, position - SqueakImageConstants.IMAGE_HEADER_SIZE);
-                channel.position(SqueakImageConstants.IMAGE_HEADER_MEMORY_SIZE_POSITION);
-                channel.write(ByteBuffer.wrap(byteArrayBuffer));
-                channel.position(SqueakImageConstants.IMAGE_HEADER_FIRST_FRAGMENT_SIZE_POSITION);
-                channel.write(ByteBuffer.wrap(byteArrayBuffer));
+                headerChannel.position(SqueakImageConstants.IMAGE_HEADER_MEMORY_SIZE_POSITION);
+                headerChannel.write(ByteBuffer.wrap(byteArrayBuffer));
+                headerChannel.position(SqueakImageConstants.IMAGE_HEADER_FIRST_FRAGMENT_SIZE_POSITION);
+                headerChannel.write(ByteBuffer.wrap(byteArrayBuffer));
             }
         } catch (final IOException e) {
             e.printStackTrace();
         }
     }
 
+    private void replaceImageFile() throws IOException {
+        try {
+            tempFile.move(truffleFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException e) {
+            tempFile.move(truffleFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
     private long currentOop() {
         return image.flags.getOldBaseAddress() + position - SqueakImageConstants.IMAGE_HEADER_SIZE;
     }
@@ -257,14 +443,24 @@ public final class SqueakImageWriter {
         }
     }
 
-    private long reserve(final AbstractSqueakObjectWithClassAndHash object) {
+    private static int chunkLength(final AbstractSqueakObjectWithClassAndHash object) {
         final int numSlots = object.getNumSlots();
         final int padding = SqueakImageReader.calculateObjectPadding(object.getSqueakClass().getInstanceSpecification());
-
         final int headerSlots = numSlots < SqueakImageConstants.OVERFLOW_SLOTS ? 1 : 2;
-        final int offset = (headerSlots - 1) * SqueakImageConstants.WORD_SIZE;
-        final long oop = nextChunk + offset;
-        nextChunk += (headerSlots + Math.max(numSlots, 1 /* at least an alignment word */)) * SqueakImageConstants.WORD_SIZE + padding;
+        return (headerSlots + Math.max(numSlots, 1 /* at least an alignment word */)) * SqueakImageConstants.WORD_SIZE + padding;
+    }
+
+    private long reserve(final AbstractSqueakObjectWithClassAndHash object) {
+        final int offset = object.getNumSlots() < SqueakImageConstants.OVERFLOW_SLOTS ? 0 : SqueakImageConstants.WORD_SIZE;
+        final int chunkLength = chunkLength(object);
+        final long previousChunk = previousSnapshot == null ? -1 : previousSnapshot.lookUpChunk(object, chunkLength);
+        final long oop;
+        if (previousChunk >= 0) {
+            oop = previousChunk + offset;
+        } else {
+            oop = nextChunk + offset;
+            nextChunk += chunkLength;
+        }
 
         assert !oopMap.containsKey(object);
         oopMap.put(object, oop);
@@ -424,8 +620,26 @@ public final class SqueakImageWriter {
     private void closeStream() {
         try {
             stream.close();
+            if (channel != null) {
+                channel.close();
+            }
         } catch (final IOException e) {
             throw SqueakException.create("Failed to close file:", e.getMessage());
         }
     }
+
+    /** Collects the bytes of one chunk (or a run of adjacent chunks) for a positional write. */
+    private static final class ChunkBuffer extends ByteArrayOutputStream {
+        private ChunkBuffer() {
+            super(1024);
+        }
+
+        private ByteBuffer asByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+
+        private boolean contentEquals(final byte[] bytes, final int offset) {
+            return Arrays.equals(buf, 0, count, bytes, offset, offset + count);
+        }
+    }
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2017-2024 Software Architecture Group, Hasso Plattner Institute
+ * Copyright (c) 2021-2024 Oracle and/or its affiliates
+ *
+ * Licensed under the MIT License.
+ */
+package de.hpi.swa.trufflesqueak.image;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+
+import de.hpi.swa.trufflesqueak.interop.LookupMethodByStringNode;
+import de.hpi.swa.trufflesqueak.model.ArrayObject;
+import de.hpi.swa.trufflesqueak.model.ClassObject;
+import de.hpi.swa.trufflesqueak.model.CompiledCodeObject;
+import de.hpi.swa.trufflesqueak.model.NativeObject;
+import de.hpi.swa.trufflesqueak.nodes.accessing.ArrayObjectNodes.ArrayObjectToObjectArrayCopyNode;
+import de.hpi.swa.trufflesqueak.util.MiscUtils;
+
+/**
+ * Mirrors the image's table of ByteSymbols, so that Java strings can be converted to symbols
+ * without sending #asSymbol. The table is seeded from the image's own symbol table (Symbol
+ * class>>#allSymbols) on first use, so it only ever holds interned symbols, even if other
+ * ByteSymbols of the same name exist. It learns symbols interned through
+ * {@link SqueakImageContext#asByteSymbol(String)} and is dropped whenever the image is saved, to be
+ * seeded again on next use. Like the image's symbol table, it only holds symbols weakly. Symbols the
+ * image interns on its own are not seen until the table is seeded again, and a hit is only answered
+ * if it is still a ByteSymbol of that name (e.g., after #become:), so a miss simply falls back to
+ * sending #asSymbol.
+ */
+public final class SymbolTable {
+    private final SqueakImageContext image;
+    private volatile ConcurrentHashMap<String, WeakReference<NativeObject>> symbols;
+
+    public SymbolTable(final SqueakImageContext image) {
+        this.image = image;
+    }
+
+    /** Answers the ByteSymbol named {@code name}, or {@code null} if it is not (yet) known. */
+    @TruffleBoundary
+    public NativeObject lookupOrNull(final String name) {
+        final WeakReference<NativeObject> reference = getSymbols().get(name);
+        final NativeObject symbol = reference == null ? null : reference.get();
+        if (symbol != null && image.isByteSymbolClass(symbol.getSqueakClass()) && Arrays.equals(symbol.getByteStorage(), MiscUtils.stringToBytes(name))) {
+            return symbol;
+        }
+        return null;
+    }
+
+    /* WideSymbols are not mirrored. */
+    @TruffleBoundary
+    public void register(final NativeObject symbol) {
+        if (image.isByteSymbolClass(symbol.getSqueakClass())) {
+            getSymbols().put(symbol.asStringUnsafe(), new WeakReference<>(symbol));
+        }
+    }
+
+    /** Drops all entries, e.g., when the image is saved. The table is seeded again on next use. */
+    public void reset() {
+        symbols = null;
+    }
+
+    private ConcurrentHashMap<String, WeakReference<NativeObject>> getSymbols() {
+        ConcurrentHashMap<String, WeakReference<NativeObject>> currentSymbols = symbols;
+        if (currentSymbols == null) {
+            synchronized (this) {
+                currentSymbols = symbols;
+                if (currentSymbols == null) {
+                    currentSymbols = new ConcurrentHashMap<>();
+                    seed(currentSymbols);
+                    symbols = currentSymbols;
+                }
+            }
+        }
+        return currentSymbols;
+    }
+
+    /* Adds the ByteSymbols of the image's symbol table, unless the image cannot answer them. */
+    private void seed(final ConcurrentHashMap<String, WeakReference<NativeObject>> newSymbols) {
+        final ClassObject byteSymbolClass = image.getByteSymbolClass();
+        if (!(LookupMethodByStringNode.executeUncached(byteSymbolClass.getSqueakClass(), "allSymbols") instanceof CompiledCodeObject) ||
+                        !(byteSymbolClass.send(image, "allSymbols") instanceof final ArrayObject allSymbols)) {
+            return;
+        }
+        for (final Object each : ArrayObjectToObjectArrayCopyNode.executeUncached(allSymbols)) {
+            if (each instanceof final NativeObject symbol && symbol.getSqueakClass() == byteSymbolClass) {
+                newSymbols.put(symbol.asStringUnsafe(), new WeakReference<>(symbol));
+            }
+        }
+    }
+}
@@ -0,0 +1,533 @@
+/*
+ * Copyright (c) 2017-2024 Software Architecture Group, Hasso Plattner Institute
+ * Copyright (c) 2021-2024 Oracle and/or its affiliates
+ *
+ * Licensed under the MIT License.
+ */
+package de.hpi.swa.trufflesqueak.interop;
+
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.graalvm.collections.EconomicMap;
+
+import com.oracle.truffle.api.Assumption;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.dsl.Cached;
+import com.oracle.truffle.api.dsl.Cached.Shared;
+import com.oracle.truffle.api.dsl.GenerateCached;
+import com.oracle.truffle.api.dsl.GenerateInline;
+import com.oracle.truffle.api.dsl.GenerateUncached;
+import com.oracle.truffle.api.dsl.Specialization;
+import com.oracle.truffle.api.interop.InteropLibrary;
+import com.oracle.truffle.api.interop.InvalidArrayIndexException;
+import com.oracle.truffle.api.interop.InvalidBufferOffsetException;
+import com.oracle.truffle.api.interop.UnsupportedMessageException;
+import com.oracle.truffle.api.interop.UnsupportedTypeException;
+import com.oracle.truffle.api.library.Message;
+import com.oracle.truffle.api.nodes.Node;
+
+import de.hpi.swa.trufflesqueak.image.SqueakImageContext;
+import de.hpi.swa.trufflesqueak.model.AbstractSqueakObject;
+import de.hpi.swa.trufflesqueak.model.ArrayObject;
+import de.hpi.swa.trufflesqueak.model.ClassObject;
+import de.hpi.swa.trufflesqueak.model.NativeObject;
+import de.hpi.swa.trufflesqueak.model.PointersObject;
+import de.hpi.swa.trufflesqueak.model.VariablePointersObject;
+import de.hpi.swa.trufflesqueak.nodes.AbstractNode;
+import de.hpi.swa.trufflesqueak.nodes.accessing.AbstractPointersObjectNodes.AbstractPointersObjectReadNode;
+import de.hpi.swa.trufflesqueak.nodes.accessing.AbstractPointersObjectNodes.AbstractPointersObjectWriteNode;
+import de.hpi.swa.trufflesqueak.nodes.accessing.ArrayObjectNodes.ArrayObjectReadNode;
+import de.hpi.swa.trufflesqueak.nodes.accessing.ArrayObjectNodes.ArrayObjectSizeNode;
+import de.hpi.swa.trufflesqueak.nodes.accessing.ArrayObjectNodes.ArrayObjectWriteNode;
+import de.hpi.swa.trufflesqueak.nodes.accessing.SqueakObjectClassNode;
+
+/**
+ * Answers array and string messages of {@link InteropLibrary} for Arrays, ByteArrays, and
+ * ByteStrings, ByteSymbols, and WideStrings directly from their storage instead of sending the
+ * corresponding message (e.g., #interopReadArrayElement:) in Smalltalk. Only instances of exactly
+ * these classes are handled, so subclasses keep their Smalltalk implementations, and a class that
+ * defines an interop method itself overrides the direct implementation of that message. All other
+ * messages answer {@link #NOT_HANDLED} and are sent in Smalltalk. The buffer messages are answered
+ * for all {@link NativeObject}s, whose byte, short, int, or long storage is exposed as raw memory
+ * in native byte order. Symbols are exposed as read-only buffers, so that writes cannot break their
+ * identity in the symbol table. Type checks such as isNull or isNumber are answered with false for the
+ * handled classes, so that their answers stay consistent with the direct string and array messages.
+ * Instance variables of {@link PointersObject}s are read and written as members by name, unless the
+ * class understands a selector of the same name or a class below the image's generic implementation
+ * redefines the member message, and such objects answer hasMembers with true. All other members are
+ * still answered in Smalltalk. Megamorphic sites look up the kinds of a class in {@link ClassKinds},
+ * which are valid as long as the method dictionaries of the class and its superclasses are.
+ */
+@GenerateInline
+@GenerateUncached
+@GenerateCached(false)
+public abstract class DirectInteropSendNode extends AbstractNode {
+    public static final Object NOT_HANDLED = new Object();
+
+    private static final Message HAS_ARRAY_ELEMENTS = Message.resolve(InteropLibrary.class, "hasArrayElements");
+    private static final Message GET_ARRAY_SIZE = Message.resolve(InteropLibrary.class, "getArraySize");
+    private static final Message IS_ARRAY_ELEMENT_READABLE = Message.resolve(InteropLibrary.class, "isArrayElementReadable");
+    private static final Message IS_ARRAY_ELEMENT_MODIFIABLE = Message.resolve(InteropLibrary.class, "isArrayElementModifiable");
+    private static final Message IS_ARRAY_ELEMENT_INSERTABLE = Message.resolve(InteropLibrary.class, "isArrayElementInsertable");
+    private static final Message IS_ARRAY_ELEMENT_REMOVABLE = Message.resolve(InteropLibrary.class, "isArrayElementRemovable");
+    private static final Message READ_ARRAY_ELEMENT = Message.resolve(InteropLibrary.class, "readArrayElement");
+    private static final Message WRITE_ARRAY_ELEMENT = Message.resolve(InteropLibrary.class, "writeArrayElement");
+    private static final Message HAS_BUFFER_ELEMENTS = Message.resolve(InteropLibrary.class, "hasBufferElements");
+    private static final Message IS_BUFFER_WRITABLE = Message.resolve(InteropLibrary.class, "isBufferWritable");
+    private static final Message GET_BUFFER_SIZE = Message.resolve(InteropLibrary.class, "getBufferSize");
+    private static final Message READ_BUFFER = Message.resolve(InteropLibrary.class, "readBuffer");
+    private static final Message READ_BUFFER_BYTE = Message.resolve(InteropLibrary.class, "readBufferByte");
+    private static final Message WRITE_BUFFER_BYTE = Message.resolve(InteropLibrary.class, "writeBufferByte");
+    private static final Message READ_BUFFER_SHORT = Message.resolve(InteropLibrary.class, "readBufferShort");
+    private static final Message WRITE_BUFFER_SHORT = Message.resolve(InteropLibrary.class, "writeBufferShort");
+    private static final Message READ_BUFFER_INT = Message.resolve(InteropLibrary.class, "readBufferInt");
+    private static final Message WRITE_BUFFER_INT = Message.resolve(InteropLibrary.class, "writeBufferInt");
+    private static final Message READ_BUFFER_LONG = Message.resolve(InteropLibrary.class, "readBufferLong");
+    private static final Message WRITE_BUFFER_LONG = Message.resolve(InteropLibrary.class, "writeBufferLong");
+    private static final Message READ_BUFFER_FLOAT = Message.resolve(InteropLibrary.class, "readBufferFloat");
+    private static final Message WRITE_BUFFER_FLOAT = Message.resolve(InteropLibrary.class, "writeBufferFloat");
+    private static final Message READ_BUFFER_DOUBLE = Message.resolve(InteropLibrary.class, "readBufferDouble");
+    private static final Message WRITE_BUFFER_DOUBLE = Message.resolve(InteropLibrary.class, "writeBufferDouble");
+    private static final Message IS_STRING = Message.resolve(InteropLibrary.class, "isString");
+    private static final Message AS_STRING = Message.resolve(InteropLibrary.class, "asString");
+    private static final Message IS_NULL = Message.resolve(InteropLibrary.class, "isNull");
+    private static final Message IS_BOOLEAN = Message.resolve(InteropLibrary.class, "isBoolean");
+    private static final Message IS_NUMBER = Message.resolve(InteropLibrary.class, "isNumber");
+    private static final Message IS_DATE = Message.resolve(InteropLibrary.class, "isDate");
+    private static final Message IS_TIME = Message.resolve(InteropLibrary.class, "isTime");
+    private static final Message IS_TIME_ZONE = Message.resolve(InteropLibrary.class, "isTimeZone");
+    private static final Message IS_DURATION = Message.resolve(InteropLibrary.class, "isDuration");
+    private static final Message IS_META_OBJECT = Message.resolve(InteropLibrary.class, "isMetaObject");
+    private static final Message IS_ITERATOR = Message.resolve(InteropLibrary.class, "isIterator");
+    private static final Message HAS_MEMBERS = Message.resolve(InteropLibrary.class, "hasMembers");
+    private static final Message IS_MEMBER_READABLE = Message.resolve(InteropLibrary.class, "isMemberReadable");
+    private static final Message IS_MEMBER_MODIFIABLE = Message.resolve(InteropLibrary.class, "isMemberModifiable");
+    private static final Message IS_MEMBER_INSERTABLE = Message.resolve(InteropLibrary.class, "isMemberInsertable");
+    private static final Message IS_MEMBER_REMOVABLE = Message.resolve(InteropLibrary.class, "isMemberRemovable");
+    private static final Message READ_MEMBER = Message.resolve(InteropLibrary.class, "readMember");
+    private static final Message WRITE_MEMBER = Message.resolve(InteropLibrary.class, "writeMember");
+
+    protected enum Kind {
+        NONE,
+        ARRAY,
+        BYTES,
+        BYTE_STRING,
+        WIDE_STRING,
+        BUFFER,
+        READ_ONLY_BUFFER,
+        MEMBER,
+        OTHER_TYPE
+    }
+
+    /** The kinds of all messages sent to instances of a class, see {@link #getKind}. */
+    public static final class ClassKinds {
+        /* Must not reference the class, they are held weakly by it in the image. */
+        private final Assumption[] assumptions;
+        private final EconomicMap<Message, Kind> kinds = EconomicMap.create();
+        private String[] memberNames;
+
+        public ClassKinds(final ClassObject classObject) {
+            assumptions = createAssumptions(classObject);
+        }
+
+        public boolean isValid() {
+            for (final Assumption assumption : assumptions) {
+                if (!assumption.isValid()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private synchronized Kind getKind(final ClassObject classObject, final Message message) {
+            Kind kind = kinds.get(message);
+            if (kind == null) {
+                kind = DirectInteropSendNode.getKind(classObject, message);
+                kinds.put(message, kind);
+            }
+            return kind;
+        }
+
+        private synchronized String[] getMemberNames(final ClassObject classObject) {
+            if (memberNames == null) {
+                memberNames = DirectInteropSendNode.getMemberNames(classObject, Kind.MEMBER);
+            }
+            return memberNames;
+        }
+    }
+
+    public abstract Object execute(Node node, AbstractSqueakObject receiver, Message message, Object[] arguments) throws Exception;
+
+    @Specialization(guards = {"message == cachedMessage", "classNode.executeLookup(node, receiver) == cachedClass"}, limit = "8", assumptions = "assumptions")
+    protected static final Object doCached(final Node node, final AbstractSqueakObject receiver, @SuppressWarnings("unused") final Message message, final Object[] arguments,
+                    @SuppressWarnings("unused") @Shared("classNode") @Cached final SqueakObjectClassNode classNode,
+                    @Cached("message") final Message cachedMessage,
+                    @SuppressWarnings("unused") @Cached("classNode.executeLookup(node, receiver)") final ClassObject cachedClass,
+                    @SuppressWarnings("unused") @Cached(value = "createAssumptions(cachedClass)", dimensions = 1) final Assumption[] assumptions,
+                    @Cached("getKind(cachedClass, cachedMessage)") final Kind kind,
+                    @Cached(value = "getMemberNames(cachedClass, kind)", dimensions = 1, neverDefault = false) final String[] memberNames,
+                    @Shared("readNode") @Cached final ArrayObjectReadNode readNode,
+                    @Shared("writeNode") @Cached final ArrayObjectWriteNode writeNode,
+                    @Shared("sizeNode") @Cached final ArrayObjectSizeNode sizeNode,
+                    @Shared("pointersReadNode") @Cached final AbstractPointersObjectReadNode pointersReadNode,
+                    @Shared("pointersWriteNode") @Cached final AbstractPointersObjectWriteNode pointersWriteNode,
+                    @Shared("wrapNode") @Cached final WrapToSqueakNode wrapNode) throws Exception {
+        return perform(node, kind, memberNames, receiver, cachedMessage, arguments, readNode, writeNode, sizeNode, pointersReadNode, pointersWriteNode, wrapNode);
+    }
+
+    @TruffleBoundary
+    @Specialization(replaces = "doCached")
+    protected static final Object doGeneric(final Node node, final AbstractSqueakObject receiver, final Message message, final Object[] arguments,
+                    @Shared("classNode") @Cached final SqueakObjectClassNode classNode,
+                    @Shared("readNode") @Cached final ArrayObjectReadNode readNode,
+                    @Shared("writeNode") @Cached final ArrayObjectWriteNode writeNode,
+                    @Shared("sizeNode") @Cached final ArrayObjectSizeNode sizeNode,
+                    @Shared("pointersReadNode") @Cached final AbstractPointersObjectReadNode pointersReadNode,
+                    @Shared("pointersWriteNode") @Cached final AbstractPointersObjectWriteNode pointersWriteNode,
+                    @Shared("wrapNode") @Cached final WrapToSqueakNode wrapNode) throws Exception {
+        if (message.getLibraryClass() != InteropLibrary.class) {
+            return NOT_HANDLED;
+        }
+        final ClassObject classObject = classNode.executeLookup(node, receiver);
+        final ClassKinds classKinds = SqueakImageContext.get(node).getDirectInteropKinds(classObject);
+        final Kind kind = classKinds.getKind(classObject, message);
+        final String[] memberNames = kind == Kind.MEMBER ? classKinds.getMemberNames(classObject) : null;
+        return perform(node, kind, memberNames, receiver, message, arguments, readNode, writeNode, sizeNode, pointersReadNode, pointersWriteNode, wrapNode);
+    }
+
+    private static Object perform(final Node node, final Kind kind, final String[] memberNames, final AbstractSqueakObject receiver, final Message message, final Object[] arguments,
+                    final ArrayObjectReadNode readNode, final ArrayObjectWriteNode writeNode, final ArrayObjectSizeNode sizeNode, final AbstractPointersObjectReadNode pointersReadNode,
+                    final AbstractPointersObjectWriteNode pointersWriteNode, final WrapToSqueakNode wrapNode) throws Exception {
+        switch (kind) {
+            case ARRAY -> {
+                final ArrayObject array = (ArrayObject) receiver;
+                return performArray(node, array, sizeNode.execute(node, array), message, arguments, readNode, writeNode, wrapNode);
+            }
+            case BYTES -> {
+                final NativeObject bytes = (NativeObject) receiver;
+                return performArray(node, bytes, bytes.getByteLength(), message, arguments, readNode, writeNode, wrapNode);
+            }
+            case BYTE_STRING -> {
+                return message == IS_STRING ? Boolean.TRUE : ((NativeObject) receiver).asStringUnsafe();
+            }
+            case WIDE_STRING -> {
+                return message == IS_STRING ? Boolean.TRUE : ((NativeObject) receiver).asStringFromWideString();
+            }
+            case BUFFER, READ_ONLY_BUFFER -> {
+                return receiver instanceof final NativeObject buffer ? performBuffer(buffer, kind == Kind.BUFFER, message, arguments) : NOT_HANDLED;
+            }
+            case MEMBER -> {
+                return receiver instanceof final PointersObject object ? performMember(node, object, memberNames, message, arguments, pointersReadNode, pointersWriteNode, wrapNode) : NOT_HANDLED;
+            }
+            case OTHER_TYPE -> {
+                return Boolean.FALSE;
+            }
+            default -> {
+                return NOT_HANDLED;
+            }
+        }
+    }
+
+    private static Object performArray(final Node node, final AbstractSqueakObject receiver, final int size, final Message message, final Object[] arguments,
+                    final ArrayObjectReadNode readNode, final ArrayObjectWriteNode writeNode, final WrapToSqueakNode wrapNode) throws Exception {
+        if (message == HAS_ARRAY_ELEMENTS) {
+            return Boolean.TRUE;
+        } else if (message == GET_ARRAY_SIZE) {
+            return (long) size;
+        } else if (message == IS_ARRAY_ELEMENT_READABLE || message == IS_ARRAY_ELEMENT_MODIFIABLE) {
+            return isInBounds((long) arguments[0], size);
+        } else if (message == IS_ARRAY_ELEMENT_INSERTABLE || message == IS_ARRAY_ELEMENT_REMOVABLE) {
+            return Boolean.FALSE; /* Arrays cannot grow or shrink. */
+        }
+        final long index = (long) arguments[0];
+        if (!isInBounds(index, size)) {
+            throw InvalidArrayIndexException.create(index);
+        }
+        if (message == READ_ARRAY_ELEMENT) {
+            if (receiver instanceof final ArrayObject array) {
+                return readNode.execute(node, array, index);
+            } else {
+                return Byte.toUnsignedLong(((NativeObject) receiver).getByte(index));
+            }
+        } else {
+            assert message == WRITE_ARRAY_ELEMENT;
+            final Object value = wrapNode.executeWrap(node, arguments[1]);
+            if (receiver instanceof final ArrayObject array) {
+                writeNode.execute(node, array, index, value);
+            } else if (value instanceof final Long byteValue && 0 <= byteValue && byteValue <= NativeObject.BYTE_MAX) {
+                ((NativeObject) receiver).setByte(index, (byte) (long) byteValue);
+            } else {
+                throw UnsupportedTypeException.create(new Object[]{arguments[1]}, "ByteArrays only hold integers between 0 and 255");
+            }
+            return receiver; /* Ignored, writeArrayElement is void. */
+        }
+    }
+
+    private static Object performMember(final Node node, final PointersObject object, final String[] memberNames, final Message message, final Object[] arguments,
+                    final AbstractPointersObjectReadNode readNode, final AbstractPointersObjectWriteNode writeNode, final WrapToSqueakNode wrapNode) {
+        if (message == HAS_MEMBERS) {
+            return Boolean.TRUE;
+        }
+        final int index = indexOfMember(memberNames, (String) arguments[0]);
+        if (index < 0 || index >= object.instsize()) {
+            return NOT_HANDLED; /* Not an instance variable, e.g. a method. */
+        }
+        if (message == READ_MEMBER) {
+            return readNode.execute(node, object, index);
+        } else if (message == WRITE_MEMBER) {
+            writeNode.execute(node, object, index, wrapNode.executeWrap(node, arguments[1]));
+            return object; /* Ignored, writeMember is void. */
+        } else {
+            /* Instance variables always exist, so they can neither be inserted nor removed. */
+            return message == IS_MEMBER_READABLE || message == IS_MEMBER_MODIFIABLE;
+        }
+    }
+
+    @TruffleBoundary
+    private static int indexOfMember(final String[] memberNames, final String member) {
+        for (int i = 0; i < memberNames.length; i++) {
+            if (member.equals(memberNames[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Object performBuffer(final NativeObject buffer, final boolean isWritable, final Message message, final Object[] arguments)
+                    throws InvalidBufferOffsetException, UnsupportedMessageException {
+        if (message == HAS_BUFFER_ELEMENTS) {
+            return Boolean.TRUE;
+        } else if (message == IS_BUFFER_WRITABLE) {
+            return isWritable;
+        } else if (!isWritable && isBufferWriteMessage(message)) {
+            throw UnsupportedMessageException.create();
+        } else if (message == GET_BUFFER_SIZE) {
+            return (long) buffer.getBufferSize();
+        } else if (message == READ_BUFFER) {
+            final long byteOffset = (long) arguments[0];
+            final int length = (int) arguments[3];
+            checkBufferOffset(buffer, byteOffset, length);
+            buffer.readBuffer(byteOffset, (byte[]) arguments[1], (int) arguments[2], length);
+            return buffer; /* Ignored, readBuffer is void. */
+        } else if (message == READ_BUFFER_BYTE) {
+            final long byteOffset = (long) arguments[0];
+            checkBufferOffset(buffer, byteOffset, Byte.BYTES);
+            return buffer.getBufferByte(byteOffset);
+        } else if (message == WRITE_BUFFER_BYTE) {
+            final long byteOffset = (long) arguments[0];
+            checkBufferOffset(buffer, byteOffset, Byte.BYTES);
+            buffer.setBufferByte(byteOffset, (byte) arguments[1]);
+            return buffer;
+        }
+        /* All other messages take the byte order first. */
+        final boolean swap = arguments[0] != ByteOrder.nativeOrder();
+        final long byteOffset = (long) arguments[1];
+        if (message == READ_BUFFER_SHORT) {
+            checkBufferOffset(buffer, byteOffset, Short.BYTES);
+            final short value = buffer.getBufferShort(byteOffset);
+            return swap ? Short.reverseBytes(value) : value;
+        } else if (message == WRITE_BUFFER_SHORT) {
+            checkBufferOffset(buffer, byteOffset, Short.BYTES);
+            final short value = (short) arguments[2];
+            buffer.setBufferShort(byteOffset, swap ? Short.reverseBytes(value) : value);
+            return buffer;
+        } else if (message == READ_BUFFER_INT || message == READ_BUFFER_FLOAT) {
+            checkBufferOffset(buffer, byteOffset, Integer.BYTES);
+            final int bits = buffer.getBufferInt(byteOffset);
+            final int value = swap ? Integer.reverseBytes(bits) : bits;
+            return message == READ_BUFFER_INT ? (Object) value : (Object) Float.intBitsToFloat(value);
+        } else if (message == WRITE_BUFFER_INT || message == WRITE_BUFFER_FLOAT) {
+            checkBufferOffset(buffer, byteOffset, Integer.BYTES);
+            final int value = message == WRITE_BUFFER_INT ? (int) arguments[2] : Float.floatToRawIntBits((float) arguments[2]);
+            buffer.setBufferInt(byteOffset, swap ? Integer.reverseBytes(value) : value);
+            return buffer;
+        } else if (message == READ_BUFFER_LONG || message == READ_BUFFER_DOUBLE) {
+            checkBufferOffset(buffer, byteOffset, Long.BYTES);
+            final long bits = buffer.getBufferLong(byteOffset);
+            final long value = swap ? Long.reverseBytes(bits) : bits;
+            return message == READ_BUFFER_LONG ? (Object) value : (Object) Double.longBitsToDouble(value);
+        } else {
+            assert message == WRITE_BUFFER_LONG || message == WRITE_BUFFER_DOUBLE;
+            checkBufferOffset(buffer, byteOffset, Long.BYTES);
+            final long value = message == WRITE_BUFFER_LONG ? (long) arguments[2] : Double.doubleToRawLongBits((double) arguments[2]);
+            buffer.setBufferLong(byteOffset, swap ? Long.reverseBytes(value) : value);
+            return buffer;
+        }
+    }
+
+    private static void checkBufferOffset(final NativeObject buffer, final long byteOffset, final int length) throws InvalidBufferOffsetException {
+        if (!buffer.isInBufferBounds(byteOffset, length)) {
+            throw InvalidBufferOffsetException.create(byteOffset, length);
+        }
+    }
+
+    private static boolean isInBounds(final long index, final int size) {
+        return 0 <= index && index < size;
+    }
+
+    protected static final Kind getKind(final ClassObject classObject, final Message message) {
+        if (message.getLibraryClass() != InteropLibrary.class) {
+            return Kind.NONE;
+        }
+        final SqueakImageContext image = classObject.getImage();
+        final Kind kind;
+        if (isBufferMessage(message)) {
+            kind = isSymbolClass(image, classObject) ? Kind.READ_ONLY_BUFFER : Kind.BUFFER;
+        } else if (isArrayMessage(message)) {
+            kind = classObject == image.arrayClass ? Kind.ARRAY : classObject == image.byteArrayClass ? Kind.BYTES : Kind.NONE;
+        } else if (isStringMessage(message)) {
+            if (classObject == image.byteStringClass || image.isByteSymbolClass(classObject)) {
+                kind = Kind.BYTE_STRING;
+            } else {
+                kind = image.isWideStringClass(classObject) ? Kind.WIDE_STRING : Kind.NONE;
+            }
+        } else if (isMemberMessage(message)) {
+            kind = classObject.isNonIndexableWithInstVars() ? Kind.MEMBER : Kind.NONE;
+            if (kind == Kind.MEMBER && redefinesSelector(classObject, SqueakImageContext.toInteropSelectorName(message))) {
+                return Kind.NONE;
+            }
+            return kind;
+        } else if (isTypeCheckMessage(message)) {
+            final boolean isHandledClass = classObject == image.arrayClass || classObject == image.byteArrayClass || classObject == image.byteStringClass ||
+                            image.isByteSymbolClass(classObject) || image.isWideStringClass(classObject);
+            kind = isHandledClass ? Kind.OTHER_TYPE : Kind.NONE;
+        } else {
+            kind = Kind.NONE;
+        }
+        return kind != Kind.NONE && definesSelector(classObject, SqueakImageContext.toInteropSelectorName(message)) ? Kind.NONE : kind;
+    }
+
+    private static boolean isArrayMessage(final Message message) {
+        return message == HAS_ARRAY_ELEMENTS || message == GET_ARRAY_SIZE || message == IS_ARRAY_ELEMENT_READABLE || message == IS_ARRAY_ELEMENT_MODIFIABLE ||
+                        message == IS_ARRAY_ELEMENT_INSERTABLE || message == IS_ARRAY_ELEMENT_REMOVABLE || message == READ_ARRAY_ELEMENT || message == WRITE_ARRAY_ELEMENT;
+    }
+
+    private static boolean isBufferMessage(final Message message) {
+        return message == HAS_BUFFER_ELEMENTS || message == IS_BUFFER_WRITABLE || message == GET_BUFFER_SIZE || message == READ_BUFFER || message == READ_BUFFER_BYTE ||
+                        message == WRITE_BUFFER_BYTE || message == READ_BUFFER_SHORT || message == WRITE_BUFFER_SHORT || message == READ_BUFFER_INT || message == WRITE_BUFFER_INT ||
+                        message == READ_BUFFER_LONG || message == WRITE_BUFFER_LONG || message == READ_BUFFER_FLOAT || message == WRITE_BUFFER_FLOAT ||
+                        message == READ_BUFFER_DOUBLE || message == WRITE_BUFFER_DOUBLE;
+    }
+
+    private static boolean isBufferWriteMessage(final Message message) {
+        return message == WRITE_BUFFER_BYTE || message == WRITE_BUFFER_SHORT || message == WRITE_BUFFER_INT || message == WRITE_BUFFER_LONG || message == WRITE_BUFFER_FLOAT ||
+                        message == WRITE_BUFFER_DOUBLE;
+    }
+
+    private static boolean isStringMessage(final Message message) {
+        return message == IS_STRING || message == AS_STRING;
+    }
+
+    private static boolean isMemberMessage(final Message message) {
+        return message == HAS_MEMBERS || message == IS_MEMBER_READABLE || message == IS_MEMBER_MODIFIABLE || message == IS_MEMBER_INSERTABLE || message == IS_MEMBER_REMOVABLE || message == READ_MEMBER ||
+                        message == WRITE_MEMBER;
+    }
+
+    private static boolean isTypeCheckMessage(final Message message) {
+        return message == IS_NULL || message == IS_BOOLEAN || message == IS_NUMBER || message == IS_DATE || message == IS_TIME || message == IS_TIME_ZONE ||
+                        message == IS_DURATION || message == IS_META_OBJECT || message == IS_ITERATOR;
+    }
+
+    /* ByteSymbol and WideSymbol are both subclasses of Symbol. */
+    private static boolean isSymbolClass(final SqueakImageContext image, final ClassObject classObject) {
+        final ClassObject byteSymbolClass = image.getByteSymbolClass();
+        if (byteSymbolClass == null) {
+            return false;
+        }
+        final ClassObject symbolClass = byteSymbolClass.getSuperclassOrNull();
+        for (ClassObject current = classObject; current != null; current = current.getSuperclassOrNull()) {
+            if (current == byteSymbolClass || current == symbolClass) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Answers the names of the instance variables of classObject by index. Names that the class
+     * also understands as a selector are left out, so that reading them still answers the method.
+     */
+    @TruffleBoundary
+    protected static final String[] getMemberNames(final ClassObject classObject, final Kind kind) {
+        if (kind != Kind.MEMBER) {
+            return null;
+        }
+        final ArrayList<ClassObject> hierarchy = new ArrayList<>();
+        for (ClassObject current = classObject; current != null; current = current.getSuperclassOrNull()) {
+            hierarchy.add(0, current);
+        }
+        final ArrayList<String> names = new ArrayList<>();
+        for (final ClassObject current : hierarchy) {
+            final ArrayObject instanceVariables = current.getInstanceVariablesOrNull();
+            if (instanceVariables == null) {
+                continue;
+            }
+            for (int i = 0; i < ArrayObjectSizeNode.executeUncached(instanceVariables); i++) {
+                final Object name = ArrayObjectReadNode.executeUncached(instanceVariables, i);
+                names.add(name instanceof final NativeObject nameObject && nameObject.isByteType() ? nameObject.asStringUnsafe() : null);
+            }
+        }
+        final String[] memberNames = names.toArray(new String[0]);
+        for (int i = 0; i < memberNames.length; i++) {
+            if (memberNames[i] != null && understandsSelector(classObject, memberNames[i])) {
+                memberNames[i] = null;
+            }
+        }
+        return memberNames;
+    }
+
+    /* The kinds depend on the method dictionaries of the class and all of its superclasses. */
+    protected static final Assumption[] createAssumptions(final ClassObject classObject) {
+        final ArrayList<Assumption> list = new ArrayList<>();
+        list.add(classObject.getClassHierarchyStable());
+        for (ClassObject current = classObject; current != null; current = current.getSuperclassOrNull()) {
+            list.add(current.getMethodDictStable());
+        }
+        return list.toArray(new Assumption[0]);
+    }
+
+    private static boolean understandsSelector(final ClassObject classObject, final String selectorName) {
+        for (ClassObject current = classObject; current != null; current = current.getSuperclassOrNull()) {
+            if (definesSelector(current, selectorName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * The topmost class that defines selectorName holds the image's generic implementation, any
+     * class below it overrides the direct implementation of the message.
+     */
+    private static boolean redefinesSelector(final ClassObject classObject, final String selectorName) {
+        int count = 0;
+        for (ClassObject current = classObject; current != null; current = current.getSuperclassOrNull()) {
+            if (definesSelector(current, selectorName) && ++count > 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Only the class itself is checked, the image's generic implementations live in superclasses.
+     * Selectors are compared by name to avoid interning symbols that are not in the image.
+     */
+    @TruffleBoundary
+    private static boolean definesSelector(final ClassObject classObject, final String selectorName) {
+        final VariablePointersObject methodDict = classObject.getMethodDict();
+        if (methodDict == null) {
+            return false;
+        }
+        final byte[] selectorBytes = selectorName.getBytes(StandardCharsets.US_ASCII);
+        for (final Object key : methodDict.getVariablePart()) {
+            if (key instanceof final NativeObject selector && selector.isByteType() && Arrays.equals(selector.getByteStorage(), selectorBytes)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017-2024 Software Architecture Group, Hasso Plattner Institute
+ * Copyright (c) 2021-2024 Oracle and/or its affiliates
+ *
+ * Licensed under the MIT License.
+ */
+package de.hpi.swa.trufflesqueak.io;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+
+import de.hpi.swa.trufflesqueak.image.SqueakImageContext;
+import de.hpi.swa.trufflesqueak.model.PointersObject;
+import de.hpi.swa.trufflesqueak.nodes.plugins.HostWindowPlugin;
+
+/**
+ * Common base for displays attached to an image. Events are queued here and fetched by the image
+ * through {@link #getNextEvent()} (primitiveGetNextEvent). Subclasses are responsible for showing
+ * the display bitmap and for producing input events via {@link #addEvent}.
+ */
+public abstract class AbstractSqueakDisplay {
+    public final SqueakImageContext image;
+
+    /* Events may be added from other threads (e.g. AWT's event dispatch thread). */
+    private final ConcurrentLinkedDeque<long[]> deferredEvents = new ConcurrentLinkedDeque<>();
+
+    @CompilationFinal private int inputSemaphoreIndex = -1;
+
+    public int buttons;
+    private boolean deferUpdates;
+
+    protected AbstractSqueakDisplay(final SqueakImageContext image) {
+        this.image = image;
+    }
+
+    public abstract void showDisplayRect(int left, int top, int right, int bottom);
+
+    public abstract void close();
+
+    public abstract void resizeTo(int width, int height);
+
+    public abstract int getWindowWidth();
+
+    public abstract int getWindowHeight();
+
+    public abstract void setFullscreen(boolean enable);
+
+    public abstract void open(PointersObject sqDisplay);
+
+    public abstract boolean isVisible();
+
+    public abstract void setCursor(int[] cursorWords, int[] mask, int width, int height, int depth, int offsetX, int offsetY);
+
+    public abstract void setWindowTitle(String title);
+
+    public abstract String getClipboardData();
+
+    public abstract void setClipboardData(String text);
+
+    public abstract void beep();
+
+    public final long[] getNextEvent() {
+        return deferredEvents.pollFirst();
+    }
+
+    public final void addEvent(final long eventType, final long value3, final long value4, final long value5, final long value6) {
+        addEvent(eventType, value3, value4, value5, value6, 0L);
+    }
+
+    public final void addEvent(final long eventType, final long value3, final long value4, final long value5, final long value6, final long value7) {
+        deferredEvents.add(new long[]{eventType, getEventTime(), value3, value4, value5, value6, value7, HostWindowPlugin.DEFAULT_HOST_WINDOW_ID});
+        if (image.options.signalInputSemaphore() && inputSemaphoreIndex > 0) {
+            image.interrupt.signalSemaphoreWithIndex(inputSemaphoreIndex);
+        }
+    }
+
+    private long getEventTime() {
+        return System.currentTimeMillis() - image.startUpMillis;
+    }
+
+    public final void setDeferUpdates(final boolean flag) {
+        deferUpdates = flag;
+    }
+
+    public final boolean getDeferUpdates() {
+        return deferUpdates;
+    }
+
+    public final void setInputSemaphoreIndex(final int interruptSemaphoreIndex) {
+        CompilerDirectives.transferToInterpreterAndInvalidate();
+        inputSemaphoreIndex = interruptSemaphoreIndex;
+    }
+}
@@ -25,7 +25,6 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
-import java.util.ArrayDeque;
 import java.util.List;
 import java.util.Objects;
 
@@ -44,34 +43,26 @@ import de.hpi.swa.trufflesqueak.model.NativeObject;
 import de.hpi.swa.trufflesqueak.model.PointersObject;
 import de.hpi.swa.trufflesqueak.model.layout.ObjectLayouts.FORM;
 import de.hpi.swa.trufflesqueak.nodes.accessing.AbstractPointersObjectNodes.AbstractPointersObjectReadNode;
-import de.hpi.swa.trufflesqueak.nodes.plugins.HostWindowPlugin;
 import de.hpi.swa.trufflesqueak.shared.SqueakLanguageConfig;
 import de.hpi.swa.trufflesqueak.util.MiscUtils;
 
-public final class SqueakDisplay {
+public final class SqueakDisplay extends AbstractSqueakDisplay {
     private static final String DEFAULT_WINDOW_TITLE = "TruffleSqueak";
     @CompilationFinal(dimensions = 1) private static final int[] CURSOR_COLORS = new int[]{0x00000000, 0xFF0000FF, 0xFFFFFFFF, 0xFF000000};
 
-    public final SqueakImageContext image;
-
     // public for the Java-based UI for TruffleSqueak.
     public final Frame frame = new Frame(DEFAULT_WINDOW_TITLE);
     public final SqueakMouse mouse;
     public final SqueakKeyboard keyboard;
 
     private final SqueakDisplayCanvas canvas = new SqueakDisplayCanvas();
-    private final ArrayDeque<long[]> deferredEvents = new ArrayDeque<>();
-
-    @CompilationFinal private int inputSemaphoreIndex = -1;
 
-    public int buttons;
     private Dimension rememberedWindowSize;
     private Point rememberedWindowLocation;
-    private boolean deferUpdates;
 
     private SqueakDisplay(final SqueakImageContext image) {
+        super(image);
         assert EventQueue.isDispatchThread();
-        this.image = image;
         frame.add(canvas);
         mouse = new SqueakMouse(this);
         keyboard = new SqueakKeyboard(this);
@@ -161,12 +152,14 @@ public final class SqueakDisplay {
         }
     }
 
+    @Override
     @TruffleBoundary
     public void showDisplayRect(final int left, final int top, final int right, final int bottom) {
         assert left <= right && top <= bottom;
         canvas.paintImmediately(left, top, right, bottom);
     }
 
+    @Override
     @TruffleBoundary
     public void close() {
         EventQueue.invokeLater(() -> {
@@ -175,6 +168,7 @@ public final class SqueakDisplay {
         });
     }
 
+    @Override
     @TruffleBoundary
     public void resizeTo(final int width, final int height) {
         EventQueue.invokeLater(() -> {
@@ -183,14 +177,17 @@ public final class SqueakDisplay {
         });
     }
 
+    @Override
     public int getWindowWidth() {
         return canvas.getWidth();
     }
 
+    @Override
     public int getWindowHeight() {
         return canvas.getHeight();
     }
 
+    @Override
     @TruffleBoundary
     public void setFullscreen(final boolean enable) {
         EventQueue.invokeLater(() -> {
@@ -221,6 +218,7 @@ public final class SqueakDisplay {
         });
     }
 
+    @Override
     @TruffleBoundary
     public void open(final PointersObject sqDisplay) {
         canvas.setSqueakDisplay(sqDisplay);
@@ -244,11 +242,13 @@ public final class SqueakDisplay {
         });
     }
 
+    @Override
     @TruffleBoundary
     public boolean isVisible() {
         return frame.isVisible();
     }
 
+    @Override
     @TruffleBoundary
     public void setCursor(final int[] cursorWords, final int[] mask, final int width, final int height, final int depth, final int offsetX, final int offsetY) {
         final Dimension bestCursorSize = Toolkit.getDefaultToolkit().getBestCursorSize(width, height);
@@ -308,14 +308,6 @@ public final class SqueakDisplay {
         return cursorMergedWords;
     }
 
-    public long[] getNextEvent() {
-        return deferredEvents.pollFirst();
-    }
-
-    public void addEvent(final long eventType, final long value3, final long value4, final long value5, final long value6) {
-        addEvent(eventType, value3, value4, value5, value6, 0L);
-    }
-
     private void addDragEvent(final long type, final Point location) {
         addEvent(EVENT_TYPE.DRAG_DROP_FILES, type, (long) location.getX(), (long) location.getY(), buttons >> 3, image.dropPluginFileList.length);
     }
@@ -324,13 +316,6 @@ public final class SqueakDisplay {
         addEvent(EVENT_TYPE.WINDOW, type, 0L, 0L, 0L);
     }
 
-    public void addEvent(final long eventType, final long value3, final long value4, final long value5, final long value6, final long value7) {
-        deferredEvents.add(new long[]{eventType, getEventTime(), value3, value4, value5, value6, value7, HostWindowPlugin.DEFAULT_HOST_WINDOW_ID});
-        if (image.options.signalInputSemaphore() && inputSemaphoreIndex > 0) {
-            image.interrupt.signalSemaphoreWithIndex(inputSemaphoreIndex);
-        }
-    }
-
     public int recordModifiers(final InputEvent e) {
         final int shiftValue = e.isShiftDown() ? KEYBOARD.SHIFT : 0;
         final int ctrlValue = e.isControlDown() ? KEYBOARD.CTRL : 0;
@@ -341,30 +326,15 @@ public final class SqueakDisplay {
         return modifiers;
     }
 
-    private long getEventTime() {
-        return System.currentTimeMillis() - image.startUpMillis;
-    }
-
-    public void setDeferUpdates(final boolean flag) {
-        deferUpdates = flag;
-    }
-
-    public boolean getDeferUpdates() {
-        return deferUpdates;
-    }
-
+    @Override
     @TruffleBoundary
     public void setWindowTitle(final String title) {
         EventQueue.invokeLater(() -> frame.setTitle(title));
     }
 
-    public void setInputSemaphoreIndex(final int interruptSemaphoreIndex) {
-        CompilerDirectives.transferToInterpreterAndInvalidate();
-        inputSemaphoreIndex = interruptSemaphoreIndex;
-    }
-
+    @Override
     @TruffleBoundary
-    public static String getClipboardData() {
+    public String getClipboardData() {
         try {
             return (String) Toolkit.getDefaultToolkit().getSystemClipboard().getData(DataFlavor.stringFlavor);
         } catch (UnsupportedFlavorException | IOException e) {
@@ -372,14 +342,16 @@ public final class SqueakDisplay {
         }
     }
 
+    @Override
     @TruffleBoundary
-    public static void setClipboardData(final String text) {
+    public void setClipboardData(final String text) {
         final StringSelection selection = new StringSelection(text);
         Toolkit.getDefaultToolkit().getSystemClipboard().setContents(selection, selection);
     }
 
+    @Override
     @TruffleBoundary
-    public static void beep() {
+    public void beep() {
         Toolkit.getDefaultToolkit().beep();
     }
 
@@ -0,0 +1,413 @@
+/*
+ * Copyright (c) 2017-2024 Software Architecture Group, Hasso Plattner Institute
+ * Copyright (c) 2021-2024 Oracle and/or its affiliates
+ *
+ * Licensed under the MIT License.
+ */
+package de.hpi.swa.trufflesqueak.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import com.oracle.truffle.api.CompilerAsserts;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+
+import de.hpi.swa.trufflesqueak.exceptions.SqueakExceptions.SqueakException;
+import de.hpi.swa.trufflesqueak.image.SqueakImageContext;
+import de.hpi.swa.trufflesqueak.model.NativeObject;
+import de.hpi.swa.trufflesqueak.model.PointersObject;
+import de.hpi.swa.trufflesqueak.model.layout.ObjectLayouts.FORM;
+import de.hpi.swa.trufflesqueak.nodes.accessing.AbstractPointersObjectNodes.AbstractPointersObjectReadNode;
+import de.hpi.swa.trufflesqueak.util.LogUtils;
+
+/**
+ * A display for headless execution that serves the display bitmap to remote viewers over a local
+ * TCP socket. Instead of painting, {@link #showDisplayRect} only marks the affected tiles as dirty.
+ * A dedicated thread periodically takes the dirty tiles, deflates them without holding the lock,
+ * and sends them to all connected viewers, so that only changed parts of the screen are
+ * transferred. All messages are sent from that thread, so the interpreter never blocks on a slow
+ * viewer. A tile that changes while it is deflated is marked dirty again and sent with the next
+ * frame.
+ *
+ * <pre>
+ * All values are big-endian. Server to viewer:
+ *   'F' int width, int height, int numTiles, numTiles * (int x, int y, int w, int h, int length, byte[length])
+ *       where each tile is zlib-compressed 32-bit ARGB pixel data in row-major order
+ *   'T' int length, byte[length] (UTF-8 window title)
+ *   'B' (beep)
+ * Viewer to server:
+ *   6 longs: eventType, value3, value4, value5, value6, value7 (see {@link SqueakIOConstants})
+ * </pre>
+ */
+public final class SqueakRemoteDisplay extends AbstractSqueakDisplay {
+    private static final String ACCEPT_THREAD_NAME = "TruffleSqueakRemoteDisplayAccept";
+    private static final String SEND_THREAD_NAME = "TruffleSqueakRemoteDisplaySend";
+    private static final String RECEIVE_THREAD_NAME = "TruffleSqueakRemoteDisplayReceive";
+
+    private static final int TILE_SIZE = 64;
+    private static final int SEND_FRAMES_EVERY_N_MILLISECONDS = 40;
+
+    private static final byte MESSAGE_FRAME = 'F';
+    private static final byte MESSAGE_TITLE = 'T';
+    private static final byte MESSAGE_BEEP = 'B';
+
+    private final ServerSocket serverSocket;
+    private final ScheduledExecutorService sender;
+    private final List<RemoteViewer> viewers = new CopyOnWriteArrayList<>();
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+    private NativeObject bitmap;
+    private int[] bits;
+    private int formWidth;
+    private int formHeight;
+    private int windowWidth;
+    private int windowHeight;
+    private int tilesPerRow;
+    private boolean[] dirtyTiles;
+    private boolean isDirty;
+    private String windowTitle = "";
+    private String clipboardData = "";
+
+    private SqueakRemoteDisplay(final SqueakImageContext image, final ServerSocket serverSocket) {
+        super(image);
+        this.serverSocket = serverSocket;
+        windowWidth = image.flags.getSnapshotScreenWidth();
+        windowHeight = image.flags.getSnapshotScreenHeight();
+        final Thread acceptThread = new Thread(this::acceptViewers, ACCEPT_THREAD_NAME);
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        sender = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread t = new Thread(r, SEND_THREAD_NAME);
+            t.setDaemon(true);
+            return t;
+        });
+        sender.scheduleWithFixedDelay(this::sendDirtyTiles, SEND_FRAMES_EVERY_N_MILLISECONDS, SEND_FRAMES_EVERY_N_MILLISECONDS, TimeUnit.MILLISECONDS);
+    }
+
+    public static SqueakRemoteDisplay create(final SqueakImageContext image, final int port) {
+        CompilerAsserts.neverPartOfCompilation();
+        try {
+            final ServerSocket serverSocket = new ServerSocket();
+            serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            image.printToStdOut("Serving remote display on " + serverSocket.getLocalSocketAddress() + "...");
+            return new SqueakRemoteDisplay(image, serverSocket);
+        } catch (final IOException e) {
+            throw SqueakException.create("Failed to start remote display on port " + port, e);
+        }
+    }
+
+    private void acceptViewers() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final RemoteViewer viewer = new RemoteViewer(serverSocket.accept());
+                viewers.add(viewer);
+                markAllDirty();
+                final Thread receiveThread = new Thread(() -> receiveEvents(viewer), RECEIVE_THREAD_NAME);
+                receiveThread.setDaemon(true);
+                receiveThread.start();
+            } catch (final IOException e) {
+                if (!serverSocket.isClosed()) {
+                    LogUtils.IO.warning("Failed to accept remote display viewer: " + e);
+                }
+            }
+        }
+    }
+
+    /** Feeds events received from a viewer through the regular event queue. */
+    private void receiveEvents(final RemoteViewer viewer) {
+        try {
+            final DataInputStream in = new DataInputStream(viewer.socket.getInputStream());
+            while (true) {
+                final long eventType = in.readLong();
+                final long value3 = in.readLong();
+                final long value4 = in.readLong();
+                final long value5 = in.readLong();
+                final long value6 = in.readLong();
+                final long value7 = in.readLong();
+                if (eventType == SqueakIOConstants.EVENT_TYPE.MOUSE) {
+                    buttons = (int) (value5 & SqueakIOConstants.MOUSE.ALL | value6 << 3);
+                }
+                addEvent(eventType, value3, value4, value5, value6, value7);
+            }
+        } catch (final EOFException e) {
+            // Viewer disconnected.
+        } catch (final IOException e) {
+            LogUtils.IO.fine(() -> "Remote display viewer failed: " + e);
+        } finally {
+            disconnect(viewer);
+        }
+    }
+
+    private void disconnect(final RemoteViewer viewer) {
+        viewers.remove(viewer);
+        try {
+            viewer.socket.close();
+        } catch (final IOException e) {
+            // Ignore, viewer is gone anyway.
+        }
+    }
+
+    private synchronized void markAllDirty() {
+        if (dirtyTiles != null) {
+            for (int i = 0; i < dirtyTiles.length; i++) {
+                dirtyTiles[i] = true;
+            }
+            isDirty = true;
+        }
+    }
+
+    /* Runs on the sender thread. */
+    private void sendDirtyTiles() {
+        if (viewers.isEmpty()) {
+            return;
+        }
+        final boolean[] tiles;
+        final int[] frameBits;
+        final int width;
+        final int height;
+        final int tilesInRow;
+        synchronized (this) {
+            if (!isDirty) {
+                return;
+            }
+            tiles = dirtyTiles;
+            dirtyTiles = new boolean[tiles.length];
+            isDirty = false;
+            frameBits = bits;
+            width = formWidth;
+            height = formHeight;
+            tilesInRow = tilesPerRow;
+        }
+        sendToAll(encodeTiles(tiles, frameBits, width, height, tilesInRow));
+    }
+
+    private byte[] encodeTiles(final boolean[] tiles, final int[] frameBits, final int width, final int height, final int tilesInRow) {
+        final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(byteStream);
+        final ByteArrayOutputStream tileStream = new ByteArrayOutputStream();
+        final DataOutputStream tileOut = new DataOutputStream(tileStream);
+        final byte[] deflateBuffer = new byte[TILE_SIZE * TILE_SIZE * Integer.BYTES];
+        int numTiles = 0;
+        try {
+            for (int tileIndex = 0; tileIndex < tiles.length; tileIndex++) {
+                if (!tiles[tileIndex]) {
+                    continue;
+                }
+                final int x = tileIndex % tilesInRow * TILE_SIZE;
+                final int y = tileIndex / tilesInRow * TILE_SIZE;
+                final int w = Math.min(TILE_SIZE, width - x);
+                final int h = Math.min(TILE_SIZE, height - y);
+                final byte[] pixels = new byte[w * h * Integer.BYTES];
+                int offset = 0;
+                for (int row = y; row < y + h; row++) {
+                    final int rowStart = row * width;
+                    for (int column = x; column < x + w; column++) {
+                        final int pixel = frameBits[rowStart + column];
+                        pixels[offset++] = (byte) (pixel >> 24);
+                        pixels[offset++] = (byte) (pixel >> 16);
+                        pixels[offset++] = (byte) (pixel >> 8);
+                        pixels[offset++] = (byte) pixel;
+                    }
+                }
+                deflater.reset();
+                deflater.setInput(pixels);
+                deflater.finish();
+                tileOut.writeInt(x);
+                tileOut.writeInt(y);
+                tileOut.writeInt(w);
+                tileOut.writeInt(h);
+                final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                while (!deflater.finished()) {
+                    compressed.write(deflateBuffer, 0, deflater.deflate(deflateBuffer));
+                }
+                tileOut.writeInt(compressed.size());
+                compressed.writeTo(tileOut);
+                numTiles++;
+            }
+            out.writeByte(MESSAGE_FRAME);
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeInt(numTiles);
+            tileStream.writeTo(out);
+        } catch (final IOException e) {
+            throw SqueakException.create("Unexpected IOException while encoding tiles", e);
+        }
+        return byteStream.toByteArray();
+    }
+
+    /* Hands a message to the sender thread, which keeps it in order with frames. */
+    private void sendLater(final byte[] message) {
+        try {
+            sender.execute(() -> sendToAll(message));
+        } catch (final RejectedExecutionException e) {
+            // Display is closed.
+        }
+    }
+
+    /* Runs on the sender thread. */
+    private void sendToAll(final byte[] message) {
+        for (final RemoteViewer viewer : viewers) {
+            try {
+                viewer.send(message);
+            } catch (final IOException e) {
+                disconnect(viewer);
+            }
+        }
+    }
+
+    @Override
+    @TruffleBoundary
+    public synchronized void showDisplayRect(final int left, final int top, final int right, final int bottom) {
+        assert left <= right && top <= bottom;
+        if (dirtyTiles == null) {
+            return;
+        }
+        /* The storage of the bitmap may have been replaced since the display was opened. */
+        if (bitmap.isIntType() && bitmap.getIntLength() >= formWidth * formHeight) {
+            bits = bitmap.getIntStorage();
+        }
+        final int firstColumn = Math.max(0, left) / TILE_SIZE;
+        final int lastColumn = Math.min(formWidth - 1, right - 1) / TILE_SIZE;
+        final int firstRow = Math.max(0, top) / TILE_SIZE;
+        final int lastRow = Math.min(formHeight - 1, bottom - 1) / TILE_SIZE;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                dirtyTiles[row * tilesPerRow + column] = true;
+            }
+        }
+        isDirty = true;
+    }
+
+    public int getLocalPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    @TruffleBoundary
+    public void close() {
+        sender.shutdown();
+        try {
+            serverSocket.close();
+        } catch (final IOException e) {
+            LogUtils.IO.fine(() -> "Failed to close remote display: " + e);
+        }
+        for (final RemoteViewer viewer : viewers) {
+            disconnect(viewer);
+        }
+    }
+
+    @Override
+    public void resizeTo(final int width, final int height) {
+        windowWidth = width;
+        windowHeight = height;
+    }
+
+    @Override
+    public int getWindowWidth() {
+        return windowWidth;
+    }
+
+    @Override
+    public int getWindowHeight() {
+        return windowHeight;
+    }
+
+    @Override
+    public void setFullscreen(final boolean enable) {
+        // Fullscreen is up to remote viewers.
+    }
+
+    @Override
+    @TruffleBoundary
+    public synchronized void open(final PointersObject sqDisplay) {
+        final AbstractPointersObjectReadNode readNode = AbstractPointersObjectReadNode.getUncached();
+        final NativeObject bitmap = readNode.executeNative(null, sqDisplay, FORM.BITS);
+        if (!bitmap.isIntType()) {
+            throw SqueakException.create("Display bitmap expected to be a words object");
+        }
+        final int width = readNode.executeInt(null, sqDisplay, FORM.WIDTH);
+        final int height = readNode.executeInt(null, sqDisplay, FORM.HEIGHT);
+        assert (long) sqDisplay.instVarAt0Slow(FORM.DEPTH) == 32 : "Unsupported display depth";
+        if (width > 0 && height > 0) {
+            this.bitmap = bitmap;
+            bits = bitmap.getIntStorage();
+            formWidth = width;
+            formHeight = height;
+            tilesPerRow = (width + TILE_SIZE - 1) / TILE_SIZE;
+            dirtyTiles = new boolean[tilesPerRow * ((height + TILE_SIZE - 1) / TILE_SIZE)];
+            markAllDirty();
+        }
+    }
+
+    @Override
+    public boolean isVisible() {
+        return bits != null;
+    }
+
+    @Override
+    public void setCursor(final int[] cursorWords, final int[] mask, final int width, final int height, final int depth, final int offsetX, final int offsetY) {
+        // Remote viewers render their own cursor.
+    }
+
+    @Override
+    @TruffleBoundary
+    public void setWindowTitle(final String title) {
+        windowTitle = title;
+        final byte[] titleBytes = windowTitle.getBytes(StandardCharsets.UTF_8);
+        final byte[] message = new byte[1 + Integer.BYTES + titleBytes.length];
+        message[0] = MESSAGE_TITLE;
+        message[1] = (byte) (titleBytes.length >> 24);
+        message[2] = (byte) (titleBytes.length >> 16);
+        message[3] = (byte) (titleBytes.length >> 8);
+        message[4] = (byte) titleBytes.length;
+        System.arraycopy(titleBytes, 0, message, 1 + Integer.BYTES, titleBytes.length);
+        sendLater(message);
+    }
+
+    @Override
+    public String getClipboardData() {
+        return clipboardData;
+    }
+
+    @Override
+    public void setClipboardData(final String text) {
+        clipboardData = text;
+    }
+
+    @Override
+    @TruffleBoundary
+    public void beep() {
+        sendLater(new byte[]{MESSAGE_BEEP});
+    }
+
+    private static final class RemoteViewer {
+        private final Socket socket;
+        private final DataOutputStream out;
+
+        private RemoteViewer(final Socket socket) throws IOException {
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            out = new DataOutputStream(socket.getOutputStream());
+        }
+
+        private synchronized void send(final byte[] message) throws IOException {
+            out.write(message);
+            out.flush();
+        }
+    }
+}
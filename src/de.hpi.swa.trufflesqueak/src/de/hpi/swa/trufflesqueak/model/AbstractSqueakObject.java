@@ -33,6 +33,7 @@ import com.oracle.truffle.api.nodes.Node;
 
 import de.hpi.swa.trufflesqueak.exceptions.ProcessSwitch;
 import de.hpi.swa.trufflesqueak.image.SqueakImageContext;
+import de.hpi.swa.trufflesqueak.interop.DirectInteropSendNode;
 import de.hpi.swa.trufflesqueak.interop.WrapToSqueakNode;
 import de.hpi.swa.trufflesqueak.nodes.AbstractNode;
 import de.hpi.swa.trufflesqueak.nodes.LookupMethodNode;
@@ -62,7 +63,12 @@ public abstract class AbstractSqueakObject implements TruffleObject {
     @ExportMessage
     protected static final Object send(final AbstractSqueakObject receiver, final Message message, final Object[] arguments,
                     @SuppressWarnings("unused") @Bind("$node") final Node node,
+                    @Cached final DirectInteropSendNode directInteropSendNode,
                     @Cached final PerformInteropSendNode performInteropSendNode) throws Exception {
+        final Object result = directInteropSendNode.execute(node, receiver, message, arguments);
+        if (result != DirectInteropSendNode.NOT_HANDLED) {
+            return result;
+        }
         final SqueakImageContext image = SqueakImageContext.get(node);
         final boolean wasActive = image.interrupt.isActive();
         image.interrupt.deactivate();
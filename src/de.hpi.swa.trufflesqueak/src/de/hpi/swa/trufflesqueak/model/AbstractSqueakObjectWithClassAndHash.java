@@ -25,6 +25,8 @@ import de.hpi.swa.trufflesqueak.util.ObjectGraphUtils.ObjectTracer;
 public abstract class AbstractSqueakObjectWithClassAndHash extends AbstractSqueakObject {
     public static final int SQUEAK_HASH_MASK = ObjectHeader.HASH_AND_CLASS_INDEX_SIZE - 1;
     private static final int MARK_BIT = 1 << 24;
+    /* Set once an ephemeron has been queued for mourning, so that it does not fire again. */
+    private static final int FIRED_EPHEMERON_BIT = 1 << 25;
     /* Generate new hash if hash is 0 (see SpurMemoryManager>>#hashBitsOf:). */
     private static final int HASH_UNINITIALIZED = 0;
 
@@ -142,6 +144,14 @@ public abstract class AbstractSqueakObjectWithClassAndHash extends AbstractSquea
         return getMarkingFlag() == currentMarkingFlag;
     }
 
+    public final boolean isFiredEphemeron() {
+        return (squeahHashAndBits & FIRED_EPHEMERON_BIT) != 0;
+    }
+
+    public final void setFiredEphemeron() {
+        squeahHashAndBits |= FIRED_EPHEMERON_BIT;
+    }
+
     @Override
     public String toString() {
         CompilerAsserts.neverPartOfCompilation();
@@ -7,6 +7,7 @@
 package de.hpi.swa.trufflesqueak.model;
 
 import java.util.Arrays;
+import java.util.Map;
 
 import org.graalvm.collections.EconomicMap;
 
@@ -42,6 +43,7 @@ import de.hpi.swa.trufflesqueak.nodes.bytecodes.AbstractBytecodeNode;
 import de.hpi.swa.trufflesqueak.nodes.bytecodes.AbstractSqueakBytecodeDecoder;
 import de.hpi.swa.trufflesqueak.nodes.bytecodes.SqueakBytecodeSistaV1Decoder;
 import de.hpi.swa.trufflesqueak.nodes.bytecodes.SqueakBytecodeV3PlusClosuresDecoder;
+import de.hpi.swa.trufflesqueak.nodes.bytecodes.SuperinstructionNode;
 import de.hpi.swa.trufflesqueak.nodes.primitives.AbstractPrimitiveNode;
 import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveNodeFactory;
 import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveNodeFactory.ArgumentsLocation;
@@ -330,6 +332,14 @@ public final class CompiledCodeObject extends AbstractSqueakObjectWithClassAndHa
         return getDecoder().decodeBytecode(frame, this, bytecodeNodes, pc);
     }
 
+    public SuperinstructionNode superinstructionAt(final int pc) {
+        return getDecoder().decodeSuperinstruction(this, pc);
+    }
+
+    public void countBytecodeSequences(final int length, final Map<String, Long> counts) {
+        getDecoder().countSequences(this, length, counts);
+    }
+
     public int findLineNumber(final int index) {
         return getDecoder().findLineNumber(this, index);
     }
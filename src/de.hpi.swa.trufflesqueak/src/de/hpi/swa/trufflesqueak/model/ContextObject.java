@@ -37,6 +37,7 @@ public final class ContextObject extends AbstractSqueakObjectWithClassAndHash {
     private int size;
     private boolean hasModifiedSender;
     private boolean escaped;
+    private boolean directReturnPending;
 
     private ContextObject(final long header, final SqueakImageContext image) {
         super(header, image.methodContextClass);
@@ -414,6 +415,23 @@ public final class ContextObject extends AbstractSqueakObjectWithClassAndHash {
         escaped = true;
     }
 
+    /*
+     * A block returned from this (home) context to its sender while being called by this context,
+     * so the pending send of this context must return its result instead of pushing it.
+     */
+    public void markDirectReturn() {
+        directReturnPending = true;
+    }
+
+    public boolean consumeDirectReturn() {
+        if (directReturnPending) {
+            directReturnPending = false;
+            return true;
+        } else {
+            return false;
+        }
+    }
+
     public boolean hasModifiedSender() {
         return hasModifiedSender;
     }
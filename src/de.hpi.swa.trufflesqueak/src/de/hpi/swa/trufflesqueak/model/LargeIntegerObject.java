@@ -248,7 +248,7 @@ public final class LargeIntegerObject extends AbstractSqueakObjectWithClassAndHa
         return reduceIfPossible(getSqueakClass().getImage(), value);
     }
 
-    private static Object reduceIfPossible(final SqueakImageContext image, final BigInteger value) {
+    public static Object reduceIfPossible(final SqueakImageContext image, final BigInteger value) {
         if (bitLength(value) < Long.SIZE) {
             return value.longValue();
         } else {
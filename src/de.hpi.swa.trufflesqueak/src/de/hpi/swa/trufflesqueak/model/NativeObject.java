@@ -270,6 +270,76 @@ public final class NativeObject extends AbstractSqueakObjectWithClassAndHash {
         return (short[]) storage;
     }
 
+    /*
+     * Buffer access at byte offsets into any storage, in native byte order.
+     */
+
+    public int getBufferSize() {
+        if (isByteType()) {
+            return getByteLength();
+        } else if (isShortType()) {
+            return getShortLength() * Short.BYTES;
+        } else if (isIntType()) {
+            return getIntLength() * Integer.BYTES;
+        } else {
+            return getLongLength() * Long.BYTES;
+        }
+    }
+
+    public boolean isInBufferBounds(final long byteOffset, final long length) {
+        return 0 <= byteOffset && 0 <= length && byteOffset <= getBufferSize() - length;
+    }
+
+    public byte getBufferByte(final long byteOffset) {
+        assert isInBufferBounds(byteOffset, Byte.BYTES);
+        return UnsafeUtils.getByteFromBits(storage, byteOffset);
+    }
+
+    public void setBufferByte(final long byteOffset, final byte value) {
+        assert isInBufferBounds(byteOffset, Byte.BYTES);
+        UnsafeUtils.putByteIntoBits(storage, byteOffset, value);
+    }
+
+    public short getBufferShort(final long byteOffset) {
+        assert isInBufferBounds(byteOffset, Short.BYTES);
+        return UnsafeUtils.getShortFromBits(storage, byteOffset);
+    }
+
+    public void setBufferShort(final long byteOffset, final short value) {
+        assert isInBufferBounds(byteOffset, Short.BYTES);
+        UnsafeUtils.putShortIntoBits(storage, byteOffset, value);
+    }
+
+    public int getBufferInt(final long byteOffset) {
+        assert isInBufferBounds(byteOffset, Integer.BYTES);
+        return UnsafeUtils.getIntFromBits(storage, byteOffset);
+    }
+
+    public void setBufferInt(final long byteOffset, final int value) {
+        assert isInBufferBounds(byteOffset, Integer.BYTES);
+        UnsafeUtils.putIntIntoBits(storage, byteOffset, value);
+    }
+
+    public long getBufferLong(final long byteOffset) {
+        assert isInBufferBounds(byteOffset, Long.BYTES);
+        return UnsafeUtils.getLongFromBits(storage, byteOffset);
+    }
+
+    public void setBufferLong(final long byteOffset, final long value) {
+        assert isInBufferBounds(byteOffset, Long.BYTES);
+        UnsafeUtils.putLongIntoBits(storage, byteOffset, value);
+    }
+
+    public void readBuffer(final long byteOffset, final byte[] destination, final int destinationOffset, final int length) {
+        assert isInBufferBounds(byteOffset, length);
+        UnsafeUtils.copyBitsToBytes(storage, byteOffset, destination, destinationOffset, length);
+    }
+
+    public void writeBuffer(final long byteOffset, final byte[] source, final int sourceOffset, final int length) {
+        assert isInBufferBounds(byteOffset, length);
+        UnsafeUtils.copyBytesToBits(source, sourceOffset, storage, byteOffset, length);
+    }
+
     public boolean isByteType() {
         return storage instanceof byte[];
     }
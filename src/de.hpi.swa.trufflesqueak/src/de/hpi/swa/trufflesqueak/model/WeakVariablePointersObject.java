@@ -6,6 +6,7 @@
  */
 package de.hpi.swa.trufflesqueak.model;
 
+import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 
@@ -36,6 +37,12 @@ public final class WeakVariablePointersObject extends AbstractVariablePointersOb
     private WeakVariablePointersObject(final WeakVariablePointersObject original) {
         super(original);
         weakPointersQueue = original.weakPointersQueue;
+        /* The copy needs its own references, so that cleared slots are reported for both. */
+        for (int i = 0; i < variablePart.length; i++) {
+            if (variablePart[i] instanceof final WeakRef o) {
+                variablePart[i] = newWeakRefOrNil(o.get(), i);
+            }
+        }
     }
 
     @Override
@@ -44,16 +51,30 @@ public final class WeakVariablePointersObject extends AbstractVariablePointersOb
         for (int i = 0; i < variablePart.length; i++) {
             final Object value = variablePart[i];
             if (value instanceof final AbstractSqueakObject o) {
-                variablePart[i] = new WeakRef(o, weakPointersQueue);
+                variablePart[i] = new WeakRef(o, weakPointersQueue, this, i);
             }
         }
     }
 
+    private Object newWeakRefOrNil(final AbstractSqueakObject value, final int index) {
+        return value == null ? NilObject.SINGLETON : new WeakRef(value, weakPointersQueue, this, index);
+    }
+
     public void become(final WeakVariablePointersObject other) {
         super.become(other);
         final ReferenceQueue<AbstractSqueakObject> otherWeakPointersQueue = other.weakPointersQueue;
         other.weakPointersQueue = weakPointersQueue;
         weakPointersQueue = otherWeakPointersQueue;
+        adoptWeakRefs();
+        other.adoptWeakRefs();
+    }
+
+    private void adoptWeakRefs() {
+        for (final Object value : variablePart) {
+            if (value instanceof final WeakRef o) {
+                o.owner = this;
+            }
+        }
     }
 
     @Override
@@ -83,7 +104,7 @@ public final class WeakVariablePointersObject extends AbstractVariablePointersOb
     }
 
     public void putIntoVariablePart(final long index, final Object value, final InlinedConditionProfile profile, final Node node) {
-        super.putIntoVariablePart(index, profile.profile(node, value instanceof AbstractSqueakObject) ? new WeakRef((AbstractSqueakObject) value, weakPointersQueue) : value);
+        super.putIntoVariablePart(index, profile.profile(node, value instanceof AbstractSqueakObject) ? new WeakRef((AbstractSqueakObject) value, weakPointersQueue, this, (int) index) : value);
     }
 
     @Override
@@ -131,14 +152,38 @@ public final class WeakVariablePointersObject extends AbstractVariablePointersOb
         return "a " + getSqueakClassName() + " @" + Integer.toHexString(hashCode()) + " of size " + variablePart.length;
     }
 
+    /**
+     * Answers the object that held {@code reference} in its variable part if that slot still holds
+     * it, so that the cleared slot can be reported, or {@code null} otherwise.
+     */
+    public static WeakVariablePointersObject getOwnerOfClearedSlot(final Reference<?> reference) {
+        if (reference instanceof final WeakRef o) {
+            final WeakVariablePointersObject owner = o.owner;
+            if (o.index < owner.variablePart.length && owner.variablePart[o.index] == o) {
+                return owner;
+            }
+        }
+        return null;
+    }
+
+    public static int getIndexOfClearedSlot(final Reference<?> reference) {
+        return ((WeakRef) reference).index;
+    }
+
     /*
      * Final WeakReference subclass with boundaries because its methods should not be called on the
-     * fast-path.
+     * fast-path. Each reference knows its slot, so that the image can be told exactly which slots
+     * were cleared.
      */
     private static final class WeakRef extends WeakReference<AbstractSqueakObject> {
+        private WeakVariablePointersObject owner;
+        private final int index;
+
         @TruffleBoundary
-        private WeakRef(final AbstractSqueakObject referent, final ReferenceQueue<? super AbstractSqueakObject> q) {
+        private WeakRef(final AbstractSqueakObject referent, final ReferenceQueue<? super AbstractSqueakObject> q, final WeakVariablePointersObject owner, final int index) {
             super(referent, q);
+            this.owner = owner;
+            this.index = index;
         }
 
         @Override
@@ -167,6 +167,10 @@ public final class ObjectLayouts {
         public static final int OBSERVERS = 5;
     }
 
+    public static final class EPHEMERON {
+        public static final int KEY = 0;
+    }
+
     public enum ERROR_TABLE {
         GENERIC_ERROR, // nil
         BAD_RECEIVER,
@@ -284,6 +288,11 @@ public final class ObjectLayouts {
         public static final int ACTIVE_PROCESS = 1;
     }
 
+    public static final class SCALED_DECIMAL {
+        public static final int FRACTION = 0;
+        public static final int SCALE = 1;
+    }
+
     public static final class SEMAPHORE {
         public static final int EXCESS_SIGNALS = 2;
     }
@@ -9,6 +9,7 @@ package de.hpi.swa.trufflesqueak.nodes;
 import com.oracle.truffle.api.CompilerAsserts;
 import com.oracle.truffle.api.CompilerDirectives;
 import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.TruffleSafepoint;
 import com.oracle.truffle.api.frame.Frame;
 import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.instrumentation.StandardTags;
@@ -21,24 +22,29 @@ import com.oracle.truffle.api.source.SourceSection;
 
 import de.hpi.swa.trufflesqueak.exceptions.PrimitiveFailed;
 import de.hpi.swa.trufflesqueak.exceptions.Returns.NonLocalReturn;
+import de.hpi.swa.trufflesqueak.image.SqueakImageContext;
 import de.hpi.swa.trufflesqueak.model.CompiledCodeObject;
 import de.hpi.swa.trufflesqueak.nodes.bytecodes.AbstractBytecodeNode;
 import de.hpi.swa.trufflesqueak.nodes.bytecodes.JumpBytecodes.AbstractUnconditionalJumpNode;
 import de.hpi.swa.trufflesqueak.nodes.bytecodes.JumpBytecodes.ConditionalJumpNode;
 import de.hpi.swa.trufflesqueak.nodes.bytecodes.ReturnBytecodes.AbstractReturnNode;
 import de.hpi.swa.trufflesqueak.nodes.bytecodes.SendBytecodes.AbstractSendNode;
+import de.hpi.swa.trufflesqueak.nodes.bytecodes.SuperinstructionNode;
 import de.hpi.swa.trufflesqueak.nodes.primitives.AbstractPrimitiveNode;
 import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveNodeFactory;
 import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveNodeFactory.ArgumentsLocation;
 import de.hpi.swa.trufflesqueak.util.ArrayUtils;
 import de.hpi.swa.trufflesqueak.util.FrameAccess;
 import de.hpi.swa.trufflesqueak.util.LogUtils;
+import de.hpi.swa.trufflesqueak.util.PrimitiveStatistics;
 
 public final class ExecuteBytecodeNode extends AbstractExecuteContextNode implements BytecodeOSRNode {
     private static final int LOCAL_RETURN_PC = -2;
 
     private final CompiledCodeObject code;
     private final int initialPC;
+    private final boolean useSuperinstructions;
+    private final PrimitiveStatistics.Entry primitiveStatistics;
     private SourceSection section;
 
     @Child private AbstractPrimitiveNode primitiveNode;
@@ -50,6 +56,7 @@ public final class ExecuteBytecodeNode extends AbstractExecuteContextNode implem
     public ExecuteBytecodeNode(final CompiledCodeObject code) {
         this.code = code;
         initialPC = code.getInitialPC();
+        useSuperinstructions = SqueakImageContext.getSlow().options.useSuperinstructions();
         bytecodeNodes = code.asBytecodeNodesEmpty();
         if (code.hasPrimitive()) {
             primitiveNode = PrimitiveNodeFactory.getOrCreateIndexedOrNamed(code, ArgumentsLocation.IN_FRAME_ARGUMENTS);
@@ -64,6 +71,7 @@ public final class ExecuteBytecodeNode extends AbstractExecuteContextNode implem
                 }
             }
         }
+        primitiveStatistics = PrimitiveStatistics.getEntryOrNull(primitiveNode);
     }
 
     @Override
@@ -71,9 +79,15 @@ public final class ExecuteBytecodeNode extends AbstractExecuteContextNode implem
         CompilerAsserts.partialEvaluationConstant(startPC);
         try {
             if (primitiveNode != null && startPC == initialPC) {
+                if (primitiveStatistics != null) {
+                    primitiveStatistics.countCall();
+                }
                 try {
                     return primitiveNode.execute(frame);
                 } catch (final PrimitiveFailed e) {
+                    if (primitiveStatistics != null) {
+                        primitiveStatistics.countFailure(e.getReasonCode());
+                    }
                     /* getHandlePrimitiveFailedNode() also acts as a BranchProfile. */
                     getHandlePrimitiveFailedNode().executeHandle(frame, e.getReasonCode());
                     LogUtils.PRIMITIVES.finer(() -> primitiveNode.getClass().getSimpleName() + " failed (arguments: " +
@@ -103,11 +117,20 @@ public final class ExecuteBytecodeNode extends AbstractExecuteContextNode implem
         Object returnValue = null;
         bytecode_loop: while (pc != LOCAL_RETURN_PC) {
             CompilerAsserts.partialEvaluationConstant(pc);
-            final AbstractBytecodeNode node = fetchNextBytecodeNode(frame, pc - initialPC);
+            AbstractBytecodeNode node = fetchNextBytecodeNode(frame, pc - initialPC);
+            if (node instanceof final SuperinstructionNode superinstruction) {
+                superinstruction.executeVoid(frame);
+                node = fetchTerminalNode(frame, superinstruction);
+            }
             if (node instanceof final AbstractSendNode sendNode) {
                 pc = sendNode.getSuccessorIndex();
                 FrameAccess.setInstructionPointer(frame, pc);
                 sendNode.executeVoid(frame);
+                if (sendNode.isDirectReturn(frame)) {
+                    returnValue = sendNode.popResult(frame);
+                    pc = LOCAL_RETURN_PC;
+                    continue bytecode_loop;
+                }
                 final int actualNextPc = FrameAccess.getInstructionPointer(frame);
                 if (pc != actualNextPc) {
                     /*
@@ -131,6 +154,8 @@ public final class ExecuteBytecodeNode extends AbstractExecuteContextNode implem
                 final int successor = jumpNode.getSuccessorIndex();
                 if (successor <= pc) {
                     backJumpCounter.value++;
+                    /* Loops without sends would otherwise never reach a safepoint. */
+                    TruffleSafepoint.poll(this);
                     if (CompilerDirectives.inInterpreter() && !FrameAccess.hasClosure(frame) && BytecodeOSRNode.pollOSRBackEdge(this)) {
                         returnValue = BytecodeOSRNode.tryOSR(this, successor, null, null, frame);
                         if (returnValue != null) {
@@ -175,12 +200,27 @@ public final class ExecuteBytecodeNode extends AbstractExecuteContextNode implem
     private AbstractBytecodeNode fetchNextBytecodeNode(final VirtualFrame frame, final int pcZeroBased) {
         if (bytecodeNodes[pcZeroBased] == null) {
             CompilerDirectives.transferToInterpreterAndInvalidate();
-            bytecodeNodes[pcZeroBased] = insert(code.bytecodeNodeAt(frame, bytecodeNodes, pcZeroBased));
+            final AbstractBytecodeNode superinstruction = useSuperinstructions ? code.superinstructionAt(pcZeroBased) : null;
+            bytecodeNodes[pcZeroBased] = insert(superinstruction != null ? superinstruction : code.bytecodeNodeAt(frame, bytecodeNodes, pcZeroBased));
             notifyInserted(bytecodeNodes[pcZeroBased]);
         }
         return bytecodeNodes[pcZeroBased];
     }
 
+    /*
+     * The terminal node of a superinstruction is decoded once its prefix has been executed, so that
+     * it sees the frame in the same state as without fusion.
+     */
+    private AbstractBytecodeNode fetchTerminalNode(final VirtualFrame frame, final SuperinstructionNode superinstruction) {
+        AbstractBytecodeNode terminalNode = superinstruction.getTerminalNode();
+        if (terminalNode == null) {
+            CompilerDirectives.transferToInterpreterAndInvalidate();
+            terminalNode = superinstruction.setTerminalNode(code.bytecodeNodeAt(frame, bytecodeNodes, superinstruction.getSuccessorIndex() - initialPC));
+            notifyInserted(terminalNode);
+        }
+        return terminalNode;
+    }
+
     private HandlePrimitiveFailedNode getHandlePrimitiveFailedNode() {
         if (handlePrimitiveFailedNode == null) {
             CompilerDirectives.transferToInterpreterAndInvalidate();
@@ -35,7 +35,8 @@ public abstract class HandleNonLocalReturnNode extends AbstractNode {
     @Specialization
     protected final Object doHandle(final VirtualFrame frame, final NonLocalReturn nlr,
                     @Bind("this") final Node node,
-                    @Cached final InlinedConditionProfile hasModifiedSenderProfile) {
+                    @Cached final InlinedConditionProfile hasModifiedSenderProfile,
+                    @Cached final InlinedConditionProfile isHomeFrameProfile) {
         aboutToReturnNode.executeAboutToReturn(frame, nlr); // handle ensure: or ifCurtailed:
         if (hasModifiedSenderProfile.profile(node, FrameAccess.hasModifiedSender(frame))) {
             // Sender might have changed.
@@ -44,6 +45,14 @@ public abstract class HandleNonLocalReturnNode extends AbstractNode {
             FrameAccess.terminate(frame);
             // TODO: `target == newSender` may could use special handling?
             throw new NonVirtualReturn(nlr.getReturnValue(), target, newSender);
+        } else if (isHomeFrameProfile.profile(node, nlr.getTargetContextOrMarker() == FrameAccess.getSender(frame))) {
+            /*
+             * The block returned to the sender of this frame, so this is its home frame. Return
+             * directly instead of unwinding into the sender, which would just use the value as
+             * the result of its send.
+             */
+            FrameAccess.terminate(frame);
+            return nlr.getReturnValue();
         } else {
             FrameAccess.terminate(frame);
             throw nlr;
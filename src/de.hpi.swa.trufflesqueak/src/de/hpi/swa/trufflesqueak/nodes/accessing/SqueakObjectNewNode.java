@@ -14,7 +14,6 @@ import com.oracle.truffle.api.dsl.GenerateUncached;
 import com.oracle.truffle.api.dsl.Specialization;
 import com.oracle.truffle.api.nodes.Node;
 
-import de.hpi.swa.trufflesqueak.exceptions.SqueakExceptions.SqueakException;
 import de.hpi.swa.trufflesqueak.image.SqueakImageContext;
 import de.hpi.swa.trufflesqueak.model.AbstractSqueakObjectWithClassAndHash;
 import de.hpi.swa.trufflesqueak.model.ArrayObject;
@@ -155,10 +154,11 @@ public abstract class SqueakObjectNewNode extends AbstractNode {
         return new WeakVariablePointersObject(image, classObject, null, extraSize);
     }
 
-    @SuppressWarnings("unused")
     @Specialization(guards = "classObject.isEphemeronClassType()")
-    protected static final WeakVariablePointersObject doEphemerons(final SqueakImageContext image, final ClassObject classObject, final int extraSize) {
-        throw SqueakException.create("Ephemerons not (yet) supported");
+    protected static final PointersObject doEphemerons(final SqueakImageContext image, final ClassObject classObject, final int extraSize) {
+        assert extraSize == 0;
+        image.finalization.noteEphemeron();
+        return new PointersObject(image, classObject, null);
     }
 
     @Specialization(guards = "classObject.isLongs()")
@@ -35,6 +35,10 @@ public abstract class AbstractBytecodeNode extends AbstractNode {
 
     public abstract void executeVoid(VirtualFrame frame);
 
+    public final int getIndex() {
+        return index;
+    }
+
     public final int getSuccessorIndex() {
         return successorIndex;
     }
@@ -6,6 +6,9 @@
  */
 package de.hpi.swa.trufflesqueak.nodes.bytecodes;
 
+import java.util.Arrays;
+import java.util.Map;
+
 import com.oracle.truffle.api.CompilerAsserts;
 import com.oracle.truffle.api.frame.VirtualFrame;
 
@@ -26,6 +29,61 @@ public abstract class AbstractSqueakBytecodeDecoder {
 
     protected abstract String decodeBytecodeToString(CompiledCodeObject code, int currentByte, int bytecodeIndex);
 
+    /**
+     * Answers whether the bytecode at index only moves values between the stack, temporaries,
+     * receiver variables, and literals. Such bytecodes neither send nor transfer control and do not
+     * depend on the frame when being decoded, so they can be part of a {@link SuperinstructionNode}.
+     */
+    protected abstract boolean isStraightLineBytecode(CompiledCodeObject code, int index);
+
+    protected abstract boolean isSpecialSelectorSend(int currentByte);
+
+    public final SuperinstructionNode decodeSuperinstruction(final CompiledCodeObject code, final int index) {
+        CompilerAsserts.neverPartOfCompilation();
+        final int trailerPosition = trailerPosition(code);
+        final AbstractBytecodeNode[] prefixNodes = new AbstractBytecodeNode[SuperinstructionNode.MAX_PREFIX_LENGTH];
+        int numPrefixNodes = 0;
+        int currentIndex = index;
+        while (numPrefixNodes < prefixNodes.length && currentIndex < trailerPosition && isStraightLineBytecode(code, currentIndex)) {
+            /* Straight-line bytecodes neither need the frame nor other bytecode nodes. */
+            final AbstractBytecodeNode node = decodeBytecode(null, code, null, currentIndex);
+            if (node instanceof MiscellaneousBytecodes.UnknownBytecodeNode) {
+                break;
+            }
+            prefixNodes[numPrefixNodes++] = node;
+            currentIndex += node.getNumBytecodes();
+        }
+        if (numPrefixNodes == 0 || currentIndex >= trailerPosition) {
+            return null;
+        }
+        return new SuperinstructionNode(code, index, currentIndex - index, Arrays.copyOf(prefixNodes, numPrefixNodes));
+    }
+
+    /**
+     * Counts all sequences of {@code length} consecutive bytecodes in code. Operands are ignored
+     * except for special selector sends, so that for example all {@code pushTemp:} bytecodes
+     * count as the same kind.
+     */
+    public final void countSequences(final CompiledCodeObject code, final int length, final Map<String, Long> counts) {
+        CompilerAsserts.neverPartOfCompilation();
+        final int trailerPosition = trailerPosition(code);
+        final byte[] bytes = code.getBytes();
+        final String[] window = new String[length];
+        int numSeen = 0;
+        int bytecodeIndex = 0;
+        while (bytecodeIndex < trailerPosition) {
+            final int currentByte = Byte.toUnsignedInt(bytes[bytecodeIndex]);
+            final String description = decodeBytecodeToString(code, currentByte, bytecodeIndex);
+            final int operandStart = description.indexOf(' ');
+            System.arraycopy(window, 1, window, 0, length - 1);
+            window[length - 1] = isSpecialSelectorSend(currentByte) || operandStart < 0 ? description : description.substring(0, operandStart);
+            if (++numSeen >= length) {
+                counts.merge(String.join(" | ", window), 1L, Long::sum);
+            }
+            bytecodeIndex += decodeNumBytes(code, bytecodeIndex);
+        }
+    }
+
     public final String decodeToString(final CompiledCodeObject code) {
         CompilerAsserts.neverPartOfCompilation();
         final StringBuilder sb = new StringBuilder();
@@ -205,7 +205,8 @@ public final class JumpBytecodes {
         if (offset < 0) { // back-jumps only
             final int backJumpIndex = index + numBytecodes + offset;
             for (int i = backJumpIndex; i < index; i++) {
-                if (bytecodeNodes[i] instanceof final AbstractSendNode abs) {
+                final AbstractBytecodeNode node = bytecodeNodes[i] instanceof final SuperinstructionNode s ? s.getTerminalNode() : bytecodeNodes[i];
+                if (node instanceof final AbstractSendNode abs) {
                     // NodeUtil.printTree(System.out, abs);
                     /*
                      * Search for call nodes but reject the ones from closure primitives as they do
@@ -13,6 +13,7 @@ import com.oracle.truffle.api.profiles.ConditionProfile;
 
 import de.hpi.swa.trufflesqueak.exceptions.Returns.NonLocalReturn;
 import de.hpi.swa.trufflesqueak.exceptions.SqueakExceptions.SqueakException;
+import de.hpi.swa.trufflesqueak.image.SqueakImageContext;
 import de.hpi.swa.trufflesqueak.model.BooleanObject;
 import de.hpi.swa.trufflesqueak.model.CompiledCodeObject;
 import de.hpi.swa.trufflesqueak.model.ContextObject;
@@ -21,6 +22,7 @@ import de.hpi.swa.trufflesqueak.nodes.AbstractNode;
 import de.hpi.swa.trufflesqueak.nodes.context.frame.FrameStackPopNode;
 import de.hpi.swa.trufflesqueak.nodes.context.frame.GetOrCreateContextNode;
 import de.hpi.swa.trufflesqueak.util.FrameAccess;
+import de.hpi.swa.trufflesqueak.util.NonLocalReturnStatistics;
 
 public final class ReturnBytecodes {
 
@@ -77,12 +79,25 @@ public final class ReturnBytecodes {
     }
 
     private static final class ReturnFromClosureNode extends AbstractReturnKindNode {
+        private final ConditionProfile isDirectReturnProfile = ConditionProfile.create();
+
         @Override
         protected Object execute(final VirtualFrame frame, final Object returnValue) {
             assert FrameAccess.hasClosure(frame);
             // Target is sender of closure's home context.
             final ContextObject homeContext = FrameAccess.getClosure(frame).getHomeContext();
             if (homeContext.canBeReturnedTo()) {
+                countNonLocalReturn(getContext());
+                if (isDirectReturnProfile.profile(isCalledByHomeContext(frame, homeContext))) {
+                    /*
+                     * The home context evaluated this block itself (e.g. `[^x] value`), so the
+                     * value flows back into its send, which completes the return. No need to
+                     * unwind with an exception.
+                     */
+                    homeContext.markDirectReturn();
+                    countDirectReturn(getContext());
+                    return returnValue;
+                }
                 throw new NonLocalReturn(returnValue, homeContext.getFrameSender());
             } else {
                 CompilerDirectives.transferToInterpreter();
@@ -91,6 +106,17 @@ public final class ReturnBytecodes {
                 throw CompilerDirectives.shouldNotReachHere();
             }
         }
+
+        /*
+         * Only a send of the home context can evaluate a closure primitive with the home context as
+         * sender. Unwind-marked methods (#ensure:, #ifCurtailed:) and modified senders need the
+         * full non-local return handling.
+         */
+        private static boolean isCalledByHomeContext(final VirtualFrame frame, final ContextObject homeContext) {
+            final Object sender = FrameAccess.getSender(frame);
+            return (sender == homeContext || sender == homeContext.getFrameMarker()) && !FrameAccess.hasModifiedSender(frame) && !homeContext.hasModifiedSender() &&
+                            !homeContext.getCodeObject().isUnwindMarked();
+        }
     }
 
     protected abstract static class AbstractReturnConstantNode extends AbstractNormalReturnNode {
@@ -105,6 +131,20 @@ public final class ReturnBytecodes {
         }
     }
 
+    private static void countNonLocalReturn(final SqueakImageContext image) {
+        final NonLocalReturnStatistics statistics = image.nonLocalReturnStatistics;
+        if (statistics != null) {
+            statistics.countNonLocalReturn();
+        }
+    }
+
+    private static void countDirectReturn(final SqueakImageContext image) {
+        final NonLocalReturnStatistics statistics = image.nonLocalReturnStatistics;
+        if (statistics != null) {
+            statistics.countDirectReturn();
+        }
+    }
+
     public static final class ReturnConstantTrueNode extends AbstractReturnConstantNode {
         protected ReturnConstantTrueNode(final VirtualFrame frame, final CompiledCodeObject code, final int index) {
             super(frame, code, index);
@@ -168,6 +208,7 @@ public final class ReturnBytecodes {
                 // Target is sender of closure's home context.
                 final ContextObject homeContext = FrameAccess.getClosure(frame).getHomeContext();
                 if (homeContext.canBeReturnedTo()) {
+                    countNonLocalReturn(getContext());
                     throw new NonLocalReturn(getReturnValue(frame), homeContext.getFrameSender());
                 } else {
                     CompilerDirectives.transferToInterpreter();
@@ -28,12 +28,14 @@ import de.hpi.swa.trufflesqueak.image.SqueakImageContext;
 import de.hpi.swa.trufflesqueak.model.AbstractPointersObject;
 import de.hpi.swa.trufflesqueak.model.ClassObject;
 import de.hpi.swa.trufflesqueak.model.CompiledCodeObject;
+import de.hpi.swa.trufflesqueak.model.ContextObject;
 import de.hpi.swa.trufflesqueak.model.NativeObject;
 import de.hpi.swa.trufflesqueak.model.layout.ObjectLayouts.CONTEXT;
 import de.hpi.swa.trufflesqueak.model.layout.ObjectLayouts.POINT;
 import de.hpi.swa.trufflesqueak.nodes.accessing.AbstractPointersObjectNodes.AbstractPointersObjectReadNode;
 import de.hpi.swa.trufflesqueak.nodes.bytecodes.SendBytecodesFactory.SendSpecialSelectorQuickPointXNodeGen;
 import de.hpi.swa.trufflesqueak.nodes.bytecodes.SendBytecodesFactory.SendSpecialSelectorQuickPointYNodeGen;
+import de.hpi.swa.trufflesqueak.nodes.context.frame.FrameStackPopNode;
 import de.hpi.swa.trufflesqueak.nodes.context.frame.FrameStackPushNode;
 import de.hpi.swa.trufflesqueak.nodes.context.frame.FrameStackReadNode;
 import de.hpi.swa.trufflesqueak.nodes.context.frame.FrameStackWriteNode;
@@ -46,6 +48,7 @@ import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveNodeFactory;
 import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveNodeFactory.ArgumentsLocation;
 import de.hpi.swa.trufflesqueak.nodes.primitives.impl.ControlPrimitives.PrimExitToDebuggerNode;
 import de.hpi.swa.trufflesqueak.util.FrameAccess;
+import de.hpi.swa.trufflesqueak.util.SendSiteStatistics;
 
 public final class SendBytecodes {
     public abstract static class AbstractSendNode extends AbstractInstrumentableBytecodeNode {
@@ -53,9 +56,11 @@ public final class SendBytecodes {
         @CompilationFinal private int stackPointer = -1;
 
         @Child private FrameStackPushNode pushNode;
+        @Child private FrameStackPopNode popNode;
 
         private final ConditionProfile nlrProfile = ConditionProfile.create();
         private final ConditionProfile nvrProfile = ConditionProfile.create();
+        private final ConditionProfile directReturnProfile = ConditionProfile.create();
 
         private AbstractSendNode(final CompiledCodeObject code, final int index, final int numBytecodes, final int numArgs) {
             super(code, index, numBytecodes);
@@ -96,6 +101,24 @@ public final class SendBytecodes {
 
         protected abstract Object dispatchSend(VirtualFrame frame);
 
+        /**
+         * Answers whether a block evaluated by this send returned from its home context, which is
+         * this frame (see {@link ContextObject#markDirectReturn()}). The result of the send is then
+         * the return value of this frame.
+         */
+        public final boolean isDirectReturn(final VirtualFrame frame) {
+            final ContextObject context = FrameAccess.getContext(frame);
+            return directReturnProfile.profile(context != null && context.consumeDirectReturn());
+        }
+
+        public final Object popResult(final VirtualFrame frame) {
+            if (popNode == null) {
+                CompilerDirectives.transferToInterpreterAndInvalidate();
+                popNode = insert(FrameStackPopNode.create());
+            }
+            return popNode.execute(frame);
+        }
+
         private FrameStackPushNode getPushNode() {
             if (pushNode == null) {
                 CompilerDirectives.transferToInterpreterAndInvalidate();
@@ -125,17 +148,22 @@ public final class SendBytecodes {
     }
 
     public static final class SelfSendNode extends AbstractSendNode {
-        public static final int INLINE_CACHE_SIZE = 6;
+        /* Limit of the inline caches of send sites, see the inline-cache-size option. */
+        public static int getInlineCacheSize() {
+            return SqueakImageContext.getSlow().options.inlineCacheSize();
+        }
 
         @Child private FrameStackReadNode peekAtReceiverNode;
         @Child private LookupClassNode lookupClassNode = LookupClassNode.create();
         @Child private LookupSelectorNode lookupSelectorNode;
         @Child private DispatchLookupResultNode dispatchNode;
+        private final SendSiteStatistics.Site siteStatistics;
 
         private SelfSendNode(final CompiledCodeObject code, final int index, final int numBytecodes, final NativeObject selector, final int numArgs) {
             super(code, index, numBytecodes, numArgs);
             lookupSelectorNode = LookupSelectorNode.create(selector);
             dispatchNode = DispatchLookupResultNode.create(selector, numArgs);
+            siteStatistics = SendSiteStatistics.registerOrNull(code, this.index, SendSiteStatistics.Kind.SELF, selector.asStringUnsafe(), lookupSelectorNode);
         }
 
         public static SelfSendNode create(final CompiledCodeObject code, final int index, final int numBytecodes, final NativeObject selector, final int numArgs) {
@@ -146,6 +174,9 @@ public final class SendBytecodes {
         protected Object dispatchSend(final VirtualFrame frame) {
             final Object receiver = peekAtReceiver(frame);
             final ClassObject receiverClass = lookupClassNode.execute(receiver);
+            if (siteStatistics != null) {
+                siteStatistics.countCall(receiverClass);
+            }
             final Object lookupResult = lookupSelectorNode.execute(receiverClass);
             return dispatchNode.execute(frame, receiver, receiverClass, lookupResult);
         }
@@ -167,6 +198,7 @@ public final class SendBytecodes {
 
     public static final class SuperSendNode extends AbstractSendNode {
         @Child private DispatchSuperSendNode dispatchNode;
+        private final SendSiteStatistics.Site siteStatistics;
 
         public SuperSendNode(final CompiledCodeObject code, final int index, final int numBytecodes, final byte param) {
             this(code, index, numBytecodes, param & 31, Byte.toUnsignedInt(param) >> 5);
@@ -176,10 +208,14 @@ public final class SendBytecodes {
             super(code, index, numBytecodes, numArgs);
             final NativeObject selector = (NativeObject) code.getLiteral(literalIndex);
             dispatchNode = DispatchSuperSendNode.create(code, selector, numArgs);
+            siteStatistics = SendSiteStatistics.registerOrNull(code, this.index, SendSiteStatistics.Kind.SUPER, selector.asStringUnsafe(), dispatchNode);
         }
 
         @Override
         protected Object dispatchSend(final VirtualFrame frame) {
+            if (siteStatistics != null) {
+                siteStatistics.countCall(dispatchNode.getMethodClass().getSuperclassOrNull());
+            }
             return dispatchNode.execute(frame);
         }
 
@@ -203,6 +239,7 @@ public final class SendBytecodes {
         @Child private FrameStackReadNode readDirectedClassNode;
         @Child private LookupSelectorNode lookupSelectorNode;
         @Child private DispatchLookupResultNode dispatchNode;
+        private final SendSiteStatistics.Site siteStatistics;
 
         public DirectedSuperSendNode(final CompiledCodeObject code, final int index, final int numBytecodes, final int selectorLiteralIndex, final int numArgs) {
             super(code, index, numBytecodes, numArgs);
@@ -211,12 +248,16 @@ public final class SendBytecodes {
             final NativeObject selector = (NativeObject) code.getLiteral(selectorLiteralIndex);
             lookupSelectorNode = LookupSelectorNode.create(selector);
             dispatchNode = DispatchLookupResultNode.create(selector, numArgs);
+            siteStatistics = SendSiteStatistics.registerOrNull(code, this.index, SendSiteStatistics.Kind.DIRECTED_SUPER, selector.asStringUnsafe(), lookupSelectorNode);
         }
 
         @Override
         protected Object dispatchSend(final VirtualFrame frame) {
             final ClassObject superclass = popDirectedClass(frame).getSuperclassOrNull();
             assert superclass != null;
+            if (siteStatistics != null) {
+                siteStatistics.countCall(superclass);
+            }
             final Object lookupResult = lookupSelectorNode.execute(superclass);
             final Object receiver = peekAtReceiver(frame);
             return dispatchNode.execute(frame, receiver, superclass, lookupResult);
@@ -209,6 +209,22 @@ public final class SqueakBytecodeSistaV1Decoder extends AbstractSqueakBytecodeDe
         };
     }
 
+    @Override
+    protected boolean isStraightLineBytecode(final CompiledCodeObject code, final int index) {
+        final byte[] bytecode = code.getBytes();
+        int indexWithExt = index;
+        while (isSistaV1Extension(Byte.toUnsignedInt(bytecode[indexWithExt]))) {
+            indexWithExt += 2;
+        }
+        final int b = Byte.toUnsignedInt(bytecode[indexWithExt]);
+        return b <= 0x51 || b == 0x53 || b == 0x5F || 0xC8 <= b && b <= 0xD8 || 0xE2 <= b && b <= 0xE5 || 0xE7 <= b && b <= 0xE9 || 0xF0 <= b && b <= 0xF5;
+    }
+
+    @Override
+    protected boolean isSpecialSelectorSend(final int currentByte) {
+        return 0x60 <= currentByte && currentByte <= 0x7F;
+    }
+
     @Override
     protected String decodeBytecodeToString(final CompiledCodeObject code, final int b, final int index) {
         final byte[] bytecode = code.getBytes();
@@ -99,6 +99,18 @@ public final class SqueakBytecodeV3PlusClosuresDecoder extends AbstractSqueakByt
         };
     }
 
+    @Override
+    protected boolean isStraightLineBytecode(final CompiledCodeObject code, final int index) {
+        final int b = Byte.toUnsignedInt(code.getBytes()[index]);
+        /* Remote temp bytecodes (0x8C-0x8E) access the temp vector through the frame, as in SistaV1. */
+        return b <= 0x77 || 0x80 <= b && b <= 0x82 || b == 0x87 || b == 0x88 || b == 0x8A;
+    }
+
+    @Override
+    protected boolean isSpecialSelectorSend(final int currentByte) {
+        return 0xB0 <= currentByte && currentByte <= 0xCF;
+    }
+
     @Override
     protected String decodeBytecodeToString(final CompiledCodeObject code, final int b0, final int index) {
         final byte[] bytecode = code.getBytes();
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2017-2024 Software Architecture Group, Hasso Plattner Institute
+ * Copyright (c) 2021-2024 Oracle and/or its affiliates
+ *
+ * Licensed under the MIT License.
+ */
+package de.hpi.swa.trufflesqueak.nodes.bytecodes;
+
+import com.oracle.truffle.api.CompilerAsserts;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.nodes.ExplodeLoop;
+
+import de.hpi.swa.trufflesqueak.model.CompiledCodeObject;
+
+/**
+ * Fuses a run of straight-line bytecodes (pushes, stores, pops, and dups) with the bytecode that
+ * follows them, so that the interpreter dispatches once for the whole sequence instead of once per
+ * bytecode. The terminal bytecode (typically a send, jump, or return) is decoded lazily on the
+ * first execution of the superinstruction, so nodes that quicken based on the state of the frame
+ * (e.g. special selector sends peeking at their receiver) see the same frame they would see
+ * without fusion. Jumps into the middle of a superinstruction still find the individual bytecode
+ * nodes, as those slots are decoded separately on demand.
+ */
+public final class SuperinstructionNode extends AbstractBytecodeNode {
+    public static final int MAX_PREFIX_LENGTH = 8;
+
+    @Children private final AbstractBytecodeNode[] prefixNodes;
+    @Child private AbstractBytecodeNode terminalNode;
+
+    SuperinstructionNode(final CompiledCodeObject code, final int index, final int numBytecodes, final AbstractBytecodeNode[] prefixNodes) {
+        super(code, index, numBytecodes);
+        this.prefixNodes = prefixNodes;
+    }
+
+    @Override
+    @ExplodeLoop
+    public void executeVoid(final VirtualFrame frame) {
+        for (final AbstractBytecodeNode node : prefixNodes) {
+            node.executeVoid(frame);
+        }
+    }
+
+    /** Answers the terminal node, or {@code null} if it has not been decoded yet. */
+    public AbstractBytecodeNode getTerminalNode() {
+        return terminalNode;
+    }
+
+    public AbstractBytecodeNode setTerminalNode(final AbstractBytecodeNode node) {
+        assert terminalNode == null && node.index == getSuccessorIndex();
+        terminalNode = insert(node);
+        return terminalNode;
+    }
+
+    public int getPrefixLength() {
+        return prefixNodes.length;
+    }
+
+    @Override
+    public String toString() {
+        CompilerAsserts.neverPartOfCompilation();
+        final StringBuilder sb = new StringBuilder("superinstruction: ");
+        for (final AbstractBytecodeNode node : prefixNodes) {
+            sb.append(node).append("; ");
+        }
+        return sb.append(terminalNode == null ? "<undecoded>" : terminalNode).toString();
+    }
+}
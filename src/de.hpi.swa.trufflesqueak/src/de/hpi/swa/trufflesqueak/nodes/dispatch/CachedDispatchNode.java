@@ -106,11 +106,12 @@ public abstract class CachedDispatchNode extends AbstractNode {
         @Override
         public Object execute(final VirtualFrame frame) {
             if (failureCounter.getAssumption().isValid()) {
+                failureCounter.countCall();
                 try {
                     return primitiveNode.execute(frame);
                 } catch (final PrimitiveFailed pf) {
                     CompilerDirectives.transferToInterpreter();
-                    if (failureCounter.shouldRewriteToCall()) {
+                    if (failureCounter.shouldRewriteToCall(pf.getReasonCode())) {
                         return execute(frame);
                     } else {
                         return slowPathSendToFallbackCode(frame);
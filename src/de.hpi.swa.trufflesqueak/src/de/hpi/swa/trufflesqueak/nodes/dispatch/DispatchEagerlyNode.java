@@ -7,11 +7,13 @@
 package de.hpi.swa.trufflesqueak.nodes.dispatch;
 
 import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
 import com.oracle.truffle.api.dsl.Bind;
 import com.oracle.truffle.api.dsl.Cached;
 import com.oracle.truffle.api.dsl.Cached.Exclusive;
 import com.oracle.truffle.api.dsl.Cached.Shared;
 import com.oracle.truffle.api.dsl.ImportStatic;
+import com.oracle.truffle.api.dsl.Introspectable;
 import com.oracle.truffle.api.dsl.NeverDefault;
 import com.oracle.truffle.api.dsl.ReportPolymorphism;
 import com.oracle.truffle.api.dsl.Specialization;
@@ -19,12 +21,17 @@ import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.nodes.DirectCallNode;
 import com.oracle.truffle.api.nodes.IndirectCallNode;
 import com.oracle.truffle.api.nodes.Node;
+import com.oracle.truffle.api.nodes.NodeUtil;
 import com.oracle.truffle.api.profiles.InlinedExactClassProfile;
 
 import de.hpi.swa.trufflesqueak.exceptions.PrimitiveFailed;
 import de.hpi.swa.trufflesqueak.model.CompiledCodeObject;
 import de.hpi.swa.trufflesqueak.model.ContextObject;
+import de.hpi.swa.trufflesqueak.model.NativeObject;
 import de.hpi.swa.trufflesqueak.nodes.AbstractNode;
+import de.hpi.swa.trufflesqueak.nodes.AbstractRootNode;
+import de.hpi.swa.trufflesqueak.nodes.bytecodes.AbstractBytecodeNode;
+import de.hpi.swa.trufflesqueak.nodes.bytecodes.SendBytecodes.SelfSendNode;
 import de.hpi.swa.trufflesqueak.nodes.context.frame.GetContextOrMarkerNode;
 import de.hpi.swa.trufflesqueak.nodes.context.frame.GetOrCreateContextNode;
 import de.hpi.swa.trufflesqueak.nodes.primitives.AbstractPrimitiveNode;
@@ -32,31 +39,54 @@ import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveNodeFactory;
 import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveNodeFactory.ArgumentsLocation;
 import de.hpi.swa.trufflesqueak.util.FrameAccess;
 import de.hpi.swa.trufflesqueak.util.PrimitiveFailedCounter;
+import de.hpi.swa.trufflesqueak.util.SendSiteStatistics;
 
-@ImportStatic({PrimitiveNodeFactory.class, ArgumentsLocation.class})
+@Introspectable
+@ImportStatic({PrimitiveNodeFactory.class, ArgumentsLocation.class, SelfSendNode.class})
 public abstract class DispatchEagerlyNode extends AbstractNode {
-    protected static final int INLINE_CACHE_SIZE = 6;
-
     @Child private GetOrCreateContextNode getOrCreateContextNode;
+    private final boolean recordSiteStatistics = SendSiteStatistics.isEnabled();
+    @CompilationFinal private SendSiteStatistics.Site siteStatistics;
 
     @NeverDefault
     public static DispatchEagerlyNode create() {
         return DispatchEagerlyNodeGen.create();
     }
 
-    public abstract Object executeDispatch(VirtualFrame frame, CompiledCodeObject method, Object[] receiverAndArguments);
+    public final Object executeDispatch(final VirtualFrame frame, final CompiledCodeObject method, final Object[] receiverAndArguments) {
+        if (recordSiteStatistics) {
+            countSiteCall(method);
+        }
+        return execute(frame, method, receiverAndArguments);
+    }
+
+    protected abstract Object execute(VirtualFrame frame, CompiledCodeObject method, Object[] receiverAndArguments);
+
+    /* Registers the site on the first call, when this node has been adopted by its method. */
+    private void countSiteCall(final CompiledCodeObject method) {
+        if (siteStatistics == null) {
+            CompilerDirectives.transferToInterpreterAndInvalidate();
+            final CompiledCodeObject code = getRootNode() instanceof AbstractRootNode ? getCode() : null;
+            final AbstractBytecodeNode bytecodeNode = NodeUtil.findParent(this, AbstractBytecodeNode.class);
+            final int pc = bytecodeNode != null ? bytecodeNode.getIndex() : -1;
+            final NativeObject selector = method.getCompiledInSelector();
+            siteStatistics = SendSiteStatistics.registerOrNull(code, pc, SendSiteStatistics.Kind.EAGER, selector != null ? selector.asStringUnsafe() : "?", this);
+        }
+        siteStatistics.countCall(method);
+    }
 
     @Specialization(guards = {"cachedMethod.hasPrimitive()", "method == cachedMethod", "primitiveNode != null"}, //
-                    limit = "INLINE_CACHE_SIZE", assumptions = {"cachedMethod.getCallTargetStable()", "failureCounter.getAssumption()"}, rewriteOn = PrimitiveFailed.class)
+                    limit = "getInlineCacheSize()", assumptions = {"cachedMethod.getCallTargetStable()", "failureCounter.getAssumption()"}, rewriteOn = PrimitiveFailed.class)
     protected static final Object doPrimitiveEagerly(final VirtualFrame frame, @SuppressWarnings("unused") final CompiledCodeObject method, final Object[] receiverAndArguments,
                     @Cached("method") final CompiledCodeObject cachedMethod,
                     @Cached("getOrCreateIndexedOrNamed(cachedMethod, PROVIDED_ON_EXECUTE)") final AbstractPrimitiveNode primitiveNode,
                     @Cached("create(primitiveNode)") final PrimitiveFailedCounter failureCounter) {
+        failureCounter.countCall();
         try {
             return primitiveNode.executeWithArguments(frame, receiverAndArguments);
         } catch (final PrimitiveFailed pf) {
             CompilerDirectives.transferToInterpreter();
-            if (failureCounter.shouldRewriteToCall()) {
+            if (failureCounter.shouldRewriteToCall(pf.getReasonCode())) {
                 throw pf; // Rewrite specialization.
             } else {
                 // Slow path send to fallback code.
@@ -66,7 +96,7 @@ public abstract class DispatchEagerlyNode extends AbstractNode {
     }
 
     @Specialization(guards = {"method == cachedMethod"}, //
-                    limit = "INLINE_CACHE_SIZE", assumptions = {"cachedMethod.getCallTargetStable()", "cachedMethod.getDoesNotNeedSenderAssumption()"}, replaces = "doPrimitiveEagerly")
+                    limit = "getInlineCacheSize()", assumptions = {"cachedMethod.getCallTargetStable()", "cachedMethod.getDoesNotNeedSenderAssumption()"}, replaces = "doPrimitiveEagerly")
     protected static final Object doDirect(final VirtualFrame frame, @SuppressWarnings("unused") final CompiledCodeObject method, final Object[] receiverAndArguments,
                     @SuppressWarnings("unused") @Cached("method") final CompiledCodeObject cachedMethod,
                     @Exclusive @Cached final GetContextOrMarkerNode getContextOrMarkerNode,
@@ -75,7 +105,7 @@ public abstract class DispatchEagerlyNode extends AbstractNode {
     }
 
     @Specialization(guards = {"method == cachedMethod"}, //
-                    limit = "INLINE_CACHE_SIZE", assumptions = {"cachedMethod.getCallTargetStable()"}, replaces = {"doPrimitiveEagerly"})
+                    limit = "getInlineCacheSize()", assumptions = {"cachedMethod.getCallTargetStable()"}, replaces = {"doPrimitiveEagerly"})
     protected final Object doDirectWithSender(final VirtualFrame frame, @SuppressWarnings("unused") final CompiledCodeObject method, final Object[] receiverAndArguments,
                     @SuppressWarnings("unused") @Cached("method") final CompiledCodeObject cachedMethod,
                     @Cached("create(cachedMethod.getCallTarget())") final DirectCallNode callNode) {
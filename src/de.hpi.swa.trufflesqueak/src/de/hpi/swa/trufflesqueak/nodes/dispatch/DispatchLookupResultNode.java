@@ -34,7 +34,7 @@ public abstract class DispatchLookupResultNode extends AbstractDispatchNode {
     public abstract Object execute(VirtualFrame frame, Object receiver, ClassObject receiverClass, Object lookupResult);
 
     @SuppressWarnings("unused")
-    @Specialization(guards = "lookupResult == cachedLookupResult", limit = "INLINE_CACHE_SIZE", assumptions = {"dispatchNode.getCallTargetStable()"})
+    @Specialization(guards = "lookupResult == cachedLookupResult", limit = "getInlineCacheSize()", assumptions = {"dispatchNode.getCallTargetStable()"})
     protected static final Object doCached(final VirtualFrame frame, final Object receiver, final ClassObject receiverClass, final Object lookupResult,
                     @Cached("lookupResult") final Object cachedLookupResult,
                     @Cached("create(frame, selector, argumentCount, receiverClass, lookupResult)") final CachedDispatchNode dispatchNode) {
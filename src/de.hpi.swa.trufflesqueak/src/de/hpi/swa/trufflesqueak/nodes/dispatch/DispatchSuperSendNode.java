@@ -7,6 +7,7 @@
 package de.hpi.swa.trufflesqueak.nodes.dispatch;
 
 import com.oracle.truffle.api.dsl.Cached;
+import com.oracle.truffle.api.dsl.Introspectable;
 import com.oracle.truffle.api.dsl.Specialization;
 import com.oracle.truffle.api.frame.VirtualFrame;
 
@@ -14,6 +15,7 @@ import de.hpi.swa.trufflesqueak.model.ClassObject;
 import de.hpi.swa.trufflesqueak.model.CompiledCodeObject;
 import de.hpi.swa.trufflesqueak.model.NativeObject;
 
+@Introspectable
 public abstract class DispatchSuperSendNode extends AbstractDispatchNode {
     protected final ClassObject methodClass;
 
@@ -30,6 +32,10 @@ public abstract class DispatchSuperSendNode extends AbstractDispatchNode {
         return DispatchSuperSendNodeGen.create(code, selector, argumentCount);
     }
 
+    public final ClassObject getMethodClass() {
+        return methodClass;
+    }
+
     public abstract Object execute(VirtualFrame frame);
 
     @Specialization(assumptions = {"methodClass.getClassHierarchyStable()", "dispatchNode.getCallTargetStable()"})
@@ -28,7 +28,7 @@ public abstract class LookupClassNode extends AbstractNode {
 
     public abstract ClassObject execute(Object receiver);
 
-    @Specialization(guards = "guard.check(receiver)", assumptions = "guard.getIsValidAssumption()", limit = "INLINE_CACHE_SIZE")
+    @Specialization(guards = "guard.check(receiver)", assumptions = "guard.getIsValidAssumption()", limit = "getInlineCacheSize()")
     protected final ClassObject doCached(@SuppressWarnings("unused") final Object receiver,
                     @Cached("create(receiver)") final LookupClassGuard guard) {
         return guard.getSqueakClass(getContext());
@@ -11,6 +11,7 @@ import java.util.ArrayList;
 import com.oracle.truffle.api.Assumption;
 import com.oracle.truffle.api.dsl.Cached;
 import com.oracle.truffle.api.dsl.ImportStatic;
+import com.oracle.truffle.api.dsl.Introspectable;
 import com.oracle.truffle.api.dsl.ReportPolymorphism;
 import com.oracle.truffle.api.dsl.Specialization;
 
@@ -20,7 +21,9 @@ import de.hpi.swa.trufflesqueak.model.NativeObject;
 import de.hpi.swa.trufflesqueak.nodes.AbstractNode;
 import de.hpi.swa.trufflesqueak.nodes.bytecodes.SendBytecodes.SelfSendNode;
 import de.hpi.swa.trufflesqueak.util.MethodCacheEntry;
+import de.hpi.swa.trufflesqueak.util.SendSiteStatistics;
 
+@Introspectable
 @ImportStatic(SelfSendNode.class)
 public abstract class LookupSelectorNode extends AbstractNode {
     protected final NativeObject selector;
@@ -36,7 +39,7 @@ public abstract class LookupSelectorNode extends AbstractNode {
     public abstract Object execute(ClassObject receiverClass);
 
     @SuppressWarnings("unused")
-    @Specialization(limit = "INLINE_CACHE_SIZE", guards = {"receiverClass == cachedClass"}, //
+    @Specialization(limit = "getInlineCacheSize()", guards = {"receiverClass == cachedClass"}, //
                     assumptions = {"cachedClass.getClassHierarchyStable()", "methodDictStableAssumptions"})
     protected static final Object doCached(final ClassObject receiverClass,
                     @Cached("receiverClass") final ClassObject cachedClass,
@@ -72,7 +75,15 @@ public abstract class LookupSelectorNode extends AbstractNode {
 
     @ReportPolymorphism.Megamorphic
     @Specialization(replaces = "doCached")
-    protected final Object doUncached(final ClassObject receiverClass) {
+    protected final Object doUncached(final ClassObject receiverClass,
+                    @Cached(value = "getContext().getDispatchTableOrNull(selector)", neverDefault = false) final SelectorDispatchTable dispatchTable) {
+        if (dispatchTable != null) {
+            return dispatchTable.lookup(receiverClass, selector);
+        }
+        final SendSiteStatistics statistics = getContext().sendSiteStatistics;
+        if (statistics != null) {
+            statistics.countMethodCacheLookup();
+        }
         final MethodCacheEntry cachedEntry = getContext().findMethodCacheEntry(receiverClass, selector);
         if (cachedEntry.getResult() == null) {
             cachedEntry.setResult(receiverClass.lookupInMethodDictSlow(selector));
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2017-2024 Software Architecture Group, Hasso Plattner Institute
+ * Copyright (c) 2021-2024 Oracle and/or its affiliates
+ *
+ * Licensed under the MIT License.
+ */
+package de.hpi.swa.trufflesqueak.nodes.dispatch;
+
+import java.util.Arrays;
+
+import com.oracle.truffle.api.Assumption;
+import com.oracle.truffle.api.CompilerAsserts;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+
+import de.hpi.swa.trufflesqueak.image.SqueakImageContext;
+import de.hpi.swa.trufflesqueak.model.ClassObject;
+import de.hpi.swa.trufflesqueak.model.NativeObject;
+
+/**
+ * Maps receiver classes to lookup results for a single selector and is shared by all megamorphic
+ * send sites of that selector. The table is indexed by the behavior hash (the class table index)
+ * of the receiver class, so a hit costs an array load, an identity check, and a check of the
+ * methodDictStable and classHierarchyStable assumptions the entry was created with. The table is
+ * direct-mapped and grows on collisions up to {@link #MAX_SIZE} entries, after which colliding
+ * classes replace each other. Classes that are not in the class table yet all share one slot, a
+ * lookup does not enter them. The table does not reference its selector, so that the weak table
+ * map in {@link SqueakImageContext} can drop it together with the selector.
+ */
+public final class SelectorDispatchTable {
+    private static final int INITIAL_SIZE = 8;
+    private static final int MAX_SIZE = 1024;
+
+    private Entry[] entries = new Entry[INITIAL_SIZE];
+
+    private static final class Entry {
+        private final ClassObject classObject;
+        private final Object lookupResult;
+        private final Assumption[] assumptions;
+
+        private Entry(final ClassObject classObject, final Object lookupResult, final Assumption[] assumptions) {
+            this.classObject = classObject;
+            this.lookupResult = lookupResult;
+            this.assumptions = assumptions;
+        }
+
+        private boolean isValid() {
+            for (final Assumption assumption : assumptions) {
+                if (!assumption.isValid()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    public Object lookup(final ClassObject receiverClass, final NativeObject selector) {
+        final Entry[] currentEntries = entries;
+        final Entry entry = currentEntries[indexOf(receiverClass, currentEntries.length)];
+        if (entry != null && entry.classObject == receiverClass && entry.isValid()) {
+            return entry.lookupResult;
+        }
+        return lookupAndInsert(receiverClass, selector);
+    }
+
+    @TruffleBoundary
+    private Object lookupAndInsert(final ClassObject receiverClass, final NativeObject selector) {
+        final Object lookupResult = receiverClass.lookupInMethodDictSlow(selector);
+        final Assumption[] methodDictStableAssumptions = LookupSelectorNode.createMethodDictStableAssumptions(receiverClass, lookupResult);
+        final Assumption[] assumptions = Arrays.copyOf(methodDictStableAssumptions, methodDictStableAssumptions.length + 1);
+        assumptions[methodDictStableAssumptions.length] = receiverClass.getClassHierarchyStable();
+        final Entry newEntry = new Entry(receiverClass, lookupResult, assumptions);
+        Entry[] currentEntries = entries;
+        int index = indexOf(receiverClass, currentEntries.length);
+        final Entry existing = currentEntries[index];
+        if (existing != null && existing.classObject.getSqueakHash() != receiverClass.getSqueakHash() && existing.isValid() && currentEntries.length < MAX_SIZE) {
+            currentEntries = grow(currentEntries);
+            index = indexOf(receiverClass, currentEntries.length);
+        }
+        currentEntries[index] = newEntry;
+        entries = currentEntries;
+        return lookupResult;
+    }
+
+    /* Rehashes valid entries into a larger table until they no longer collide or MAX_SIZE is reached. */
+    private static Entry[] grow(final Entry[] oldEntries) {
+        CompilerAsserts.neverPartOfCompilation();
+        int newSize = oldEntries.length * 2;
+        Entry[] newEntries;
+        boolean collided;
+        do {
+            newEntries = new Entry[newSize];
+            collided = false;
+            for (final Entry entry : oldEntries) {
+                if (entry != null && entry.isValid()) {
+                    final int index = indexOf(entry.classObject, newSize);
+                    collided |= newEntries[index] != null && newEntries[index].classObject.getSqueakHash() != entry.classObject.getSqueakHash();
+                    newEntries[index] = entry;
+                }
+            }
+            newSize *= 2;
+        } while (collided && newSize <= MAX_SIZE);
+        return newEntries;
+    }
+
+    @TruffleBoundary
+    public void flush() {
+        entries = new Entry[INITIAL_SIZE];
+    }
+
+    private static int indexOf(final ClassObject classObject, final int size) {
+        return (int) classObject.getSqueakHash() & size - 1;
+    }
+}
@@ -25,6 +25,7 @@ public final class CheckForInterruptsState {
     private static final int INTERRUPT_CHECKS_EVERY_N_MILLISECONDS = 20;
 
     private final SqueakImageContext image;
+    private final boolean isEnabled;
     private ScheduledExecutorService executor;
     private final ArrayDeque<Integer> semaphoresToSignal = new ArrayDeque<>();
 
@@ -45,14 +46,19 @@ public final class CheckForInterruptsState {
 
     public CheckForInterruptsState(final SqueakImageContext image) {
         this.image = image;
-        if (image.options.disableInterruptHandler()) {
+        isEnabled = !image.options.disableInterruptHandler();
+        if (!isEnabled) {
             image.printToStdOut("Interrupt handler disabled...");
         }
     }
 
+    public boolean isEnabled() {
+        return isEnabled;
+    }
+
     @TruffleBoundary
     public void start() {
-        if (image.options.disableInterruptHandler()) {
+        if (!isEnabled) {
             return;
         }
         executor = Executors.newSingleThreadScheduledExecutor(r -> {
@@ -163,7 +169,7 @@ public final class CheckForInterruptsState {
         nextWakeupTick = 0;
         interruptPending = false;
         pendingFinalizationSignals = false;
-        clearWeakPointersQueue();
+        image.finalization.clear();
         semaphoresToSignal.clear();
     }
 
@@ -176,10 +182,4 @@ public final class CheckForInterruptsState {
         shutdown();
         clear();
     }
-
-    private void clearWeakPointersQueue() {
-        while (image.weakPointersQueue.poll() != null) {
-            // Poll until empty.
-        }
-    }
 }
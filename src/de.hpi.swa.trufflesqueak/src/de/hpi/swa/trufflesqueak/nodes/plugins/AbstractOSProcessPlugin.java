@@ -6,8 +6,14 @@
  */
 package de.hpi.swa.trufflesqueak.nodes.plugins;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 import com.oracle.truffle.api.CompilerDirectives;
 import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.TruffleFile;
 import com.oracle.truffle.api.TruffleLanguage.Env;
 import com.oracle.truffle.api.dsl.Bind;
 import com.oracle.truffle.api.dsl.Cached;
@@ -25,13 +31,19 @@ import com.oracle.truffle.nfi.api.SignatureLibrary;
 
 import de.hpi.swa.trufflesqueak.exceptions.PrimitiveFailed;
 import de.hpi.swa.trufflesqueak.image.SqueakImageContext;
+import de.hpi.swa.trufflesqueak.model.AbstractSqueakObject;
+import de.hpi.swa.trufflesqueak.model.ArrayObject;
 import de.hpi.swa.trufflesqueak.model.NativeObject;
 import de.hpi.swa.trufflesqueak.model.NilObject;
+import de.hpi.swa.trufflesqueak.model.PointersObject;
 import de.hpi.swa.trufflesqueak.nodes.primitives.AbstractPrimitiveFactoryHolder;
 import de.hpi.swa.trufflesqueak.nodes.primitives.AbstractPrimitiveNode;
 import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveFallbacks.BinaryPrimitiveFallback;
+import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveFallbacks.QuaternaryPrimitiveFallback;
+import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveFallbacks.TernaryPrimitiveFallback;
 import de.hpi.swa.trufflesqueak.nodes.primitives.SqueakPrimitive;
 import de.hpi.swa.trufflesqueak.util.ArrayUtils;
+import de.hpi.swa.trufflesqueak.util.LogUtils;
 
 public abstract class AbstractOSProcessPlugin extends AbstractPrimitiveFactoryHolder {
 
@@ -159,4 +171,90 @@ public abstract class AbstractOSProcessPlugin extends AbstractPrimitiveFactoryHo
             return sessionByteArray;
         }
     }
+
+    protected abstract static class AbstractSubprocessPrimitiveNode extends AbstractPrimitiveNode {
+        protected static final SqueakSubprocess getSubprocessOrPrimFail(final PointersObject handle) {
+            if (handle.getHiddenObject() instanceof final SqueakSubprocess subprocess) {
+                return subprocess;
+            } else {
+                throw PrimitiveFailed.BAD_ARGUMENT;
+            }
+        }
+    }
+
+    /**
+     * Spawns a child process without blocking. Answers an Array of a process handle, FilePlugin
+     * handles for the stdin, stdout, and stderr pipes of the child, and its pid. The semaphore at
+     * the given external object index is signaled whenever output becomes available and when the
+     * child exits, so that image-side readers never have to poll.
+     */
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveSpawnProcess")
+    protected abstract static class PrimSpawnProcessNode extends AbstractSubprocessPrimitiveNode implements QuaternaryPrimitiveFallback {
+        @Specialization(guards = {"command.isObjectType()", "isDirectory(directory)"})
+        protected final ArrayObject doSpawn(@SuppressWarnings("unused") final Object receiver, final ArrayObject command, final AbstractSqueakObject directory, final long semaphoreIndex) {
+            final SqueakImageContext image = getContext();
+            final SqueakSubprocess subprocess = spawn(image, command.getObjectStorage(), directory, (int) semaphoreIndex);
+            return image.asArrayOfObjects(PointersObject.newHandleWithHiddenObject(image, subprocess),
+                            PointersObject.newHandleWithHiddenObject(image, subprocess.getStdin()),
+                            PointersObject.newHandleWithHiddenObject(image, subprocess.getStdout()),
+                            PointersObject.newHandleWithHiddenObject(image, subprocess.getStderr()),
+                            subprocess.pid());
+        }
+
+        protected static final boolean isDirectory(final AbstractSqueakObject directory) {
+            return directory == NilObject.SINGLETON || directory instanceof final NativeObject o && o.isByteType();
+        }
+
+        @TruffleBoundary(transferToInterpreterOnException = false)
+        private static SqueakSubprocess spawn(final SqueakImageContext image, final Object[] commandObjects, final AbstractSqueakObject directory, final int semaphoreIndex) {
+            if (commandObjects.length == 0) {
+                throw PrimitiveFailed.BAD_ARGUMENT;
+            }
+            final List<String> command = new ArrayList<>(commandObjects.length);
+            for (final Object argument : commandObjects) {
+                if (argument instanceof final NativeObject o && o.isByteType()) {
+                    command.add(o.asStringUnsafe());
+                } else {
+                    throw PrimitiveFailed.BAD_ARGUMENT;
+                }
+            }
+            try {
+                final TruffleFile workingDirectory = directory instanceof final NativeObject o ? image.env.getPublicTruffleFile(o.asStringUnsafe()) : null;
+                return SqueakSubprocess.start(image, command, workingDirectory, semaphoreIndex);
+            } catch (IOException | UnsupportedOperationException | IllegalArgumentException | SecurityException e) {
+                LogUtils.IO.fine(() -> "Failed to spawn " + command + ": " + e);
+                throw PrimitiveFailed.GENERIC_ERROR;
+            }
+        }
+    }
+
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveSubprocessExitStatus")
+    protected abstract static class PrimSubprocessExitStatusNode extends AbstractSubprocessPrimitiveNode implements BinaryPrimitiveFallback {
+        @Specialization
+        protected static final Object doExitStatus(@SuppressWarnings("unused") final Object receiver, final PointersObject handle) {
+            return NilObject.nullToNil(getExitStatus(getSubprocessOrPrimFail(handle)));
+        }
+
+        @TruffleBoundary
+        private static Long getExitStatus(final SqueakSubprocess subprocess) {
+            return subprocess.getExitStatus();
+        }
+    }
+
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveSubprocessTerminate")
+    protected abstract static class PrimSubprocessTerminateNode extends AbstractSubprocessPrimitiveNode implements TernaryPrimitiveFallback {
+        @Specialization
+        protected static final Object doTerminate(final Object receiver, final PointersObject handle, final boolean forcibly) {
+            terminate(getSubprocessOrPrimFail(handle), forcibly);
+            return receiver;
+        }
+
+        @TruffleBoundary
+        private static void terminate(final SqueakSubprocess subprocess, final boolean forcibly) {
+            subprocess.terminate(forcibly);
+        }
+    }
 }
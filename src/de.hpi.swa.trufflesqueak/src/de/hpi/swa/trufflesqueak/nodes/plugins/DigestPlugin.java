@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2017-2024 Software Architecture Group, Hasso Plattner Institute
+ * Copyright (c) 2021-2024 Oracle and/or its affiliates
+ *
+ * Licensed under the MIT License.
+ */
+package de.hpi.swa.trufflesqueak.nodes.plugins;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Locale;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.dsl.GenerateNodeFactory;
+import com.oracle.truffle.api.dsl.NodeFactory;
+import com.oracle.truffle.api.dsl.Specialization;
+
+import de.hpi.swa.trufflesqueak.exceptions.PrimitiveFailed;
+import de.hpi.swa.trufflesqueak.model.NativeObject;
+import de.hpi.swa.trufflesqueak.model.PointersObject;
+import de.hpi.swa.trufflesqueak.model.layout.ObjectLayouts.ERROR_TABLE;
+import de.hpi.swa.trufflesqueak.nodes.primitives.AbstractPrimitiveFactoryHolder;
+import de.hpi.swa.trufflesqueak.nodes.primitives.AbstractPrimitiveNode;
+import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveFallbacks.BinaryPrimitiveFallback;
+import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveFallbacks.QuinaryPrimitiveFallback;
+import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveFallbacks.SenaryPrimitiveFallback;
+import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveFallbacks.TernaryPrimitiveFallback;
+import de.hpi.swa.trufflesqueak.nodes.primitives.SqueakPrimitive;
+
+/**
+ * Hashes whole ranges of ByteArrays and ByteStrings with the JDK's {@link MessageDigest} and
+ * {@link Mac} implementations (MD5, SHA-1, SHA-256, SHA-384, SHA-512, and their HMACs) instead of
+ * one block per primitive call (see DSAPrims>>#primitiveHashBlock and
+ * CroquetPlugin>>#primitiveMD5Transform). Streams are hashed incrementally through a handle
+ * created with primitiveDigestCreate or primitiveHmacCreate. Ranges are one-based and inclusive,
+ * algorithm names are case-insensitive and may omit the dash (e.g., 'sha256').
+ */
+public final class DigestPlugin extends AbstractPrimitiveFactoryHolder {
+
+    @Override
+    public List<? extends NodeFactory<? extends AbstractPrimitiveNode>> getFactories() {
+        return DigestPluginFactory.getFactories();
+    }
+
+    private enum Algorithm {
+        MD5("MD5", "HmacMD5"),
+        SHA1("SHA-1", "HmacSHA1"),
+        SHA256("SHA-256", "HmacSHA256"),
+        SHA384("SHA-384", "HmacSHA384"),
+        SHA512("SHA-512", "HmacSHA512");
+
+        private final String digestName;
+        private final String macName;
+        private MessageDigest prototype;
+
+        Algorithm(final String digestName, final String macName) {
+            this.digestName = digestName;
+            this.macName = macName;
+        }
+
+        private static Algorithm fromName(final NativeObject name) {
+            final String key = name.asStringUnsafe().replace("-", "").toUpperCase(Locale.ROOT);
+            for (final Algorithm algorithm : values()) {
+                if (algorithm.name().equals(key)) {
+                    return algorithm;
+                }
+            }
+            throw PrimitiveFailed.BAD_ARGUMENT;
+        }
+
+        /* Cloning a prototype avoids the provider lookup of MessageDigest.getInstance. */
+        private synchronized MessageDigest newDigest() {
+            try {
+                if (prototype == null) {
+                    prototype = MessageDigest.getInstance(digestName);
+                }
+                return (MessageDigest) prototype.clone();
+            } catch (final CloneNotSupportedException e) {
+                try {
+                    return MessageDigest.getInstance(digestName);
+                } catch (final GeneralSecurityException e1) {
+                    throw PrimitiveFailed.GENERIC_ERROR;
+                }
+            } catch (final GeneralSecurityException e) {
+                throw PrimitiveFailed.GENERIC_ERROR;
+            }
+        }
+
+        private Mac newMac(final byte[] key) {
+            try {
+                final Mac mac = Mac.getInstance(macName);
+                mac.init(new SecretKeySpec(key, macName));
+                return mac;
+            } catch (final GeneralSecurityException | IllegalArgumentException e) {
+                /* Empty keys are rejected by SecretKeySpec. */
+                throw PrimitiveFailed.BAD_ARGUMENT;
+            }
+        }
+    }
+
+    @TruffleBoundary
+    private static byte[] digest(final NativeObject algorithmName, final NativeObject data, final long start, final long stop) {
+        final MessageDigest digest = Algorithm.fromName(algorithmName).newDigest();
+        update(digest, data, start, stop);
+        return digest.digest();
+    }
+
+    @TruffleBoundary
+    private static byte[] hmac(final NativeObject algorithmName, final NativeObject key, final NativeObject data, final long start, final long stop) {
+        final Mac mac = Algorithm.fromName(algorithmName).newMac(key.getByteStorage());
+        update(mac, data, start, stop);
+        return mac.doFinal();
+    }
+
+    @TruffleBoundary
+    private static void update(final Object digestOrMac, final NativeObject data, final long start, final long stop) {
+        final int length = data.getByteLength();
+        if (start < 1 || stop > length || start > stop + 1) {
+            throw PrimitiveFailed.BAD_INDEX;
+        }
+        final int offset = (int) start - 1;
+        final int count = (int) (stop - start + 1);
+        if (digestOrMac instanceof final MessageDigest digest) {
+            digest.update(data.getByteStorage(), offset, count);
+        } else {
+            ((Mac) digestOrMac).update(data.getByteStorage(), offset, count);
+        }
+    }
+
+    /* Answers the digest of all bytes since the last finish and resets the handle. */
+    @TruffleBoundary
+    private static byte[] finish(final Object digestOrMac) {
+        if (digestOrMac instanceof final MessageDigest digest) {
+            return digest.digest();
+        } else {
+            return ((Mac) digestOrMac).doFinal();
+        }
+    }
+
+    private static Object getDigestOrPrimFail(final PointersObject handle) {
+        final Object digestOrMac = handle.getHiddenObject();
+        if (digestOrMac instanceof MessageDigest || digestOrMac instanceof Mac) {
+            return digestOrMac;
+        } else {
+            throw PrimitiveFailed.andTransferToInterpreter(ERROR_TABLE.BAD_ARGUMENT.ordinal());
+        }
+    }
+
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveDigest")
+    protected abstract static class PrimDigestNode extends AbstractPrimitiveNode implements QuinaryPrimitiveFallback {
+        @Specialization(guards = {"algorithmName.isByteType()", "data.isByteType()"})
+        protected final NativeObject doDigest(@SuppressWarnings("unused") final Object receiver, final NativeObject algorithmName, final NativeObject data, final long start,
+                        final long stop) {
+            return getContext().asByteArray(digest(algorithmName, data, start, stop));
+        }
+    }
+
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveHmac")
+    protected abstract static class PrimHmacNode extends AbstractPrimitiveNode implements SenaryPrimitiveFallback {
+        @Specialization(guards = {"algorithmName.isByteType()", "key.isByteType()", "data.isByteType()"})
+        protected final NativeObject doHmac(@SuppressWarnings("unused") final Object receiver, final NativeObject algorithmName, final NativeObject key, final NativeObject data,
+                        final long start, final long stop) {
+            return getContext().asByteArray(hmac(algorithmName, key, data, start, stop));
+        }
+    }
+
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveDigestCreate")
+    protected abstract static class PrimDigestCreateNode extends AbstractPrimitiveNode implements BinaryPrimitiveFallback {
+        @Specialization(guards = "algorithmName.isByteType()")
+        @TruffleBoundary
+        protected final PointersObject doCreate(@SuppressWarnings("unused") final Object receiver, final NativeObject algorithmName) {
+            return PointersObject.newHandleWithHiddenObject(getContext(), Algorithm.fromName(algorithmName).newDigest());
+        }
+    }
+
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveHmacCreate")
+    protected abstract static class PrimHmacCreateNode extends AbstractPrimitiveNode implements TernaryPrimitiveFallback {
+        @Specialization(guards = {"algorithmName.isByteType()", "key.isByteType()"})
+        @TruffleBoundary
+        protected final PointersObject doCreate(@SuppressWarnings("unused") final Object receiver, final NativeObject algorithmName, final NativeObject key) {
+            return PointersObject.newHandleWithHiddenObject(getContext(), Algorithm.fromName(algorithmName).newMac(key.getByteStorage()));
+        }
+    }
+
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveDigestUpdate")
+    protected abstract static class PrimDigestUpdateNode extends AbstractPrimitiveNode implements QuinaryPrimitiveFallback {
+        @Specialization(guards = "data.isByteType()")
+        protected static final PointersObject doUpdate(@SuppressWarnings("unused") final Object receiver, final PointersObject handle, final NativeObject data, final long start,
+                        final long stop) {
+            update(getDigestOrPrimFail(handle), data, start, stop);
+            return handle;
+        }
+    }
+
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveDigestFinish")
+    protected abstract static class PrimDigestFinishNode extends AbstractPrimitiveNode implements BinaryPrimitiveFallback {
+        @Specialization
+        protected final NativeObject doFinish(@SuppressWarnings("unused") final Object receiver, final PointersObject handle) {
+            return getContext().asByteArray(finish(getDigestOrPrimFail(handle)));
+        }
+    }
+}
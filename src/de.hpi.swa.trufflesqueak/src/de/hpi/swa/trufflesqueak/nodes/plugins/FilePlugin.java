@@ -6,11 +6,16 @@
  */
 package de.hpi.swa.trufflesqueak.nodes.plugins;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.net.URI;
 import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemNotFoundException;
 import java.nio.file.FileSystems;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
@@ -45,6 +50,7 @@ import de.hpi.swa.trufflesqueak.nodes.primitives.AbstractPrimitiveNode;
 import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveFallbacks.BinaryPrimitiveFallback;
 import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveFallbacks.QuaternaryPrimitiveFallback;
 import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveFallbacks.QuinaryPrimitiveFallback;
+import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveFallbacks.SenaryPrimitiveFallback;
 import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveFallbacks.TernaryPrimitiveFallback;
 import de.hpi.swa.trufflesqueak.nodes.primitives.SqueakPrimitive;
 import de.hpi.swa.trufflesqueak.util.LogUtils;
@@ -57,6 +63,7 @@ public final class FilePlugin extends AbstractPrimitiveFactoryHolder {
                     TruffleFile.LAST_MODIFIED_TIME, TruffleFile.CREATION_TIME, TruffleFile.IS_DIRECTORY, TruffleFile.SIZE);
     private static final EnumSet<StandardOpenOption> OPTIONS_DEFAULT = EnumSet.of(StandardOpenOption.READ);
     private static final EnumSet<StandardOpenOption> OPTIONS_WRITEABLE = EnumSet.of(StandardOpenOption.WRITE, StandardOpenOption.READ, StandardOpenOption.CREATE);
+    private static final EnumSet<StandardOpenOption> OPTIONS_MAPPED_WRITABLE = EnumSet.of(StandardOpenOption.WRITE, StandardOpenOption.READ);
 
     public static final class STDIO_HANDLES {
         public static final byte IN = 0;
@@ -85,6 +92,14 @@ public final class FilePlugin extends AbstractPrimitiveFactoryHolder {
             return handle.getHiddenObject();
         }
 
+        protected static final SqueakMappedFile getMappedFileOrPrimFail(final PointersObject handle) {
+            if (handle.getHiddenObject() instanceof final SqueakMappedFile o && o.isOpen()) {
+                return o;
+            } else {
+                throw PrimitiveFailed.andTransferToInterpreter();
+            }
+        }
+
         protected final TruffleFile asPublicTruffleFile(final NativeObject obj) {
             return asPublicTruffleFile(obj.asStringUnsafe());
         }
@@ -154,6 +169,15 @@ public final class FilePlugin extends AbstractPrimitiveFactoryHolder {
         LogUtils.IO.log(Level.FINE, message, e);
     }
 
+    @TruffleBoundary
+    private static void closeFailsafe(final Closeable channel) {
+        try {
+            channel.close();
+        } catch (final IOException e) {
+            log("Failed to close file", e);
+        }
+    }
+
     @GenerateNodeFactory
     @SqueakPrimitive(names = "primitiveDirectoryCreate")
     protected abstract static class PrimDirectoryCreateNode extends AbstractFilePluginPrimitiveNode implements BinaryPrimitiveFallback {
@@ -346,23 +370,17 @@ public final class FilePlugin extends AbstractPrimitiveFactoryHolder {
     protected abstract static class PrimFileCloseNode extends AbstractFilePluginPrimitiveNode implements BinaryPrimitiveFallback {
 
         @Specialization(guards = "!isStdioFileDescriptor(fd)")
-        protected static final Object doClose(final Object receiver, final PointersObject fd) {
+        protected final Object doClose(final Object receiver, final PointersObject fd) {
             final Object channelOrNil = getChannelOrNil(fd);
+            if (channelOrNil instanceof final SqueakMappedFile mappedFile) {
+                getContext().unregisterOnDispose(mappedFile);
+            }
             if (channelOrNil != NilObject.SINGLETON) {
-                closeFailsafe(channelOrNil);
+                closeFailsafe((Closeable) channelOrNil);
             }
             return receiver;
         }
 
-        @TruffleBoundary
-        private static void closeFailsafe(final Object channel) {
-            try {
-                ((SeekableByteChannel) channel).close();
-            } catch (final IOException e) {
-                log("Failed to close file", e);
-            }
-        }
-
         @Specialization(guards = "isStdioFileDescriptor(fd)")
         protected static final Object doCloseStdio(final Object receiver, @SuppressWarnings("unused") final PointersObject fd) {
             return receiver;
@@ -473,6 +491,9 @@ public final class FilePlugin extends AbstractPrimitiveFactoryHolder {
 
         @Specialization(guards = {"!isStdioFileDescriptor(fd)", "target.isIntType()", "inBounds(startIndex, count, target.getIntLength())"})
         protected static final long doReadInts(@SuppressWarnings("unused") final Object receiver, final PointersObject fd, final NativeObject target, final long startIndex, final long count) {
+            if (count > Integer.MAX_VALUE / Integer.BYTES) {
+                throw PrimitiveFailed.BAD_ARGUMENT;
+            }
             final ByteBuffer dst = allocate((int) count * Integer.BYTES);
             final long readBytes = readFrom(getChannelOrPrimFail(fd), dst);
             final byte[] bytes = getBytes(dst);
@@ -709,4 +730,135 @@ public final class FilePlugin extends AbstractPrimitiveFactoryHolder {
             return BooleanObject.wrap(getContext().env.isFileIOAllowed());
         }
     }
+
+    /**
+     * Opens a file mapped into memory. Handles answered by this primitive only support the
+     * primitiveMappedFile* primitives and primitiveFileClose.
+     */
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveMappedFileOpen")
+    protected abstract static class PrimMappedFileOpenNode extends AbstractFilePluginPrimitiveNode implements TernaryPrimitiveFallback {
+
+        @Specialization(guards = "nativeFileName.isByteType()")
+        protected final PointersObject doOpen(@SuppressWarnings("unused") final Object receiver, final NativeObject nativeFileName, final boolean writableFlag) {
+            final SqueakImageContext image = getContext();
+            return PointersObject.newHandleWithHiddenObject(image, mapOrPrimFail(image, asPublicTruffleFile(nativeFileName), writableFlag));
+        }
+
+        @TruffleBoundary(transferToInterpreterOnException = false)
+        private static SqueakMappedFile mapOrPrimFail(final SqueakImageContext image, final TruffleFile truffleFile, final boolean writableFlag) {
+            if (!image.env.isFileIOAllowed()) {
+                throw PrimitiveFailed.GENERIC_ERROR;
+            }
+            final EnumSet<StandardOpenOption> options = writableFlag ? OPTIONS_MAPPED_WRITABLE : OPTIONS_DEFAULT;
+            final SeekableByteChannel channel;
+            try {
+                channel = truffleFile.newByteChannel(options);
+            } catch (IOException | UnsupportedOperationException | SecurityException e) {
+                log("Failed to open file for mapping", e);
+                throw PrimitiveFailed.GENERIC_ERROR;
+            }
+            FileChannel fileChannel = null;
+            try {
+                fileChannel = channel instanceof final FileChannel c ? c : openHostChannel(truffleFile, options);
+                final SqueakMappedFile mappedFile = SqueakMappedFile.open(fileChannel, writableFlag);
+                image.registerOnDispose(mappedFile);
+                return mappedFile;
+            } catch (IOException | UnsupportedOperationException | SecurityException | IllegalArgumentException | FileSystemNotFoundException e) {
+                log("Failed to map file", e);
+                throw PrimitiveFailed.GENERIC_ERROR;
+            } finally {
+                if (fileChannel != channel) {
+                    closeFailsafe(channel);
+                }
+            }
+        }
+
+        /*
+         * TruffleFile#newByteChannel decorates the channels of the file system of the context, so
+         * they cannot be mapped. Once the file system has granted access, the file is mapped through
+         * a FileChannel on the same path, which requires the file to be a file of the host.
+         */
+        private static FileChannel openHostChannel(final TruffleFile truffleFile, final EnumSet<StandardOpenOption> options) throws IOException {
+            final URI uri = truffleFile.getAbsoluteFile().toUri();
+            if (!"file".equals(uri.getScheme())) {
+                throw PrimitiveFailed.INAPPROPRIATE_OPERATION;
+            }
+            return FileChannel.open(Path.of(uri), options);
+        }
+    }
+
+    /** Reads into the target at a zero-based file position without changing any file position. */
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveMappedFileReadAt")
+    protected abstract static class PrimMappedFileReadAtNode extends AbstractFilePluginPrimitiveNode implements SenaryPrimitiveFallback {
+
+        @Specialization(guards = {"position >= 0", "target.isByteType()", "inBounds(startIndex, count, target.getByteLength())"})
+        protected static final long doReadBytes(@SuppressWarnings("unused") final Object receiver, final PointersObject fd, final long position, final NativeObject target, final long startIndex,
+                        final long count) {
+            return readBytes(getMappedFileOrPrimFail(fd), position, target.getByteStorage(), (int) startIndex - 1, (int) count);
+        }
+
+        @Specialization(guards = {"position >= 0", "target.isIntType()", "inBounds(startIndex, count, target.getIntLength())"})
+        protected static final long doReadInts(@SuppressWarnings("unused") final Object receiver, final PointersObject fd, final long position, final NativeObject target, final long startIndex,
+                        final long count) {
+            return readInts(getMappedFileOrPrimFail(fd), position, target.getIntStorage(), (int) startIndex - 1, (int) count);
+        }
+
+        @TruffleBoundary(transferToInterpreterOnException = false)
+        private static long readBytes(final SqueakMappedFile mappedFile, final long position, final byte[] bytes, final int offset, final int count) {
+            return mappedFile.read(position, bytes, offset, count);
+        }
+
+        @TruffleBoundary(transferToInterpreterOnException = false)
+        private static long readInts(final SqueakMappedFile mappedFile, final long position, final int[] ints, final int offset, final int count) {
+            return mappedFile.readInts(position, ints, offset, count);
+        }
+    }
+
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveMappedFileSize")
+    protected abstract static class PrimMappedFileSizeNode extends AbstractFilePluginPrimitiveNode implements BinaryPrimitiveFallback {
+
+        @Specialization
+        protected static final long doSize(@SuppressWarnings("unused") final Object receiver, final PointersObject fd) {
+            return getMappedFileOrPrimFail(fd).size();
+        }
+    }
+
+    /** Writes from the source at a zero-based file position. The mapping never grows the file. */
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveMappedFileWriteAt")
+    protected abstract static class PrimMappedFileWriteAtNode extends AbstractFilePluginPrimitiveNode implements SenaryPrimitiveFallback {
+
+        @Specialization(guards = {"position >= 0", "source.isByteType()", "inBounds(startIndex, count, source.getByteLength())"})
+        protected static final long doWriteBytes(@SuppressWarnings("unused") final Object receiver, final PointersObject fd, final long position, final NativeObject source, final long startIndex,
+                        final long count) {
+            return writeBytes(getMappedFileOrPrimFail(fd), position, source.getByteStorage(), (int) startIndex - 1, (int) count);
+        }
+
+        @Specialization(guards = {"position >= 0", "source.isIntType()", "inBounds(startIndex, count, source.getIntLength())"})
+        protected static final long doWriteInts(@SuppressWarnings("unused") final Object receiver, final PointersObject fd, final long position, final NativeObject source, final long startIndex,
+                        final long count) {
+            return writeInts(getMappedFileOrPrimFail(fd), position, source.getIntStorage(), (int) startIndex - 1, (int) count);
+        }
+
+        @TruffleBoundary(transferToInterpreterOnException = false)
+        private static long writeBytes(final SqueakMappedFile mappedFile, final long position, final byte[] bytes, final int offset, final int count) {
+            try {
+                return mappedFile.write(position, bytes, offset, count);
+            } catch (final ReadOnlyBufferException e) {
+                throw PrimitiveFailed.INAPPROPRIATE_OPERATION;
+            }
+        }
+
+        @TruffleBoundary(transferToInterpreterOnException = false)
+        private static long writeInts(final SqueakMappedFile mappedFile, final long position, final int[] ints, final int offset, final int count) {
+            try {
+                return mappedFile.writeInts(position, ints, offset, count);
+            } catch (final ReadOnlyBufferException e) {
+                throw PrimitiveFailed.INAPPROPRIATE_OPERATION;
+            }
+        }
+    }
 }
@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2017-2024 Software Architecture Group, Hasso Plattner Institute
+ * Copyright (c) 2021-2024 Oracle and/or its affiliates
+ *
+ * Licensed under the MIT License.
+ */
+package de.hpi.swa.trufflesqueak.nodes.plugins;
+
+import java.math.BigInteger;
+import java.util.List;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.dsl.Bind;
+import com.oracle.truffle.api.dsl.Cached;
+import com.oracle.truffle.api.dsl.GenerateNodeFactory;
+import com.oracle.truffle.api.dsl.NodeFactory;
+import com.oracle.truffle.api.dsl.Specialization;
+import com.oracle.truffle.api.nodes.Node;
+
+import de.hpi.swa.trufflesqueak.exceptions.PrimitiveFailed;
+import de.hpi.swa.trufflesqueak.image.SqueakImageContext;
+import de.hpi.swa.trufflesqueak.model.ClassObject;
+import de.hpi.swa.trufflesqueak.model.LargeIntegerObject;
+import de.hpi.swa.trufflesqueak.model.PointersObject;
+import de.hpi.swa.trufflesqueak.model.layout.ObjectLayouts.FRACTION;
+import de.hpi.swa.trufflesqueak.model.layout.ObjectLayouts.SCALED_DECIMAL;
+import de.hpi.swa.trufflesqueak.nodes.accessing.AbstractPointersObjectNodes.AbstractPointersObjectReadNode;
+import de.hpi.swa.trufflesqueak.nodes.accessing.AbstractPointersObjectNodes.AbstractPointersObjectWriteNode;
+import de.hpi.swa.trufflesqueak.nodes.primitives.AbstractPrimitiveFactoryHolder;
+import de.hpi.swa.trufflesqueak.nodes.primitives.AbstractPrimitiveNode;
+import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveFallbacks.BinaryPrimitiveFallback;
+import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveFallbacks.UnaryPrimitiveFallback;
+import de.hpi.swa.trufflesqueak.nodes.primitives.SqueakPrimitive;
+
+/**
+ * Exact arithmetic on Fraction and ScaledDecimal receivers. Fraction receivers accept Fraction and
+ * Integer arguments, ScaledDecimal receivers accept ScaledDecimal arguments. Results are
+ * normalized like their Smalltalk counterparts (Fractions with a denominator of one become
+ * Integers, ScaledDecimals use the larger scale). Operands that fit into longs are computed
+ * without allocating intermediate LargeIntegers, overflows are retried with BigIntegers. All
+ * other arguments fail, so that the image can coerce them.
+ */
+public final class FractionPlugin extends AbstractPrimitiveFactoryHolder {
+
+    @Override
+    public List<? extends NodeFactory<? extends AbstractPrimitiveNode>> getFactories() {
+        return FractionPluginFactory.getFactories();
+    }
+
+    protected abstract static class AbstractFractionPrimitiveNode extends AbstractPrimitiveNode {
+
+        protected final Object perform(final Node node, final PointersObject receiver, final Object argument, final AbstractPointersObjectReadNode readNode,
+                        final AbstractPointersObjectWriteNode writeNode) {
+            final SqueakImageContext image = getContext();
+            final ClassObject receiverClass = receiver.getSqueakClass();
+            if (receiverClass == image.getFractionClass()) {
+                return compute(image, node, readNode.execute(node, receiver, FRACTION.NUMERATOR), readNode.execute(node, receiver, FRACTION.DENOMINATOR),
+                                numeratorOf(image, node, argument, readNode), denominatorOf(image, node, argument, readNode), writeNode);
+            } else if (receiverClass == image.getScaledDecimalClass() && argument instanceof final PointersObject other && other.getSqueakClass() == receiverClass) {
+                final Object fraction = readNode.execute(node, receiver, SCALED_DECIMAL.FRACTION);
+                final Object otherFraction = readNode.execute(node, other, SCALED_DECIMAL.FRACTION);
+                final Object result = compute(image, node, numeratorOf(image, node, fraction, readNode), denominatorOf(image, node, fraction, readNode),
+                                numeratorOf(image, node, otherFraction, readNode), denominatorOf(image, node, otherFraction, readNode), writeNode);
+                if (!answersScaledDecimal()) {
+                    return result;
+                }
+                final long scale = Math.max(readNode.executeLong(node, receiver, SCALED_DECIMAL.SCALE), readNode.executeLong(node, other, SCALED_DECIMAL.SCALE));
+                final PointersObject scaledDecimal = new PointersObject(image, receiverClass, receiverClass.getLayout());
+                writeNode.execute(node, scaledDecimal, SCALED_DECIMAL.FRACTION, result);
+                writeNode.execute(node, scaledDecimal, SCALED_DECIMAL.SCALE, scale);
+                return scaledDecimal;
+            } else {
+                throw PrimitiveFailed.andTransferToInterpreter();
+            }
+        }
+
+        private final Object compute(final SqueakImageContext image, final Node node, final Object n1, final Object d1, final Object n2, final Object d2,
+                        final AbstractPointersObjectWriteNode writeNode) {
+            if (n1 instanceof final Long a && d1 instanceof final Long b && n2 instanceof final Long c && d2 instanceof final Long d) {
+                try {
+                    return computeLong(image, node, a, b, c, d, writeNode);
+                } catch (final ArithmeticException e) {
+                    // Fall back to BigInteger arithmetic.
+                }
+            }
+            return computeBig(image, toBigInteger(n1), toBigInteger(d1), toBigInteger(n2), toBigInteger(d2));
+        }
+
+        /** Computes (a/b) op (c/d), throwing an ArithmeticException on overflow. */
+        protected abstract Object computeLong(SqueakImageContext image, Node node, long a, long b, long c, long d, AbstractPointersObjectWriteNode writeNode);
+
+        /** Computes (a/b) op (c/d) on BigIntegers. */
+        protected abstract Object computeBig(SqueakImageContext image, BigInteger a, BigInteger b, BigInteger c, BigInteger d);
+
+        protected boolean answersScaledDecimal() {
+            return true;
+        }
+
+        private static Object numeratorOf(final SqueakImageContext image, final Node node, final Object value, final AbstractPointersObjectReadNode readNode) {
+            if (value instanceof final PointersObject fraction && fraction.getSqueakClass() == image.getFractionClass()) {
+                return readNode.execute(node, fraction, FRACTION.NUMERATOR);
+            } else {
+                return value; // Integer or invalid operand that fails later.
+            }
+        }
+
+        private static Object denominatorOf(final SqueakImageContext image, final Node node, final Object value, final AbstractPointersObjectReadNode readNode) {
+            if (value instanceof final PointersObject fraction && fraction.getSqueakClass() == image.getFractionClass()) {
+                return readNode.execute(node, fraction, FRACTION.DENOMINATOR);
+            } else {
+                return 1L;
+            }
+        }
+
+        private static BigInteger toBigInteger(final Object value) {
+            if (value instanceof final Long l) {
+                return BigInteger.valueOf(l);
+            } else if (value instanceof final LargeIntegerObject l) {
+                return l.getBigInteger();
+            } else {
+                throw PrimitiveFailed.andTransferToInterpreter();
+            }
+        }
+
+        /** Answers n/d reduced to lowest terms with the sign in the numerator. */
+        protected static final Object normalize(final SqueakImageContext image, final Node node, final long n, final long d, final AbstractPointersObjectWriteNode writeNode) {
+            if (d == 0) {
+                throw PrimitiveFailed.andTransferToInterpreter();
+            }
+            long x = n;
+            long y = d;
+            while (x != 0) {
+                x = y % (y = x);
+            }
+            final long gcd = Math.absExact(y);
+            final long numerator = d < 0 ? Math.negateExact(n / gcd) : n / gcd;
+            final long denominator = d < 0 ? Math.negateExact(d / gcd) : d / gcd;
+            if (denominator == 1) {
+                return numerator;
+            }
+            final ClassObject fractionClass = image.getFractionClass();
+            final PointersObject fraction = new PointersObject(image, fractionClass, fractionClass.getLayout());
+            writeNode.execute(node, fraction, FRACTION.NUMERATOR, numerator);
+            writeNode.execute(node, fraction, FRACTION.DENOMINATOR, denominator);
+            return fraction;
+        }
+
+        @TruffleBoundary
+        protected static final Object normalize(final SqueakImageContext image, final BigInteger n, final BigInteger d) {
+            if (d.signum() == 0) {
+                throw PrimitiveFailed.GENERIC_ERROR;
+            }
+            final BigInteger gcd = n.gcd(d);
+            final BigInteger numerator = d.signum() < 0 ? n.divide(gcd).negate() : n.divide(gcd);
+            final BigInteger denominator = d.divide(gcd).abs();
+            if (denominator.equals(BigInteger.ONE)) {
+                return LargeIntegerObject.reduceIfPossible(image, numerator);
+            }
+            final ClassObject fractionClass = image.getFractionClass();
+            final PointersObject fraction = new PointersObject(image, fractionClass, fractionClass.getLayout());
+            AbstractPointersObjectWriteNode.executeUncached(fraction, FRACTION.NUMERATOR, LargeIntegerObject.reduceIfPossible(image, numerator));
+            AbstractPointersObjectWriteNode.executeUncached(fraction, FRACTION.DENOMINATOR, LargeIntegerObject.reduceIfPossible(image, denominator));
+            return fraction;
+        }
+    }
+
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveAdd")
+    protected abstract static class PrimAddNode extends AbstractFractionPrimitiveNode implements BinaryPrimitiveFallback {
+        @Specialization
+        protected final Object doFraction(final PointersObject receiver, final Object argument,
+                        @Bind("this") final Node node,
+                        @Cached final AbstractPointersObjectReadNode readNode,
+                        @Cached final AbstractPointersObjectWriteNode writeNode) {
+            return perform(node, receiver, argument, readNode, writeNode);
+        }
+
+        @Override
+        protected final Object computeLong(final SqueakImageContext image, final Node node, final long a, final long b, final long c, final long d,
+                        final AbstractPointersObjectWriteNode writeNode) {
+            return normalize(image, node, Math.addExact(Math.multiplyExact(a, d), Math.multiplyExact(c, b)), Math.multiplyExact(b, d), writeNode);
+        }
+
+        @Override
+        @TruffleBoundary
+        protected final Object computeBig(final SqueakImageContext image, final BigInteger a, final BigInteger b, final BigInteger c, final BigInteger d) {
+            return normalize(image, a.multiply(d).add(c.multiply(b)), b.multiply(d));
+        }
+    }
+
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveSubtract")
+    protected abstract static class PrimSubtractNode extends AbstractFractionPrimitiveNode implements BinaryPrimitiveFallback {
+        @Specialization
+        protected final Object doFraction(final PointersObject receiver, final Object argument,
+                        @Bind("this") final Node node,
+                        @Cached final AbstractPointersObjectReadNode readNode,
+                        @Cached final AbstractPointersObjectWriteNode writeNode) {
+            return perform(node, receiver, argument, readNode, writeNode);
+        }
+
+        @Override
+        protected final Object computeLong(final SqueakImageContext image, final Node node, final long a, final long b, final long c, final long d,
+                        final AbstractPointersObjectWriteNode writeNode) {
+            return normalize(image, node, Math.subtractExact(Math.multiplyExact(a, d), Math.multiplyExact(c, b)), Math.multiplyExact(b, d), writeNode);
+        }
+
+        @Override
+        @TruffleBoundary
+        protected final Object computeBig(final SqueakImageContext image, final BigInteger a, final BigInteger b, final BigInteger c, final BigInteger d) {
+            return normalize(image, a.multiply(d).subtract(c.multiply(b)), b.multiply(d));
+        }
+    }
+
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveMultiply")
+    protected abstract static class PrimMultiplyNode extends AbstractFractionPrimitiveNode implements BinaryPrimitiveFallback {
+        @Specialization
+        protected final Object doFraction(final PointersObject receiver, final Object argument,
+                        @Bind("this") final Node node,
+                        @Cached final AbstractPointersObjectReadNode readNode,
+                        @Cached final AbstractPointersObjectWriteNode writeNode) {
+            return perform(node, receiver, argument, readNode, writeNode);
+        }
+
+        @Override
+        protected final Object computeLong(final SqueakImageContext image, final Node node, final long a, final long b, final long c, final long d,
+                        final AbstractPointersObjectWriteNode writeNode) {
+            return normalize(image, node, Math.multiplyExact(a, c), Math.multiplyExact(b, d), writeNode);
+        }
+
+        @Override
+        @TruffleBoundary
+        protected final Object computeBig(final SqueakImageContext image, final BigInteger a, final BigInteger b, final BigInteger c, final BigInteger d) {
+            return normalize(image, a.multiply(c), b.multiply(d));
+        }
+    }
+
+    /* Fails on division by zero, so that the image signals ZeroDivide. */
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveDivide")
+    protected abstract static class PrimDivideNode extends AbstractFractionPrimitiveNode implements BinaryPrimitiveFallback {
+        @Specialization
+        protected final Object doFraction(final PointersObject receiver, final Object argument,
+                        @Bind("this") final Node node,
+                        @Cached final AbstractPointersObjectReadNode readNode,
+                        @Cached final AbstractPointersObjectWriteNode writeNode) {
+            return perform(node, receiver, argument, readNode, writeNode);
+        }
+
+        @Override
+        protected final Object computeLong(final SqueakImageContext image, final Node node, final long a, final long b, final long c, final long d,
+                        final AbstractPointersObjectWriteNode writeNode) {
+            return normalize(image, node, Math.multiplyExact(a, d), Math.multiplyExact(b, c), writeNode);
+        }
+
+        @Override
+        @TruffleBoundary
+        protected final Object computeBig(final SqueakImageContext image, final BigInteger a, final BigInteger b, final BigInteger c, final BigInteger d) {
+            return normalize(image, a.multiply(d), b.multiply(c));
+        }
+    }
+
+    /** Answers -1, 0, or 1 depending on whether the receiver is less than, equal to, or greater than the argument. */
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveCompare")
+    protected abstract static class PrimCompareNode extends AbstractFractionPrimitiveNode implements BinaryPrimitiveFallback {
+        @Specialization
+        protected final Object doFraction(final PointersObject receiver, final Object argument,
+                        @Bind("this") final Node node,
+                        @Cached final AbstractPointersObjectReadNode readNode,
+                        @Cached final AbstractPointersObjectWriteNode writeNode) {
+            return perform(node, receiver, argument, readNode, writeNode);
+        }
+
+        @Override
+        protected final Object computeLong(final SqueakImageContext image, final Node node, final long a, final long b, final long c, final long d,
+                        final AbstractPointersObjectWriteNode writeNode) {
+            if (b == 0 || d == 0) {
+                throw PrimitiveFailed.andTransferToInterpreter();
+            }
+            return (long) Long.signum(Math.subtractExact(Math.multiplyExact(a, d), Math.multiplyExact(c, b))) * Long.signum(b) * Long.signum(d);
+        }
+
+        @Override
+        @TruffleBoundary
+        protected final Object computeBig(final SqueakImageContext image, final BigInteger a, final BigInteger b, final BigInteger c, final BigInteger d) {
+            if (b.signum() == 0 || d.signum() == 0) {
+                throw PrimitiveFailed.GENERIC_ERROR;
+            }
+            return (long) a.multiply(d).subtract(c.multiply(b)).signum() * b.signum() * d.signum();
+        }
+
+        @Override
+        protected final boolean answersScaledDecimal() {
+            return false;
+        }
+    }
+
+    /** Answers the receiver reduced to lowest terms (an Integer if the denominator becomes one). */
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveNormalize")
+    protected abstract static class PrimNormalizeNode extends AbstractFractionPrimitiveNode implements UnaryPrimitiveFallback {
+        @Specialization
+        protected final Object doFraction(final PointersObject receiver,
+                        @Bind("this") final Node node,
+                        @Cached final AbstractPointersObjectReadNode readNode,
+                        @Cached final AbstractPointersObjectWriteNode writeNode) {
+            return perform(node, receiver, receiver, readNode, writeNode);
+        }
+
+        /* Ignores the argument, which is the receiver itself. */
+        @Override
+        protected final Object computeLong(final SqueakImageContext image, final Node node, final long a, final long b, final long c, final long d,
+                        final AbstractPointersObjectWriteNode writeNode) {
+            return normalize(image, node, a, b, writeNode);
+        }
+
+        @Override
+        @TruffleBoundary
+        protected final Object computeBig(final SqueakImageContext image, final BigInteger a, final BigInteger b, final BigInteger c, final BigInteger d) {
+            return normalize(image, a, b);
+        }
+    }
+}
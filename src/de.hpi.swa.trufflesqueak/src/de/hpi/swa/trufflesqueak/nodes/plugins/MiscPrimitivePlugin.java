@@ -19,7 +19,6 @@ import com.oracle.truffle.api.dsl.GenerateNodeFactory;
 import com.oracle.truffle.api.dsl.NodeFactory;
 import com.oracle.truffle.api.dsl.Specialization;
 import com.oracle.truffle.api.nodes.Node;
-import com.oracle.truffle.api.profiles.InlinedBranchProfile;
 import com.oracle.truffle.api.profiles.InlinedConditionProfile;
 
 import de.hpi.swa.trufflesqueak.exceptions.PrimitiveFailed;
@@ -34,8 +33,7 @@ import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveFallbacks.QuaternaryPr
 import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveFallbacks.QuinaryPrimitiveFallback;
 import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveFallbacks.TernaryPrimitiveFallback;
 import de.hpi.swa.trufflesqueak.nodes.primitives.SqueakPrimitive;
-import de.hpi.swa.trufflesqueak.nodes.primitives.impl.ArithmeticPrimitives.PrimHashMultiplyNode;
-import de.hpi.swa.trufflesqueak.util.UnsafeUtils;
+import de.hpi.swa.trufflesqueak.util.StringUtils;
 
 public final class MiscPrimitivePlugin extends AbstractPrimitiveFactoryHolder {
 
@@ -64,31 +62,29 @@ public final class MiscPrimitivePlugin extends AbstractPrimitiveFactoryHolder {
         }
 
         protected static final long compareAsciiOrder(final NativeObject string1, final NativeObject string2) {
-            final int len1 = string1.getByteLength();
-            final int len2 = string2.getByteLength();
-            final int min = Math.min(len1, len2);
-            for (int i = 0; i < min; i++) {
-                final byte c1 = string1.getByte(i);
-                final byte c2 = string2.getByte(i);
-                if (c1 != c2) {
-                    return (c1 & 0xff) < (c2 & 0xff) ? -1L : 1L;
-                }
-            }
-            return len1 == len2 ? 0L : len1 < len2 ? -1L : 1L;
+            return StringUtils.compare(string1.getByteStorage(), string2.getByteStorage());
         }
 
         protected static final long compare(final NativeObject string1, final NativeObject string2, final NativeObject orderValue) {
-            final int len1 = string1.getByteLength();
-            final int len2 = string2.getByteLength();
-            final int min = Math.min(len1, len2);
-            for (int i = 0; i < min; i++) {
-                final byte c1 = orderValue.getByte(string1.getByteUnsigned(i));
-                final byte c2 = orderValue.getByte(string2.getByteUnsigned(i));
-                if (c1 != c2) {
-                    return (c1 & 0xff) < (c2 & 0xff) ? -1L : 1L;
-                }
+            return StringUtils.compare(string1.getByteStorage(), string2.getByteStorage(), orderValue.getByteStorage());
+        }
+
+        /* Compares WideStrings (and ByteStrings with WideStrings) by code point. */
+        protected static final long compareWide(final NativeObject string1, final NativeObject string2, final NativeObject orderValueOrNull) {
+            final int result = StringUtils.compare(byteOrIntStorage(string1), byteOrIntStorage(string2), orderValueOrNull == null ? null : orderValueOrNull.getByteStorage());
+            if (result == Integer.MIN_VALUE) {
+                CompilerDirectives.transferToInterpreter();
+                throw PrimitiveFailed.BAD_ARGUMENT;
             }
-            return len1 == len2 ? 0L : len1 < len2 ? -1L : 1L;
+            return result;
+        }
+
+        private static Object byteOrIntStorage(final NativeObject string) {
+            return string.isIntType() ? string.getIntStorage() : string.getByteStorage();
+        }
+
+        protected static final boolean isWideStringPair(final NativeObject string1, final NativeObject string2) {
+            return string1.isIntType() && (string2.isIntType() || string2.isByteType()) || string1.isByteType() && string2.isIntType();
         }
     }
 
@@ -117,6 +113,19 @@ public final class MiscPrimitivePlugin extends AbstractPrimitiveFactoryHolder {
             return compare(string1, string2, orderValue) + 2L;
         }
 
+        @Specialization(guards = {"isWideStringPair(string1, string2)", "orderValue == cachedAsciiOrder"}, limit = "1")
+        protected static final long doCompareWideAsciiOrder(@SuppressWarnings("unused") final Object receiver, final NativeObject string1, final NativeObject string2,
+                        @SuppressWarnings("unused") final NativeObject orderValue,
+                        @SuppressWarnings("unused") @Cached("asciiOrderOrNull(orderValue)") final NativeObject cachedAsciiOrder) {
+            return compareWide(string1, string2, null) + 2L;
+        }
+
+        @Specialization(guards = {"isWideStringPair(string1, string2)", "orderValue.isByteType()", "orderValue.getByteLength() >= 256"}, replaces = "doCompareWideAsciiOrder")
+        protected static final long doCompareWide(@SuppressWarnings("unused") final Object receiver, final NativeObject string1, final NativeObject string2,
+                        final NativeObject orderValue) {
+            return compareWide(string1, string2, orderValue) + 2L;
+        }
+
         @SuppressWarnings("unused")
         @Fallback
         protected static final long doFail(final Object receiver, final Object string1, final Object string2, final Object order) {
@@ -360,36 +369,51 @@ public final class MiscPrimitivePlugin extends AbstractPrimitiveFactoryHolder {
     @GenerateNodeFactory
     @SqueakPrimitive(names = "primitiveFindSubstring")
     public abstract static class PrimFindSubstringNode extends AbstractPrimitiveNode implements QuinaryPrimitiveFallback {
-        @Specialization
+        /* Case-sensitive search (AsciiOrder, the identity table) needs no table lookups. */
+        @Specialization(guards = {"key.isByteType()", "body.isByteType()", "matchTable == cachedIdentityTable"}, limit = "1")
+        protected static final long doFindIdentity(@SuppressWarnings("unused") final Object receiver, final NativeObject key, final NativeObject body, final long start,
+                        @SuppressWarnings("unused") final NativeObject matchTable,
+                        @SuppressWarnings("unused") @Cached("identityTableOrNull(matchTable)") final NativeObject cachedIdentityTable) {
+            return StringUtils.indexOf(body.getByteStorage(), key.getByteStorage(), (int) Math.min(Math.max(start - 1, 0), Integer.MAX_VALUE)) + 1L;
+        }
+
+        @Specialization(guards = {"key.isByteType()", "body.isByteType()", "matchTable.isByteType()", "matchTable.getByteLength() >= 256"})
         protected static final long doFind(@SuppressWarnings("unused") final Object receiver, final NativeObject key, final NativeObject body, final long start,
-                        final NativeObject matchTable,
-                        @Bind("this") final Node node,
-                        @Cached final InlinedConditionProfile quickReturnProfile,
-                        @Cached final InlinedBranchProfile foundProfile,
-                        @Cached final InlinedBranchProfile notFoundProfile) {
-            if (!key.isByteType() || !body.isByteType() || !matchTable.isByteType() || matchTable.getByteLength() < 256) {
-                CompilerDirectives.transferToInterpreter();
-                throw PrimitiveFailed.BAD_ARGUMENT;
-            }
-            final int keyLength = key.getByteLength();
-            if (quickReturnProfile.profile(node, keyLength == 0)) {
-                return 0L;
-            } else {
-                final int bodyLength = body.getByteLength();
-                for (long startIndex = Math.max(start - 1, 0); startIndex <= bodyLength - keyLength; startIndex++) {
-                    int index = 0;
-                    while (matchTable.getByte(body.getByteUnsigned(startIndex + index)) == matchTable.getByte(key.getByteUnsigned(index))) {
-                        if (index == keyLength - 1) {
-                            foundProfile.enter(node);
-                            return startIndex + 1;
-                        } else {
-                            index++;
-                        }
+                        final NativeObject matchTable) {
+            return StringUtils.indexOf(body.getByteStorage(), key.getByteStorage(), (int) Math.min(Math.max(start - 1, 0), Integer.MAX_VALUE), matchTable.getByteStorage()) + 1L;
+        }
+
+        /* WideStrings are only supported for case-sensitive search, the table covers bytes only. */
+        @Specialization(guards = {"key.isIntType() || key.isByteType()", "body.isIntType()", "matchTable == cachedIdentityTable"}, limit = "1")
+        protected static final long doFindWideIdentity(@SuppressWarnings("unused") final Object receiver, final NativeObject key, final NativeObject body, final long start,
+                        @SuppressWarnings("unused") final NativeObject matchTable,
+                        @SuppressWarnings("unused") @Cached("identityTableOrNull(matchTable)") final NativeObject cachedIdentityTable) {
+            return StringUtils.indexOf(body.getIntStorage(), toCodePoints(key), (int) Math.min(Math.max(start - 1, 0), Integer.MAX_VALUE)) + 1L;
+        }
+
+        protected static final NativeObject identityTableOrNull(final NativeObject matchTable) {
+            if (matchTable.isByteType() && matchTable.getByteLength() >= 256) {
+                final byte[] bytes = matchTable.getByteStorage();
+                for (int i = 0; i < 256; i++) {
+                    if ((bytes[i] & 0xff) != i) {
+                        return null;
                     }
                 }
-                notFoundProfile.enter(node);
-                return 0L;
+                return matchTable;
             }
+            return null;
+        }
+
+        private static int[] toCodePoints(final NativeObject string) {
+            if (string.isIntType()) {
+                return string.getIntStorage();
+            }
+            final byte[] bytes = string.getByteStorage();
+            final int[] codePoints = new int[bytes.length];
+            for (int i = 0; i < bytes.length; i++) {
+                codePoints[i] = bytes[i] & 0xff;
+            }
+            return codePoints;
         }
     }
 
@@ -398,30 +422,23 @@ public final class MiscPrimitivePlugin extends AbstractPrimitiveFactoryHolder {
     public abstract static class PrimIndexOfAsciiInStringNode extends AbstractPrimitiveNode implements QuaternaryPrimitiveFallback {
 
         @Specialization(guards = {"start >= 0", "string.isByteType()"})
-        protected static final long doNativeObject(@SuppressWarnings("unused") final Object receiver, final long value, final NativeObject string, final long start,
-                        @Bind("this") final Node node,
-                        @Cached final InlinedBranchProfile foundProfile,
-                        @Cached final InlinedBranchProfile notFoundProfile) {
-            final byte valueByte = (byte) value;
-            for (long i = start - 1; i < string.getByteLength(); i++) {
-                if (string.getByte(i) == valueByte) {
-                    foundProfile.enter(node);
-                    return i + 1;
-                }
-            }
-            notFoundProfile.enter(node);
-            return 0L;
+        protected static final long doNativeObject(@SuppressWarnings("unused") final Object receiver, final long value, final NativeObject string, final long start) {
+            return StringUtils.indexOf(string.getByteStorage(), (int) Math.min(start - 1, Integer.MAX_VALUE), (byte) value) + 1L;
+        }
+
+        @Specialization(guards = {"start >= 0", "string.isIntType()"})
+        protected static final long doWideString(@SuppressWarnings("unused") final Object receiver, final long value, final NativeObject string, final long start) {
+            return StringUtils.indexOf(string.getIntStorage(), (int) Math.min(start - 1, Integer.MAX_VALUE), (int) value) + 1L;
         }
     }
 
-    private abstract static class AbstractPrimStringHashNode extends AbstractPrimitiveNode {
+    protected abstract static class AbstractPrimStringHashNode extends AbstractPrimitiveNode {
+        protected static final boolean isIntNativeObject(final Object object) {
+            return object instanceof final NativeObject o && o.isIntType();
+        }
+
         protected static final long calculateHash(final long initialHash, final byte[] bytes) {
-            long hash = initialHash & PrimHashMultiplyNode.HASH_MULTIPLY_MASK;
-            final int length = bytes.length;
-            for (int i = 0; i < length; i++) {
-                hash = (hash + (UnsafeUtils.getByte(bytes, i) & 0xff)) * PrimHashMultiplyNode.HASH_MULTIPLY_CONSTANT & PrimHashMultiplyNode.HASH_MULTIPLY_MASK;
-            }
-            return hash;
+            return StringUtils.hash(initialHash, bytes);
         }
     }
 
@@ -429,7 +446,12 @@ public final class MiscPrimitivePlugin extends AbstractPrimitiveFactoryHolder {
     @SqueakPrimitive(names = "primitiveStringHash")
     /* Byte(Array|String|Symbol)>>#hashWithInitialHash: */
     public abstract static class PrimStringHash2Node extends AbstractPrimStringHashNode implements BinaryPrimitiveFallback {
-        @Specialization
+        @Specialization(guards = "receiver.isIntType()")
+        protected static final long doWideStringHash(final NativeObject receiver, final long initialHash) {
+            return StringUtils.hash(initialHash, receiver.getIntStorage());
+        }
+
+        @Specialization(guards = "!isIntNativeObject(receiver)")
         protected static final long doStringHash(final Object receiver, final long initialHash,
                         @Bind("this") final Node node,
                         @Cached final GetHashBytesNode getHashBytesNode) {
@@ -441,7 +463,12 @@ public final class MiscPrimitivePlugin extends AbstractPrimitiveFactoryHolder {
     @SqueakPrimitive(names = "primitiveStringHash")
     /* (Byte(Array|String|Symbol) class|MiscPrimitivePluginTest)>>#hashBytes:startingWith: */
     public abstract static class PrimStringHash3Node extends AbstractPrimStringHashNode implements TernaryPrimitiveFallback {
-        @Specialization
+        @Specialization(guards = "target.isIntType()")
+        protected static final long doWideStringHash(@SuppressWarnings("unused") final Object receiver, final NativeObject target, final long initialHash) {
+            return StringUtils.hash(initialHash, target.getIntStorage());
+        }
+
+        @Specialization(guards = "!isIntNativeObject(target)")
         protected static final long doStringHash(@SuppressWarnings("unused") final Object receiver, final Object target, final long initialHash,
                         @Bind("this") final Node node,
                         @Cached final GetHashBytesNode getHashBytesNode) {
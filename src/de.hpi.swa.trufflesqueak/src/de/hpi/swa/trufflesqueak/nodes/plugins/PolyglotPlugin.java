@@ -67,6 +67,7 @@ import de.hpi.swa.trufflesqueak.nodes.primitives.AbstractPrimitiveNode;
 import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveFallbacks.BinaryPrimitiveFallback;
 import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveFallbacks.QuaternaryPrimitiveFallback;
 import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveFallbacks.QuinaryPrimitiveFallback;
+import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveFallbacks.SenaryPrimitiveFallback;
 import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveFallbacks.TernaryPrimitiveFallback;
 import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveFallbacks.UnaryPrimitiveFallback;
 import de.hpi.swa.trufflesqueak.nodes.primitives.SqueakPrimitive;
@@ -1374,6 +1375,52 @@ public final class PolyglotPlugin extends AbstractPrimitiveFactoryHolder {
         }
     }
 
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveReadBufferInto")
+    protected abstract static class PrimReadBufferIntoNode extends AbstractPrimitiveNode implements SenaryPrimitiveFallback {
+        /* Copies length bytes at byteOffset of a buffer into target at targetByteOffset in one call. */
+        @Specialization(guards = {"lib.hasBufferElements(object)", "target.isInBufferBounds(targetByteOffset, length)"})
+        protected static final NativeObject doReadBufferInto(@SuppressWarnings("unused") final Object receiver, final Object object, final long byteOffset, final NativeObject target,
+                        final long targetByteOffset, final long length,
+                        @CachedLibrary(limit = "2") final InteropLibrary lib) {
+            try {
+                if (target.isByteType()) {
+                    lib.readBuffer(object, byteOffset, target.getByteStorage(), (int) targetByteOffset, (int) length);
+                } else {
+                    final byte[] bytes = new byte[(int) length];
+                    lib.readBuffer(object, byteOffset, bytes, 0, (int) length);
+                    target.writeBuffer(targetByteOffset, bytes, 0, (int) length);
+                }
+                return target;
+            } catch (final UnsupportedMessageException | InvalidBufferOffsetException e) {
+                throw primitiveFailedInInterpreterCapturing(e);
+            }
+        }
+    }
+
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveWriteBufferFrom")
+    protected abstract static class PrimWriteBufferFromNode extends AbstractPrimitiveNode implements SenaryPrimitiveFallback {
+        /* Copies length bytes at sourceByteOffset of source into a buffer at byteOffset, a long at a time. */
+        @Specialization(guards = {"lib.hasBufferElements(object)", "source.isInBufferBounds(sourceByteOffset, length)"})
+        protected static final NativeObject doWriteBufferFrom(@SuppressWarnings("unused") final Object receiver, final Object object, final long byteOffset, final NativeObject source,
+                        final long sourceByteOffset, final long length,
+                        @CachedLibrary(limit = "2") final InteropLibrary lib) {
+            try {
+                long i = 0;
+                for (; i + Long.BYTES <= length; i += Long.BYTES) {
+                    lib.writeBufferLong(object, ByteOrder.nativeOrder(), byteOffset + i, source.getBufferLong(sourceByteOffset + i));
+                }
+                for (; i < length; i++) {
+                    lib.writeBufferByte(object, byteOffset + i, source.getBufferByte(sourceByteOffset + i));
+                }
+                return source;
+            } catch (final UnsupportedMessageException | InvalidBufferOffsetException e) {
+                throw primitiveFailedInInterpreterCapturing(e);
+            }
+        }
+    }
+
     /*
      * Time/Date-related objects
      */
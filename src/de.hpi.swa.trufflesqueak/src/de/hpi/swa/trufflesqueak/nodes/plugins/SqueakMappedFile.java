@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2017-2024 Software Architecture Group, Hasso Plattner Institute
+ * Copyright (c) 2021-2024 Oracle and/or its affiliates
+ *
+ * Licensed under the MIT License.
+ */
+package de.hpi.swa.trufflesqueak.nodes.plugins;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import de.hpi.swa.trufflesqueak.util.VarHandleUtils;
+
+/**
+ * A file mapped into memory via {@link FileChannel#map}. Positioned reads and writes are plain
+ * memory copies from and to the storage of the target object, so they do not cost a syscall each.
+ * A mapped buffer is limited to 2GB, so larger files are mapped as a sequence of segments. The
+ * size of the mapping is fixed when the file is opened.
+ */
+public final class SqueakMappedFile implements Closeable {
+    public static final int DEFAULT_SEGMENT_SHIFT = 30;
+
+    private final FileChannel channel;
+    private final long size;
+    private final int segmentShift;
+    private final long segmentMask;
+    private MappedByteBuffer[] segments;
+
+    private SqueakMappedFile(final FileChannel channel, final boolean writable, final int segmentShift) throws IOException {
+        this.channel = channel;
+        this.segmentShift = segmentShift;
+        size = channel.size();
+        final long segmentSize = 1L << segmentShift;
+        segmentMask = segmentSize - 1;
+        final int numSegments = (int) ((size + segmentMask) >>> segmentShift);
+        segments = new MappedByteBuffer[numSegments];
+        final MapMode mode = writable ? MapMode.READ_WRITE : MapMode.READ_ONLY;
+        for (int i = 0; i < numSegments; i++) {
+            final long start = (long) i << segmentShift;
+            segments[i] = channel.map(mode, start, Math.min(segmentSize, size - start));
+            segments[i].order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /** Maps the file of the channel and takes ownership of the channel. */
+    public static SqueakMappedFile open(final FileChannel channel, final boolean writable) throws IOException {
+        return open(channel, writable, DEFAULT_SEGMENT_SHIFT);
+    }
+
+    /** Maps the file in segments of {@code 1 << segmentShift} bytes (at most 2GB). */
+    public static SqueakMappedFile open(final FileChannel channel, final boolean writable, final int segmentShift) throws IOException {
+        assert 0 < segmentShift && segmentShift <= DEFAULT_SEGMENT_SHIFT;
+        try {
+            return new SqueakMappedFile(channel, writable, segmentShift);
+        } catch (final IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public boolean isOpen() {
+        return segments != null;
+    }
+
+    /** Copies up to {@code length} bytes at {@code position} and answers the number copied. */
+    public int read(final long position, final byte[] bytes, final int offset, final int length) {
+        final int count = clampedLength(position, length);
+        int done = 0;
+        while (done < count) {
+            final long current = position + done;
+            final MappedByteBuffer segment = segments[(int) (current >>> segmentShift)];
+            final int inSegment = (int) (current & segmentMask);
+            final int chunk = Math.min(count - done, segment.limit() - inSegment);
+            segment.get(inSegment, bytes, offset + done, chunk);
+            done += chunk;
+        }
+        return count;
+    }
+
+    /** Copies up to {@code count} little-endian words at {@code position}. */
+    public int readInts(final long position, final int[] ints, final int offset, final int count) {
+        final int byteCount = clampedLength(position, Math.min((long) count * Integer.BYTES, Integer.MAX_VALUE)) & ~(Integer.BYTES - 1);
+        final int intCount = byteCount / Integer.BYTES;
+        final int inSegment = (int) (position & segmentMask);
+        final MappedByteBuffer segment = intCount == 0 ? null : segments[(int) (position >>> segmentShift)];
+        if (segment != null && (long) inSegment + byteCount <= segment.limit()) {
+            segment.slice(inSegment, byteCount).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(ints, offset, intCount);
+        } else if (intCount > 0) {
+            final byte[] bytes = new byte[byteCount];
+            read(position, bytes, 0, byteCount);
+            for (int i = 0; i < intCount; i++) {
+                ints[offset + i] = VarHandleUtils.getInt(bytes, i);
+            }
+        }
+        return intCount;
+    }
+
+    /** Copies up to {@code length} bytes to {@code position} and answers the number copied. */
+    public int write(final long position, final byte[] bytes, final int offset, final int length) {
+        final int count = clampedLength(position, length);
+        int done = 0;
+        while (done < count) {
+            final long current = position + done;
+            final MappedByteBuffer segment = segments[(int) (current >>> segmentShift)];
+            final int inSegment = (int) (current & segmentMask);
+            final int chunk = Math.min(count - done, segment.limit() - inSegment);
+            segment.put(inSegment, bytes, offset + done, chunk);
+            done += chunk;
+        }
+        return count;
+    }
+
+    /** Copies up to {@code count} words as little-endian bytes to {@code position}. */
+    public int writeInts(final long position, final int[] ints, final int offset, final int count) {
+        final int byteCount = clampedLength(position, Math.min((long) count * Integer.BYTES, Integer.MAX_VALUE)) & ~(Integer.BYTES - 1);
+        final int intCount = byteCount / Integer.BYTES;
+        final int inSegment = (int) (position & segmentMask);
+        final MappedByteBuffer segment = intCount == 0 ? null : segments[(int) (position >>> segmentShift)];
+        if (segment != null && (long) inSegment + byteCount <= segment.limit()) {
+            segment.slice(inSegment, byteCount).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(ints, offset, intCount);
+        } else if (intCount > 0) {
+            final byte[] bytes = new byte[byteCount];
+            for (int i = 0; i < intCount; i++) {
+                VarHandleUtils.putInt(bytes, i, ints[offset + i]);
+            }
+            write(position, bytes, 0, byteCount);
+        }
+        return intCount;
+    }
+
+    private int clampedLength(final long position, final long length) {
+        if (segments == null) {
+            throw new IllegalStateException("Mapped file is closed");
+        }
+        if (position < 0 || length < 0) {
+            throw new IndexOutOfBoundsException(position);
+        }
+        return (int) Math.max(0, Math.min(length, size - position));
+    }
+
+    /** Writes modified pages back to the file. */
+    public void force() {
+        if (segments != null) {
+            for (final MappedByteBuffer segment : segments) {
+                if (!segment.isReadOnly()) {
+                    segment.force();
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the underlying channel. The mapped memory itself is released once the segments are
+     * garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        force();
+        segments = null;
+        channel.close();
+    }
+}
@@ -246,6 +246,8 @@ public final class SqueakSSL extends AbstractPrimitiveFactoryHolder {
         private String serverName;
 
         private ByteBuffer buffer;
+        /* Reused for engine output that does not fit into the target buffer. */
+        private ByteBuffer intermediateBuffer;
 
         @SuppressWarnings("unused" /* TODO */) private long logLevel;
     }
@@ -264,6 +266,12 @@ public final class SqueakSSL extends AbstractPrimitiveFactoryHolder {
         return ssl.engine.getUseClientMode() ? session.getApplicationBufferSize() : session.getPacketBufferSize();
     }
 
+    /** Space the engine requires in a target buffer to produce a record without overflowing. */
+    private static int getMaxRecordSize(final SqSSL ssl) {
+        final SSLSession session = ssl.engine.getSession();
+        return Math.max(session.getPacketBufferSize(), session.getApplicationBufferSize());
+    }
+
     @FunctionalInterface
     private interface Encoder {
         SSLEngineResult encode(ByteBuffer in, ByteBuffer out) throws SSLException;
@@ -281,10 +289,23 @@ public final class SqueakSSL extends AbstractPrimitiveFactoryHolder {
         return encode(ssl, ssl.engine::unwrap, sourceBuffer, targetBuffer);
     }
 
+    /**
+     * Encode into the target buffer, which usually wraps the storage of a {@link NativeObject}.
+     * If the target has enough space for a full record, the engine writes into it directly.
+     * Otherwise, the output goes through the per-session intermediate buffer and is copied.
+     */
     @TruffleBoundary
     private static SSLEngineResult encode(final SqSSL ssl, final Encoder encoder, final ByteBuffer sourceBuffer, final ByteBuffer targetBuffer) throws SSLException {
+        if (!targetBuffer.isReadOnly() && targetBuffer.remaining() >= getMaxRecordSize(ssl)) {
+            final SSLEngineResult result = encoder.encode(sourceBuffer, targetBuffer);
+            if (result.getStatus() != Status.BUFFER_OVERFLOW) {
+                return result;
+            }
+        }
+
         final int bufferSize = getBufferSize(ssl);
-        ByteBuffer intermediateTarget = ByteBuffer.allocate(bufferSize);
+        ByteBuffer intermediateTarget = ssl.intermediateBuffer;
+        intermediateTarget.clear();
 
         while (true) {
             final SSLEngineResult result = encoder.encode(sourceBuffer, intermediateTarget);
@@ -294,6 +315,7 @@ public final class SqueakSSL extends AbstractPrimitiveFactoryHolder {
                 }
                 case BUFFER_OVERFLOW -> {
                     intermediateTarget = enlargeBufferFrom(intermediateTarget, bufferSize);
+                    ssl.intermediateBuffer = intermediateTarget;
                     continue;
                 }
                 case OK -> {
@@ -448,12 +470,7 @@ public final class SqueakSSL extends AbstractPrimitiveFactoryHolder {
             }
             unwrapEagerly(ssl);
             wrapEagerly(ssl, target);
-            if (ssl.state == State.CONNECTED) {
-                return ReturnCode.OK.id();
-            } else {
-                final int pos = target.position();
-                return pos == 0 ? ReturnCode.NEED_MORE_DATA.id() : pos;
-            }
+            return handshakeResult(ssl, target);
         }
 
         private static void unwrapEagerly(final SqSSL ssl) throws SSLException {
@@ -557,12 +574,7 @@ public final class SqueakSSL extends AbstractPrimitiveFactoryHolder {
             }
             readHandshakeResponse(ssl);
             writeHandshakeResponse(ssl, target);
-            if (ssl.state == State.CONNECTED) {
-                return ReturnCode.OK.id();
-            } else {
-                final int pos = target.position();
-                return pos == 0 ? ReturnCode.NEED_MORE_DATA.id() : pos;
-            }
+            return handshakeResult(ssl, target);
         }
 
         private static void beginHandshake(final SqSSL ssl, final ByteBuffer target) throws SSLException {
@@ -623,6 +635,20 @@ public final class SqueakSSL extends AbstractPrimitiveFactoryHolder {
         }
     }
 
+    /**
+     * The last flight of a handshake may complete it and still have to be sent, so bytes to send
+     * take precedence over {@link ReturnCode#OK}. Once they are sent, the SSL state tells whether
+     * the handshake is complete.
+     */
+    private static long handshakeResult(final SqSSL ssl, final ByteBuffer target) {
+        final int pos = target.position();
+        if (pos > 0) {
+            return pos;
+        } else {
+            return ssl.state == State.CONNECTED ? ReturnCode.OK.id() : ReturnCode.NEED_MORE_DATA.id();
+        }
+    }
+
     private static void runTasks(final SqSSL ssl) {
         Runnable task;
         while ((task = ssl.engine.getDelegatedTask()) != null) {
@@ -669,6 +695,7 @@ public final class SqueakSSL extends AbstractPrimitiveFactoryHolder {
 
         ssl.engine.setEnabledProtocols(ENABLED_PROTOCOLS);
         ssl.buffer = ByteBuffer.allocate(getBufferSize(ssl));
+        ssl.intermediateBuffer = ByteBuffer.allocate(getMaxRecordSize(ssl));
     }
 
     @GenerateNodeFactory
@@ -713,25 +740,44 @@ public final class SqueakSSL extends AbstractPrimitiveFactoryHolder {
             final ByteBuffer source = asReadBuffer(sourceBuffer, start, length);
             final ByteBuffer target = asWriteBuffer(targetBuffer);
 
-            /**
-             * Grow buffer if it is not large enough for the source to avoid
-             * {@link BufferOverflowException}s.
-             */
+            try {
+                if (ssl.buffer.position() == 0) {
+                    /* Nothing buffered: decrypt from the source and only retain what is left. */
+                    decryptOneFromSource(ssl, source, target);
+                } else {
+                    ensureRemaining(ssl, source.remaining());
+                    ssl.buffer.put(source);
+                    decryptOne(ssl, target);
+                }
+                return target.position();
+            } catch (final BufferOverflowException | SSLException e) {
+                getContext().printToStdErr(e);
+                return ReturnCode.GENERIC_ERROR.id();
+            }
+        }
+
+        /**
+         * Grow buffer if it is not large enough for the source to avoid
+         * {@link BufferOverflowException}s.
+         */
+        private static void ensureRemaining(final SqSSL ssl, final int length) {
             if (length > ssl.buffer.limit() - ssl.buffer.position()) {
-                assert ssl.buffer.position() > 0 : "Only observed this";
-                final ByteBuffer newBuffer = ByteBuffer.allocate(ssl.buffer.limit() + (int) length);
+                final ByteBuffer newBuffer = ByteBuffer.allocate(ssl.buffer.limit() + length);
                 ssl.buffer.flip();
                 newBuffer.put(ssl.buffer);
                 ssl.buffer = newBuffer;
             }
+        }
 
-            try {
+        private static void decryptOneFromSource(final SqSSL ssl, final ByteBuffer source, final ByteBuffer target) throws SSLException {
+            final SSLEngineResult result = unwrap(ssl, source, target);
+            checkStatus("Decrypt status", result, Status.OK, Status.BUFFER_UNDERFLOW, Status.CLOSED);
+
+            if (result.getStatus() == Status.CLOSED) {
+                connectionClosed(ssl);
+            } else if (source.hasRemaining()) {
+                ensureRemaining(ssl, source.remaining());
                 ssl.buffer.put(source);
-                decryptOne(ssl, target);
-                return target.position();
-            } catch (final BufferOverflowException | SSLException e) {
-                getContext().printToStdErr(e);
-                return ReturnCode.GENERIC_ERROR.id();
             }
         }
 
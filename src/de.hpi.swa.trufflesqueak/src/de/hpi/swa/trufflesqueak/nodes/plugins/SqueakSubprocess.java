@@ -0,0 +1,402 @@
+/*
+ * Copyright (c) 2017-2024 Software Architecture Group, Hasso Plattner Institute
+ * Copyright (c) 2021-2024 Oracle and/or its affiliates
+ *
+ * Licensed under the MIT License.
+ */
+package de.hpi.swa.trufflesqueak.nodes.plugins;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.oracle.truffle.api.TruffleFile;
+import com.oracle.truffle.api.io.TruffleProcessBuilder;
+
+import de.hpi.swa.trufflesqueak.image.SqueakImageContext;
+import de.hpi.swa.trufflesqueak.util.LogUtils;
+
+/**
+ * A child process spawned by primitiveSpawnProcess. Its standard streams are exposed as
+ * {@link SeekableByteChannel}s so that the regular FilePlugin primitives can read from and write
+ * to them. Neither reads nor writes block: daemon threads drain stdout and stderr into bounded
+ * buffers and feed queued writes to stdin, and the semaphore registered at spawn time is signaled
+ * whenever new output arrives, queued input was written, or the child exits.
+ */
+public final class SqueakSubprocess implements Closeable {
+    /* Per pipe, so that a chatty or stuck child cannot exhaust the heap. */
+    public static final int MAX_BUFFERED_BYTES = 1 << 20;
+    private static final String READER_THREAD_NAME = "TruffleSqueakSubprocessReader";
+    private static final String WRITER_THREAD_NAME = "TruffleSqueakSubprocessWriter";
+    private static final int READ_CHUNK_SIZE = 8192;
+
+    private final SqueakImageContext image;
+    private final Process process;
+    private final long pid;
+    private final int semaphoreIndex;
+    private final WritePipe stdin;
+    private final ReadPipe stdout;
+    private final ReadPipe stderr;
+
+    private SqueakSubprocess(final SqueakImageContext image, final Process process, final int semaphoreIndex) {
+        this.image = image;
+        this.process = process;
+        pid = pidOf(process);
+        this.semaphoreIndex = semaphoreIndex;
+        stdin = new WritePipe(process.getOutputStream());
+        stdout = new ReadPipe();
+        stderr = new ReadPipe();
+        startReader(process.getInputStream(), stdout, "stdout");
+        startReader(process.getErrorStream(), stderr, "stderr");
+    }
+
+    public static SqueakSubprocess start(final SqueakImageContext image, final List<String> command, final TruffleFile directory, final int semaphoreIndex) throws IOException {
+        final TruffleProcessBuilder builder = image.env.newProcessBuilder().command(command);
+        if (directory != null) {
+            builder.directory(directory);
+        }
+        final SqueakSubprocess subprocess = new SqueakSubprocess(image, builder.start(), semaphoreIndex);
+        image.registerOnDispose(subprocess);
+        subprocess.process.onExit().thenRun(subprocess::reap);
+        return subprocess;
+    }
+
+    /* Runs once the child has exited. Buffered output stays readable until the pipes are closed. */
+    private void reap() {
+        stdin.close();
+        image.unregisterOnDispose(this);
+        signal();
+    }
+
+    private static long pidOf(final Process process) {
+        try {
+            return process.pid();
+        } catch (final UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+
+    private void startReader(final InputStream input, final ReadPipe pipe, final String streamName) {
+        final Thread reader = new Thread(() -> drain(input, pipe), READER_THREAD_NAME + "-" + pid + "-" + streamName);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void drain(final InputStream input, final ReadPipe pipe) {
+        final byte[] chunk = new byte[READ_CHUNK_SIZE];
+        try (input) {
+            int read;
+            while ((read = input.read(chunk)) >= 0) {
+                pipe.append(chunk, read);
+                signal();
+            }
+        } catch (final IOException e) {
+            LogUtils.IO.fine(() -> "Subprocess " + pid + " pipe closed: " + e);
+        } finally {
+            pipe.markEndOfStream();
+            signal();
+        }
+    }
+
+    private void signal() {
+        if (semaphoreIndex > 0) {
+            image.interrupt.signalSemaphoreWithIndex(semaphoreIndex);
+        }
+    }
+
+    /** Answers the pid of the child, or -1 if the process decorator of Truffle does not expose it. */
+    public long pid() {
+        return pid;
+    }
+
+    public SeekableByteChannel getStdin() {
+        return stdin;
+    }
+
+    public SeekableByteChannel getStdout() {
+        return stdout;
+    }
+
+    public SeekableByteChannel getStderr() {
+        return stderr;
+    }
+
+    /** Returns the exit value of the child or {@code null} while it is still running. */
+    public Long getExitStatus() {
+        return process.isAlive() ? null : (long) process.exitValue();
+    }
+
+    public void terminate(final boolean forcibly) {
+        if (forcibly) {
+            process.destroyForcibly();
+        } else {
+            process.destroy();
+        }
+    }
+
+    @Override
+    public void close() {
+        stdin.close();
+        stdout.close();
+        stderr.close();
+        process.destroy();
+        try {
+            /* The context cannot be closed while the child is still alive. */
+            if (!process.waitFor(1, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor(1, TimeUnit.SECONDS);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Buffers output of the child. Once {@link #MAX_BUFFERED_BYTES} are buffered, the reader
+     * thread waits for the image to catch up, so that the child blocks instead of the buffer
+     * growing without bounds. The position counts consumed bytes. The size additionally
+     * includes all buffered bytes plus one while the stream is still open, so that
+     * primitiveFileAtEnd only answers true once the child has closed the stream and everything
+     * has been read.
+     */
+    private static final class ReadPipe implements SeekableByteChannel {
+        private byte[] buffer = new byte[READ_CHUNK_SIZE];
+        private int start;
+        private int end;
+        private long consumed;
+        private boolean endOfStream;
+        private boolean closed;
+
+        private synchronized void append(final byte[] bytes, final int length) {
+            try {
+                while (!closed && end - start + length > MAX_BUFFERED_BYTES) {
+                    wait();
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (closed) {
+                return;
+            }
+            if (end + length > buffer.length) {
+                final int available = end - start;
+                if (available + length > buffer.length) {
+                    final byte[] newBuffer = new byte[Math.min(Math.max(buffer.length * 2, available + length), MAX_BUFFERED_BYTES)];
+                    System.arraycopy(buffer, start, newBuffer, 0, available);
+                    buffer = newBuffer;
+                } else {
+                    System.arraycopy(buffer, start, buffer, 0, available);
+                }
+                start = 0;
+                end = available;
+            }
+            System.arraycopy(bytes, 0, buffer, end, length);
+            end += length;
+        }
+
+        private synchronized void markEndOfStream() {
+            endOfStream = true;
+        }
+
+        @Override
+        public synchronized int read(final ByteBuffer dst) throws IOException {
+            if (closed) {
+                throw new ClosedChannelException();
+            }
+            final int available = end - start;
+            if (available == 0) {
+                return endOfStream ? -1 : 0;
+            }
+            final int count = Math.min(available, dst.remaining());
+            dst.put(buffer, start, count);
+            start += count;
+            consumed += count;
+            if (start == end) {
+                start = end = 0;
+            }
+            notifyAll();
+            return count;
+        }
+
+        @Override
+        public int write(final ByteBuffer src) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public synchronized long position() {
+            return consumed;
+        }
+
+        @Override
+        public SeekableByteChannel position(final long newPosition) throws IOException {
+            throw new IOException("Cannot reposition a pipe");
+        }
+
+        @Override
+        public synchronized long size() {
+            return consumed + (end - start) + (endOfStream ? 0 : 1);
+        }
+
+        @Override
+        public SeekableByteChannel truncate(final long size) throws IOException {
+            throw new IOException("Cannot truncate a pipe");
+        }
+
+        @Override
+        public synchronized boolean isOpen() {
+            return !closed;
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
+            buffer = null;
+            start = end = 0;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Queues writes to the stdin of the child, so that the interpreter never blocks on a full pipe.
+     * A writer thread feeds the queue to the child and signals the semaphore after each write.
+     * Writes accept at most as many bytes as fit into {@link #MAX_BUFFERED_BYTES} minus what is
+     * still queued, so a full queue answers a short count. The position and size count accepted
+     * bytes.
+     */
+    private final class WritePipe implements SeekableByteChannel {
+        private final OutputStream output;
+        private final ArrayDeque<byte[]> queue = new ArrayDeque<>();
+        private int queuedBytes;
+        private long written;
+        private boolean closed;
+        private boolean broken;
+        private Thread writer;
+
+        private WritePipe(final OutputStream output) {
+            this.output = output;
+        }
+
+        @Override
+        public int read(final ByteBuffer dst) throws IOException {
+            throw new IOException("Cannot read from the stdin of a subprocess");
+        }
+
+        @Override
+        public synchronized int write(final ByteBuffer src) throws IOException {
+            if (closed) {
+                throw new ClosedChannelException();
+            }
+            if (broken) {
+                throw new IOException("Subprocess stdin is broken");
+            }
+            final int count = Math.min(src.remaining(), MAX_BUFFERED_BYTES - queuedBytes);
+            if (count <= 0) {
+                return 0;
+            }
+            final byte[] bytes = new byte[count];
+            src.get(bytes);
+            queue.addLast(bytes);
+            queuedBytes += count;
+            written += count;
+            if (writer == null) {
+                writer = new Thread(this::feed, WRITER_THREAD_NAME + "-" + pid);
+                writer.setDaemon(true);
+                writer.start();
+            } else {
+                notifyAll();
+            }
+            return count;
+        }
+
+        private void feed() {
+            try (output) {
+                byte[] bytes;
+                while ((bytes = nextQueued()) != null) {
+                    output.write(bytes);
+                    output.flush();
+                    dequeued(bytes.length);
+                    signal();
+                }
+            } catch (final IOException e) {
+                LogUtils.IO.fine(() -> "Failed to write to subprocess " + pid + ": " + e);
+                markBroken();
+                signal();
+            }
+        }
+
+        /* Answers the next queued bytes, or null once the pipe is closed and everything written. */
+        private synchronized byte[] nextQueued() {
+            while (queue.isEmpty() && !closed) {
+                try {
+                    wait();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+            return queue.peekFirst();
+        }
+
+        private synchronized void dequeued(final int count) {
+            queue.pollFirst();
+            queuedBytes -= count;
+        }
+
+        private synchronized void markBroken() {
+            broken = true;
+            queue.clear();
+            queuedBytes = 0;
+        }
+
+        @Override
+        public synchronized long position() {
+            return written;
+        }
+
+        @Override
+        public SeekableByteChannel position(final long newPosition) throws IOException {
+            throw new IOException("Cannot reposition a pipe");
+        }
+
+        @Override
+        public synchronized long size() {
+            return written;
+        }
+
+        @Override
+        public SeekableByteChannel truncate(final long size) throws IOException {
+            throw new IOException("Cannot truncate a pipe");
+        }
+
+        @Override
+        public synchronized boolean isOpen() {
+            return !closed;
+        }
+
+        /* Queued bytes are still written before stdin of the child is closed. */
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                if (writer == null) {
+                    try {
+                        output.close();
+                    } catch (final IOException e) {
+                        LogUtils.IO.fine(() -> "Failed to close subprocess stdin: " + e);
+                    }
+                } else {
+                    notifyAll();
+                }
+            }
+        }
+    }
+}
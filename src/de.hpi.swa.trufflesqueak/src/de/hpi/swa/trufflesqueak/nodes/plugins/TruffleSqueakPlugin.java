@@ -7,9 +7,12 @@
 package de.hpi.swa.trufflesqueak.nodes.plugins;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.Truffle;
 import com.oracle.truffle.api.dsl.Bind;
 import com.oracle.truffle.api.dsl.Cached;
@@ -24,15 +27,25 @@ import com.oracle.truffle.api.nodes.RootNode;
 import de.hpi.swa.trufflesqueak.exceptions.PrimitiveFailed;
 import de.hpi.swa.trufflesqueak.image.SqueakImageContext;
 import de.hpi.swa.trufflesqueak.interop.JavaObjectWrapper;
+import de.hpi.swa.trufflesqueak.model.AbstractSqueakObjectWithClassAndHash;
+import de.hpi.swa.trufflesqueak.model.ArrayObject;
+import de.hpi.swa.trufflesqueak.model.CompiledCodeObject;
 import de.hpi.swa.trufflesqueak.model.NativeObject;
+import de.hpi.swa.trufflesqueak.model.NilObject;
 import de.hpi.swa.trufflesqueak.model.PointersObject;
 import de.hpi.swa.trufflesqueak.model.layout.ObjectLayouts.FORM;
 import de.hpi.swa.trufflesqueak.nodes.accessing.AbstractPointersObjectNodes.AbstractPointersObjectReadNode;
 import de.hpi.swa.trufflesqueak.nodes.primitives.AbstractPrimitiveFactoryHolder;
 import de.hpi.swa.trufflesqueak.nodes.primitives.AbstractPrimitiveNode;
 import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveFallbacks.BinaryPrimitiveFallback;
+import de.hpi.swa.trufflesqueak.nodes.primitives.PrimitiveFallbacks.TernaryPrimitiveFallback;
 import de.hpi.swa.trufflesqueak.nodes.primitives.SqueakPrimitive;
+import de.hpi.swa.trufflesqueak.util.HeapCensus;
 import de.hpi.swa.trufflesqueak.util.MiscUtils;
+import de.hpi.swa.trufflesqueak.util.NonLocalReturnStatistics;
+import de.hpi.swa.trufflesqueak.util.ObjectGraphUtils;
+import de.hpi.swa.trufflesqueak.util.PrimitiveStatistics;
+import de.hpi.swa.trufflesqueak.util.SendSiteStatistics;
 
 public final class TruffleSqueakPlugin extends AbstractPrimitiveFactoryHolder {
 
@@ -56,6 +69,165 @@ public final class TruffleSqueakPlugin extends AbstractPrimitiveFactoryHolder {
         }
     }
 
+    /**
+     * Counts sequences of consecutive bytecodes across all compiled code in the image and answers
+     * the most frequent ones as an Array of {description. count} pairs. Used to pick candidates
+     * for superinstructions.
+     */
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveBytecodeSequenceStatistics")
+    protected abstract static class PrimBytecodeSequenceStatisticsNode extends AbstractPrimitiveNode implements TernaryPrimitiveFallback {
+        protected static final int MAX_SEQUENCE_LENGTH = 8;
+
+        @Specialization(guards = {"length >= 1", "length <= MAX_SEQUENCE_LENGTH", "limit >= 1"})
+        protected final ArrayObject doStatistics(@SuppressWarnings("unused") final Object receiver, final long length, final long limit) {
+            return computeStatistics(getContext(), (int) length, (int) limit);
+        }
+
+        @TruffleBoundary
+        private static ArrayObject computeStatistics(final SqueakImageContext image, final int length, final int limit) {
+            final Map<String, Long> counts = new HashMap<>();
+            for (final AbstractSqueakObjectWithClassAndHash object : ObjectGraphUtils.allInstances(image)) {
+                if (object instanceof final CompiledCodeObject code) {
+                    code.countBytecodeSequences(length, counts);
+                }
+            }
+            return image.asArrayOfObjects(counts.entrySet().stream() //
+                            .sorted(Map.Entry.<String, Long> comparingByValue().reversed()) //
+                            .limit(limit) //
+                            .map(e -> image.asArrayOfObjects(image.asByteString(e.getKey()), e.getValue())) //
+                            .toArray());
+        }
+    }
+
+    /**
+     * Answers {class. instances. shallowBytes. ownedBytes} for each class with reachable
+     * instances, largest owned size first, without collecting the instances themselves. Sizes
+     * are estimates for the host heap (see HeapCensus).
+     */
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveHeapCensus")
+    protected abstract static class PrimHeapCensusNode extends AbstractPrimitiveNode {
+        @Specialization
+        protected final ArrayObject doCensus(@SuppressWarnings("unused") final Object receiver) {
+            return toArray(getContext(), ObjectGraphUtils.census(getContext()));
+        }
+
+        @TruffleBoundary
+        private static ArrayObject toArray(final SqueakImageContext image, final HeapCensus census) {
+            return image.asArrayOfObjects(census.getEntries().stream() //
+                            .map(e -> image.asArrayOfObjects(e.getSqueakClass(), e.getInstances(), e.getShallowBytes(), e.getOwnedBytes())) //
+                            .toArray());
+        }
+    }
+
+    /**
+     * Answers {name. calls. failures. reasons} for each primitive that has been run since the last
+     * reset, where reasons counts failures per ERROR_TABLE index (unknown codes last). Requires the
+     * primitive-statistics option.
+     */
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitivePrimitiveStatistics")
+    protected abstract static class PrimPrimitiveStatisticsNode extends AbstractPrimitiveNode {
+        @Specialization
+        protected final ArrayObject doStatistics(@SuppressWarnings("unused") final Object receiver) {
+            final PrimitiveStatistics statistics = getContext().primitiveStatistics;
+            if (statistics == null) {
+                throw PrimitiveFailed.andTransferToInterpreter();
+            }
+            return toArray(getContext(), statistics);
+        }
+
+        @TruffleBoundary
+        private static ArrayObject toArray(final SqueakImageContext image, final PrimitiveStatistics statistics) {
+            return image.asArrayOfObjects(statistics.getEntries().stream() //
+                            .map(e -> image.asArrayOfObjects(image.asByteString(e.getName()), e.getCalls(), e.getFailures(), image.asArrayOfLongs(e.getReasons()))) //
+                            .toArray());
+        }
+    }
+
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveResetPrimitiveStatistics")
+    protected abstract static class PrimResetPrimitiveStatisticsNode extends AbstractPrimitiveNode {
+        @Specialization
+        protected final Object doReset(final Object receiver) {
+            final PrimitiveStatistics statistics = getContext().primitiveStatistics;
+            if (statistics == null) {
+                throw PrimitiveFailed.andTransferToInterpreter();
+            }
+            statistics.reset();
+            return receiver;
+        }
+    }
+
+    /**
+     * Answers {nonLocalReturns. directReturns}, where directReturns counts non-local returns from
+     * blocks evaluated by their home context itself, which return without unwinding the stack.
+     * Requires the non-local-return-statistics option.
+     */
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveNonLocalReturnStatistics")
+    protected abstract static class PrimNonLocalReturnStatisticsNode extends AbstractPrimitiveNode {
+        @Specialization
+        protected final ArrayObject doStatistics(@SuppressWarnings("unused") final Object receiver) {
+            final NonLocalReturnStatistics statistics = getContext().nonLocalReturnStatistics;
+            if (statistics == null) {
+                throw PrimitiveFailed.andTransferToInterpreter();
+            }
+            return getContext().asArrayOfLongs(statistics.getNonLocalReturns(), statistics.getDirectReturns());
+        }
+    }
+
+    /**
+     * Answers a JSON string listing send sites with their inline cache state, receiver classes,
+     * and call counts, plus the number of global method cache lookups. Requires the
+     * send-site-statistics option.
+     */
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveSendSiteStatistics")
+    protected abstract static class PrimSendSiteStatisticsNode extends AbstractPrimitiveNode {
+        @Specialization
+        protected final NativeObject doStatistics(@SuppressWarnings("unused") final Object receiver) {
+            final SendSiteStatistics statistics = getContext().sendSiteStatistics;
+            if (statistics == null) {
+                throw PrimitiveFailed.andTransferToInterpreter();
+            }
+            return getContext().asByteString(statistics.toJson());
+        }
+    }
+
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveResetSendSiteStatistics")
+    protected abstract static class PrimResetSendSiteStatisticsNode extends AbstractPrimitiveNode {
+        @Specialization
+        protected final Object doReset(final Object receiver) {
+            final SendSiteStatistics statistics = getContext().sendSiteStatistics;
+            if (statistics == null) {
+                throw PrimitiveFailed.andTransferToInterpreter();
+            }
+            statistics.reset();
+            return receiver;
+        }
+    }
+
+    /**
+     * Answers {weakObject. indices} for the next weak object with slots cleared by the GC, or nil.
+     * Lets weak collections finalize only the slots that were cleared instead of rescanning.
+     */
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveFetchClearedWeakSlots")
+    protected abstract static class PrimFetchClearedWeakSlotsNode extends AbstractPrimitiveNode {
+        @Specialization
+        protected final Object doFetch(@SuppressWarnings("unused") final Object receiver) {
+            final SqueakImageContext image = getContext();
+            final Object[] weakObjectAndIndices = image.finalization.nextClearedWeakSlots();
+            if (weakObjectAndIndices == null) {
+                return NilObject.SINGLETON;
+            }
+            return image.asArrayOfObjects(weakObjectAndIndices[0], image.asArrayOfLongs((long[]) weakObjectAndIndices[1]));
+        }
+    }
+
     @GenerateNodeFactory
     @SqueakPrimitive(names = "primitiveGetTruffleRuntime")
     protected abstract static class PrimGetTruffleRuntimeNode extends AbstractPrimitiveNode {
@@ -20,7 +20,7 @@ import com.oracle.truffle.api.interop.UnsupportedMessageException;
 import com.oracle.truffle.api.interop.UnsupportedTypeException;
 
 import de.hpi.swa.trufflesqueak.image.SqueakImageContext;
-import de.hpi.swa.trufflesqueak.io.SqueakDisplay;
+import de.hpi.swa.trufflesqueak.io.AbstractSqueakDisplay;
 import de.hpi.swa.trufflesqueak.model.AbstractPointersObject;
 import de.hpi.swa.trufflesqueak.model.AbstractSqueakObject;
 import de.hpi.swa.trufflesqueak.model.ArrayObject;
@@ -639,7 +639,7 @@ public final class InterpreterProxy {
     private long showDisplayBitsLeftTopRightBottom(final long aFormOop, final long l, final long t, final long r, final long b) {
         final Object aFormObject = objectRegistryGet(aFormOop);
         if (aFormObject instanceof final PointersObject aForm) {
-            final SqueakDisplay display = context.getDisplay();
+            final AbstractSqueakDisplay display = context.getDisplay();
             if (aForm.isDisplay(context) && !display.getDeferUpdates()) {
                 display.showDisplayRect((int) l, (int) t, (int) r, (int) b);
             }
@@ -6,13 +6,43 @@
  */
 package de.hpi.swa.trufflesqueak.nodes.plugins.network;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
 
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 
-final class Resolver {
+import de.hpi.swa.trufflesqueak.image.SqueakImageContext;
+import de.hpi.swa.trufflesqueak.util.LogUtils;
+
+/**
+ * Resolves host names and addresses for the SocketPlugin without blocking the interpreter. Lookups
+ * run on a small pool of daemon threads and signal the resolver semaphore registered with
+ * primitiveInitializeNetwork when they complete. The image only ever sees the result of its most
+ * recent lookup (see NetNameResolver), but earlier lookups still in flight are not cancelled and
+ * fill the cache when they complete. Results, including failures, are kept in a bounded cache and
+ * expire after a fixed time to live. The lookup threads are shut down when the context is disposed.
+ */
+public final class Resolver implements Closeable {
+    private static final int MAX_LOOKUP_THREADS = 4;
+    private static final int MAX_CACHE_ENTRIES = 256;
+    private static final long POSITIVE_TTL_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final long NEGATIVE_TTL_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final String LOCALHOST = "localhost";
+    private static final String RESOLVER_THREAD_NAME = "TruffleSqueakResolver";
 
     enum Status {
         Uninitialized(0),
@@ -31,13 +61,53 @@ final class Resolver {
         }
     }
 
+    /** Performs the actual, blocking lookups. */
+    public interface NameService {
+        byte[] lookUpHostName(String hostName) throws UnknownHostException;
+
+        String lookUpAddress(byte[] address) throws UnknownHostException;
+    }
+
+    private static final NameService SYSTEM_NAME_SERVICE = new NameService() {
+        @Override
+        public byte[] lookUpHostName(final String hostName) throws UnknownHostException {
+            return InetAddress.getByName(hostName).getAddress();
+        }
+
+        @Override
+        public String lookUpAddress(final byte[] address) throws UnknownHostException {
+            return InetAddress.getByAddress(address).getHostName();
+        }
+    };
+
     private static InetAddress anyLocalAddress;
     private static InetAddress loopbackAddress;
 
-    private static byte[] lastNameLookup;
-    private static String lastAddressLookup;
+    private final SqueakImageContext image;
+    private final NameService nameService;
+    private final IntConsumer semaphoreSignaller;
+    private final TtlCache<String, byte[]> hostNameCache = new TtlCache<>();
+    private final TtlCache<String, String> addressCache = new TtlCache<>();
+    private ExecutorService executor;
+
+    private int semaphoreIndex;
+    private long lastRequest;
+    private Status status = Status.Ready;
+    private byte[] lastNameLookup;
+    private String lastAddressLookup;
 
-    private Resolver() {
+    public Resolver(final SqueakImageContext image) {
+        this(image, SYSTEM_NAME_SERVICE, index -> image.interrupt.signalSemaphoreWithIndex(index));
+    }
+
+    public Resolver(final NameService nameService, final IntConsumer semaphoreSignaller) {
+        this(null, nameService, semaphoreSignaller);
+    }
+
+    private Resolver(final SqueakImageContext image, final NameService nameService, final IntConsumer semaphoreSignaller) {
+        this.image = image;
+        this.nameService = nameService;
+        this.semaphoreSignaller = semaphoreSignaller;
     }
 
     protected static byte[] getAnyLocalAddress() {
@@ -56,37 +126,137 @@ final class Resolver {
     }
 
     @TruffleBoundary
-    protected static void startHostNameLookUp(final String hostName) throws UnknownHostException {
-        try {
-            if ("localhost".equals(hostName)) {
-                lastNameLookup = Resolver.getLoopbackAddress();
-                return;
+    public synchronized void setSemaphoreIndex(final int index) {
+        semaphoreIndex = index;
+    }
+
+    @TruffleBoundary
+    public synchronized long getStatus() {
+        return status.id();
+    }
+
+    /** Answers a copy, so that the image cannot modify cached results. */
+    @TruffleBoundary
+    public synchronized byte[] lastHostNameLookupResult() {
+        return lastNameLookup == null ? null : lastNameLookup.clone();
+    }
+
+    @TruffleBoundary
+    public synchronized String lastAddressLookUpResult() {
+        return lastAddressLookup;
+    }
+
+    @TruffleBoundary
+    public void startHostNameLookUp(final String hostName) {
+        if (LOCALHOST.equals(hostName)) {
+            completeHostNameLookUp(beginRequest(), getLoopbackAddress(), true);
+            return;
+        }
+        final TtlCache.Entry<byte[]> cached = hostNameCache.get(hostName);
+        final long request = beginRequest();
+        if (cached != null) {
+            completeHostNameLookUp(request, cached.value, cached.value != null);
+            return;
+        }
+        submit(() -> {
+            byte[] address;
+            try {
+                address = nameService.lookUpHostName(hostName);
+            } catch (final UnknownHostException e) {
+                LogUtils.SOCKET.fine(() -> "Host name lookup for " + hostName + " failed: " + e.getMessage());
+                address = null;
             }
+            hostNameCache.put(hostName, address);
+            completeHostNameLookUp(request, address, address != null);
+        });
+    }
 
-            final InetAddress address = InetAddress.getByName(hostName);
-            lastNameLookup = address.getAddress();
-        } catch (final UnknownHostException e) {
-            lastNameLookup = null;
-            throw e;
+    @TruffleBoundary
+    public void startAddressLookUp(final byte[] address) {
+        final String key = addressBytesToString(address);
+        final TtlCache.Entry<String> cached = key == null ? null : addressCache.get(key);
+        final long request = beginRequest();
+        if (cached != null) {
+            completeAddressLookUp(request, cached.value, cached.value != null);
+            return;
         }
+        final byte[] addressCopy = address.clone();
+        submit(() -> {
+            String hostName;
+            try {
+                hostName = nameService.lookUpAddress(addressCopy);
+            } catch (final UnknownHostException e) {
+                LogUtils.SOCKET.fine(() -> "Address lookup for " + key + " failed: " + e.getMessage());
+                hostName = null;
+            }
+            if (key != null) {
+                addressCache.put(key, hostName);
+            }
+            completeAddressLookUp(request, hostName, hostName != null);
+        });
     }
 
-    protected static byte[] lastHostNameLookupResult() {
-        return lastNameLookup;
+    private synchronized long beginRequest() {
+        status = Status.Busy;
+        lastNameLookup = null;
+        lastAddressLookup = null;
+        return ++lastRequest;
     }
 
-    @TruffleBoundary
-    protected static void startAddressLookUp(final byte[] address) throws UnknownHostException {
-        try {
-            lastAddressLookup = InetAddress.getByAddress(address).getHostName();
-        } catch (final UnknownHostException e) {
-            lastAddressLookup = null;
-            throw e;
+    private void completeHostNameLookUp(final long request, final byte[] address, final boolean success) {
+        final int indexToSignal;
+        synchronized (this) {
+            if (request != lastRequest) {
+                return; /* Superseded by a newer lookup, which will signal on its own. */
+            }
+            lastNameLookup = address;
+            status = success ? Status.Ready : Status.Error;
+            indexToSignal = semaphoreIndex;
         }
+        signal(indexToSignal);
     }
 
-    protected static String lastAddressLookUpResult() {
-        return lastAddressLookup;
+    private void completeAddressLookUp(final long request, final String hostName, final boolean success) {
+        final int indexToSignal;
+        synchronized (this) {
+            if (request != lastRequest) {
+                return; /* Superseded by a newer lookup, which will signal on its own. */
+            }
+            lastAddressLookup = hostName;
+            status = success ? Status.Ready : Status.Error;
+            indexToSignal = semaphoreIndex;
+        }
+        signal(indexToSignal);
+    }
+
+    private void signal(final int index) {
+        if (index > 0) {
+            semaphoreSignaller.accept(index);
+        }
+    }
+
+    private synchronized void submit(final Runnable lookup) {
+        if (executor == null) {
+            final ThreadPoolExecutor pool = new ThreadPoolExecutor(MAX_LOOKUP_THREADS, MAX_LOOKUP_THREADS, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                final Thread t = new Thread(r, RESOLVER_THREAD_NAME);
+                t.setDaemon(true);
+                return t;
+            });
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+            if (image != null) {
+                image.registerOnDispose(this);
+            }
+        }
+        executor.execute(lookup);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
     }
 
     @TruffleBoundary
@@ -97,4 +267,79 @@ final class Resolver {
             return null;
         }
     }
+
+    /** Bounded, least-recently-used cache whose entries expire. Failures are cached as null. */
+    private static final class TtlCache<K, V> {
+        private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<K, Entry<V>> eldest) {
+                return size() > MAX_CACHE_ENTRIES;
+            }
+        };
+
+        private record Entry<V>(V value, long expiresAt) {
+        }
+
+        synchronized Entry<V> get(final K key) {
+            final Entry<V> entry = entries.get(key);
+            if (entry != null && entry.expiresAt - System.nanoTime() < 0) {
+                entries.remove(key);
+                return null;
+            }
+            return entry;
+        }
+
+        synchronized void put(final K key, final V value) {
+            entries.put(key, new Entry<>(value, System.nanoTime() + (value != null ? POSITIVE_TTL_NANOS : NEGATIVE_TTL_NANOS)));
+        }
+    }
+
+    /**
+     * Answers lookups from a file in hosts(5) format instead of the system resolver, so that
+     * lookups can be tested without network access. Unknown names and addresses fail.
+     */
+    public static final class HostsFileNameService implements NameService {
+        private final Map<String, byte[]> hostNameToAddress = new HashMap<>();
+        private final Map<String, String> addressToHostName = new HashMap<>();
+
+        public HostsFileNameService(final Path hostsFile) throws IOException {
+            this(Files.readString(hostsFile, StandardCharsets.UTF_8));
+        }
+
+        public HostsFileNameService(final String contents) throws UnknownHostException {
+            for (final String line : contents.split("\n")) {
+                final int commentStart = line.indexOf('#');
+                final String[] fields = (commentStart < 0 ? line : line.substring(0, commentStart)).trim().split("\\s+");
+                if (fields.length < 2) {
+                    continue;
+                }
+                /* Literal addresses do not cause a lookup. */
+                final InetAddress address = InetAddress.getByName(fields[0]);
+                addressToHostName.putIfAbsent(address.getHostAddress(), fields[1]);
+                for (int i = 1; i < fields.length; i++) {
+                    hostNameToAddress.putIfAbsent(fields[i].toLowerCase(), address.getAddress());
+                }
+            }
+        }
+
+        @Override
+        public byte[] lookUpHostName(final String hostName) throws UnknownHostException {
+            final byte[] address = hostNameToAddress.get(hostName.toLowerCase());
+            if (address == null) {
+                throw new UnknownHostException(hostName);
+            }
+            return address.clone();
+        }
+
+        @Override
+        public String lookUpAddress(final byte[] address) throws UnknownHostException {
+            final String hostName = addressToHostName.get(InetAddress.getByAddress(address).getHostAddress());
+            if (hostName == null) {
+                throw new UnknownHostException(addressBytesToString(address));
+            }
+            return hostName;
+        }
+    }
 }
@@ -8,6 +8,7 @@ package de.hpi.swa.trufflesqueak.nodes.plugins.network;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.util.List;
 import java.util.logging.Level;
@@ -75,17 +76,18 @@ public final class SocketPlugin extends AbstractPrimitiveFactoryHolder {
     @SqueakPrimitive(names = "primitiveResolverStatus")
     protected abstract static class PrimResolverStatusNode extends AbstractPrimitiveNode {
         @Specialization
-        protected static long doWork(@SuppressWarnings("unused") final Object receiver) {
-            return Resolver.Status.Ready.id();
+        protected final long doWork(@SuppressWarnings("unused") final Object receiver) {
+            return getContext().resolver.getStatus();
         }
     }
 
     @GenerateNodeFactory
     @NodeInfo(cost = NodeCost.NONE)
     @SqueakPrimitive(names = "primitiveInitializeNetwork")
-    protected abstract static class PrimInitializeNetworkNode extends AbstractPrimitiveNode {
+    protected abstract static class PrimInitializeNetworkNode extends AbstractPrimitiveNode implements BinaryPrimitiveFallback {
         @Specialization
-        protected static Object doWork(final Object receiver) {
+        protected final Object doWork(final Object receiver, final long resolverSemaphoreIndex) {
+            getContext().resolver.setSemaphoreIndex((int) resolverSemaphoreIndex);
             return receiver;
         }
     }
@@ -100,6 +102,22 @@ public final class SocketPlugin extends AbstractPrimitiveFactoryHolder {
         }
     }
 
+    private static SqueakUDPSocket getUDPSocketOrPrimFail(final PointersObject socketHandle) {
+        if (getSocketOrPrimFail(socketHandle) instanceof final SqueakUDPSocket o) {
+            return o;
+        } else {
+            throw PrimitiveFailed.BAD_ARGUMENT;
+        }
+    }
+
+    private static byte[] getByteStorageOrPrimFail(final Object buffer) {
+        if (buffer instanceof final NativeObject o && o.isByteType()) {
+            return o.getByteStorage();
+        } else {
+            throw PrimitiveFailed.BAD_ARGUMENT;
+        }
+    }
+
     @GenerateNodeFactory
     @SqueakPrimitive(names = "primitiveResolverStartNameLookup")
     protected abstract static class PrimResolverStartNameLookupNode extends AbstractPrimitiveNode implements BinaryPrimitiveFallback {
@@ -109,13 +127,9 @@ public final class SocketPlugin extends AbstractPrimitiveFactoryHolder {
          * primNameLookupResult.
          */
         @Specialization(guards = "hostName.isByteType()")
-        protected static final Object doWork(final Object receiver, final NativeObject hostName) {
-            try {
-                LogUtils.SOCKET.finer(() -> "Starting lookup for host name " + hostName);
-                Resolver.startHostNameLookUp(hostName.asStringUnsafe());
-            } catch (final UnknownHostException e) {
-                LogUtils.SOCKET.log(Level.FINE, "Host name lookup failed", e);
-            }
+        protected final Object doWork(final Object receiver, final NativeObject hostName) {
+            LogUtils.SOCKET.finer(() -> "Starting lookup for host name " + hostName);
+            getContext().resolver.startHostNameLookUp(hostName.asStringUnsafe());
             return receiver;
         }
     }
@@ -130,13 +144,9 @@ public final class SocketPlugin extends AbstractPrimitiveFactoryHolder {
          * primAddressLookupResult.
          */
         @Specialization(guards = "address.isByteType()")
-        protected static final Object doWork(final Object receiver, final NativeObject address) {
-            try {
-                LogUtils.SOCKET.finer(() -> "Starting lookup for address " + address);
-                Resolver.startAddressLookUp(address.getByteStorage());
-            } catch (final UnknownHostException e) {
-                LogUtils.SOCKET.log(Level.FINE, "Address lookup failed", e);
-            }
+        protected final Object doWork(final Object receiver, final NativeObject address) {
+            LogUtils.SOCKET.finer(() -> "Starting lookup for address " + address);
+            getContext().resolver.startAddressLookUp(address.getByteStorage());
             return receiver;
         }
     }
@@ -153,7 +163,7 @@ public final class SocketPlugin extends AbstractPrimitiveFactoryHolder {
         protected static final AbstractSqueakObject doWork(@SuppressWarnings("unused") final Object receiver,
                         @Bind("this") final Node node,
                         @Cached final InlinedConditionProfile hasResultProfile) {
-            final byte[] lastNameLookup = Resolver.lastHostNameLookupResult();
+            final byte[] lastNameLookup = getContext(node).resolver.lastHostNameLookupResult();
             LogUtils.SOCKET.finer(() -> "Name Lookup Result: " + Resolver.addressBytesToString(lastNameLookup));
             return hasResultProfile.profile(node, lastNameLookup == null) ? NilObject.SINGLETON : getContext(node).asByteArray(lastNameLookup);
         }
@@ -168,7 +178,7 @@ public final class SocketPlugin extends AbstractPrimitiveFactoryHolder {
          */
         @Specialization
         protected final AbstractSqueakObject doWork(@SuppressWarnings("unused") final Object receiver) {
-            final String lastAddressLookup = Resolver.lastAddressLookUpResult();
+            final String lastAddressLookup = getContext().resolver.lastAddressLookUpResult();
             LogUtils.SOCKET.finer(() -> ">> Address Lookup Result: " + lastAddressLookup);
             return lastAddressLookup == null ? NilObject.SINGLETON : getContext().asByteString(lastAddressLookup);
         }
@@ -580,6 +590,114 @@ public final class SocketPlugin extends AbstractPrimitiveFactoryHolder {
         }
     }
 
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveSocketReceiveUDPDatagrams")
+    protected abstract static class PrimSocketReceiveUDPDatagramsNode extends AbstractPrimitiveNode implements QuinaryPrimitiveFallback {
+        /**
+         * Receive up to maxCount pending datagrams from the given UDP socket, one into each
+         * ByteArray of the given ring of buffers starting at the given index and wrapping around.
+         * Return an Array with the size, source address, source port, and truncation flag of each
+         * datagram received, in order, which is empty if no datagram is available. Datagrams longer
+         * than their buffer are truncated to the size of the buffer, and their flag is true.
+         */
+        @Specialization(guards = "buffers.isObjectType()")
+        protected final ArrayObject doReceive(
+                        @SuppressWarnings("unused") final Object receiver, final PointersObject sd,
+                        final ArrayObject buffers, final long startIndex, final long maxCount) {
+            try {
+                return receiveDatagrams(getContext(), sd, buffers.getObjectStorage(), startIndex - 1, maxCount);
+            } catch (final IOException e) {
+                LogUtils.SOCKET.log(Level.FINE, "Receiving datagrams failed", e);
+                throw PrimitiveFailed.andTransferToInterpreter();
+            }
+        }
+
+        @TruffleBoundary(transferToInterpreterOnException = false)
+        private static ArrayObject receiveDatagrams(final SqueakImageContext image, final PointersObject sd, final Object[] ring, final long start, final long maxCount)
+                        throws IOException {
+            final SqueakUDPSocket socket = getUDPSocketOrPrimFail(sd);
+            if (start < 0 || start >= ring.length || maxCount < 0) {
+                throw PrimitiveFailed.BAD_INDEX;
+            }
+            final int count = (int) Math.min(maxCount, ring.length);
+            final byte[][] buffers = new byte[count][];
+            for (int i = 0; i < count; i++) {
+                buffers[i] = getByteStorageOrPrimFail(ring[(int) ((start + i) % ring.length)]);
+            }
+            final int[] sizes = new int[count];
+            final boolean[] truncated = new boolean[count];
+            final InetSocketAddress[] sources = new InetSocketAddress[count];
+            final int received = socket.receiveDatagrams(buffers, sizes, truncated, sources);
+            final Object[] results = new Object[received * 4];
+            for (int i = 0; i < received; i++) {
+                results[i * 4] = (long) sizes[i];
+                results[i * 4 + 1] = image.asByteArray(sources[i].getAddress().getAddress());
+                results[i * 4 + 2] = (long) sources[i].getPort();
+                results[i * 4 + 3] = BooleanObject.wrap(truncated[i]);
+            }
+            return image.asArrayOfObjects(results);
+        }
+    }
+
+    @GenerateNodeFactory
+    @SqueakPrimitive(names = "primitiveSocketSendUDPDatagrams")
+    protected abstract static class PrimSocketSendUDPDatagramsNode extends AbstractPrimitiveNode implements SenaryPrimitiveFallback {
+        /**
+         * Send the first sizes[i] bytes of each ByteArray in the given buffers as one datagram
+         * through the given UDP socket to the given address and port. Return the number of
+         * datagrams actually sent; the remaining ones should be re-submitted later.
+         */
+        @Specialization(guards = {"buffers.isObjectType()", "address.isByteType()"})
+        protected static final long doSendTo(
+                        @SuppressWarnings("unused") final Object receiver, final PointersObject sd,
+                        final ArrayObject buffers, final ArrayObject sizes, final NativeObject address, final long port) {
+            try {
+                return sendDatagrams(sd, buffers.getObjectStorage(), sizes, address.getByteStorage(), port);
+            } catch (final IOException e) {
+                LogUtils.SOCKET.log(Level.FINE, "Sending datagrams failed", e);
+                throw PrimitiveFailed.andTransferToInterpreter();
+            }
+        }
+
+        /** Send to the peer the socket is connected to. */
+        @Specialization(guards = "buffers.isObjectType()")
+        protected static final long doSend(
+                        @SuppressWarnings("unused") final Object receiver, final PointersObject sd,
+                        final ArrayObject buffers, final ArrayObject sizes, @SuppressWarnings("unused") final NilObject address,
+                        @SuppressWarnings("unused") final Object port) {
+            try {
+                return sendDatagrams(sd, buffers.getObjectStorage(), sizes, null, 0);
+            } catch (final IOException e) {
+                LogUtils.SOCKET.log(Level.FINE, "Sending datagrams failed", e);
+                throw PrimitiveFailed.andTransferToInterpreter();
+            }
+        }
+
+        @TruffleBoundary(transferToInterpreterOnException = false)
+        private static long sendDatagrams(final PointersObject sd, final Object[] datagrams, final ArrayObject sizes, final byte[] address, final long port) throws IOException {
+            final SqueakUDPSocket socket = getUDPSocketOrPrimFail(sd);
+            if (address != null && (port < 0 || port > 0xFFFF)) {
+                throw PrimitiveFailed.BAD_ARGUMENT;
+            }
+            final int count = datagrams.length;
+            if (sizes.size() != count) {
+                throw PrimitiveFailed.BAD_ARGUMENT;
+            }
+            final byte[][] buffers = new byte[count][];
+            final int[] byteCounts = new int[count];
+            for (int i = 0; i < count; i++) {
+                buffers[i] = getByteStorageOrPrimFail(datagrams[i]);
+                final Object size = sizes.isLongType() ? sizes.getLong(i) : sizes.isObjectType() ? sizes.getObject(i) : null;
+                if (!(size instanceof final Long value && 0 <= value && value <= buffers[i].length)) {
+                    throw PrimitiveFailed.BAD_ARGUMENT;
+                }
+                byteCounts[i] = (int) (long) value;
+            }
+            final InetSocketAddress target = address == null ? null : new InetSocketAddress(InetAddress.getByAddress(address), (int) port);
+            return socket.sendDatagrams(buffers, byteCounts, target);
+        }
+    }
+
     @GenerateNodeFactory
     @SqueakPrimitive(names = "primitiveSocketDestroy")
     protected abstract static class PrimSocketDestroyNode extends AbstractPrimitiveNode implements BinaryPrimitiveFallback {
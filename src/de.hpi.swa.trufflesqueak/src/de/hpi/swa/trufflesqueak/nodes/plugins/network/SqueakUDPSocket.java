@@ -13,10 +13,16 @@ import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.NetworkChannel;
 import java.nio.channels.SelectionKey;
+import java.util.logging.Level;
+
+import de.hpi.swa.trufflesqueak.util.LogUtils;
 
 final class SqueakUDPSocket extends SqueakSocket {
+    /* Large enough for any UDP payload, so that truncation can be detected. */
+    private static final int MAX_DATAGRAM_SIZE = 0xFFFF;
 
     private final DatagramChannel channel;
+    private ByteBuffer receiveBuffer;
 
     SqueakUDPSocket() throws IOException {
         super();
@@ -115,6 +121,62 @@ final class SqueakUDPSocket extends SqueakSocket {
         return data.position();
     }
 
+    /**
+     * Receives up to buffers.length datagrams, one per buffer, straight from the non-blocking
+     * channel (without polling the selector per datagram) until no more are pending. Records size
+     * and source of each datagram and whether it was truncated because it was longer than its
+     * buffer, and answers how many were received. If receiving fails after some datagrams were
+     * received, answers those, and the error surfaces on the next call.
+     */
+    int receiveDatagrams(final byte[][] buffers, final int[] sizes, final boolean[] truncated, final InetSocketAddress[] sources) throws IOException {
+        if (receiveBuffer == null) {
+            receiveBuffer = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+        }
+        int received = 0;
+        try {
+            while (received < buffers.length) {
+                receiveBuffer.clear();
+                final SocketAddress source = channel.receive(receiveBuffer);
+                if (source == null) {
+                    break;
+                }
+                final byte[] buffer = buffers[received];
+                final int length = receiveBuffer.position();
+                sizes[received] = Math.min(length, buffer.length);
+                truncated[received] = length > buffer.length;
+                receiveBuffer.flip().get(buffer, 0, sizes[received]);
+                sources[received] = castAddress(source);
+                received++;
+            }
+        } catch (final IOException e) {
+            if (received == 0) {
+                throw e;
+            }
+            LogUtils.SOCKET.log(Level.FINE, "Receiving datagrams failed after " + received + " datagrams", e);
+        }
+        return received;
+    }
+
+    /**
+     * Sends the first sizes[i] bytes of each buffer as one datagram to target, or to the connected
+     * peer if target is null, and answers how many were sent before the channel would block.
+     */
+    int sendDatagrams(final byte[][] buffers, final int[] sizes, final InetSocketAddress target) throws IOException {
+        if (target == null && !channel.isConnected()) {
+            throw new IOException("UDP socket is not connected");
+        }
+        int sent = 0;
+        while (sent < buffers.length) {
+            final ByteBuffer buffer = ByteBuffer.wrap(buffers[sent], 0, sizes[sent]);
+            final int written = target == null ? channel.write(buffer) : channel.send(buffer, target);
+            if (written == 0 && sizes[sent] > 0) {
+                break;
+            }
+            sent++;
+        }
+        return sent;
+    }
+
     @Override
     protected void close() throws IOException {
         super.close();
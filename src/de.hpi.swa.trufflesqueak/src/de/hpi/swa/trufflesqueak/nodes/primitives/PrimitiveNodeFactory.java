@@ -17,10 +17,12 @@ import de.hpi.swa.trufflesqueak.nodes.plugins.BMPReadWriterPlugin;
 import de.hpi.swa.trufflesqueak.nodes.plugins.BitBltPlugin;
 import de.hpi.swa.trufflesqueak.nodes.plugins.ClipboardExtendedPlugin;
 import de.hpi.swa.trufflesqueak.nodes.plugins.CroquetPlugin;
+import de.hpi.swa.trufflesqueak.nodes.plugins.DigestPlugin;
 import de.hpi.swa.trufflesqueak.nodes.plugins.DSAPrims;
 import de.hpi.swa.trufflesqueak.nodes.plugins.DropPlugin;
 import de.hpi.swa.trufflesqueak.nodes.plugins.FilePlugin;
 import de.hpi.swa.trufflesqueak.nodes.plugins.Float64ArrayPlugin;
+import de.hpi.swa.trufflesqueak.nodes.plugins.FractionPlugin;
 import de.hpi.swa.trufflesqueak.nodes.plugins.FloatArrayPlugin;
 import de.hpi.swa.trufflesqueak.nodes.plugins.HostWindowPlugin;
 import de.hpi.swa.trufflesqueak.nodes.plugins.JPEGReadWriter2Plugin;
@@ -92,11 +94,13 @@ public final class PrimitiveNodeFactory {
                         new BMPReadWriterPlugin(),
                         new ClipboardExtendedPlugin(),
                         new CroquetPlugin(),
+                        new DigestPlugin(),
                         new DropPlugin(),
                         new DSAPrims(),
                         new FilePlugin(),
                         new FloatArrayPlugin(),
                         new Float64ArrayPlugin(),
+                        new FractionPlugin(),
                         new TruffleSqueakPlugin(),
                         new HostWindowPlugin(),
                         new JPEGReaderPlugin(),
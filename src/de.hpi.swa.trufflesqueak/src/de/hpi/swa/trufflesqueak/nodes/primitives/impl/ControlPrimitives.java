@@ -7,10 +7,7 @@
 package de.hpi.swa.trufflesqueak.nodes.primitives.impl;
 
 import java.lang.management.ManagementFactory;
-import java.lang.ref.Reference;
-import java.lang.ref.ReferenceQueue;
 import java.util.List;
-import java.util.logging.Level;
 
 import javax.management.InstanceNotFoundException;
 import javax.management.MBeanException;
@@ -102,7 +99,6 @@ import de.hpi.swa.trufflesqueak.nodes.process.RemoveProcessFromListNode;
 import de.hpi.swa.trufflesqueak.nodes.process.ResumeProcessNode;
 import de.hpi.swa.trufflesqueak.nodes.process.SignalSemaphoreNode;
 import de.hpi.swa.trufflesqueak.nodes.process.WakeHighestPriorityNode;
-import de.hpi.swa.trufflesqueak.util.LogUtils;
 import de.hpi.swa.trufflesqueak.util.MiscUtils;
 
 public final class ControlPrimitives extends AbstractPrimitiveFactoryHolder {
@@ -851,8 +847,7 @@ public final class ControlPrimitives extends AbstractPrimitiveFactoryHolder {
                 forceFullGC();
             }
             final SqueakImageContext image = getContext();
-            final boolean hasPendingFinalizations = LogUtils.GC_IS_LOGGABLE_FINE ? hasPendingFinalizationsWithLogging(image) : hasPendingFinalizations(image);
-            if (hasPendingFinalizations) {
+            if (image.finalization.processAfterFullGC()) {
                 image.interrupt.setPendingFinalizations(true);
             }
             return MiscUtils.runtimeFreeMemory();
@@ -869,24 +864,6 @@ public final class ControlPrimitives extends AbstractPrimitiveFactoryHolder {
                 e.printStackTrace();
             }
         }
-
-        @TruffleBoundary
-        private static boolean hasPendingFinalizations(final SqueakImageContext image) {
-            return image.weakPointersQueue.poll() != null;
-        }
-
-        @TruffleBoundary
-        private static boolean hasPendingFinalizationsWithLogging(final SqueakImageContext image) {
-            final ReferenceQueue<AbstractSqueakObject> queue = image.weakPointersQueue;
-            Reference<?> element = queue.poll();
-            int count = 0;
-            while (element != null) {
-                count++;
-                element = queue.poll();
-            }
-            LogUtils.GC.log(Level.FINE, "Number of garbage collected WeakPointersObjects: {0}", count);
-            return count > 0;
-        }
     }
 
     @DenyReplace
@@ -30,7 +30,7 @@ import com.oracle.truffle.api.profiles.InlinedExactClassProfile;
 import de.hpi.swa.trufflesqueak.exceptions.PrimitiveFailed;
 import de.hpi.swa.trufflesqueak.image.SqueakImageContext;
 import de.hpi.swa.trufflesqueak.image.SqueakImageWriter;
-import de.hpi.swa.trufflesqueak.io.SqueakDisplay;
+import de.hpi.swa.trufflesqueak.io.AbstractSqueakDisplay;
 import de.hpi.swa.trufflesqueak.io.SqueakIOConstants;
 import de.hpi.swa.trufflesqueak.model.ArrayObject;
 import de.hpi.swa.trufflesqueak.model.BooleanObject;
@@ -113,7 +113,7 @@ public final class IOPrimitives extends AbstractPrimitiveFactoryHolder {
         protected final PointersObject doGetNext(final PointersObject eventSensor, final ArrayObject targetArray) {
             final SqueakImageContext image = getContext();
             if (image.hasDisplay()) {
-                final SqueakDisplay display = image.getDisplay();
+                final AbstractSqueakDisplay display = image.getDisplay();
                 final long[] event = display.getNextEvent();
                 targetArray.setStorage(event != null ? event : SqueakIOConstants.NONE_EVENT);
             } else {
@@ -888,7 +888,7 @@ public final class IOPrimitives extends AbstractPrimitiveFactoryHolder {
         protected final Object doBeep(final Object receiver) {
             final SqueakImageContext image = getContext();
             if (image.hasDisplay()) {
-                SqueakDisplay.beep();
+                image.getDisplay().beep();
             } else {
                 image.printToStdOut((char) 7);
             }
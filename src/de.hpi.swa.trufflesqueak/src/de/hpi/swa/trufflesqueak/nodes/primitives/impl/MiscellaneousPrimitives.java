@@ -31,7 +31,6 @@ import de.hpi.swa.trufflesqueak.exceptions.PrimitiveFailed;
 import de.hpi.swa.trufflesqueak.image.SqueakImageConstants;
 import de.hpi.swa.trufflesqueak.image.SqueakImageContext;
 import de.hpi.swa.trufflesqueak.interop.WrapToSqueakNode;
-import de.hpi.swa.trufflesqueak.io.SqueakDisplay;
 import de.hpi.swa.trufflesqueak.model.AbstractPointersObject;
 import de.hpi.swa.trufflesqueak.model.AbstractSqueakObject;
 import de.hpi.swa.trufflesqueak.model.AbstractSqueakObjectWithClassAndHash;
@@ -554,7 +553,7 @@ public final class MiscellaneousPrimitives extends AbstractPrimitiveFactoryHolde
         protected final NativeObject getClipboardText(@SuppressWarnings("unused") final Object receiver) {
             final SqueakImageContext image = getContext();
             if (image.hasDisplay()) {
-                return image.asByteString(SqueakDisplay.getClipboardData());
+                return image.asByteString(image.getDisplay().getClipboardData());
             } else {
                 return image.clipboardTextHeadless;
             }
@@ -568,7 +567,7 @@ public final class MiscellaneousPrimitives extends AbstractPrimitiveFactoryHolde
         protected final NativeObject setClipboardText(@SuppressWarnings("unused") final Object receiver, final NativeObject value) {
             final SqueakImageContext image = getContext();
             if (image.hasDisplay()) {
-                SqueakDisplay.setClipboardData(value.asStringUnsafe());
+                image.getDisplay().setClipboardData(value.asStringUnsafe());
             } else {
                 image.clipboardTextHeadless = value;
             }
@@ -44,6 +44,8 @@ import de.hpi.swa.trufflesqueak.model.ClassObject;
 import de.hpi.swa.trufflesqueak.model.CompiledCodeObject;
 import de.hpi.swa.trufflesqueak.model.ContextObject;
 import de.hpi.swa.trufflesqueak.model.NilObject;
+import de.hpi.swa.trufflesqueak.model.PointersObject;
+import de.hpi.swa.trufflesqueak.model.layout.ObjectLayouts.ERROR_TABLE;
 import de.hpi.swa.trufflesqueak.nodes.accessing.ArrayObjectNodes.ArrayObjectReadNode;
 import de.hpi.swa.trufflesqueak.nodes.accessing.ArrayObjectNodes.ArrayObjectSizeNode;
 import de.hpi.swa.trufflesqueak.nodes.accessing.SqueakObjectAt0Node;
@@ -530,6 +532,20 @@ public final class StoragePrimitives extends AbstractPrimitiveFactoryHolder {
         }
     }
 
+    /* Answers the next ephemeron whose key was found to be otherwise unreachable. */
+    @GenerateNodeFactory
+    @SqueakPrimitive(indices = 172)
+    protected abstract static class PrimFetchMournerNode extends AbstractPrimitiveNode {
+        @Specialization
+        protected final PointersObject doFetch(@SuppressWarnings("unused") final Object receiver) {
+            final PointersObject mourner = getContext().finalization.nextMourner();
+            if (mourner == null) {
+                throw PrimitiveFailed.andTransferToInterpreter(ERROR_TABLE.NOT_FOUND.ordinal());
+            }
+            return mourner;
+        }
+    }
+
     @GenerateNodeFactory
     @NodeInfo(cost = NodeCost.NONE)
     @SqueakPrimitive(indices = 173)
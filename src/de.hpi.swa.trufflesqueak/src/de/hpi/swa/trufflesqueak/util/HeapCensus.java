@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2017-2024 Software Architecture Group, Hasso Plattner Institute
+ * Copyright (c) 2021-2024 Oracle and/or its affiliates
+ *
+ * Licensed under the MIT License.
+ */
+package de.hpi.swa.trufflesqueak.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+
+import de.hpi.swa.trufflesqueak.image.SqueakImageContext;
+import de.hpi.swa.trufflesqueak.model.AbstractPointersObject;
+import de.hpi.swa.trufflesqueak.model.AbstractSqueakObjectWithClassAndHash;
+import de.hpi.swa.trufflesqueak.model.AbstractVariablePointersObject;
+import de.hpi.swa.trufflesqueak.model.ArrayObject;
+import de.hpi.swa.trufflesqueak.model.BlockClosureObject;
+import de.hpi.swa.trufflesqueak.model.ClassObject;
+import de.hpi.swa.trufflesqueak.model.CompiledCodeObject;
+import de.hpi.swa.trufflesqueak.model.ContextObject;
+import de.hpi.swa.trufflesqueak.model.EmptyObject;
+import de.hpi.swa.trufflesqueak.model.FloatObject;
+import de.hpi.swa.trufflesqueak.model.LargeIntegerObject;
+import de.hpi.swa.trufflesqueak.model.NativeObject;
+import de.hpi.swa.trufflesqueak.model.PointersObject;
+import de.hpi.swa.trufflesqueak.model.VariablePointersObject;
+import de.hpi.swa.trufflesqueak.model.WeakVariablePointersObject;
+
+/**
+ * Counts the instances of each class reachable from the roots together with estimates of their
+ * shallow and owned sizes in the host heap (see {@link ObjectGraphUtils#census}). Estimates assume
+ * a 64-bit JVM with compressed oops and are derived from the instance fields the Java classes
+ * declare, ignoring padding between fields, so that they follow changes to the object model.
+ * Shallow bytes cover the Java object itself, owned bytes additionally cover the storage arrays
+ * the object holds (e.g., the strategy storage of an ArrayObject, the storage of a NativeObject, or
+ * the extension arrays of an ObjectLayout). Owned bytes are not a retained size: objects other
+ * objects may refer to as well, such as literals or frames, are never attributed to their
+ * referrers.
+ */
+public final class HeapCensus {
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+    private static final int ALIGNMENT = 8;
+
+    private static final ConcurrentHashMap<Class<?>, Long> SHALLOW_SIZES = new ConcurrentHashMap<>();
+
+    static {
+        /* Computed at build time, so that native images do not need reflection metadata. */
+        for (final Class<?> javaClass : new Class<?>[]{ArrayObject.class, BlockClosureObject.class, ClassObject.class, CompiledCodeObject.class, ContextObject.class, EmptyObject.class,
+                        FloatObject.class, LargeIntegerObject.class, NativeObject.class, PointersObject.class, VariablePointersObject.class, WeakVariablePointersObject.class,
+                        BigInteger.class}) {
+            shallowSizeOf(javaClass);
+        }
+    }
+
+    private final Map<ClassObject, Entry> entries = new HashMap<>();
+
+    public static final class Entry {
+        private final ClassObject squeakClass;
+        private long instances;
+        private long shallowBytes;
+        private long ownedBytes;
+
+        private Entry(final ClassObject squeakClass) {
+            this.squeakClass = squeakClass;
+        }
+
+        public ClassObject getSqueakClass() {
+            return squeakClass;
+        }
+
+        public long getInstances() {
+            return instances;
+        }
+
+        public long getShallowBytes() {
+            return shallowBytes;
+        }
+
+        public long getOwnedBytes() {
+            return ownedBytes;
+        }
+    }
+
+    void add(final AbstractSqueakObjectWithClassAndHash object) {
+        final Entry entry = entries.computeIfAbsent(object.getSqueakClass(), Entry::new);
+        final long shallowBytes = shallowSizeOf(object);
+        entry.instances++;
+        entry.shallowBytes += shallowBytes;
+        entry.ownedBytes += shallowBytes + ownedStorageSizeOf(object);
+    }
+
+    /** Answers all entries, largest owned size first. */
+    @TruffleBoundary
+    public List<Entry> getEntries() {
+        final List<Entry> result = new ArrayList<>(entries.values());
+        result.sort(Comparator.comparingLong(Entry::getOwnedBytes).reversed().thenComparing(Comparator.comparingLong(Entry::getInstances).reversed()));
+        return result;
+    }
+
+    @TruffleBoundary
+    public void printTo(final SqueakImageContext image, final int limit) {
+        final List<Entry> sortedEntries = getEntries();
+        long totalInstances = 0;
+        long totalShallowBytes = 0;
+        long totalOwnedBytes = 0;
+        for (final Entry entry : sortedEntries) {
+            totalInstances += entry.instances;
+            totalShallowBytes += entry.shallowBytes;
+            totalOwnedBytes += entry.ownedBytes;
+        }
+        image.printToStdOut("# Heap Census");
+        image.printToStdOut(String.format("> %d instances of %d classes, %d shallow bytes, %d owned bytes (estimated)", totalInstances, sortedEntries.size(), totalShallowBytes,
+                        totalOwnedBytes));
+        image.printToStdOut(String.format("> %12s %14s %14s  %s", "Instances", "Shallow", "Owned", "Class"));
+        for (final Entry entry : sortedEntries.subList(0, Math.min(limit, sortedEntries.size()))) {
+            image.printToStdOut(String.format("> %12d %14d %14d  %s", entry.instances, entry.shallowBytes, entry.ownedBytes, entry.squeakClass.getClassName()));
+        }
+    }
+
+    private static long shallowSizeOf(final AbstractSqueakObjectWithClassAndHash object) {
+        return shallowSizeOf(object.getClass());
+    }
+
+    /** Answers the estimated size of an instance of the given Java class, without what it refers to. */
+    public static long shallowSizeOf(final Class<?> javaClass) {
+        return SHALLOW_SIZES.computeIfAbsent(javaClass, HeapCensus::computeShallowSizeOf);
+    }
+
+    private static long computeShallowSizeOf(final Class<?> javaClass) {
+        long size = OBJECT_HEADER;
+        for (Class<?> current = javaClass; current != null; current = current.getSuperclass()) {
+            for (final Field field : current.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    size += fieldSizeOf(field.getType());
+                }
+            }
+        }
+        return align(size);
+    }
+
+    private static int fieldSizeOf(final Class<?> type) {
+        if (!type.isPrimitive()) {
+            return REFERENCE;
+        } else if (type == long.class || type == double.class) {
+            return Long.BYTES;
+        } else if (type == int.class || type == float.class) {
+            return Integer.BYTES;
+        } else if (type == short.class || type == char.class) {
+            return Short.BYTES;
+        } else {
+            return Byte.BYTES;
+        }
+    }
+
+    private static long ownedStorageSizeOf(final AbstractSqueakObjectWithClassAndHash object) {
+        long size = 0;
+        if (object instanceof final AbstractPointersObject o) {
+            size += o.primitiveExtension == null ? 0 : arraySize(o.primitiveExtension.length, Long.BYTES);
+            size += o.objectExtension == null ? 0 : arraySize(o.objectExtension.length, REFERENCE);
+            if (o instanceof final AbstractVariablePointersObject v) {
+                size += arraySize(v.getVariablePart().length, REFERENCE);
+            }
+        } else if (object instanceof final NativeObject o) {
+            if (o.isByteType()) {
+                size = arraySize(o.getByteLength(), Byte.BYTES);
+            } else if (o.isShortType()) {
+                size = arraySize(o.getShortLength(), Short.BYTES);
+            } else if (o.isIntType()) {
+                size = arraySize(o.getIntLength(), Integer.BYTES);
+            } else if (o.isLongType()) {
+                size = arraySize(o.getLongLength(), Long.BYTES);
+            }
+        } else if (object instanceof final ArrayObject o) {
+            if (o.isObjectType()) {
+                size = arraySize(o.getObjectLength(), REFERENCE);
+            } else if (o.isLongType()) {
+                size = arraySize(o.getLongLength(), Long.BYTES);
+            } else if (o.isDoubleType()) {
+                size = arraySize(o.getDoubleLength(), Double.BYTES);
+            } else if (o.isCharType()) {
+                size = arraySize(o.getCharLength(), Character.BYTES);
+            } else if (o.isBooleanType()) {
+                size = arraySize(o.getBooleanLength(), Byte.BYTES);
+            } /* Empty storage is just a size. */
+        } else if (object instanceof final CompiledCodeObject o) {
+            size = (o.getBytes() == null ? 0 : arraySize(o.getBytes().length, Byte.BYTES)) + (o.getLiterals() == null ? 0 : arraySize(o.getLiterals().length, REFERENCE));
+        } else if (object instanceof final BlockClosureObject o) {
+            size = o.getCopiedValues() == null ? 0 : arraySize(o.getCopiedValues().length, REFERENCE);
+        } else if (object instanceof final LargeIntegerObject o) {
+            size = shallowSizeOf(BigInteger.class) + arraySize((o.getBigInteger().bitLength() + Integer.SIZE - 1) / Integer.SIZE, Integer.BYTES);
+        }
+        return size;
+    }
+
+    /** Answers the estimated size of an array with the given length and element size. */
+    public static long arraySize(final int length, final int elementSize) {
+        return align(ARRAY_HEADER + (long) length * elementSize);
+    }
+
+    private static long align(final long size) {
+        return size + ALIGNMENT - 1 & -ALIGNMENT;
+    }
+}
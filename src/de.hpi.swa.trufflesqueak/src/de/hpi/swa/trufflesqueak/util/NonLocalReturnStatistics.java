@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2017-2024 Software Architecture Group, Hasso Plattner Institute
+ * Copyright (c) 2021-2024 Oracle and/or its affiliates
+ *
+ * Licensed under the MIT License.
+ */
+package de.hpi.swa.trufflesqueak.util;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+
+import de.hpi.swa.trufflesqueak.image.SqueakImageContext;
+
+/**
+ * Counts non-local returns from blocks and how many of them were direct returns, i.e. returned into
+ * a send of their home context without unwinding the stack with an exception. Only exists if the
+ * non-local-return-statistics option is enabled. Counters are plain fields, see
+ * {@link PrimitiveStatistics}.
+ */
+public final class NonLocalReturnStatistics {
+    private long nonLocalReturns;
+    private long directReturns;
+
+    public void countNonLocalReturn() {
+        nonLocalReturns++;
+    }
+
+    public void countDirectReturn() {
+        directReturns++;
+    }
+
+    public long getNonLocalReturns() {
+        return nonLocalReturns;
+    }
+
+    public long getDirectReturns() {
+        return directReturns;
+    }
+
+    public void reset() {
+        nonLocalReturns = 0;
+        directReturns = 0;
+    }
+
+    @TruffleBoundary
+    public void printTo(final SqueakImageContext image) {
+        final double rate = nonLocalReturns == 0 ? 0 : (double) directReturns / nonLocalReturns * 100;
+        image.printToStdOut("# Non-Local Return Statistics");
+        image.printToStdOut(String.format("> %-32s %12d", "Non-local returns", nonLocalReturns));
+        image.printToStdOut(String.format("> %-32s %12d (%.2f%%)", "Direct returns", directReturns, rate));
+    }
+}
@@ -8,6 +8,9 @@ package de.hpi.swa.trufflesqueak.util;
 
 import java.util.AbstractCollection;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 
 import com.oracle.truffle.api.CompilerAsserts;
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
@@ -20,6 +23,9 @@ import de.hpi.swa.trufflesqueak.model.AbstractSqueakObject;
 import de.hpi.swa.trufflesqueak.model.AbstractSqueakObjectWithClassAndHash;
 import de.hpi.swa.trufflesqueak.model.ClassObject;
 import de.hpi.swa.trufflesqueak.model.NilObject;
+import de.hpi.swa.trufflesqueak.model.PointersObject;
+import de.hpi.swa.trufflesqueak.model.layout.ObjectLayouts.EPHEMERON;
+import de.hpi.swa.trufflesqueak.nodes.accessing.AbstractPointersObjectNodes.AbstractPointersObjectReadNode;
 
 public final class ObjectGraphUtils {
     private static final int ADDITIONAL_SPACE = 10_000;
@@ -48,6 +54,67 @@ public final class ObjectGraphUtils {
         return seen;
     }
 
+    /**
+     * Traces the object graph with ephemeron semantics: an ephemeron whose key is only reachable
+     * through ephemerons fires, which means it is added to {@code mourners} and becomes an ordinary
+     * object that keeps its key and value alive (see SpurMemoryManager>>#markAndTraceEphemerons).
+     * Answers the number of ephemerons that fired.
+     */
+    @TruffleBoundary
+    public static int fireEphemerons(final SqueakImageContext image, final Collection<PointersObject> mourners) {
+        final ObjectTracer pending = new ObjectTracer(image);
+        final ArrayList<PointersObject> deferred = new ArrayList<>();
+        int numFired = 0;
+        while (true) {
+            AbstractSqueakObjectWithClassAndHash currentObject;
+            while ((currentObject = pending.getNextPending()) != null) {
+                if (currentObject.tryToMark(pending.getCurrentMarkingFlag())) {
+                    if (currentObject instanceof final PointersObject ephemeron && isActiveEphemeron(ephemeron) && !isMarkedOrImmediate(pending, getEphemeronKey(ephemeron))) {
+                        deferred.add(ephemeron);
+                        pending.addIfUnmarked(ephemeron.getSqueakClass());
+                    } else {
+                        pending.tracePointers(currentObject);
+                    }
+                }
+            }
+            if (deferred.isEmpty()) {
+                return numFired;
+            }
+            /* Trace ephemerons whose keys have been reached in the meantime. */
+            boolean tracedAny = false;
+            for (final Iterator<PointersObject> iterator = deferred.iterator(); iterator.hasNext();) {
+                final PointersObject ephemeron = iterator.next();
+                if (isMarkedOrImmediate(pending, getEphemeronKey(ephemeron))) {
+                    iterator.remove();
+                    pending.tracePointers(ephemeron);
+                    tracedAny = true;
+                }
+            }
+            if (!tracedAny) {
+                /* All remaining keys are only reachable through ephemerons: fire them all. */
+                for (final PointersObject ephemeron : deferred) {
+                    ephemeron.setFiredEphemeron();
+                    mourners.add(ephemeron);
+                    pending.tracePointers(ephemeron);
+                }
+                numFired += deferred.size();
+                deferred.clear();
+            }
+        }
+    }
+
+    public static boolean isActiveEphemeron(final PointersObject object) {
+        return object.getSqueakClass().isEphemeronClassType() && !object.isFiredEphemeron();
+    }
+
+    private static Object getEphemeronKey(final PointersObject ephemeron) {
+        return AbstractPointersObjectReadNode.getUncached().execute(null, ephemeron, EPHEMERON.KEY);
+    }
+
+    private static boolean isMarkedOrImmediate(final ObjectTracer tracer, final Object object) {
+        return !(object instanceof final AbstractSqueakObjectWithClassAndHash o) || o.isMarked(tracer.getCurrentMarkingFlag());
+    }
+
     @TruffleBoundary
     public static void pointersBecomeOneWay(final SqueakImageContext image, final Object[] fromPointers, final Object[] toPointers) {
         final ObjectTracer pending = new ObjectTracer(image);
@@ -76,6 +143,24 @@ public final class ObjectGraphUtils {
         return result.toArray();
     }
 
+    /**
+     * Answers instance counts and size estimates per class without collecting the instances (see
+     * {@link HeapCensus}).
+     */
+    @TruffleBoundary
+    public static HeapCensus census(final SqueakImageContext image) {
+        final HeapCensus census = new HeapCensus();
+        final ObjectTracer pending = new ObjectTracer(image);
+        AbstractSqueakObjectWithClassAndHash currentObject;
+        while ((currentObject = pending.getNextPending()) != null) {
+            if (currentObject.tryToMark(pending.getCurrentMarkingFlag())) {
+                census.add(currentObject);
+                pending.tracePointers(currentObject);
+            }
+        }
+        return census;
+    }
+
     @TruffleBoundary
     public static AbstractSqueakObject someInstanceOf(final SqueakImageContext image, final ClassObject targetClass) {
         final ObjectTracer pending = new ObjectTracer(image);
@@ -10,40 +10,73 @@ import com.oracle.truffle.api.Assumption;
 import com.oracle.truffle.api.CompilerAsserts;
 import com.oracle.truffle.api.Truffle;
 
+import de.hpi.swa.trufflesqueak.SqueakOptions.SqueakContextOptions;
+import de.hpi.swa.trufflesqueak.image.SqueakImageContext;
 import de.hpi.swa.trufflesqueak.nodes.primitives.AbstractPrimitiveNode;
 
 /*
- * Counts how often a primitive has failed in a certain time window and indicates whether this
- * node should continue to send the primitive eagerly or not. This is useful to avoid
- * rewriting primitives that set up the image and then are retried in their fallback code
- * (e.g. primitiveCopyBits).
+ * Counts how often a primitive has failed and indicates whether this node should continue to send
+ * the primitive eagerly or not. This is useful to avoid rewriting primitives that set up the image
+ * and then are retried in their fallback code (e.g. primitiveCopyBits). The policy is configured
+ * via options: a primitive is abandoned if it fails more than primitive-failure-limit times in a
+ * time window, or, if primitive-failure-ratio is set, once its failure rate exceeds that ratio.
  */
 public final class PrimitiveFailedCounter {
-    private static final int MAX_NUM_FAILURES = 3;
     private static final int TIME_WINDOW_MILLIS = 1_000;
+    private static final int MIN_CALLS_FOR_RATIO = 100;
 
     // Use an assumption to avoid invalidating primitive code in rare failures on slow path.
     private final Assumption assumption;
+    private final int maxNumFailures;
+    private final double maxFailureRatio;
+    private final PrimitiveStatistics.Entry statistics;
 
     private long lastCheckMillis = System.currentTimeMillis();
     private int count;
+    private long calls;
+    private long failures;
 
     public PrimitiveFailedCounter(final AbstractPrimitiveNode primitiveNode) {
         assumption = Truffle.getRuntime().createAssumption(primitiveNode.getClass().getSimpleName());
+        final SqueakContextOptions options = SqueakImageContext.getSlow().options;
+        maxNumFailures = options.primitiveFailureLimit();
+        maxFailureRatio = options.primitiveFailureRatio();
+        statistics = PrimitiveStatistics.getEntryOrNull(primitiveNode);
     }
 
     public static PrimitiveFailedCounter create(final AbstractPrimitiveNode primitiveNode) {
         return primitiveNode != null ? new PrimitiveFailedCounter(primitiveNode) : null;
     }
 
-    public boolean shouldRewriteToCall() {
+    /** Must be called before each attempt to run the primitive. */
+    public void countCall() {
+        if (maxFailureRatio > 0) {
+            calls++;
+        }
+        if (statistics != null) {
+            statistics.countCall();
+        }
+    }
+
+    public boolean shouldRewriteToCall(final int reasonCode) {
         CompilerAsserts.neverPartOfCompilation();
         assert assumption.isValid();
+        if (statistics != null) {
+            statistics.countFailure(reasonCode);
+        }
+        failures++;
+        if (maxFailureRatio > 0 && calls >= MIN_CALLS_FOR_RATIO && failures > calls * maxFailureRatio) {
+            assumption.invalidate("failure rate above " + maxFailureRatio);
+            return true;
+        }
+        if (maxNumFailures < 0) {
+            return false;
+        }
         if (System.currentTimeMillis() - lastCheckMillis > TIME_WINDOW_MILLIS) {
             count = 0; // reset
         }
         lastCheckMillis = System.currentTimeMillis();
-        if (++count > MAX_NUM_FAILURES) {
+        if (++count > maxNumFailures) {
             assumption.invalidate("failed too often");
             return true;
         } else {
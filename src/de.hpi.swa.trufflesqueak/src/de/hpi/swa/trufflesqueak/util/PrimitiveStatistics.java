@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2017-2024 Software Architecture Group, Hasso Plattner Institute
+ * Copyright (c) 2021-2024 Oracle and/or its affiliates
+ *
+ * Licensed under the MIT License.
+ */
+package de.hpi.swa.trufflesqueak.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.oracle.truffle.api.CompilerAsserts;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+
+import de.hpi.swa.trufflesqueak.image.SqueakImageContext;
+import de.hpi.swa.trufflesqueak.model.layout.ObjectLayouts.ERROR_TABLE;
+import de.hpi.swa.trufflesqueak.nodes.primitives.AbstractPrimitiveNode;
+
+/**
+ * Per-primitive call, failure, and failure reason counters. Only exists if the
+ * primitive-statistics option is enabled. Counters are plain fields because primitives are
+ * executed by the interpreter thread, so numbers are exact in the common case and approximate if
+ * several threads run primitives.
+ */
+public final class PrimitiveStatistics {
+    private static final int NUM_REASONS = ERROR_TABLE.values().length;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public static final class Entry {
+        private final String name;
+        private long calls;
+        private long failures;
+        private final long[] reasons = new long[NUM_REASONS + 1]; // last one counts unknown codes
+
+        private Entry(final String name) {
+            this.name = name;
+        }
+
+        public void countCall() {
+            calls++;
+        }
+
+        public void countFailure(final int reasonCode) {
+            failures++;
+            reasons[reasonCode >= 0 && reasonCode < NUM_REASONS ? reasonCode : NUM_REASONS]++;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        /** Answers the number of failures per {@link ERROR_TABLE} index, plus unknown codes last. */
+        public long[] getReasons() {
+            return reasons.clone();
+        }
+    }
+
+    /** Answers the entry for the primitive implemented by {@code primitiveNode}. */
+    public Entry getEntry(final AbstractPrimitiveNode primitiveNode) {
+        CompilerAsserts.neverPartOfCompilation();
+        return entries.computeIfAbsent(nameOf(primitiveNode), Entry::new);
+    }
+
+    public static Entry getEntryOrNull(final AbstractPrimitiveNode primitiveNode) {
+        final PrimitiveStatistics statistics = SqueakImageContext.getSlow().primitiveStatistics;
+        return statistics == null || primitiveNode == null ? null : statistics.getEntry(primitiveNode);
+    }
+
+    /** Answers entries with at least one failure first, ordered by number of failures. */
+    @TruffleBoundary
+    public List<Entry> getEntries() {
+        final List<Entry> result = new ArrayList<>(entries.values());
+        result.sort(Comparator.comparingLong(Entry::getFailures).thenComparingLong(Entry::getCalls).reversed());
+        return result;
+    }
+
+    @TruffleBoundary
+    public void reset() {
+        entries.clear();
+    }
+
+    @TruffleBoundary
+    public void printTo(final SqueakImageContext image) {
+        image.printToStdOut("# Primitive Statistics");
+        image.printToStdOut(String.format("> %-64s %12s %12s %7s  %s", "Primitive", "Calls", "Failures", "Rate", "Reasons"));
+        for (final Entry entry : getEntries()) {
+            final StringBuilder reasons = new StringBuilder();
+            for (int i = 0; i < entry.reasons.length; i++) {
+                if (entry.reasons[i] > 0) {
+                    reasons.append(i < NUM_REASONS ? ERROR_TABLE.values()[i].name() : "OTHER").append('=').append(entry.reasons[i]).append(' ');
+                }
+            }
+            final double rate = entry.calls == 0 ? 0 : (double) entry.failures / entry.calls * 100;
+            image.printToStdOut(String.format("> %-64s %12d %12d %6.2f%%  %s", entry.name, entry.calls, entry.failures, rate, reasons.toString().trim()));
+        }
+    }
+
+    /* Turns e.g. ArithmeticPrimitivesFactory.PrimAddNodeFactory.PrimAddNodeGen into ArithmeticPrimitives.PrimAddNode. */
+    private static String nameOf(final AbstractPrimitiveNode primitiveNode) {
+        Class<?> nodeClass = primitiveNode.getClass();
+        if (nodeClass.getSimpleName().endsWith("Gen") && nodeClass.getSuperclass() != AbstractPrimitiveNode.class) {
+            nodeClass = nodeClass.getSuperclass();
+        }
+        final Class<?> enclosingClass = nodeClass.getEnclosingClass();
+        return enclosingClass == null ? nodeClass.getSimpleName() : enclosingClass.getSimpleName() + "." + nodeClass.getSimpleName();
+    }
+}
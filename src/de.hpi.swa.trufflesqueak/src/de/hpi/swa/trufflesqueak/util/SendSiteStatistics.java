@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 2017-2024 Software Architecture Group, Hasso Plattner Institute
+ * Copyright (c) 2021-2024 Oracle and/or its affiliates
+ *
+ * Licensed under the MIT License.
+ */
+package de.hpi.swa.trufflesqueak.util;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.oracle.truffle.api.CompilerAsserts;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.dsl.Introspection;
+import com.oracle.truffle.api.dsl.Introspection.SpecializationInfo;
+import com.oracle.truffle.api.nodes.Node;
+
+import de.hpi.swa.trufflesqueak.image.SqueakImageContext;
+import de.hpi.swa.trufflesqueak.model.ClassObject;
+import de.hpi.swa.trufflesqueak.model.CompiledCodeObject;
+
+/**
+ * Records calls and receiver classes per send site, together with the state of the site's cache
+ * (uninitialized, monomorphic, polymorphic, or megamorphic), and counts how often megamorphic sites
+ * consult the global method cache. Only exists if the send-site-statistics option is enabled.
+ * Counters are plain fields, see {@link PrimitiveStatistics}.
+ * <p>
+ * Sites are identified by method, pc, and kind, so that nodes that are recreated or copied for the
+ * same send (e.g., when a method is split) share one site. Methods and nodes are only held weakly,
+ * so sites of discarded methods disappear with them.
+ */
+public final class SendSiteStatistics {
+    public enum State {
+        UNINITIALIZED,
+        MONOMORPHIC,
+        POLYMORPHIC,
+        MEGAMORPHIC
+    }
+
+    /** The kinds of sends, with the specializations that cache targets and that give up caching. */
+    public enum Kind {
+        /* LookupSelectorNode, caching receiver classes. */
+        SELF(new String[]{"doCached"}, new String[]{"doUncached"}),
+        /* DispatchSuperSendNode, caching the method found in the superclass. */
+        SUPER(new String[]{"doCached"}, new String[0]),
+        /* LookupSelectorNode, caching superclasses of directed classes. */
+        DIRECTED_SUPER(new String[]{"doCached"}, new String[]{"doUncached"}),
+        /* DispatchEagerlyNode of perform primitives and sends from Java, caching methods. */
+        EAGER(new String[]{"doPrimitiveEagerly", "doDirect", "doDirectWithSender"}, new String[]{"doIndirect", "doIndirectWithSender"});
+
+        private final String[] cachedSpecializations;
+        private final String[] megamorphicSpecializations;
+
+        Kind(final String[] cachedSpecializations, final String[] megamorphicSpecializations) {
+            this.cachedSpecializations = cachedSpecializations;
+            this.megamorphicSpecializations = megamorphicSpecializations;
+        }
+    }
+
+    private record SiteKey(int pc, Kind kind) {
+    }
+
+    private final Map<CompiledCodeObject, Map<SiteKey, Site>> sites = new WeakHashMap<>();
+    private long methodCacheLookups;
+
+    public static final class Site {
+        private final String method;
+        private final int pc;
+        private final Kind kind;
+        private final String selector;
+        private final List<WeakReference<Node>> nodes = new ArrayList<>();
+        private final Map<ClassObject, long[]> receiverClasses = new HashMap<>();
+        private long calls;
+
+        private Site(final CompiledCodeObject code, final int pc, final Kind kind, final String selector) {
+            method = code == null ? "<unknown>" : code.toString();
+            this.pc = pc;
+            this.kind = kind;
+            this.selector = selector;
+        }
+
+        /**
+         * Counts a call with the receiver class, or the class the method was looked up or found in
+         * for super sends and eager dispatches.
+         */
+        @TruffleBoundary
+        public void countCall(final ClassObject receiverClass) {
+            calls++;
+            if (receiverClass != null) {
+                receiverClasses.computeIfAbsent(receiverClass, c -> new long[1])[0]++;
+            }
+        }
+
+        @TruffleBoundary
+        public void countCall(final CompiledCodeObject method) {
+            countCall(method.getMethodClassSlow());
+        }
+
+        private synchronized void addNode(final Node node) {
+            nodes.removeIf(r -> r.get() == null);
+            nodes.add(new WeakReference<>(node));
+        }
+
+        private synchronized List<Node> getNodes() {
+            final List<Node> result = new ArrayList<>(nodes.size());
+            for (final WeakReference<Node> reference : nodes) {
+                final Node node = reference.get();
+                if (node != null) {
+                    result.add(node);
+                }
+            }
+            return result;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public int getPc() {
+            return pc;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        /** Answers the most generic state of all live nodes of this site. */
+        public State getState() {
+            State state = State.UNINITIALIZED;
+            for (final Node node : getNodes()) {
+                final State nodeState = getNodeState(node);
+                if (nodeState.compareTo(state) > 0) {
+                    state = nodeState;
+                }
+            }
+            return state;
+        }
+
+        private State getNodeState(final Node node) {
+            for (final SpecializationInfo info : Introspection.getSpecializations(node)) {
+                if (info.isActive() && contains(kind.megamorphicSpecializations, info.getMethodName())) {
+                    return State.MEGAMORPHIC;
+                }
+            }
+            return switch (getNodeCachedEntries(node)) {
+                case 0 -> State.UNINITIALIZED;
+                case 1 -> State.MONOMORPHIC;
+                default -> State.POLYMORPHIC;
+            };
+        }
+
+        /** Answers the largest number of cached receiver classes or methods of a live node. */
+        public int getNumCachedEntries() {
+            int max = 0;
+            for (final Node node : getNodes()) {
+                max = Math.max(max, getNodeCachedEntries(node));
+            }
+            return max;
+        }
+
+        private int getNodeCachedEntries(final Node node) {
+            int entries = 0;
+            for (final SpecializationInfo info : Introspection.getSpecializations(node)) {
+                if (contains(kind.cachedSpecializations, info.getMethodName())) {
+                    entries += info.getInstances();
+                }
+            }
+            return entries;
+        }
+
+        private static boolean contains(final String[] names, final String name) {
+            for (final String each : names) {
+                if (each.equals(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    public static boolean isEnabled() {
+        return SqueakImageContext.getSlow().sendSiteStatistics != null;
+    }
+
+    /**
+     * Answers the site for a send of {@code kind} at {@code pc} in {@code code} (which is null if
+     * unknown) and adds {@code node} to it, or answers {@code null} if statistics are disabled.
+     */
+    public static Site registerOrNull(final CompiledCodeObject code, final int pc, final Kind kind, final String selector, final Node node) {
+        CompilerAsserts.neverPartOfCompilation();
+        final SendSiteStatistics statistics = SqueakImageContext.getSlow().sendSiteStatistics;
+        if (statistics == null) {
+            return null;
+        }
+        final Site site;
+        synchronized (statistics.sites) {
+            site = statistics.sites.computeIfAbsent(code, c -> new HashMap<>()).computeIfAbsent(new SiteKey(pc, kind), k -> new Site(code, pc, kind, selector));
+        }
+        site.addNode(node);
+        return site;
+    }
+
+    public void countMethodCacheLookup() {
+        methodCacheLookups++;
+    }
+
+    /** Answers sites with at least one call, megamorphic ones first, then by number of calls. */
+    @TruffleBoundary
+    public List<Site> getSites() {
+        final List<Site> result = new ArrayList<>();
+        synchronized (sites) {
+            for (final Map<SiteKey, Site> methodSites : sites.values()) {
+                result.addAll(methodSites.values());
+            }
+        }
+        result.removeIf(s -> s.calls == 0);
+        result.sort(Comparator.comparing(Site::getState).reversed().thenComparing(Comparator.comparingLong((final Site s) -> s.calls).reversed()));
+        return result;
+    }
+
+    @TruffleBoundary
+    public void reset() {
+        synchronized (sites) {
+            for (final Map<SiteKey, Site> methodSites : sites.values()) {
+                for (final Site site : methodSites.values()) {
+                    site.calls = 0;
+                    site.receiverClasses.clear();
+                }
+            }
+        }
+        methodCacheLookups = 0;
+    }
+
+    @TruffleBoundary
+    public String toJson() {
+        final StringBuilder b = new StringBuilder();
+        b.append("{\"methodCacheLookups\":").append(methodCacheLookups).append(",\"sites\":[");
+        boolean firstSite = true;
+        for (final Site site : getSites()) {
+            if (!firstSite) {
+                b.append(',');
+            }
+            firstSite = false;
+            b.append("{\"method\":");
+            appendJsonString(b, site.method);
+            b.append(",\"pc\":").append(site.pc).append(",\"kind\":\"").append(site.kind.name().toLowerCase()).append("\",\"selector\":");
+            appendJsonString(b, site.selector);
+            b.append(",\"state\":\"").append(site.getState().name().toLowerCase()).append("\",\"cachedEntries\":").append(site.getNumCachedEntries());
+            b.append(",\"calls\":").append(site.calls).append(",\"receivers\":[");
+            boolean firstReceiver = true;
+            for (final Map.Entry<ClassObject, long[]> entry : sortedReceivers(site)) {
+                if (!firstReceiver) {
+                    b.append(',');
+                }
+                firstReceiver = false;
+                b.append("{\"class\":");
+                appendJsonString(b, entry.getKey().getClassName());
+                b.append(",\"calls\":").append(entry.getValue()[0]).append('}');
+            }
+            b.append("]}");
+        }
+        return b.append("]}").toString();
+    }
+
+    @TruffleBoundary
+    public void printTo(final SqueakImageContext image) {
+        final List<Site> activeSites = getSites();
+        final Map<State, Integer> sitesPerState = new HashMap<>();
+        for (final Site site : activeSites) {
+            sitesPerState.merge(site.getState(), 1, Integer::sum);
+        }
+        image.printToStdOut("# Send Site Statistics");
+        image.printToStdOut(String.format("> %d active send sites (%s), %d global method cache lookups", activeSites.size(), sitesPerState, methodCacheLookups));
+        image.printToStdOut(String.format("> %-12s %-14s %-4s %12s  %s", "State", "Kind", "#", "Calls", "Site"));
+        for (final Site site : activeSites) {
+            final State state = site.getState();
+            if (state == State.MONOMORPHIC || state == State.UNINITIALIZED) {
+                continue; // Only list sites that are or were about to fall off the inline cache.
+            }
+            image.printToStdOut(String.format("> %-12s %-14s %-4d %12d  %s @%d #%s", state.name().toLowerCase(), site.kind.name().toLowerCase(), site.receiverClasses.size(), site.calls, site.method,
+                            site.pc, site.selector));
+        }
+    }
+
+    private static List<Map.Entry<ClassObject, long[]>> sortedReceivers(final Site site) {
+        final List<Map.Entry<ClassObject, long[]>> entries = new ArrayList<>(site.receiverClasses.entrySet());
+        entries.sort(Comparator.comparingLong((final Map.Entry<ClassObject, long[]> e) -> e.getValue()[0]).reversed());
+        return entries;
+    }
+
+    private static void appendJsonString(final StringBuilder b, final String value) {
+        b.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"' -> b.append("\\\"");
+                case '\\' -> b.append("\\\\");
+                case '\n' -> b.append("\\n");
+                case '\r' -> b.append("\\r");
+                case '\t' -> b.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        b.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        b.append(c);
+                    }
+                }
+            }
+        }
+        b.append('"');
+    }
+}
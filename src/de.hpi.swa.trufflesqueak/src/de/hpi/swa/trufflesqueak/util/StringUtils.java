@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2017-2024 Software Architecture Group, Hasso Plattner Institute
+ * Copyright (c) 2021-2024 Oracle and/or its affiliates
+ *
+ * Licensed under the MIT License.
+ */
+package de.hpi.swa.trufflesqueak.util;
+
+import java.util.Arrays;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+
+import de.hpi.swa.trufflesqueak.nodes.primitives.impl.ArithmeticPrimitives.PrimHashMultiplyNode;
+
+/**
+ * Bulk kernels for searching, comparing, and hashing byte (ByteString) and int (WideString)
+ * storage. The kernels are behind {@link TruffleBoundary}s so that the host compiler can apply
+ * its vectorized intrinsics (e.g., for {@link Arrays#mismatch}), and byte scans process eight bytes
+ * per step (SWAR). All indices are zero-based.
+ */
+public final class StringUtils {
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+    private static final int ALPHABET_SIZE = 256;
+
+    /* Horspool only pays off if it can skip; short keys or bodies are compared directly. */
+    private static final int MIN_SKIP_KEY_LENGTH = 4;
+    private static final int MIN_SKIP_BODY_LENGTH = 64;
+
+    /* Powers of the multiplier of SmallInteger>>#hashMultiply for four-way unrolled hashing. */
+    private static final long HASH_K1 = PrimHashMultiplyNode.HASH_MULTIPLY_CONSTANT;
+    private static final long HASH_K2 = HASH_K1 * HASH_K1;
+    private static final long HASH_K3 = HASH_K2 * HASH_K1;
+    private static final long HASH_K4 = HASH_K3 * HASH_K1;
+
+    private StringUtils() {
+    }
+
+    /*
+     * SEARCH
+     */
+
+    /** Answers the index of the first value at or after fromIndex, or -1 (memchr). */
+    @TruffleBoundary
+    public static int indexOf(final byte[] bytes, final int fromIndex, final byte value) {
+        final int length = bytes.length;
+        final long pattern = (value & 0xFFL) * ONES;
+        int i = Math.max(fromIndex, 0);
+        for (; i + Long.BYTES <= length; i += Long.BYTES) {
+            final long word = VarHandleUtils.getLongFromBytes(bytes, i) ^ pattern;
+            /* Lowest high bit marks the first zero byte, i.e., the first match (little endian). */
+            final long matches = word - ONES & ~word & HIGHS;
+            if (matches != 0) {
+                return i + (Long.numberOfTrailingZeros(matches) >>> 3);
+            }
+        }
+        for (; i < length; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @TruffleBoundary
+    public static int indexOf(final int[] ints, final int fromIndex, final int value) {
+        for (int i = Math.max(fromIndex, 0); i < ints.length; i++) {
+            if (ints[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Answers the index of the first occurrence of key in body at or after fromIndex, or -1. */
+    @TruffleBoundary
+    public static int indexOf(final byte[] body, final byte[] key, final int fromIndex) {
+        final int keyLength = key.length;
+        final int lastStart = body.length - keyLength;
+        int start = Math.max(fromIndex, 0);
+        if (keyLength == 0 || start > lastStart) {
+            return -1;
+        }
+        final byte first = key[0];
+        if (keyLength < MIN_SKIP_KEY_LENGTH || lastStart - start < MIN_SKIP_BODY_LENGTH) {
+            /* Find candidates with memchr, then verify. */
+            while ((start = indexOf(body, start, first)) >= 0 && start <= lastStart) {
+                if (Arrays.equals(body, start, start + keyLength, key, 0, keyLength)) {
+                    return start;
+                }
+                start++;
+            }
+            return -1;
+        }
+        final int[] shifts = new int[ALPHABET_SIZE];
+        Arrays.fill(shifts, keyLength);
+        for (int i = 0; i < keyLength - 1; i++) {
+            shifts[key[i] & 0xFF] = keyLength - 1 - i;
+        }
+        final byte last = key[keyLength - 1];
+        while (start <= lastStart) {
+            final byte current = body[start + keyLength - 1];
+            if (current == last && Arrays.equals(body, start, start + keyLength - 1, key, 0, keyLength - 1)) {
+                return start;
+            }
+            start += shifts[current & 0xFF];
+        }
+        return -1;
+    }
+
+    /**
+     * Answers the index of the first occurrence of key in body at or after fromIndex after mapping
+     * all bytes through matchTable (e.g., for case-insensitive search), or -1.
+     */
+    @TruffleBoundary
+    public static int indexOf(final byte[] body, final byte[] key, final int fromIndex, final byte[] matchTable) {
+        final int keyLength = key.length;
+        final int lastStart = body.length - keyLength;
+        int start = Math.max(fromIndex, 0);
+        if (keyLength == 0 || start > lastStart) {
+            return -1;
+        }
+        final byte[] mappedKey = new byte[keyLength];
+        for (int i = 0; i < keyLength; i++) {
+            mappedKey[i] = matchTable[key[i] & 0xFF];
+        }
+        final int[] shifts = new int[ALPHABET_SIZE];
+        Arrays.fill(shifts, keyLength);
+        for (int i = 0; i < keyLength - 1; i++) {
+            shifts[mappedKey[i] & 0xFF] = keyLength - 1 - i;
+        }
+        final byte last = mappedKey[keyLength - 1];
+        while (start <= lastStart) {
+            final byte current = matchTable[body[start + keyLength - 1] & 0xFF];
+            if (current == last && matchesMapped(body, start, mappedKey, matchTable)) {
+                return start;
+            }
+            start += shifts[current & 0xFF];
+        }
+        return -1;
+    }
+
+    private static boolean matchesMapped(final byte[] body, final int start, final byte[] mappedKey, final byte[] matchTable) {
+        for (int i = 0; i < mappedKey.length - 1; i++) {
+            if (matchTable[body[start + i] & 0xFF] != mappedKey[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Like {@link #indexOf(byte[], byte[], int)}, shifting by the low byte of code points. */
+    @TruffleBoundary
+    public static int indexOf(final int[] body, final int[] key, final int fromIndex) {
+        final int keyLength = key.length;
+        final int lastStart = body.length - keyLength;
+        int start = Math.max(fromIndex, 0);
+        if (keyLength == 0 || start > lastStart) {
+            return -1;
+        }
+        final int[] shifts = new int[ALPHABET_SIZE];
+        Arrays.fill(shifts, keyLength);
+        for (int i = 0; i < keyLength - 1; i++) {
+            /* Code points sharing a low byte share a slot, the smallest shift is kept. */
+            shifts[key[i] & 0xFF] = keyLength - 1 - i;
+        }
+        final int last = key[keyLength - 1];
+        while (start <= lastStart) {
+            final int current = body[start + keyLength - 1];
+            if (current == last && Arrays.equals(body, start, start + keyLength - 1, key, 0, keyLength - 1)) {
+                return start;
+            }
+            start += shifts[current & 0xFF];
+        }
+        return -1;
+    }
+
+    /*
+     * COMPARE
+     */
+
+    /** Answers -1, 0, or 1 comparing unsigned bytes lexicographically, shorter strings first. */
+    @TruffleBoundary
+    public static int compare(final byte[] bytes1, final byte[] bytes2) {
+        final int index = Arrays.mismatch(bytes1, bytes2);
+        if (index < 0) {
+            return 0;
+        } else if (index == bytes1.length || index == bytes2.length) {
+            return bytes1.length < bytes2.length ? -1 : 1;
+        } else {
+            return (bytes1[index] & 0xFF) < (bytes2[index] & 0xFF) ? -1 : 1;
+        }
+    }
+
+    /** Like {@link #compare(byte[], byte[])}, but compares bytes mapped through order. */
+    @TruffleBoundary
+    public static int compare(final byte[] bytes1, final byte[] bytes2, final byte[] order) {
+        final int min = Math.min(bytes1.length, bytes2.length);
+        /* Equal bytes map to equal values, so the common prefix can be skipped in bulk. */
+        int i = Arrays.mismatch(bytes1, 0, min, bytes2, 0, min);
+        if (i >= 0) {
+            for (; i < min; i++) {
+                final int c1 = order[bytes1[i] & 0xFF] & 0xFF;
+                final int c2 = order[bytes2[i] & 0xFF] & 0xFF;
+                if (c1 != c2) {
+                    return c1 < c2 ? -1 : 1;
+                }
+            }
+        }
+        return Integer.compare(bytes1.length, bytes2.length);
+    }
+
+    /** Compares code points, mapping those below order.length through order if it is not null. */
+    @TruffleBoundary
+    public static int compare(final Object storage1, final Object storage2, final byte[] order) {
+        final int length1 = codePointLength(storage1);
+        final int length2 = codePointLength(storage2);
+        final int min = Math.min(length1, length2);
+        int i = 0;
+        if (storage1 instanceof final int[] ints1 && storage2 instanceof final int[] ints2) {
+            i = Arrays.mismatch(ints1, 0, min, ints2, 0, min);
+            if (i < 0) {
+                return Integer.compare(length1, length2);
+            }
+        }
+        for (; i < min; i++) {
+            int c1 = codePointAt(storage1, i);
+            int c2 = codePointAt(storage2, i);
+            if (c1 != c2 && order != null) {
+                if (c1 >= order.length || c2 >= order.length) {
+                    return Integer.MIN_VALUE; /* Not collatable with order. */
+                }
+                c1 = order[c1] & 0xFF;
+                c2 = order[c2] & 0xFF;
+            }
+            if (c1 != c2) {
+                return Integer.compareUnsigned(c1, c2) < 0 ? -1 : 1;
+            }
+        }
+        return Integer.compare(length1, length2);
+    }
+
+    private static int codePointLength(final Object storage) {
+        return storage instanceof final byte[] bytes ? bytes.length : ((int[]) storage).length;
+    }
+
+    private static int codePointAt(final Object storage, final int index) {
+        return storage instanceof final byte[] bytes ? bytes[index] & 0xFF : ((int[]) storage)[index];
+    }
+
+    /*
+     * HASH
+     */
+
+    /**
+     * Computes String>>#hashWithInitialHash:, i.e., hash := (hash + byte) hashMultiply for all
+     * bytes. As the mask is a power of two, intermediate results need not be masked, and four
+     * bytes can be folded in with one dependent multiplication.
+     */
+    @TruffleBoundary
+    public static long hash(final long initialHash, final byte[] bytes) {
+        long hash = initialHash & PrimHashMultiplyNode.HASH_MULTIPLY_MASK;
+        final int length = bytes.length;
+        int i = 0;
+        for (; i + 4 <= length; i += 4) {
+            hash = (hash + (bytes[i] & 0xFF)) * HASH_K4 + (bytes[i + 1] & 0xFF) * HASH_K3 + (bytes[i + 2] & 0xFF) * HASH_K2 + (bytes[i + 3] & 0xFF) * HASH_K1;
+        }
+        for (; i < length; i++) {
+            hash = (hash + (bytes[i] & 0xFF)) * HASH_K1;
+        }
+        return hash & PrimHashMultiplyNode.HASH_MULTIPLY_MASK;
+    }
+
+    /** Like {@link #hash(long, byte[])} for code points. */
+    @TruffleBoundary
+    public static long hash(final long initialHash, final int[] ints) {
+        long hash = initialHash & PrimHashMultiplyNode.HASH_MULTIPLY_MASK;
+        final int length = ints.length;
+        int i = 0;
+        for (; i + 4 <= length; i += 4) {
+            hash = (hash + Integer.toUnsignedLong(ints[i])) * HASH_K4 + Integer.toUnsignedLong(ints[i + 1]) * HASH_K3 + Integer.toUnsignedLong(ints[i + 2]) * HASH_K2 +
+                            Integer.toUnsignedLong(ints[i + 3]) * HASH_K1;
+        }
+        for (; i < length; i++) {
+            hash = (hash + Integer.toUnsignedLong(ints[i])) * HASH_K1;
+        }
+        return hash & PrimHashMultiplyNode.HASH_MULTIPLY_MASK;
+    }
+}
@@ -7,6 +7,8 @@
 package de.hpi.swa.trufflesqueak.util;
 
 import java.lang.reflect.Field;
+import java.nio.ByteOrder;
+import java.util.Objects;
 
 import com.oracle.truffle.api.CompilerDirectives;
 
@@ -16,6 +18,7 @@ import sun.misc.Unsafe;
 public final class UnsafeUtils {
 
     private static final Unsafe UNSAFE = initUnsafe();
+    private static final boolean IS_BIG_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN;
 
     private UnsafeUtils() {
     }
@@ -28,12 +31,36 @@ public final class UnsafeUtils {
         return inBounds(fromObjectsOffset(offset), array.length);
     }
 
+    /* Base offset of byte[], short[], int[], or long[] storage of bits objects (see ClassObject#isBits). */
+    private static long getBitsBaseOffset(final Object bits) {
+        if (bits instanceof byte[]) {
+            return Unsafe.ARRAY_BYTE_BASE_OFFSET;
+        } else if (bits instanceof short[]) {
+            return Unsafe.ARRAY_SHORT_BASE_OFFSET;
+        } else if (bits instanceof int[]) {
+            return Unsafe.ARRAY_INT_BASE_OFFSET;
+        } else {
+            assert bits instanceof long[];
+            return Unsafe.ARRAY_LONG_BASE_OFFSET;
+        }
+    }
+
+    public static void copyBitsToBytes(final Object bits, final long byteOffset, final byte[] dest, final int destPos, final int length) {
+        Objects.checkFromIndexSize(destPos, length, dest.length);
+        UNSAFE.copyMemory(bits, getBitsBaseOffset(bits) + byteOffset, dest, Unsafe.ARRAY_BYTE_BASE_OFFSET + destPos, length);
+    }
+
     public static void copyBytes(final byte[] src, final long srcPos, final byte[] dest, final long destPos, final long length) {
         assert inBounds(srcPos, length, src.length) && inBounds(destPos, length, dest.length);
         UNSAFE.copyMemory(src, Unsafe.ARRAY_BYTE_BASE_OFFSET + srcPos * Unsafe.ARRAY_BYTE_INDEX_SCALE,
                         dest, Unsafe.ARRAY_BYTE_BASE_OFFSET + destPos * Unsafe.ARRAY_BYTE_INDEX_SCALE, Byte.BYTES * length);
     }
 
+    public static void copyBytesToBits(final byte[] src, final int srcPos, final Object bits, final long byteOffset, final int length) {
+        Objects.checkFromIndexSize(srcPos, length, src.length);
+        UNSAFE.copyMemory(src, Unsafe.ARRAY_BYTE_BASE_OFFSET + srcPos, bits, getBitsBaseOffset(bits) + byteOffset, length);
+    }
+
     public static void copyChars(final char[] src, final long srcPos, final char[] dest, final long destPos, final long length) {
         assert inBounds(srcPos, length, src.length) && inBounds(destPos, length, dest.length);
         UNSAFE.copyMemory(src, Unsafe.ARRAY_CHAR_BASE_OFFSET + srcPos * Unsafe.ARRAY_CHAR_INDEX_SCALE,
@@ -148,6 +175,92 @@ public final class UnsafeUtils {
         return UNSAFE.getBoolean(array, offset);
     }
 
+    public static byte getByteFromBits(final Object bits, final long byteOffset) {
+        return UNSAFE.getByte(bits, getBitsBaseOffset(bits) + byteOffset);
+    }
+
+    public static int getIntFromBits(final Object bits, final long byteOffset) {
+        return getIntUnaligned(bits, getBitsBaseOffset(bits) + byteOffset);
+    }
+
+    public static long getLongFromBits(final Object bits, final long byteOffset) {
+        return getLongUnaligned(bits, getBitsBaseOffset(bits) + byteOffset);
+    }
+
+    public static short getShortFromBits(final Object bits, final long byteOffset) {
+        return getShortUnaligned(bits, getBitsBaseOffset(bits) + byteOffset);
+    }
+
+    /*
+     * Byte offsets into bits storage need not be aligned to the size of the accessed value. The
+     * unaligned accessors below follow those of jdk.internal.misc.Unsafe, which sun.misc.Unsafe does
+     * not expose: aligned offsets are accessed directly, all others byte by byte in native order.
+     */
+
+    private static short getShortUnaligned(final Object object, final long offset) {
+        if ((offset & Short.BYTES - 1) == 0) {
+            return UNSAFE.getShort(object, offset);
+        } else {
+            return (short) getBytesUnaligned(object, offset, Short.BYTES);
+        }
+    }
+
+    private static int getIntUnaligned(final Object object, final long offset) {
+        if ((offset & Integer.BYTES - 1) == 0) {
+            return UNSAFE.getInt(object, offset);
+        } else {
+            return (int) getBytesUnaligned(object, offset, Integer.BYTES);
+        }
+    }
+
+    private static long getLongUnaligned(final Object object, final long offset) {
+        if ((offset & Long.BYTES - 1) == 0) {
+            return UNSAFE.getLong(object, offset);
+        } else {
+            return getBytesUnaligned(object, offset, Long.BYTES);
+        }
+    }
+
+    private static long getBytesUnaligned(final Object object, final long offset, final int numBytes) {
+        long value = 0;
+        for (int i = 0; i < numBytes; i++) {
+            final int shift = (IS_BIG_ENDIAN ? numBytes - 1 - i : i) * Byte.SIZE;
+            value |= (UNSAFE.getByte(object, offset + i) & 0xFFL) << shift;
+        }
+        return value;
+    }
+
+    private static void putShortUnaligned(final Object object, final long offset, final short value) {
+        if ((offset & Short.BYTES - 1) == 0) {
+            UNSAFE.putShort(object, offset, value);
+        } else {
+            putBytesUnaligned(object, offset, value, Short.BYTES);
+        }
+    }
+
+    private static void putIntUnaligned(final Object object, final long offset, final int value) {
+        if ((offset & Integer.BYTES - 1) == 0) {
+            UNSAFE.putInt(object, offset, value);
+        } else {
+            putBytesUnaligned(object, offset, value, Integer.BYTES);
+        }
+    }
+
+    private static void putLongUnaligned(final Object object, final long offset, final long value) {
+        if ((offset & Long.BYTES - 1) == 0) {
+            UNSAFE.putLong(object, offset, value);
+        } else {
+            putBytesUnaligned(object, offset, value, Long.BYTES);
+        }
+    }
+
+    private static void putBytesUnaligned(final Object object, final long offset, final long value, final int numBytes) {
+        for (int i = 0; i < numBytes; i++) {
+            final int shift = (IS_BIG_ENDIAN ? numBytes - 1 - i : i) * Byte.SIZE;
+            UNSAFE.putByte(object, offset + i, (byte) (value >>> shift));
+        }
+    }
+
     public static byte getByte(final byte[] storage, final long index) {
         assert inBounds(index, storage.length);
         return UNSAFE.getByte(storage, Unsafe.ARRAY_BYTE_BASE_OFFSET + index * Unsafe.ARRAY_BYTE_INDEX_SCALE);
@@ -265,6 +378,22 @@ public final class UnsafeUtils {
         UNSAFE.putBoolean(array, offset, value);
     }
 
+    public static void putByteIntoBits(final Object bits, final long byteOffset, final byte value) {
+        UNSAFE.putByte(bits, getBitsBaseOffset(bits) + byteOffset, value);
+    }
+
+    public static void putIntIntoBits(final Object bits, final long byteOffset, final int value) {
+        putIntUnaligned(bits, getBitsBaseOffset(bits) + byteOffset, value);
+    }
+
+    public static void putLongIntoBits(final Object bits, final long byteOffset, final long value) {
+        putLongUnaligned(bits, getBitsBaseOffset(bits) + byteOffset, value);
+    }
+
+    public static void putShortIntoBits(final Object bits, final long byteOffset, final short value) {
+        putShortUnaligned(bits, getBitsBaseOffset(bits) + byteOffset, value);
+    }
+
     public static void putByte(final byte[] storage, final long index, final byte value) {
         assert inBounds(index, storage.length);
         UNSAFE.putByte(storage, Unsafe.ARRAY_BYTE_BASE_OFFSET + index * Unsafe.ARRAY_BYTE_INDEX_SCALE, value);